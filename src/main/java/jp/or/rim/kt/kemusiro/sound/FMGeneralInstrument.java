@@ -147,6 +147,16 @@ public class FMGeneralInstrument extends Instrument {
         ((FMAlgorithm) wave).setTimeStep(newTimeStep);
     }
 
+    /** renders by the tables of the algorithm, or by the sample when it can't */
+    @Override
+    public void render(int number, float[] buffer, int offset, int length) {
+        if (((FMAlgorithm) wave).render(number, buffer, offset, length)) {
+            applyEnvelope(buffer, offset, length);
+        } else {
+            super.render(number, buffer, offset, length);
+        }
+    }
+
     @Override
     public void press() {
         super.press();
@@ -39,6 +39,30 @@ public abstract class Instrument {
         return value;
     }
 
+    /**
+     * Obtain the waveform values of the following samples at once, the same as
+     * {@link #getValue(int)} for each of them.
+     *
+     * @param number note number (0-127)
+     * @param buffer the values are written into
+     */
+    public void render(int number, float[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] = (float) getValue(number);
+        }
+    }
+
+    /**
+     * For subclasses rendering the waveform by themselves, multiplies the values by
+     * the envelope and updates the current time.
+     */
+    protected void applyEnvelope(float[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] *= (float) envelope.getValue();
+            currentTime += timeStep;
+        }
+    }
+
     public void press() {
         currentTime = 0;
         envelope.press();
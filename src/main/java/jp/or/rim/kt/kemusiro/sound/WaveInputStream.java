@@ -4,20 +4,27 @@
 
 package jp.or.rim.kt.kemusiro.sound;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Objects;
 
 
 /**
  * Generates binary data from musical scores.
+ * <p>
+ * each channel is rendered into a float buffer by blocks, see {@link Instrument#render(int, float[], int, int)},
+ * then they are mixed into the bytes of a beat.
  *
  * @author Kenichi Miyata (kemusiro&#x40;kt.rim.or.jp)
  * @version $Revision: 1.2 $
  */
 public class WaveInputStream extends InputStream {
 
+    /** samples rendered at once */
+    private static final int BLOCK_SIZE = 512;
+
     private final MusicScore score;
     private final int samplingRate;
     private final int samplingDepth;
@@ -27,8 +34,12 @@ public class WaveInputStream extends InputStream {
     private int currentTempo = 60;
     private int pos = 0;
     private final LinkedList<MusicEvent> events;
-    private final ByteArrayOutputStream output;
+    /** by channel, reused */
+    private final float[][] channelBuffers;
+    /** a beat, grown when the tempo gets slower */
     private byte[] buffer;
+    /** end of the valid bytes in the buffer */
+    private int limit = 0;
 
     public WaveInputStream(MusicScore score, int rate, int bits) {
         this.score = score;
@@ -42,7 +53,8 @@ public class WaveInputStream extends InputStream {
         insts = new Instrument[score.getChannelCount()];
         notes = new NoteOn[score.getChannelCount()];
 
-        output = new ByteArrayOutputStream(4 * samplingRate / score.getTickPerBeat());
+        channelBuffers = new float[score.getChannelCount()][BLOCK_SIZE];
+        buffer = new byte[4 * samplingRate / score.getTickPerBeat()];
     }
 
     private double getTimePerBeat() {
@@ -91,31 +103,45 @@ public class WaveInputStream extends InputStream {
         int intValue = (int) value;
 
         if (samplingDepth == 32) {
-            output.write((intValue & 0xff00_0000) >> 24);
+            buffer[limit++] = (byte) ((intValue & 0xff00_0000) >> 24);
         }
         if (samplingDepth >= 24) {
-            output.write((intValue & 0x00ff_0000) >> 16);
+            buffer[limit++] = (byte) ((intValue & 0x00ff_0000) >> 16);
         }
         if (samplingDepth >= 16) {
-            output.write((intValue & 0x0000_ff00) >> 8);
+            buffer[limit++] = (byte) ((intValue & 0x0000_ff00) >> 8);
         }
-        output.write(intValue & 0x0000_00ff);
+        buffer[limit++] = (byte) (intValue & 0x0000_00ff);
     }
 
     private void processNote() {
-        for (int p = 0; p < getSampleCountPerTick(); p++) {
-            double value = 0.0;
-            for (int ch = 0; ch < score.getChannelCount(); ch++) {
+        int samples = getSampleCountPerTick();
+        int channels = score.getChannelCount();
+        int size = limit + samples * samplingDepth / 8;
+        if (size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+        }
+        for (int p = 0; p < samples; p += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, samples - p);
+            for (int ch = 0; ch < channels; ch++) {
                 if (notes[ch] != null) {
-                    value += notes[ch].getVelocity() * insts[ch].getValue(notes[ch].getNumber());
+                    insts[ch].render(notes[ch].getNumber(), channelBuffers[ch], 0, length);
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                double value = 0.0;
+                for (int ch = 0; ch < channels; ch++) {
+                    if (notes[ch] != null) {
+                        value += notes[ch].getVelocity() * channelBuffers[ch][i];
+                    }
                 }
+                writeDouble(value / channels);
             }
-            writeDouble(value / score.getChannelCount());
         }
     }
 
     private int fillBuffer() {
-        output.reset();
+        limit = 0;
         for (int t = 0; t < score.getTickPerBeat(); t++) {
             if (events.isEmpty()) {
                 break;
@@ -127,24 +153,40 @@ public class WaveInputStream extends InputStream {
             processNote();
             currentTick++;
         }
-        buffer = output.toByteArray();
-        return buffer.length;
+        return limit;
     }
 
     @Override
     public int read() throws IOException {
-        if (buffer == null || pos == buffer.length) {
+        if (pos == limit) {
+            pos = 0;
             if (fillBuffer() <= 0) {
-                buffer = null;
                 return -1;
             }
-            pos = 0;
         }
         return buffer[pos++] & 0xff;
     }
 
     @Override
-    public void close() throws IOException {
-        output.close();
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == limit) {
+            pos = 0;
+            if (fillBuffer() <= 0) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - pos;
     }
 }
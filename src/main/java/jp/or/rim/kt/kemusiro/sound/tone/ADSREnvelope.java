@@ -18,6 +18,8 @@ public class ADSREnvelope extends Envelope {
     private final double releaseRate;
     private final double sustainLevel;
     private final double maxLevel;
+    private final double attackingTime;
+    private final double decayingTime;
     private double level;
 
     public ADSREnvelope(double ar,
@@ -32,15 +34,15 @@ public class ADSREnvelope extends Envelope {
         releaseRate = rr;
         sustainLevel = sl;
         maxLevel = ml;
+        attackingTime = maxLevel / attackRate;
+        decayingTime = attackingTime + sustainLevel / decayRate;
     }
 
     @Override
     public double getValueInPressing() {
-        double attackingTime = maxLevel / attackRate;
         if (time < attackingTime) {
             return level = attackRate * time;
         }
-        double decayingTime = attackingTime + sustainLevel / decayRate;
         if (time < attackingTime + decayingTime) {
             return level = maxLevel - decayRate * (time - attackingTime);
         }
@@ -4,8 +4,17 @@
 
 package jp.or.rim.kt.kemusiro.sound.tone;
 
+import java.util.ArrayList;
+import java.util.List;
+
+
 /**
  * FM sound source algorithm.
+ * <p>
+ * {@link #render(int, float[], int, int)} renders blocks by a table of steps compiled from the
+ * connection of the operators, in the order {@link #getValue(int, double)} evaluates them, so
+ * a modulator shared by several operators advances its envelope for each of them as well.
+ * the saw wave pitch is a phase accumulator, and the sines are looked up in {@link SineTable}.
  *
  * @author Kenichi Miyata (kemusiro&#x40;kt.rim.or.jp)
  * @version $Revision: 1.1 $
@@ -14,6 +23,33 @@ public abstract class FMAlgorithm implements WaveGeneratable {
 
     private final FMOperator[] operators;
 
+    /** slot of a masked operator, always 0 */
+    private static final int ZERO = 0;
+    /** slot of the saw wave pitch */
+    private static final int PITCH = 1;
+    /** no modulation */
+    private static final int NONE = -1;
+
+    /** operators summed up as the output, by {@link #setOutputs(int...)} */
+    private int[] outputs;
+
+    /** operator of each step */
+    private FMOperator[] stepOperators;
+    /** slots of the inputs of each step, the result of a step {@code i} is the slot {@code i + 2} */
+    private int[] stepPitches, stepModulations;
+    /** slots of the outputs */
+    private int[] outputSlots;
+    /** values of the current sample */
+    private double[] slots;
+    /** the sum of the versions of the operators compiled, -1 for not yet */
+    private long compiledVersion = -1;
+    /** false when connected to other than the operators and the saw wave */
+    private boolean renderable;
+
+    /** phase of the saw wave pitch in cycles, [0, 1) */
+    private double phase;
+    private double timeStep;
+
     public FMAlgorithm(int operatorCount) {
         operators = new FMOperator[operatorCount];
         for (int i = 0; i < operatorCount; i++) {
@@ -41,13 +77,24 @@ public abstract class FMAlgorithm implements WaveGeneratable {
         operators[op].setEnvelope(envelope);
     }
 
+    /**
+     * Sets the operators whose average is the output of {@link #getValue(int, double)},
+     * needed for {@link #render(int, float[], int, int)}.
+     */
+    protected void setOutputs(int... ops) {
+        outputs = ops;
+        compiledVersion = -1;
+    }
+
     public void setTimeStep(double newTimeStep) {
+        timeStep = newTimeStep;
         for (FMOperator operator : operators) {
             operator.setTimeStep(newTimeStep);
         }
     }
 
     public void press() {
+        phase = 0;
         for (FMOperator operator : operators) {
             operator.press();
         }
@@ -62,6 +109,130 @@ public abstract class FMAlgorithm implements WaveGeneratable {
     @Override
     public abstract double getValue(int number, double time);
 
+    /**
+     * Renders the following samples from the last {@link #press()} by the time step,
+     * the same values as {@link #getValue(int, double)} within the error of {@link SineTable}.
+     *
+     * @param number note number (0-127)
+     * @return false when the operators are connected to other waves than themselves and the pitch,
+     *         or the outputs are not set, nothing is rendered then
+     */
+    public boolean render(int number, float[] buffer, int offset, int length) {
+        long version = 0;
+        for (FMOperator operator : operators) {
+            version += operator.getVersion();
+        }
+        if (version != compiledVersion) {
+            compile();
+            compiledVersion = version;
+        }
+        if (!renderable) {
+            return false;
+        }
+
+        FMOperator[] stepOperators = this.stepOperators;
+        int[] stepPitches = this.stepPitches;
+        int[] stepModulations = this.stepModulations;
+        int[] outputSlots = this.outputSlots;
+        double[] slots = this.slots;
+        int steps = stepOperators.length;
+        double increment = SawWave.getFrequency(number) * timeStep;
+        double p = phase;
+        for (int i = 0; i < length; i++) {
+            slots[PITCH] = 2 * p - 1;
+            for (int s = 0; s < steps; s++) {
+                FMOperator operator = stepOperators[s];
+                // sin(multiplier * (2 pi (pitch + 1) + 2 pi (modulation + 1))) in cycles
+                double x = slots[stepPitches[s]] + 1;
+                int modulation = stepModulations[s];
+                if (modulation != NONE) {
+                    x += slots[modulation] + 1;
+                }
+                double value = SineTable.sin(operator.getMultiplier() * x);
+                Envelope envelope = operator.getEnvelope();
+                if (envelope != null) {
+                    value *= envelope.getValue();
+                }
+                slots[s + 2] = value;
+            }
+            double sum = 0;
+            for (int slot : outputSlots) {
+                sum += slots[slot];
+            }
+            buffer[offset + i] = (float) (sum / outputSlots.length);
+            p += increment;
+            if (p >= 1) {
+                p -= Math.floor(p);
+            }
+        }
+        phase = p;
+        return true;
+    }
+
+    /** flattens the recursion of {@link FMOperator#getValue(int, double)} from the outputs into steps */
+    private void compile() {
+        renderable = outputs != null;
+        List<int[]> steps = new ArrayList<>();
+        if (renderable) {
+            outputSlots = new int[outputs.length];
+            for (int i = 0; i < outputs.length; i++) {
+                outputSlots[i] = compile(operators[outputs[i]], steps, 0);
+            }
+        }
+        stepOperators = new FMOperator[steps.size()];
+        stepPitches = new int[steps.size()];
+        stepModulations = new int[steps.size()];
+        for (int s = 0; s < steps.size(); s++) {
+            stepOperators[s] = operators[steps.get(s)[0]];
+            stepPitches[s] = steps.get(s)[1];
+            stepModulations[s] = steps.get(s)[2];
+        }
+        slots = new double[steps.size() + 2];
+    }
+
+    /**
+     * the inputs first, a masked operator does not evaluate them.
+     *
+     * @return the slot of the value
+     */
+    private int compile(FMOperator operator, List<int[]> steps, int depth) {
+        if (!operator.getMask()) {
+            return ZERO;
+        }
+        if (depth > operators.length) { // connected circularly
+            renderable = false;
+            return ZERO;
+        }
+        int pitch = compileInput(operator.getPitch(), steps, depth);
+        int modulation = operator.getModulation() == null ? NONE : compileInput(operator.getModulation(), steps, depth);
+        int op = indexOf(operator);
+        steps.add(new int[] {op, pitch, modulation});
+        return steps.size() + 1;
+    }
+
+    /** @return the slot of the input */
+    private int compileInput(WaveGeneratable input, List<int[]> steps, int depth) {
+        if (input instanceof SawWave) {
+            return PITCH;
+        }
+        int op = indexOf(input);
+        if (op < 0) {
+            renderable = false;
+            return ZERO;
+        }
+        return compile(operators[op], steps, depth + 1);
+    }
+
+    /** @return -1 when not an operator of this */
+    private int indexOf(WaveGeneratable wave) {
+        for (int op = 0; op < operators.length; op++) {
+            if (operators[op] == wave) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
     protected void setParameter(FMParameter p) {
         for (int op = 0; op < 4; op++) {
             setMultiplier(op, p.getMultiplier(op));
@@ -20,6 +20,7 @@ public class FMAlgorithm0 extends FMAlgorithm {
         setInput(2, pitch, getOperator(1));
         setInput(3, pitch, getOperator(2));
         setParameter(p);
+        setOutputs(3);
     }
 
     @Override
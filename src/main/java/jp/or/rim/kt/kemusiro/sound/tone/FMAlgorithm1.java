@@ -21,6 +21,7 @@ public class FMAlgorithm1 extends FMAlgorithm {
         setInput(2, getOperator(0), getOperator(1));
         setInput(3, pitch, getOperator(2));
         setParameter(p);
+        setOutputs(3);
     }
 
     @Override
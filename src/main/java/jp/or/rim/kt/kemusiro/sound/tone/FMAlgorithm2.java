@@ -20,6 +20,7 @@ public class FMAlgorithm2 extends FMAlgorithm {
         setInput(2, pitch, getOperator(1));
         setInput(3, getOperator(0), getOperator(2));
         setParameter(p);
+        setOutputs(3);
     }
 
     @Override
@@ -20,6 +20,7 @@ public class FMAlgorithm3 extends FMAlgorithm {
         setInput(2, pitch, null);
         setInput(3, getOperator(1), getOperator(2));
         setParameter(p);
+        setOutputs(3);
     }
 
     @Override
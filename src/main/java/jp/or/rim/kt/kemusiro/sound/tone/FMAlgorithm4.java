@@ -21,6 +21,7 @@ public class FMAlgorithm4 extends FMAlgorithm {
         setInput(2, pitch, null);
         setInput(3, pitch, getOperator(2));
         setParameter(p);
+        setOutputs(1, 3);
     }
 
     @Override
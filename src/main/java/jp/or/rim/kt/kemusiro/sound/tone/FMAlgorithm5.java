@@ -20,6 +20,7 @@ public class FMAlgorithm5 extends FMAlgorithm {
         setInput(2, pitch, getOperator(0));
         setInput(3, pitch, getOperator(0));
         setParameter(p);
+        setOutputs(1, 2, 3);
     }
 
     @Override
@@ -21,6 +21,7 @@ public class FMAlgorithm7 extends FMAlgorithm {
         setInput(2, pitch, null);
         setInput(3, pitch, null);
         setParameter(p);
+        setOutputs(0, 1, 2, 3);
     }
 
     @Override
@@ -17,6 +17,8 @@ public class FMOperator implements WaveGeneratable {
     private Envelope envelope = null;
     private double multiplier = 1.0;
     private boolean mask = true;    // true if this operator is ON
+    /** counts changes of the connection for {@link FMAlgorithm} */
+    private int version = 0;
 
     public FMOperator() {
     }
@@ -24,6 +26,7 @@ public class FMOperator implements WaveGeneratable {
     public void setInput(WaveGeneratable in1, WaveGeneratable in2) {
         pitch = in1;
         modulation = in2;
+        version++;
     }
 
     public void setMultiplier(double multiplier) {
@@ -32,12 +35,37 @@ public class FMOperator implements WaveGeneratable {
 
     public void setMask(boolean status) {
         this.mask = status;
+        version++;
     }
 
     public void setEnvelope(Envelope envelope) {
         this.envelope = envelope;
     }
 
+    WaveGeneratable getPitch() {
+        return pitch;
+    }
+
+    WaveGeneratable getModulation() {
+        return modulation;
+    }
+
+    Envelope getEnvelope() {
+        return envelope;
+    }
+
+    double getMultiplier() {
+        return multiplier;
+    }
+
+    boolean getMask() {
+        return mask;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
     public void setTimeStep(double newTimeStep) {
         envelope.setTimeStep(newTimeStep);
     }
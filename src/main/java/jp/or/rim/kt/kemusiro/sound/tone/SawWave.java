@@ -28,6 +28,11 @@ public class SawWave implements WaveGeneratable {
         return time - Math.floor(time * frequency) / frequency;
     }
 
+    /** for the phase accumulators of {@link FMAlgorithm} */
+    static double getFrequency(int number) {
+        return frequencyTable[number];
+    }
+
     @Override
     public double getValue(int number, double time) {
         double f = frequencyTable[number];
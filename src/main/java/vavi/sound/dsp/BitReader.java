@@ -1,8 +1,9 @@
 /*
- * WMA v1/v2 decoder. Java port of FFmpeg's get_bits reader semantics.
+ * Shared bitstream reader for the WMA v1/v2 and WMA Pro / XMA decoders. Java
+ * port of FFmpeg's get_bits reader semantics.
  */
 
-package vavi.sound.wma;
+package vavi.sound.dsp;
 
 
 /**
@@ -10,18 +11,29 @@ package vavi.sound.wma;
  * {@code GetBitContext}. Reads are big-endian within the byte stream, matching
  * {@code get_bits}/{@code get_bits_long}.
  * <p>
- * Ported to support the WMA v1/v2 decoder ({@code libavcodec/wmadec.c}).
+ * A reader can be pointed at another buffer by {@link #reset}, so a decoder
+ * keeps one per bitstream instead of one per frame.
  *
  * @see "https://github.com/FFmpeg/FFmpeg libavcodec/get_bits.h"
  */
-final class BitReader {
+public final class BitReader {
 
-    private final byte[] buffer;
-    private final int startBit;
-    private final int endBit;
+    private byte[] buffer;
+    private int startBit;
+    private int endBit;
     private int bitPos;
 
-    BitReader(byte[] buffer, int startBit, int totalBits) {
+    /** An empty reader, {@link #reset} it before reading. */
+    public BitReader() {
+        this.buffer = new byte[0];
+    }
+
+    public BitReader(byte[] buffer, int startBit, int totalBits) {
+        reset(buffer, startBit, totalBits);
+    }
+
+    /** Reads {@code totalBits} of {@code buffer} from {@code startBit} next. */
+    public void reset(byte[] buffer, int startBit, int totalBits) {
         if (buffer == null) {
             throw new NullPointerException("buffer");
         }
@@ -34,18 +46,18 @@ final class BitReader {
         this.bitPos = startBit;
     }
 
-    /** Bits consumed since construction ({@code get_bits_count}). */
-    int bitsCount() {
+    /** Bits consumed since construction or {@link #reset} ({@code get_bits_count}). */
+    public int bitsCount() {
         return bitPos - startBit;
     }
 
     /** Bits remaining before end ({@code get_bits_left}). */
-    int bitsLeft() {
+    public int bitsLeft() {
         return endBit - bitPos;
     }
 
     /** Reads up to 32 bits MSB-first, returned as an unsigned value in an int. */
-    int readBits(int n) {
+    public int readBits(int n) {
         if (n < 0 || n > 32) {
             throw new IllegalArgumentException("n=" + n);
         }
@@ -75,12 +87,17 @@ final class BitReader {
     }
 
     /** Reads a single bit. */
-    int readBit() {
-        return readBits(1);
+    public int readBit() {
+        if (bitPos >= endBit) {
+            throw new IllegalStateException("BitReader read past end.");
+        }
+        int bit = (buffer[bitPos >> 3] >> (7 - (bitPos & 7))) & 1;
+        bitPos++;
+        return bit;
     }
 
     /** Skips {@code n} bits ({@code skip_bits}). */
-    void skipBits(int n) {
+    public void skipBits(int n) {
         if (n < 0 || bitPos + n > endBit) {
             throw new IllegalStateException("skip past end.");
         }
@@ -88,7 +105,7 @@ final class BitReader {
     }
 
     /** Advances to the next byte boundary ({@code align_get_bits}). */
-    void alignToByte() {
+    public void alignToByte() {
         int rem = bitPos & 7;
         if (rem != 0) {
             skipBits(8 - rem);
@@ -0,0 +1,172 @@
+/*
+ * Shared DSP for the WMA v1/v2 and WMA Pro / XMA decoders. Radix-4 complex FFT.
+ */
+
+package vavi.sound.dsp;
+
+
+/**
+ * Iterative radix-4 complex FFT (with one radix-2 pass when {@code log2(N)} is
+ * odd), in-place, interleaved {@code [re0,im0,re1,im1,...]}.
+ * <p>
+ * Direction is fixed at construction. With {@code inverse=false} the transform
+ * computes {@code X[k] = sum_n x[n] * exp(-j*2pi*kn/N)}. With
+ * {@code inverse=true} the sign of the exponent is flipped; no {@code 1/N}
+ * scaling is applied (the IMDCT caller folds scaling into its twiddle tables).
+ * <p>
+ * The bit-reversal swaps and the twiddles of every pass are precomputed in the
+ * order the passes read them, so a transform does no trigonometry, no index
+ * arithmetic on the twiddle table and no allocation. A radix-4 pass fuses two
+ * radix-2 passes: 3 complex multiplications per 4 points instead of 4.
+ */
+public final class Fft {
+
+    private final int n;
+    /** pairs of indices swapped by the bit-reversal permutation */
+    private final int[] swaps;
+    /** the first pass is a twiddle-free radix-2 one */
+    private final boolean radix2;
+    /** per radix-4 pass of quarter size q, for k in [0,q): w^k, w^2k, w^3k as (re, im) */
+    private final float[] twiddles;
+    /** the sign of the exponent, multiplies the {@code w^q = ±j} rotation */
+    private final float rotation;
+
+    public Fft(int n, boolean inverse) {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 2.");
+        }
+        this.n = n;
+        int logN = Integer.numberOfTrailingZeros(n);
+        this.radix2 = (logN & 1) != 0;
+        this.rotation = inverse ? 1f : -1f;
+
+        int count = 0;
+        int[] pairs = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = Integer.reverse(i) >>> (32 - logN);
+            if (j > i) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        swaps = new int[count];
+        System.arraycopy(pairs, 0, swaps, 0, count);
+
+        int size = 0;
+        for (int q = radix2 ? 2 : 1; q < n; q <<= 2) {
+            size += q * 6;
+        }
+        twiddles = new float[size];
+        double dir = inverse ? 1.0 : -1.0;
+        int t = 0;
+        for (int q = radix2 ? 2 : 1; q < n; q <<= 2) {
+            for (int k = 0; k < q; k++) {
+                for (int m = 1; m <= 3; m++) {
+                    double angle = dir * 2.0 * Math.PI * m * k / (4 * q);
+                    twiddles[t++] = (float) Math.cos(angle);
+                    twiddles[t++] = (float) Math.sin(angle);
+                }
+            }
+        }
+    }
+
+    /** Number of complex points. */
+    public int length() {
+        return n;
+    }
+
+    /**
+     * Transform {@code data} in-place, starting at {@code off}. The region must
+     * contain 2*N floats (N complex pairs).
+     */
+    public void transform(float[] data, int off) {
+        if (data.length - off < n * 2) {
+            throw new IllegalArgumentException("Data buffer too small for FFT size.");
+        }
+
+        // Bit-reverse permutation.
+        for (int s = 0; s < swaps.length; s += 2) {
+            int a = off + 2 * swaps[s];
+            int b = off + 2 * swaps[s + 1];
+            float t0 = data[a];
+            data[a] = data[b];
+            data[b] = t0;
+            float t1 = data[a + 1];
+            data[a + 1] = data[b + 1];
+            data[b + 1] = t1;
+        }
+
+        int q = 1;
+        if (radix2) {
+            for (int i = off; i < off + 2 * n; i += 4) {
+                float aRe = data[i];
+                float aIm = data[i + 1];
+                float bRe = data[i + 2];
+                float bIm = data[i + 3];
+                data[i] = aRe + bRe;
+                data[i + 1] = aIm + bIm;
+                data[i + 2] = aRe - bRe;
+                data[i + 3] = aIm - bIm;
+            }
+            q = 2;
+        }
+
+        // radix-4 passes, each combines 4 transforms of q points into one of 4q.
+        int t = 0;
+        for (; q < n; q <<= 2) {
+            int q2 = 2 * q;
+            for (int g = off; g < off + 2 * n; g += 4 * q2) {
+                for (int k = 0, w = t; k < q; k++, w += 6) {
+                    int i0 = g + 2 * k;
+                    int i1 = i0 + q2;
+                    int i2 = i1 + q2;
+                    int i3 = i2 + q2;
+
+                    float aRe = data[i0];
+                    float aIm = data[i0 + 1];
+
+                    float w2Re = twiddles[w + 2];
+                    float w2Im = twiddles[w + 3];
+                    float xRe = data[i1];
+                    float xIm = data[i1 + 1];
+                    float bRe = xRe * w2Re - xIm * w2Im;
+                    float bIm = xRe * w2Im + xIm * w2Re;
+
+                    float w1Re = twiddles[w];
+                    float w1Im = twiddles[w + 1];
+                    xRe = data[i2];
+                    xIm = data[i2 + 1];
+                    float cRe = xRe * w1Re - xIm * w1Im;
+                    float cIm = xRe * w1Im + xIm * w1Re;
+
+                    float w3Re = twiddles[w + 4];
+                    float w3Im = twiddles[w + 5];
+                    xRe = data[i3];
+                    xIm = data[i3 + 1];
+                    float dRe = xRe * w3Re - xIm * w3Im;
+                    float dIm = xRe * w3Im + xIm * w3Re;
+
+                    float t0Re = aRe + bRe;
+                    float t0Im = aIm + bIm;
+                    float t1Re = aRe - bRe;
+                    float t1Im = aIm - bIm;
+                    float t2Re = cRe + dRe;
+                    float t2Im = cIm + dIm;
+                    // (c - d) * ±j
+                    float t3Re = -rotation * (cIm - dIm);
+                    float t3Im = rotation * (cRe - dRe);
+
+                    data[i0] = t0Re + t2Re;
+                    data[i0 + 1] = t0Im + t2Im;
+                    data[i1] = t1Re + t3Re;
+                    data[i1 + 1] = t1Im + t3Im;
+                    data[i2] = t0Re - t2Re;
+                    data[i2 + 1] = t0Im - t2Im;
+                    data[i3] = t1Re - t3Re;
+                    data[i3 + 1] = t1Im - t3Im;
+                }
+            }
+            t += q * 6;
+        }
+    }
+}
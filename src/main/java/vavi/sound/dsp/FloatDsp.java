@@ -0,0 +1,88 @@
+/*
+ * Shared DSP for the WMA v1/v2 and WMA Pro / XMA decoders. Scalar float DSP
+ * helpers (FFmpeg AVFloatDSPContext).
+ */
+
+package vavi.sound.dsp;
+
+
+/**
+ * Scalar float DSP helpers used by the WMA windowing, ms-stereo and WMA Pro
+ * dequantisation, mirroring FFmpeg's {@code vector_fmul_add},
+ * {@code vector_fmul_reverse}, {@code vector_fmul_scalar},
+ * {@code vector_fmul_window} and {@code butterflies_float}.
+ * <p>
+ * Plain counted loops over arrays, which C2 unrolls and vectorises.
+ */
+public final class FloatDsp {
+
+    private FloatDsp() {}
+
+    /** {@code dst[i] = src0[i] * src1[i] + add[i]}, all offset-based, len items. */
+    public static void vectorFmulAdd(float[] dst, int dstOff,
+                                     float[] src0, int s0Off,
+                                     float[] src1, int s1Off,
+                                     float[] add, int addOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src0[s0Off + i] * src1[s1Off + i] + add[addOff + i];
+        }
+    }
+
+    /** {@code dst[i] = src[i] * win[len-1-i]} (window applied reversed). */
+    public static void vectorFmulReverse(float[] dst, int dstOff,
+                                         float[] src, int srcOff,
+                                         float[] win, int winOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src[srcOff + i] * win[winOff + len - 1 - i];
+        }
+    }
+
+    /**
+     * {@code dst[dstOff+i] = src[srcOff+i] * mul}, i in [0,len). In-place safe
+     * (dst may alias src).
+     */
+    public static void vectorFmulScalar(float[] dst, int dstOff, float[] src, int srcOff, float mul, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = src[srcOff + i] * mul;
+        }
+    }
+
+    /**
+     * Sine-window overlap-add. Writes {@code 2*len} samples to dst from two
+     * {@code len}-sized input segments and a {@code 2*len}-sized window.
+     * <pre>
+     * for k in 0..len-1:
+     *     dst[k]         = src0[k] * win[2*len-1-k] - src1[len-1-k] * win[k]
+     *     dst[2*len-1-k] = src0[k] * win[k]         + src1[len-1-k] * win[2*len-1-k]
+     * </pre>
+     * Safe with src0 aliasing the first half of dst and src1 the second half —
+     * that's how WMA Pro calls it.
+     */
+    public static void vectorFmulWindow(float[] dst, int dstOff,
+                                        float[] src0, int src0Off,
+                                        float[] src1, int src1Off,
+                                        float[] win, int len) {
+        for (int k = 0; k < len; k++) {
+            float s0 = src0[src0Off + k];
+            float s1 = src1[src1Off + len - 1 - k];
+            float wi = win[k];
+            float wj = win[2 * len - 1 - k];
+
+            dst[dstOff + k] = s0 * wj - s1 * wi;
+            dst[dstOff + 2 * len - 1 - k] = s0 * wi + s1 * wj;
+        }
+    }
+
+    /**
+     * In-place sum/difference butterfly used for ms-stereo:
+     * {@code a' = a + b}, {@code b' = a - b}.
+     */
+    public static void butterfliesFloat(float[] a, int aOff, float[] b, int bOff, int len) {
+        for (int i = 0; i < len; i++) {
+            float t = a[aOff + i];
+            float u = b[bOff + i];
+            a[aOff + i] = t + u;
+            b[bOff + i] = t - u;
+        }
+    }
+}
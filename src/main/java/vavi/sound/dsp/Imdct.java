@@ -1,29 +1,31 @@
 /*
- * WMA v1/v2 decoder. Inverse MDCT (half + full), port of FFmpeg's ff_imdct.
+ * Shared DSP for the WMA v1/v2 and WMA Pro / XMA decoders. Inverse MDCT (half
+ * + full), port of FFmpeg's ff_imdct.
  */
 
-package vavi.sound.wma;
+package vavi.sound.dsp;
 
 
 /**
  * Inverse Modified Discrete Cosine Transform. {@code n} is the number of MDCT
  * coefficients (block length). {@link #inverseHalf} computes the middle
- * {@code n} samples (imdct_half); {@link #inverseFull} extends them by symmetry
- * to the full {@code 2n} samples that WMA v1/v2 windowing needs.
+ * {@code n} samples (imdct_half, the ones WMA Pro's sine-window OLA needs);
+ * {@link #inverseFull} extends them by symmetry to the full {@code 2n} samples
+ * that WMA v1/v2 windowing needs.
  * <p>
  * The scale/twiddle convention matches FFmpeg's classic {@code ff_mdct_init}
  * (twiddles scaled by {@code sqrt(|scale|)}), which {@code AV_TX_FLOAT_MDCT}
  * reproduces; passing {@code scale = 1/32768} yields float PCM in roughly
  * [-1, 1].
  */
-final class Imdct {
+public final class Imdct {
 
     private final Fft fft;
     private final int n;
     private final float[] tcos;
     private final float[] tsin;
 
-    Imdct(int n, double scale) {
+    public Imdct(int n, double scale) {
         if (n < 4 || (n & (n - 1)) != 0) {
             throw new IllegalArgumentException("IMDCT length must be a power of two >= 4.");
         }
@@ -43,7 +45,7 @@ final class Imdct {
     }
 
     /** Number of MDCT coefficients (block length). */
-    int length() {
+    public int length() {
         return n;
     }
 
@@ -52,7 +54,7 @@ final class Imdct {
      * {@code output} receives {@code n} samples at {@code outOff} (the region is
      * also used as FFT scratch, so it must not overlap the input).
      */
-    void inverseHalf(float[] input, int inOff, float[] output, int outOff) {
+    public void inverseHalf(float[] input, int inOff, float[] output, int outOff) {
         int n2 = n >> 1;
         int n4 = n >> 2;
         if (input.length - inOff < n || output.length - outOff < n) {
@@ -97,7 +99,7 @@ final class Imdct {
      * {@code output} receives {@code 2n} samples at {@code outOff}. Mirrors
      * FFmpeg's {@code ff_imdct_calc_c}.
      */
-    void inverseFull(float[] input, int inOff, float[] output, int outOff) {
+    public void inverseFull(float[] input, int inOff, float[] output, int outOff) {
         if (output.length - outOff < 2 * n) {
             throw new IllegalArgumentException("output too short for full IMDCT.");
         }
@@ -1,22 +1,25 @@
 /*
- * WMA v1/v2 decoder. Sine windows (FFmpeg ff_sine_window_init).
+ * Shared DSP for the WMA v1/v2 and WMA Pro / XMA decoders. Sine windows
+ * (FFmpeg ff_sine_window_init).
  */
 
-package vavi.sound.wma;
+package vavi.sound.dsp;
 
 
 /**
  * Sine windows for the IMDCT overlap-add, cached per length. Mirrors FFmpeg's
  * {@code ff_sine_window_init}: {@code window[i] = sin((i + 0.5) * pi / (2N))}.
+ * <p>
+ * The cached arrays are shared by all the decoders, callers must not modify them.
  */
-final class SineWindow {
+public final class SineWindow {
 
     private SineWindow() {}
 
     private static final float[][] cache = new float[16][];
 
     /** Returns the sine window of the given power-of-two length. */
-    static synchronized float[] get(int length) {
+    public static synchronized float[] get(int length) {
         int log2 = log2Exact(length);
         float[] cached = cache[log2];
         if (cached != null) {
@@ -32,8 +35,8 @@ final class SineWindow {
     }
 
     private static int log2Exact(int value) {
-        if (value <= 0 || (value & (value - 1)) != 0) {
-            throw new IllegalArgumentException("window length must be a power of two.");
+        if (value <= 0 || (value & (value - 1)) != 0 || value >= 1 << cache.length) {
+            throw new IllegalArgumentException("window length must be a power of two less than " + (1 << cache.length) + ".");
         }
         return Integer.numberOfTrailingZeros(value);
     }
@@ -1,8 +1,9 @@
 /*
- * WMA v1/v2 decoder. Huffman VLC reader (FFmpeg vlc_init / vlc_init_from_lengths).
+ * Shared bitstream reader for the WMA v1/v2 and WMA Pro / XMA decoders. Huffman
+ * VLC reader (FFmpeg vlc_init / vlc_init_from_lengths).
  */
 
-package vavi.sound.wma;
+package vavi.sound.dsp;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,7 +17,7 @@ import java.util.List;
  * builds canonical codes from lengths (FFmpeg {@code ff_vlc_init_from_lengths})
  * and returns the supplied symbol plus an offset.
  */
-final class Vlc {
+public final class Vlc {
 
     private static final int EMPTY = Integer.MIN_VALUE;
 
@@ -31,7 +32,7 @@ final class Vlc {
     }
 
     /** Build from explicit Huffman codes and bit lengths; symbol == index. */
-    static Vlc fromCodes(int[] codes, int[] bits) {
+    public static Vlc fromCodes(int[] codes, int[] bits) {
         if (codes.length != bits.length) {
             throw new IllegalArgumentException("codes/bits length mismatch.");
         }
@@ -47,7 +48,7 @@ final class Vlc {
     }
 
     /** Build canonical codes from lengths (FFmpeg ff_vlc_init_from_lengths). */
-    static Vlc fromLengths(int[] lengths, int[] symbols, int offset) {
+    public static Vlc fromLengths(int[] lengths, int[] symbols, int offset) {
         if (lengths.length != symbols.length) {
             throw new IllegalArgumentException("lengths/symbols length mismatch.");
         }
@@ -69,7 +70,7 @@ final class Vlc {
     }
 
     /** Reads one code and returns its symbol. Throws on an invalid code. */
-    int decode(BitReader reader) {
+    public int decode(BitReader reader) {
         int node = 0;
         while (true) {
             int bit = reader.readBit();
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.midi;
+
+import java.util.Map;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+
+/**
+ * OfflineSynthesizer. a synthesizer which renders into a stream instead of a line,
+ * like gervill's {@code AudioSynthesizer}.
+ * <p>
+ * the stream is rendered as fast as it is read, no audio device is needed.
+ * messages sent to the receivers are applied at the frames of their time-stamps,
+ * microseconds from the start of the stream. the ones without a time-stamp (-1) or
+ * for the frames already rendered are applied at the next frame rendered.
+ * so a whole sequence is rendered faster than realtime by sending all the
+ * messages before reading, see {@link SequenceRenderer}.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public interface OfflineSynthesizer extends Synthesizer {
+
+    /**
+     * opens the synthesizer without a line.
+     *
+     * @param targetFormat null for the native format of the synthesizer,
+     *                     otherwise converted by {@link javax.sound.sampled.AudioSystem} when needed
+     * @param info implementation specific, may be null
+     * @return an endless stream to be read by a single thread, ends when the synthesizer is closed
+     * @throws MidiUnavailableException already open or cannot be opened
+     * @throws IllegalArgumentException the target format is not supported
+     */
+    AudioInputStream openStream(AudioFormat targetFormat, Map<String, Object> info) throws MidiUnavailableException;
+}
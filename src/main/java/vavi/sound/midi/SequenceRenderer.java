@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.midi;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+
+/**
+ * SequenceRenderer. renders a whole {@link Sequence} by an {@link OfflineSynthesizer}
+ * (or gervill's {@code AudioSynthesizer}).
+ * <p>
+ * all the events are sent at once with time-stamps computed by the tempo changes,
+ * then the stream is read as fast as the synthesizer renders. each synthesizer
+ * instance has its own state, so files can be rendered on multiple threads by
+ * an instance each.
+ * <pre>
+ * OfflineSynthesizer synthesizer = new KarplusStrongSynthesizer();
+ * AudioInputStream stream = SequenceRenderer.render(synthesizer, sequence, null, 2_000_000);
+ * AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+ * synthesizer.close();
+ * </pre>
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public final class SequenceRenderer {
+
+    private SequenceRenderer() {}
+
+    /** microseconds per quarter note by default, 120 bpm */
+    private static final long DEFAULT_TEMPO = 500_000;
+
+    /**
+     * opens the synthesizer as a stream and sends the sequence.
+     *
+     * @param targetFormat null for the native format of the synthesizer
+     * @param tail microseconds rendered after the last event, for releases
+     * @return a stream of the length of the sequence and the tail
+     */
+    public static AudioInputStream render(OfflineSynthesizer synthesizer, Sequence sequence, AudioFormat targetFormat, long tail)
+            throws MidiUnavailableException {
+        AudioInputStream stream = synthesizer.openStream(targetFormat, Map.of());
+        return render(sequence, synthesizer.getReceiver(), stream, tail);
+    }
+
+    /**
+     * sends the sequence to the receiver of a synthesizer just opened as a stream.
+     *
+     * @param stream the one the receiver renders into, not read yet
+     * @param tail microseconds rendered after the last event, for releases
+     * @return the stream limited to the length of the sequence and the tail
+     */
+    public static AudioInputStream render(Sequence sequence, Receiver receiver, AudioInputStream stream, long tail) {
+        long length = send(sequence, receiver) + tail;
+        AudioFormat format = stream.getFormat();
+        long frames = (long) (length * (double) format.getFrameRate() / 1_000_000);
+        return new AudioInputStream(stream, format, frames);
+    }
+
+    /**
+     * sends all the events of the sequence with time-stamps in microseconds,
+     * in order of the time-stamps, the ones at the same tick in order of the tracks.
+     *
+     * @return microseconds of the last event
+     */
+    public static long send(Sequence sequence, Receiver receiver) {
+        record Entry(MidiEvent event, int track, int index) {}
+        List<Entry> entries = new ArrayList<>();
+        Track[] tracks = sequence.getTracks();
+        for (int t = 0; t < tracks.length; t++) {
+            for (int i = 0; i < tracks[t].size(); i++) {
+                entries.add(new Entry(tracks[t].get(i), t, i));
+            }
+        }
+        entries.sort(Comparator.comparingLong((Entry e) -> e.event.getTick())
+                .thenComparingInt(Entry::track).thenComparingInt(Entry::index));
+
+        boolean ppq = sequence.getDivisionType() == Sequence.PPQ;
+        double resolution = sequence.getResolution();
+        long tempo = DEFAULT_TEMPO;
+        long tick = 0;
+        double microseconds = 0;
+        for (Entry entry : entries) {
+            long eventTick = entry.event.getTick();
+            if (ppq) {
+                microseconds += (eventTick - tick) * tempo / resolution;
+            } else {
+                microseconds = eventTick * 1_000_000d / (sequence.getDivisionType() * resolution);
+            }
+            tick = eventTick;
+            if (entry.event.getMessage() instanceof MetaMessage meta && meta.getType() == 0x51 && meta.getData().length >= 3) {
+                byte[] data = meta.getData();
+                tempo = (data[0] & 0xff) << 16 | (data[1] & 0xff) << 8 | (data[2] & 0xff);
+            }
+            receiver.send(entry.event.getMessage(), (long) microseconds);
+        }
+        return (long) microseconds;
+    }
+}
@@ -6,11 +6,14 @@
 
 package vavi.sound.midi.jsyn;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiChannel;
 import javax.sound.midi.MidiDevice;
@@ -21,16 +24,21 @@ import javax.sound.midi.Patch;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Soundbank;
-import javax.sound.midi.Synthesizer;
 import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Transmitter;
 import javax.sound.midi.VoiceStatus;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 import com.jsyn.JSyn;
+import com.jsyn.io.AudioOutputStream;
 import com.jsyn.midi.MidiSynthesizer;
 import com.jsyn.unitgen.LineOut;
+import com.jsyn.unitgen.StereoStreamWriter;
 import com.jsyn.util.MultiChannelSynthesizer;
 import com.jsyn.util.VoiceDescription;
+import vavi.sound.midi.OfflineSynthesizer;
 import vavi.util.StringUtil;
 
 import static java.lang.System.getLogger;
@@ -39,13 +47,17 @@ import static vavi.sound.midi.jsyn.JSynMidiDeviceProvider.version;
 
 /**
  * JSynSynthesizer.
+ * <p>
+ * {@link #openStream(AudioFormat, Map)} runs the engine not in realtime,
+ * it renders as fast as the stream is read. messages are scheduled on the
+ * engine at their time-stamps.
  *
  * TODO delegate default synthesizer
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2020/10/03 umjammer initial version <br>
  */
-public class JSynSynthesizer implements Synthesizer {
+public class JSynSynthesizer implements OfflineSynthesizer {
 
     private static final Logger logger = getLogger(JSynSynthesizer.class.getName());
 
@@ -72,6 +84,15 @@ public class JSynSynthesizer implements Synthesizer {
 
     private long timestamp;
 
+    /** stream frame rate by default */
+    private static final int FRAME_RATE = 44100;
+
+    /** frames the engine renders ahead of the reader */
+    private static final int BUFFER_FRAMES = 1024;
+
+    /** opened by {@link #openStream(AudioFormat, Map)} */
+    private JSynInputStream stream;
+
     @Override
     public Info getDeviceInfo() {
         return info;
@@ -92,6 +113,203 @@ logger.log(Level.WARNING, "already open: " + hashCode());
 
         synth.add(lineOut = new LineOut());
 
+        setup();
+
+        multiSynth.getOutput().connect(0, lineOut.input, 0); // channel 0
+        multiSynth.getOutput().connect(1, lineOut.input, 1); // channel 1
+
+        synth.start();
+        lineOut.start();
+    }
+
+    /**
+     * the format of the stream is 16 bit stereo at the rate of the target format (44100 by default),
+     * converted to the target format when it differs.
+     */
+    @Override
+    public AudioInputStream openStream(AudioFormat targetFormat, Map<String, Object> info) throws MidiUnavailableException {
+        if (isOpen()) {
+            throw new MidiUnavailableException("already open: " + hashCode());
+        }
+
+        int frameRate = targetFormat != null && targetFormat.getSampleRate() != AudioSystem.NOT_SPECIFIED ?
+                (int) targetFormat.getSampleRate() : FRAME_RATE;
+        AudioFormat format = new AudioFormat(frameRate, 16, 2, true, false);
+
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new JSynMidiChannel(i);
+        }
+
+        synth = JSyn.createSynthesizer();
+        // renders as fast as the writer is drained
+        synth.setRealTime(false);
+
+        stream = new JSynInputStream(BUFFER_FRAMES * 2);
+        BlockStreamWriter writer = new BlockStreamWriter(stream);
+        synth.add(writer);
+
+        setup();
+
+        multiSynth.getOutput().connect(0, writer.input, 0); // channel 0
+        multiSynth.getOutput().connect(1, writer.input, 1); // channel 1
+
+        writer.setOutputStream(stream);
+
+        synth.start(frameRate);
+        writer.start();
+
+        AudioInputStream audioInputStream = new AudioInputStream(stream, format, AudioSystem.NOT_SPECIFIED);
+        if (targetFormat == null || targetFormat.matches(format)) {
+            return audioInputStream;
+        } else {
+            return AudioSystem.getAudioInputStream(targetFormat, audioInputStream);
+        }
+    }
+
+    /**
+     * writes a block of the engine at once, {@link StereoStreamWriter} writes by samples.
+     */
+    private static class BlockStreamWriter extends StereoStreamWriter {
+
+        private final JSynInputStream stream;
+
+        /** interleaved samples of a block */
+        private double[] block = new double[0];
+
+        BlockStreamWriter(JSynInputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void generate(int start, int limit) {
+            double[] left = input.getValues(0);
+            double[] right = input.getValues(1);
+            int n = (limit - start) * 2;
+            if (block.length < n) {
+                block = new double[n];
+            }
+            for (int i = start, j = 0; i < limit; i++) {
+                block[j++] = left[i];
+                block[j++] = right[i];
+            }
+            stream.write(block, 0, n);
+        }
+    }
+
+    /**
+     * the engine writes into, the reader reads 16 bit little endian from.
+     * the engine waits while the buffer is full, the reader waits while it is empty.
+     */
+    private static class JSynInputStream extends InputStream implements AudioOutputStream {
+
+        /** interleaved samples, ring */
+        private final double[] buffer;
+        private int head;
+        private int size;
+        private boolean closed;
+
+        /** samples read */
+        private long read;
+
+        JSynInputStream(int capacity) {
+            this.buffer = new double[capacity];
+        }
+
+        @Override
+        public synchronized void write(double value) {
+            while (size == buffer.length && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (closed) {
+                return;
+            }
+            buffer[(head + size) % buffer.length] = value;
+            size++;
+            notifyAll();
+        }
+
+        @Override
+        public void write(double[] values) {
+            write(values, 0, values.length);
+        }
+
+        /** copies under one lock, the reader is notified once by the block or when the buffer is full */
+        @Override
+        public synchronized void write(double[] values, int start, int count) {
+            while (count > 0) {
+                while (size == buffer.length && !closed) {
+                    notifyAll();
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                int tail = (head + size) % buffer.length;
+                int n = Math.min(count, Math.min(buffer.length - size, buffer.length - tail));
+                System.arraycopy(values, start, buffer, tail, n);
+                size += n;
+                start += n;
+                count -= n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("read by frames");
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            // by frames of 2 channels
+            while (size < 2 && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            if (size < 2) {
+                return -1;
+            }
+            int n = Math.min(len / 4, size / 2) * 2;
+            for (int i = 0; i < n; i++) {
+                int sample = (int) (Math.clamp(buffer[head], -1, 1) * Short.MAX_VALUE);
+                b[off + i * 2] = (byte) sample;
+                b[off + i * 2 + 1] = (byte) (sample >> 8);
+                head = (head + 1) % buffer.length;
+            }
+            size -= n;
+            read += n;
+            notifyAll();
+            return n * 2;
+        }
+
+        /** @return samples read, not frames */
+        synchronized long getRead() {
+            return read;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    /** channels setting */
+    private void setup() {
         this.multiSynth = new MultiChannelSynthesizer();
 
         // voice setting for each channel
@@ -104,20 +322,20 @@ logger.log(Level.WARNING, "already open: " + hashCode());
         // volume default (0.75) is too small
         multiSynth.setMasterAmplitude(100);
 
-        multiSynth.getOutput().connect(0, lineOut.input, 0); // channel 0
-        multiSynth.getOutput().connect(1, lineOut.input, 1); // channel 1
-
         midiSynthesizer = new MidiSynthesizer(multiSynth);
-
-        synth.start();
-        lineOut.start();
     }
 
     @Override
     @SuppressWarnings("ForLoopReplaceableByForEach")
     public void close() {
         for (int i = 0; i < receivers.size(); i++) receivers.get(i).close();
-        lineOut.stop();
+        if (stream != null) {
+            // releases the engine waiting for the reader
+            stream.close();
+            stream = null;
+        } else {
+            lineOut.stop();
+        }
         synth.stop();
     }
 
@@ -126,8 +344,12 @@ logger.log(Level.WARNING, "already open: " + hashCode());
         return synth != null && synth.isRunning();
     }
 
+    /** @return frames read from the stream in microseconds when streaming */
     @Override
     public long getMicrosecondPosition() {
+        if (stream != null) {
+            return (long) (stream.getRead() / 2 * 1_000_000 / synth.getFrameRate());
+        }
         return timestamp;
     }
 
@@ -429,11 +651,21 @@ logger.log(Level.WARNING, "already open: " + hashCode());
             isOpen = true;
         }
 
+        /** scheduled on the engine at the time-stamp when streaming, otherwise applied immediately */
         @Override
         public void send(MidiMessage message, long timeStamp) {
             if (!isOpen) throw new IllegalStateException("Receiver is not open");
 
             timestamp = timeStamp;
+            if (stream != null && timeStamp >= 0) {
+                synth.scheduleCommand(timeStamp / 1_000_000d, () -> process(message));
+            } else {
+                process(message);
+            }
+        }
+
+        /** */
+        private void process(MidiMessage message) {
             if (isOpen) {
                 if (message instanceof ShortMessage shortMessage) {
                     int channel = shortMessage.getChannel();
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.midi.karplusStrong;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.random.RandomGenerator;
+import javax.sound.midi.VoiceStatus;
+
+import vavi.sound.karplusStrong.GuitarString;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * KarplusStrongRenderer. renders karplus strong strings by blocks from a
+ * preallocated pool of voices.
+ * <p>
+ * a voice is a delay line of floats as long as the note needs, the same
+ * algorithm as {@link GuitarString}. each voice renders a whole block into
+ * a float accumulator. events are handed from any thread to the rendering
+ * thread through a lock free bounded queue, they are applied at the start
+ * of the next block. when all voices are sounding, the oldest one is stolen.
+ * <p>
+ * {@link #render(float[], int, int)} must be called from a single thread,
+ * the other methods are thread safe.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class KarplusStrongRenderer {
+
+    private static final Logger logger = getLogger(KarplusStrongRenderer.class.getName());
+
+    /** {@link GuitarString} is hard coded as 44100 Hz */
+    public static final float SAMPLE_RATE = 44100;
+
+    /** the same as {@link GuitarString} */
+    private static final float ENERGY_DECAY_FACTOR = .996f;
+
+    /** damping per sample applied after note off (~ 60 ms to -60 dB) */
+    private static final float RELEASE_FACTOR = 0.9974f;
+
+    /** below this gain a released voice is discarded */
+    private static final float GAIN_EPSILON = 0.0001f;
+
+    /** delay line length by note */
+    private static final int[] LENGTHS = new int[128];
+
+    static {
+        for (int note = 0; note < LENGTHS.length; note++) {
+            LENGTHS[note] = (int) Math.ceil(SAMPLE_RATE / midiToFrequency(note));
+        }
+    }
+
+    /** events pending, a power of 2 */
+    private static final int QUEUE_SIZE = 1024;
+
+    private static final int NOTE_ON = 1;
+    private static final int NOTE_OFF = 2;
+    private static final int RELEASE = 3;
+    private static final int CLEAR = 4;
+
+    /** a voice of the pool, touched by the rendering thread only */
+    private static class Voice {
+        /** sized for the lowest note */
+        final float[] line = new float[LENGTHS[0]];
+        int length;
+        int position;
+        boolean active;
+        boolean released;
+        int channel;
+        int note;
+        int velocity;
+        /** velocity gain, damped after note off */
+        float gain;
+        /** for stealing */
+        long serial;
+    }
+
+    /** */
+    private final Voice[] voices;
+
+    /** for plucks */
+    private final RandomGenerator random;
+
+    /** notes started */
+    private long serial;
+
+    /** event payloads, MPSC ring */
+    private final long[] events = new long[QUEUE_SIZE];
+
+    /** sequences of the ring slots */
+    private final AtomicLongArray sequences = new AtomicLongArray(QUEUE_SIZE);
+
+    /** next slot to be claimed by producers */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** next slot to be consumed, the rendering thread only */
+    private long head;
+
+    /** */
+    public KarplusStrongRenderer(int polyphony) {
+        this(polyphony, new SplittableRandom());
+    }
+
+    /**
+     * @param random for the white noise of plucks
+     */
+    public KarplusStrongRenderer(int polyphony, RandomGenerator random) {
+        this.voices = new Voice[polyphony];
+        for (int i = 0; i < polyphony; i++) {
+            voices[i] = new Voice();
+        }
+        this.random = random;
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** midi note number to frequency in Hz */
+    static double midiToFrequency(int noteNumber) {
+        return 440 * Math.pow(2, (noteNumber - 69) / 12.0);
+    }
+
+    /**
+     * @param gain 0 ~ 1
+     */
+    public void noteOn(int channel, int note, int velocity, float gain) {
+        offer(NOTE_ON, channel, note, velocity, gain);
+    }
+
+    /** the voices of the note are released */
+    public void noteOff(int channel, int note) {
+        offer(NOTE_OFF, channel, note, 0, 0);
+    }
+
+    /** all voices of the channel are released */
+    public void release(int channel) {
+        offer(RELEASE, channel, 0, 0, 0);
+    }
+
+    /** all voices are stopped at once */
+    public void clear() {
+        offer(CLEAR, 0, 0, 0, 0);
+    }
+
+    /**
+     * renders the sounding voices, the events offered before are applied first.
+     *
+     * @param out mixed into, not cleared
+     */
+    public void render(float[] out, int offset, int frames) {
+        poll();
+        for (Voice voice : voices) {
+            if (voice.active) {
+                render(voice, out, offset, frames);
+            }
+        }
+    }
+
+    /** the inner loop, a voice at a time */
+    private static void render(Voice voice, float[] out, int offset, int frames) {
+        float[] line = voice.line;
+        int length = voice.length;
+        int p = voice.position;
+        float gain = voice.gain;
+        float damping = voice.released ? RELEASE_FACTOR : 1;
+        for (int i = 0; i < frames; i++) {
+            int q = p + 1 == length ? 0 : p + 1;
+            float sample = line[p];
+            out[offset + i] += sample * gain;
+            line[p] = ENERGY_DECAY_FACTOR * (sample + line[q]) * 0.5f;
+            p = q;
+            gain *= damping;
+        }
+        voice.position = p;
+        voice.gain = gain;
+        if (voice.released && gain < GAIN_EPSILON) {
+            voice.active = false;
+        }
+    }
+
+    /** @return voices sounding, not exact while rendering */
+    public int getActiveVoices() {
+        int n = 0;
+        for (Voice voice : voices) {
+            if (voice.active) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** @return a status by voice of the pool, not exact while rendering */
+    public VoiceStatus[] getVoiceStatus() {
+        VoiceStatus[] statuses = new VoiceStatus[voices.length];
+        for (int i = 0; i < voices.length; i++) {
+            Voice voice = voices[i];
+            statuses[i] = new VoiceStatus();
+            statuses[i].active = voice.active && !voice.released;
+            statuses[i].channel = voice.channel;
+            statuses[i].note = voice.note;
+            statuses[i].volume = voice.velocity;
+        }
+        return statuses;
+    }
+
+    /** enqueues an event, dropped when the queue is full */
+    private void offer(int type, int channel, int note, int velocity, float gain) {
+        long event = (long) type << 56 | (long) channel << 48 | (long) note << 40 | (long) velocity << 32 | Float.floatToRawIntBits(gain) & 0xffffffffL;
+        long t;
+        int index;
+        while (true) {
+            t = tail.get();
+            index = (int) (t & (QUEUE_SIZE - 1));
+            long sequence = sequences.get(index);
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    break;
+                }
+            } else if (sequence < t) {
+logger.log(Level.WARNING, "event queue is full, dropped: " + type + ", " + channel + ", " + note);
+                return;
+            }
+        }
+        events[index] = event;
+        sequences.set(index, t + 1); // publishes the payload
+    }
+
+    /** applies the events enqueued */
+    private void poll() {
+        while (true) {
+            int index = (int) (head & (QUEUE_SIZE - 1));
+            if (sequences.get(index) != head + 1) {
+                return;
+            }
+            long event = events[index];
+            sequences.set(index, head + QUEUE_SIZE);
+            head++;
+            apply((int) (event >>> 56), (int) (event >>> 48) & 0xff, (int) (event >>> 40) & 0xff, (int) (event >>> 32) & 0xff, Float.intBitsToFloat((int) event));
+        }
+    }
+
+    /** on the rendering thread */
+    private void apply(int type, int channel, int note, int velocity, float gain) {
+        switch (type) {
+        case NOTE_ON -> start(allocate(), channel, note, velocity, gain);
+        case NOTE_OFF -> {
+            for (Voice voice : voices) {
+                if (voice.active && voice.channel == channel && voice.note == note) {
+                    voice.released = true;
+                }
+            }
+        }
+        case RELEASE -> {
+            for (Voice voice : voices) {
+                if (voice.active && voice.channel == channel) {
+                    voice.released = true;
+                }
+            }
+        }
+        case CLEAR -> {
+            for (Voice voice : voices) {
+                voice.active = false;
+            }
+        }
+        default -> throw new IllegalStateException("unknown event: " + type);
+        }
+    }
+
+    /** a free voice, or the oldest one */
+    private Voice allocate() {
+        Voice oldest = voices[0];
+        for (Voice voice : voices) {
+            if (!voice.active) {
+                return voice;
+            }
+            if (voice.serial < oldest.serial) {
+                oldest = voice;
+            }
+        }
+logger.log(Level.TRACE, "steal: " + oldest.channel + ", " + oldest.note);
+        return oldest;
+    }
+
+    /** plucks, white noise in [-0.5, 0.5) */
+    private void start(Voice voice, int channel, int note, int velocity, float gain) {
+        voice.length = LENGTHS[note];
+        for (int i = 0; i < voice.length; i++) {
+            voice.line[i] = (float) (random.nextDouble() - 0.5);
+        }
+        voice.position = 0;
+        voice.channel = channel;
+        voice.note = note;
+        voice.velocity = velocity;
+        voice.gain = gain;
+        voice.released = false;
+        voice.serial = serial++;
+        voice.active = true;
+    }
+}
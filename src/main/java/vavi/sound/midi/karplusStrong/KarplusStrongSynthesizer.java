@@ -6,14 +6,20 @@
 
 package vavi.sound.midi.karplusStrong;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiChannel;
 import javax.sound.midi.MidiDevice;
@@ -24,17 +30,18 @@ import javax.sound.midi.Patch;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Soundbank;
-import javax.sound.midi.Synthesizer;
 import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Transmitter;
 import javax.sound.midi.VoiceStatus;
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
 import vavi.sound.karplusStrong.GuitarString;
+import vavi.sound.midi.OfflineSynthesizer;
 import vavi.util.StringUtil;
 
 import static java.lang.System.getLogger;
@@ -47,12 +54,15 @@ import static vavi.sound.midi.karplusStrong.KarplusStrongMidiDeviceProvider.vers
  * a software synthesizer that simulates plucked strings by the
  * karplus strong algorithm ({@link GuitarString}). since the algorithm
  * models a plucked string only, program change is ignored and
- * every channel sounds as a guitar string.
+ * every channel sounds as a guitar string. voices are rendered by blocks
+ * by {@link KarplusStrongRenderer}. {@link #openStream(AudioFormat, Map)} renders
+ * on the reading thread without a line, messages are applied at the frames
+ * of their time-stamps.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2026/07/04 umjammer initial version <br>
  */
-public class KarplusStrongSynthesizer implements Synthesizer {
+public class KarplusStrongSynthesizer implements OfflineSynthesizer {
 
     private static final Logger logger = getLogger(KarplusStrongSynthesizer.class.getName());
 
@@ -66,7 +76,7 @@ public class KarplusStrongSynthesizer implements Synthesizer {
     private static final int MAX_CHANNEL = 16;
 
     /** {@link GuitarString} is hard coded as 44100 Hz */
-    private static final float SAMPLE_RATE = 44100;
+    private static final float SAMPLE_RATE = KarplusStrongRenderer.SAMPLE_RATE;
 
     /** 16 bit, mono, signed, little endian */
     private final AudioFormat audioFormat = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
@@ -74,16 +84,8 @@ public class KarplusStrongSynthesizer implements Synthesizer {
     /** samples per rendering cycle */
     private static final int BLOCK_SIZE = 512;
 
-    /** damping per sample applied after note off (~ 60 ms to -60 dB) */
-    private static final double RELEASE_FACTOR = 0.9974;
-
-    /** below this gain a released voice is discarded */
-    private static final double GAIN_EPSILON = 0.0001;
-
     private final KarplusStrongMidiChannel[] channels = new KarplusStrongMidiChannel[MAX_CHANNEL];
 
-    private final List<VoiceStatus> voiceStatuses = new ArrayList<>();
-
     private final KarplusStrongSoundbank soundBank = new KarplusStrongSoundbank();
 
     private long timestamp;
@@ -92,27 +94,30 @@ public class KarplusStrongSynthesizer implements Synthesizer {
 
     private SourceDataLine line;
 
+    /** opened by {@link #openStream(AudioFormat, Map)}, rendered by the reader */
+    private volatile boolean streaming;
+
+    /** frames rendered into the stream so far */
+    private volatile long rendered;
+
+    /** a message waiting for its frame, when streaming */
+    private record Event(long frame, long sequence, MidiMessage message) {}
+
+    /** messages by frame, in order of arrival for the same frame */
+    private final PriorityBlockingQueue<Event> events = new PriorityBlockingQueue<>(64,
+            Comparator.comparingLong(Event::frame).thenComparingLong(Event::sequence));
+
+    /** */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** the rendering buffer, used by the rendering thread or the reader */
+    private final float[] mix = new float[BLOCK_SIZE];
+
     /** master gain by sysex master volume */
     private volatile double masterGain = 1;
 
-    /** a sounding karplus strong string */
-    private static class Voice {
-        final GuitarString string;
-        final int channel;
-        final int note;
-        /** velocity gain, damped after note off */
-        volatile double gain;
-        volatile boolean released;
-        Voice(GuitarString string, int channel, int note, double gain) {
-            this.string = string;
-            this.channel = channel;
-            this.note = note;
-            this.gain = gain;
-        }
-    }
-
-    /** modified by the receiver thread, read by the rendering thread */
-    private final List<Voice> voices = new CopyOnWriteArrayList<>();
+    /** events from the receiver thread are applied on the rendering thread */
+    private final KarplusStrongRenderer renderer = new KarplusStrongRenderer(getMaxPolyphony());
 
     /** the rendering thread */
     private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
@@ -154,30 +159,74 @@ logger.log(Level.WARNING, "already open: " + hashCode());
         executor.submit(this::play);
     }
 
+    /**
+     * the format of the stream is 16 bit mono at 44100 Hz,
+     * converted to the target format when it differs.
+     */
+    @Override
+    public AudioInputStream openStream(AudioFormat targetFormat, Map<String, Object> info) throws MidiUnavailableException {
+        if (isOpen()) {
+            throw new MidiUnavailableException("already open: " + hashCode());
+        }
+
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new KarplusStrongMidiChannel(i);
+        }
+        rendered = 0;
+        streaming = true;
+        isOpen = true;
+
+        AudioInputStream stream = new AudioInputStream(new KarplusStrongInputStream(), audioFormat, AudioSystem.NOT_SPECIFIED);
+        if (targetFormat == null || targetFormat.matches(audioFormat)) {
+            return stream;
+        } else {
+            return AudioSystem.getAudioInputStream(targetFormat, stream);
+        }
+    }
+
+    /** renders as it is read, ends when closed */
+    private class KarplusStrongInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("read by frames");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!isOpen) {
+                return -1;
+            }
+            if (len < audioFormat.getFrameSize()) {
+                throw new IOException("read by frames, len: " + len + " < frame size: " + audioFormat.getFrameSize());
+            }
+            int frames = len / audioFormat.getFrameSize();
+            long position = rendered;
+            long end = position + frames;
+            while (!events.isEmpty() && events.peek().frame < end) {
+                Event event = events.poll();
+                if (event.frame > position) {
+                    render(b, off + (int) (position - rendered) * 2, (int) (event.frame - position));
+                    position = event.frame;
+                }
+                process(event.message);
+            }
+            render(b, off + (int) (position - rendered) * 2, (int) (end - position));
+            rendered = end;
+            return frames * audioFormat.getFrameSize();
+        }
+    }
+
     /** mixes all sounding strings into the line */
     private void play() {
         byte[] buf = new byte[BLOCK_SIZE * 2];
 
         while (isOpen) {
             try {
-                for (int i = 0; i < BLOCK_SIZE; i++) {
-                    double mix = 0;
-                    for (Voice voice : voices) {
-                        mix += voice.string.sample() * voice.gain;
-                        voice.string.tic();
-                        if (voice.released) {
-                            voice.gain *= RELEASE_FACTOR;
-                        }
-                    }
-                    mix *= masterGain;
-                    // clip
-                    if (mix > 1) mix = 1;
-                    else if (mix < -1) mix = -1;
-                    int sample = (int) (mix * Short.MAX_VALUE);
-                    buf[i * 2] = (byte) sample;
-                    buf[i * 2 + 1] = (byte) (sample >> 8);
-                }
-                voices.removeIf(v -> v.released && v.gain < GAIN_EPSILON);
+                render(buf, 0, BLOCK_SIZE);
                 line.write(buf, 0, buf.length);
             } catch (Exception e) {
                 logger.log(Level.INFO, e.getMessage(), e);
@@ -185,9 +234,21 @@ logger.log(Level.WARNING, "already open: " + hashCode());
         }
     }
 
-    /** midi note number to frequency in Hz */
-    private static double midiToFrequency(int noteNumber) {
-        return 440 * Math.pow(2, (noteNumber - 69) / 12.0);
+    /** renders frames as 16 bit little endian by blocks */
+    private void render(byte[] buf, int offset, int frames) {
+        for (int p = 0; p < frames; p += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, frames - p);
+            Arrays.fill(mix, 0, n, 0);
+            renderer.render(mix, 0, n);
+            float gain = (float) masterGain;
+            for (int i = 0; i < n; i++) {
+                // clip
+                float v = Math.clamp(mix[i] * gain, -1f, 1f);
+                int sample = (int) (v * Short.MAX_VALUE);
+                buf[offset + (p + i) * 2] = (byte) sample;
+                buf[offset + (p + i) * 2 + 1] = (byte) (sample >> 8);
+            }
+        }
     }
 
     @Override
@@ -200,7 +261,9 @@ logger.log(Level.WARNING, "already open: " + hashCode());
             line.drain();
             line.close();
         }
-        voices.clear();
+        streaming = false;
+        events.clear();
+        renderer.clear();
     }
 
     @Override
@@ -208,8 +271,12 @@ logger.log(Level.WARNING, "already open: " + hashCode());
         return isOpen;
     }
 
+    /** @return frames rendered into the stream in microseconds when streaming */
     @Override
     public long getMicrosecondPosition() {
+        if (streaming) {
+            return (long) (rendered * 1_000_000 / SAMPLE_RATE);
+        }
         return timestamp;
     }
 
@@ -260,7 +327,13 @@ logger.log(Level.WARNING, "already open: " + hashCode());
 
     @Override
     public VoiceStatus[] getVoiceStatus() {
-        return voiceStatuses.toArray(VoiceStatus[]::new);
+        VoiceStatus[] voiceStatuses = renderer.getVoiceStatus();
+        for (VoiceStatus voiceStatus : voiceStatuses) {
+            if (channels[voiceStatus.channel] != null) {
+                voiceStatus.program = channels[voiceStatus.channel].getProgram();
+            }
+        }
+        return voiceStatuses;
     }
 
     @Override
@@ -350,42 +423,14 @@ logger.log(Level.WARNING, "already open: " + hashCode());
                 return;
             }
 
-            if (voices.size() >= getMaxPolyphony()) {
-                // steal the oldest voice
-                voices.remove(0);
-            }
-
-            GuitarString string = new GuitarString(midiToFrequency(noteNumber));
-            string.pluck();
-            double gain = (velocity / 127.0) * (control[7] / 127.0);
-            voices.add(new Voice(string, channel, noteNumber, gain));
-
-            VoiceStatus voiceStatus = new VoiceStatus();
-            voiceStatus.channel = channel;
-            voiceStatus.program = program;
-            voiceStatus.note = noteNumber;
-            voiceStatus.volume = velocity;
-            voiceStatus.active = true;
-            voiceStatuses.add(voiceStatus);
+            // the oldest voice is stolen when all are sounding
+            float gain = (velocity / 127f) * (control[7] / 127f);
+            renderer.noteOn(channel, noteNumber, velocity, gain);
         }
 
         @Override
         public void noteOff(int noteNumber, int velocity) {
-            for (Voice voice : voices) {
-                if (voice.channel == channel && voice.note == noteNumber && !voice.released) {
-                    voice.released = true;
-                }
-            }
-
-            VoiceStatus voiceStatus = find(channel, noteNumber);
-            if (voiceStatus != null) {
-                voiceStatus.active = false;
-                voiceStatuses.remove(voiceStatus);
-            }
-        }
-
-        private VoiceStatus find(int channel, int noteNumber) {
-            return voiceStatuses.stream().filter(vs -> vs.channel == channel && vs.note == noteNumber).findFirst().orElse(null);
+            renderer.noteOff(channel, noteNumber);
         }
 
         @Override
@@ -421,11 +466,7 @@ logger.log(Level.DEBUG, "control change[%d]: vol(%02x): %d".formatted(channel, c
                 break;
             case 120: // all sound off
             case 123: // all notes off
-                for (Voice voice : voices) {
-                    if (voice.channel == channel) {
-                        voice.released = true;
-                    }
-                }
+                renderer.release(channel);
                 break;
             default:
 logger.log(Level.TRACE, "control change unhandled[%d]: (%02x): %d".formatted(channel, controller, value));
@@ -544,62 +585,17 @@ logger.log(Level.DEBUG, "program change[%d]: %d (ignored)".formatted(channel, th
             isOpen = true;
         }
 
+        /** applied at the frame of the time-stamp when streaming, otherwise immediately */
         @Override
         public void send(MidiMessage message, long timeStamp) {
             if (!isOpen) throw new IllegalStateException("receiver is not open");
 
             timestamp = timeStamp;
-            switch (message) {
-            case ShortMessage shortMessage -> {
-                int channel = shortMessage.getChannel();
-                int command = shortMessage.getCommand();
-                int data1 = shortMessage.getData1();
-                int data2 = shortMessage.getData2();
-                switch (command) {
-                case ShortMessage.NOTE_OFF:
-                    channels[channel].noteOff(data1, data2);
-                    break;
-                case ShortMessage.NOTE_ON:
-                    channels[channel].noteOn(data1, data2);
-                    break;
-                case ShortMessage.POLY_PRESSURE:
-                    channels[channel].setPolyPressure(data1, data2);
-                    break;
-                case ShortMessage.CONTROL_CHANGE:
-                    channels[channel].controlChange(data1, data2);
-                    break;
-                case ShortMessage.PROGRAM_CHANGE:
-                    channels[channel].programChange(data1);
-                    break;
-                case ShortMessage.CHANNEL_PRESSURE:
-                    channels[channel].setChannelPressure(data1);
-                    break;
-                case ShortMessage.PITCH_BEND:
-                    channels[channel].setPitchBend(data1 | (data2 << 7));
-                    break;
-                default:
-logger.log(Level.DEBUG, "unhandled short: %02X".formatted(command));
-                }
-            }
-            case SysexMessage sysexMessage -> {
-                byte[] data = sysexMessage.getData();
-logger.log(Level.TRACE, "sysex: %02X\n%s".formatted(sysexMessage.getStatus(), StringUtil.getDump(data, 32)));
-                switch (data[0]) {
-                case 0x7f: // Universal Realtime
-                    // Sub-ID, Sub-ID2
-                    if (data[2] == 0x04 && data[3] == 0x01) { // Device Control / Master Volume
-                        float gain = ((data[4] & 0x7f) | ((data[5] & 0x7f) << 7)) / 16383f;
-logger.log(Level.DEBUG, "sysex volume: gain: %4.2f".formatted(gain));
-                        masterGain = gain;
-                    }
-                    break;
-                default:
-logger.log(Level.DEBUG, "sysex unhandled: %02x".formatted(data[0]));
-                    break;
-                }
-            }
-            case null, default ->
-logger.log(Level.DEBUG, message.getClass().getName());
+            if (streaming) {
+                long frame = timeStamp < 0 ? rendered : (long) (timeStamp * SAMPLE_RATE / 1_000_000);
+                events.add(new Event(frame, sequence.getAndIncrement(), message));
+            } else {
+                process(message);
             }
         }
 
@@ -614,4 +610,60 @@ logger.log(Level.DEBUG, message.getClass().getName());
             return KarplusStrongSynthesizer.this;
         }
     }
+
+    /** applies a message */
+    private void process(MidiMessage message) {
+        switch (message) {
+        case ShortMessage shortMessage -> {
+            int channel = shortMessage.getChannel();
+            int command = shortMessage.getCommand();
+            int data1 = shortMessage.getData1();
+            int data2 = shortMessage.getData2();
+            switch (command) {
+            case ShortMessage.NOTE_OFF:
+                channels[channel].noteOff(data1, data2);
+                break;
+            case ShortMessage.NOTE_ON:
+                channels[channel].noteOn(data1, data2);
+                break;
+            case ShortMessage.POLY_PRESSURE:
+                channels[channel].setPolyPressure(data1, data2);
+                break;
+            case ShortMessage.CONTROL_CHANGE:
+                channels[channel].controlChange(data1, data2);
+                break;
+            case ShortMessage.PROGRAM_CHANGE:
+                channels[channel].programChange(data1);
+                break;
+            case ShortMessage.CHANNEL_PRESSURE:
+                channels[channel].setChannelPressure(data1);
+                break;
+            case ShortMessage.PITCH_BEND:
+                channels[channel].setPitchBend(data1 | (data2 << 7));
+                break;
+            default:
+logger.log(Level.DEBUG, "unhandled short: %02X".formatted(command));
+            }
+        }
+        case SysexMessage sysexMessage -> {
+            byte[] data = sysexMessage.getData();
+logger.log(Level.TRACE, "sysex: %02X\n%s".formatted(sysexMessage.getStatus(), StringUtil.getDump(data, 32)));
+            switch (data[0]) {
+            case 0x7f: // Universal Realtime
+                // Sub-ID, Sub-ID2
+                if (data[2] == 0x04 && data[3] == 0x01) { // Device Control / Master Volume
+                    float gain = ((data[4] & 0x7f) | ((data[5] & 0x7f) << 7)) / 16383f;
+logger.log(Level.DEBUG, "sysex volume: gain: %4.2f".formatted(gain));
+                    masterGain = gain;
+                }
+                break;
+            default:
+logger.log(Level.DEBUG, "sysex unhandled: %02x".formatted(data[0]));
+                break;
+            }
+        }
+        case null, default ->
+logger.log(Level.DEBUG, message.getClass().getName());
+        }
+    }
 }
@@ -9,6 +9,7 @@ package vavi.sound.midi.mml;
 import java.io.IOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -152,12 +153,14 @@ logger.log(Level.TRACE, "programChange: %d, %02x, %02x, @%d".formatted(channel,
         if (note != null)
             note.inst.setTimeStep(1.0 / (double) samplingRate);
 
-        for (int i = 0; i < len; i++) {
-            float value = 0.0f;
-            if (note != null) {
-                value += (float) ((note.velocity / 127f) * note.inst.getValue(note.number));
+        if (note != null) {
+            note.inst.render(note.number, buffer, offset, len);
+            float gain = note.velocity / 127f;
+            for (int i = 0; i < len; i++) {
+                buffer[offset + i] *= gain;
             }
-            buffer[offset + i] = value;
+        } else {
+            Arrays.fill(buffer, offset, offset + len, 0);
         }
 
         return len;
@@ -6,13 +6,18 @@
 
 package vavi.sound.midi.mml;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiChannel;
@@ -28,8 +33,13 @@ import javax.sound.midi.Synthesizer;
 import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Transmitter;
 import javax.sound.midi.VoiceStatus;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
+import com.sun.media.sound.AudioSynthesizer;
 import vavi.sound.midi.MidiUtil;
+import vavi.sound.midi.OfflineSynthesizer;
 import vavi.util.StringUtil;
 
 import static java.lang.System.getLogger;
@@ -38,11 +48,15 @@ import static vavi.sound.midi.mml.MmlMidiDeviceProvider.version;
 
 /**
  * MmlSynthesizer.
+ * <p>
+ * {@link #openStream(AudioFormat, Map)} opens the wrapped gervill as a stream.
+ * messages are handed to gervill by blocks of the stream before their frames,
+ * so the program changes and the tempo are taken by the oscillator in time.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2024/12/18 umjammer initial version <br>
  */
-public class MmlSynthesizer implements Synthesizer {
+public class MmlSynthesizer implements OfflineSynthesizer {
 
     private static final Logger logger = getLogger(MmlSynthesizer.class.getName());
 
@@ -58,6 +72,28 @@ public class MmlSynthesizer implements Synthesizer {
 
     private MmlOscillator mmlOscillator;
 
+    /** frames the messages are handed ahead of the reading */
+    private static final int BLOCK_SIZE = 512;
+
+    /** opened by {@link #openStream(AudioFormat, Map)} */
+    private volatile boolean streaming;
+
+    /** frames read from the stream so far */
+    private volatile long rendered;
+
+    /** */
+    private float frameRate;
+
+    /** a message waiting for its frame, when streaming */
+    private record Event(long frame, long sequence, MidiMessage message, long timeStamp, MmlReceiver receiver) {}
+
+    /** messages by frame, in order of arrival for the same frame */
+    private final PriorityBlockingQueue<Event> events = new PriorityBlockingQueue<>(64,
+            Comparator.comparingLong(Event::frame).thenComparingLong(Event::sequence));
+
+    /** */
+    private final AtomicLong sequence = new AtomicLong();
+
     @Override
     public Info getDeviceInfo() {
         return info;
@@ -72,11 +108,83 @@ logger.log(Level.DEBUG, "wrapped synthesizer: " + synthesizer.getClass().getName
         synthesizer.loadAllInstruments(mmlOscillator = new MmlOscillator());
     }
 
+    /**
+     * @param targetFormat passed to gervill
+     * @param info passed to gervill
+     * @throws MidiUnavailableException the wrapped synthesizer is not gervill
+     */
+    @Override
+    public AudioInputStream openStream(AudioFormat targetFormat, Map<String, Object> info) throws MidiUnavailableException {
+        if (isOpen()) {
+            throw new MidiUnavailableException("already open: " + hashCode());
+        }
+        synthesizer = MidiUtil.getDefaultSynthesizer(MmlMidiDeviceProvider.class);
+logger.log(Level.DEBUG, "wrapped synthesizer: " + synthesizer.getClass().getName());
+        if (!(synthesizer instanceof AudioSynthesizer audioSynthesizer)) {
+            throw new MidiUnavailableException("not a stream: " + synthesizer.getClass().getName());
+        }
+        AudioInputStream stream = audioSynthesizer.openStream(targetFormat, info);
+        synthesizer.unloadAllInstruments(synthesizer.getDefaultSoundbank());
+        synthesizer.loadAllInstruments(mmlOscillator = new MmlOscillator());
+        frameRate = stream.getFormat().getFrameRate();
+        rendered = 0;
+        streaming = true;
+        return new AudioInputStream(new MmlInputStream(stream), stream.getFormat(), AudioSystem.NOT_SPECIFIED);
+    }
+
+    /** hands the messages of the next block to gervill, then reads the block */
+    private class MmlInputStream extends InputStream {
+
+        /** gervill */
+        final AudioInputStream in;
+
+        /** */
+        final int frameSize;
+
+        MmlInputStream(AudioInputStream in) {
+            this.in = in;
+            this.frameSize = in.getFormat().getFrameSize();
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("read by frames");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (len < frameSize) {
+                throw new IOException("read by frames, len: " + len + " < frame size: " + frameSize);
+            }
+            int frames = Math.min(len / frameSize, BLOCK_SIZE);
+            long end = rendered + frames;
+            while (!events.isEmpty() && events.peek().frame < end + BLOCK_SIZE) {
+                Event event = events.poll();
+                event.receiver.dispatch(event.message, event.timeStamp);
+            }
+            int n = in.read(b, off, frames * frameSize);
+            if (n > 0) {
+                rendered += n / frameSize;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
     @Override
     @SuppressWarnings("ForLoopReplaceableByForEach")
     public void close() {
         for (int i = 0; i < receivers.size(); i++) receivers.get(i).close();
         synthesizer.close();
+        streaming = false;
+        events.clear();
     }
 
     @Override
@@ -211,9 +319,20 @@ logger.log(Level.DEBUG, "receiver: " + this.receiver);
             isOpen = true;
         }
 
+        /** handed to gervill at the block of the time-stamp when streaming, otherwise immediately */
         @Override
         public void send(MidiMessage message, long timeStamp) {
             if (!isOpen) throw new IllegalStateException("Receiver is not open");
+            if (streaming) {
+                long frame = timeStamp < 0 ? rendered : (long) (timeStamp * (double) frameRate / 1_000_000);
+                events.add(new Event(frame, sequence.getAndIncrement(), message, timeStamp, this));
+            } else {
+                dispatch(message, timeStamp);
+            }
+        }
+
+        /** applies to the oscillator then sends to gervill */
+        void dispatch(MidiMessage message, long timeStamp) {
 try {
             if (message instanceof ShortMessage shortMessage) {
                 int command = shortMessage.getCommand();
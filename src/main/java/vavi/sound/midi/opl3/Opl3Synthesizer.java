@@ -6,13 +6,21 @@
 
 package vavi.sound.midi.opl3;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiChannel;
@@ -29,11 +37,13 @@ import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Transmitter;
 import javax.sound.midi.VoiceStatus;
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
+import vavi.sound.midi.OfflineSynthesizer;
 import vavi.sound.midi.opl3.Opl3Soundbank.Opl3Instrument;
 import vavi.sound.opl3.Adlib;
 import vavi.sound.opl3.LucasFile;
@@ -59,10 +69,11 @@ import static vavi.sound.midi.opl3.Opl3MidiDeviceProvider.version;
  * <pre>
  * 0xf0 xx 0x7d 0x10 yy ... (yy: channel) program set change
  * </pre>
+ * {@link #openStream(AudioFormat, Map)} renders on the reading thread without a line.
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2020/10/03 umjammer initial version <br>
  */
-public class Opl3Synthesizer implements Synthesizer {
+public class Opl3Synthesizer implements OfflineSynthesizer {
 
     private static final Logger logger = getLogger(Opl3Synthesizer.class.getName());
 
@@ -81,13 +92,37 @@ public class Opl3Synthesizer implements Synthesizer {
     // TODO voice != channel ( = getMaxPolyphony())
     private final List<VoiceStatus> voiceStatuses = new ArrayList<>();
 
-    private long timestamp;
+    /** frames rendered so far, the line plays them in order so this is the device clock ahead by the buffer */
+    private volatile long rendered;
 
-    private boolean isOpen;
+    /** a message waiting for its frame */
+    private record Event(long frame, long sequence, MidiMessage message) {}
+
+    /** messages by frame, in order of arrival for the same frame */
+    private final PriorityBlockingQueue<Event> events = new PriorityBlockingQueue<>(64,
+            Comparator.comparingLong(Event::frame).thenComparingLong(Event::sequence));
+
+    /** */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** rendering period in milliseconds, "vavi.sound.midi.opl3.Opl3Synthesizer.period" system property */
+    private int period = Integer.getInteger(getClass().getName() + ".period", 5);
+
+    /** line buffer in milliseconds, "vavi.sound.midi.opl3.Opl3Synthesizer.buffer" system property */
+    private int bufferLength = Integer.getInteger(getClass().getName() + ".buffer", 40);
+
+    private volatile boolean isOpen;
 
     private SourceDataLine line;
 
-    private final AudioFormat audioFormat = Opl3Player.opl3;
+    /** opened by {@link #openStream(AudioFormat, Map)}, rendered by the reader */
+    private volatile boolean streaming;
+
+    /**
+     * the opl3 native rate, or "vavi.sound.midi.opl3.Opl3Synthesizer.sampleRate" system property
+     * (e.g. 44100, 48000) for resampling while rendering, when the line does not take the native one
+     */
+    private AudioFormat audioFormat = Opl3Player.opl3;
 
     // ----
 
@@ -114,6 +149,16 @@ public class Opl3Synthesizer implements Synthesizer {
         return info;
     }
 
+    /** @param period rendering period in milliseconds, 5 by default, effective at the next open */
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+
+    /** @param bufferLength line buffer in milliseconds, 40 by default, effective at the next open */
+    public void setBufferLength(int bufferLength) {
+        this.bufferLength = bufferLength;
+    }
+
     public void open(MidiTypeFile type, Adlib.Writer writer) throws MidiUnavailableException {
         if (isOpen()) {
 logger.log(Level.WARNING, "already open: " + hashCode());
@@ -162,9 +207,64 @@ logger.log(Level.DEBUG, "type: " + type);
         isOpen = true;
 
         if (adlib.isOplInternal()) {
-            // when midi spi
-            init();
-            executor.submit(this::play);
+            if (streaming) {
+                initStream();
+            } else {
+                // when midi spi
+                init();
+                executor.submit(this::play);
+            }
+        }
+    }
+
+    /**
+     * the stream is rendered as 16 bit stereo at the opl3 native rate, then converted to the target
+     * format when it differs. the messages are applied at the frames of the native rate, resampling
+     * while rendering would delay the output behind the emulator by the bursts of the resampler.
+     */
+    @Override
+    public AudioInputStream openStream(AudioFormat targetFormat, Map<String, Object> info) throws MidiUnavailableException {
+        if (isOpen()) {
+            throw new MidiUnavailableException("already open: " + hashCode());
+        }
+        streaming = true;
+        try {
+            open(MidiTypeFile.getFileType("MidiFile"), null);
+        } catch (MidiUnavailableException | RuntimeException e) {
+            streaming = false;
+            throw e;
+        }
+        AudioInputStream stream = new AudioInputStream(new Opl3InputStream(), audioFormat, AudioSystem.NOT_SPECIFIED);
+        if (targetFormat == null || targetFormat.matches(audioFormat)) {
+            return stream;
+        } else {
+            return AudioSystem.getAudioInputStream(targetFormat, stream);
+        }
+    }
+
+    /** when streaming */
+    private void initStream() {
+        audioFormat = Opl3Player.opl3;
+        adlib.setSampleRate(audioFormat.getSampleRate());
+        rendered = 0;
+    }
+
+    /** renders as it is read, ends when closed */
+    private class Opl3InputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("read by frames");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!isOpen) {
+                return -1;
+            }
+            int frames = len / audioFormat.getFrameSize();
+            render(b, off, frames);
+            return frames * audioFormat.getFrameSize();
         }
     }
 
@@ -177,43 +277,78 @@ logger.log(Level.DEBUG, "type: " + type);
 
     /** when midi spi */
     private void init() throws MidiUnavailableException {
+        String sampleRate = System.getProperty(getClass().getName() + ".sampleRate");
+        if (sampleRate != null) {
+            float rate = Float.parseFloat(sampleRate);
+            adlib.setSampleRate(rate);
+            audioFormat = new AudioFormat(rate, 16, 2, true, false);
+logger.log(Level.DEBUG, "sample rate: " + rate);
+        }
         try {
-            DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat, AudioSystem.NOT_SPECIFIED);
-            line = (SourceDataLine) AudioSystem.getLine(lineInfo);
+            line = getLine(audioFormat);
 logger.log(Level.DEBUG, line.getClass().getName());
             line.addLineListener(event -> logger.log(Level.DEBUG, "Line: " + event.getType()));
 
-            line.open(audioFormat);
+            line.open(audioFormat, (int) toFrames(bufferLength * 1000L) * audioFormat.getFrameSize());
             line.start();
+logger.log(Level.DEBUG, "period: " + period + "ms, buffer: " + line.getBufferSize() + " bytes");
         } catch (LineUnavailableException e) {
             throw (MidiUnavailableException) new MidiUnavailableException().initCause(e);
         }
 
-        timestamp = 0;
+        rendered = 0;
     }
 
-    /** when midi spi */
+    /** when midi spi, the line is opened and started by the caller */
+    SourceDataLine getLine(AudioFormat audioFormat) throws LineUnavailableException {
+        DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat, AudioSystem.NOT_SPECIFIED);
+        return (SourceDataLine) AudioSystem.getLine(lineInfo);
+    }
+
+    /** @return frames at the output rate, in double so that hours of time-stamps keep frame accuracy */
+    private long toFrames(long microseconds) {
+        return (long) (microseconds * (double) audioFormat.getSampleRate() / 1_000_000);
+    }
+
+    /**
+     * when midi spi, renders a period each time the line has room for it,
+     * so the line is kept about full and the timing follows the line's clock.
+     */
     private void play() {
-        byte[] buf = new byte[4 * (int) audioFormat.getSampleRate() / 10];
-//logger.log(Level.TRACE, "buf: %d".formatted(buf.length));
+        int frames = (int) toFrames(period * 1000L);
+        byte[] buf = new byte[frames * audioFormat.getFrameSize()];
+        long wait = period * 1_000_000L / 4;
 
         while (isOpen) {
             try {
-                long msec = System.currentTimeMillis() - timestamp;
-                timestamp = System.currentTimeMillis();
-                msec = msec > 100 ? 100 : msec;
-                int l = adlib.read(buf, 0, 4 * (int) (audioFormat.getSampleRate() * msec / 1000.0));
-//logger.log(Level.TRACE, "adlib: %d".formatted(l));
-                if (l > 0) {
-                    line.write(buf, 0, l);
+                if (line.available() < buf.length) {
+                    LockSupport.parkNanos(wait);
+                    continue;
                 }
-                Thread.sleep(33); // TODO how to define?
+                render(buf, 0, frames);
+                line.write(buf, 0, buf.length);
             } catch (Exception e) {
                 logger.log(Level.INFO, e.getMessage(), e);
             }
         }
     }
 
+    /** renders frames, the messages due within them are applied at their frames */
+    private void render(byte[] buf, int offset, int frames) {
+        long position = rendered;
+        long end = position + frames;
+        while (!events.isEmpty() && events.peek().frame < end) {
+            Event event = events.poll();
+            if (event.frame > position) {
+                offset += adlib.read(buf, offset, (int) (event.frame - position) * audioFormat.getFrameSize());
+                position = event.frame;
+            }
+            process(event.message);
+        }
+        adlib.read(buf, offset, (int) (end - position) * audioFormat.getFrameSize());
+        rendered = end;
+    }
+
     @Override
     public void open() throws MidiUnavailableException {
         open(MidiTypeFile.getFileType("MidiFile"), null);
@@ -224,9 +359,18 @@ logger.log(Level.DEBUG, line.getClass().getName());
     public void close() {
         isOpen = false;
         for (int i = 0; i < receivers.size(); i++) receivers.get(i).close();
-        line.drain();
-        line.close();
         executor.shutdown();
+        if (line != null) {
+            try {
+                executor.awaitTermination(bufferLength + period, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            line.drain();
+            line.close();
+        }
+        streaming = false;
+        events.clear();
     }
 
     @Override
@@ -234,9 +378,13 @@ logger.log(Level.DEBUG, line.getClass().getName());
         return isOpen;
     }
 
+    /** @return microseconds played by the line or rendered into the stream, -1 for an outer opl3 */
     @Override
     public long getMicrosecondPosition() {
-        return timestamp;
+        if (streaming) {
+            return (long) (rendered * 1_000_000 / (double) audioFormat.getSampleRate());
+        }
+        return line != null ? (long) (line.getLongFramePosition() * 1_000_000 / (double) audioFormat.getSampleRate()) : -1;
     }
 
     @Override
@@ -274,9 +422,10 @@ logger.log(Level.DEBUG, line.getClass().getName());
         return 18; // TODO OPL3 class said
     }
 
+    /** @return microseconds of the line buffer, messages without a time-stamp are heard after about this */
     @Override
     public long getLatency() {
-        return 33;
+        return line != null ? (long) (line.getBufferSize() / audioFormat.getFrameSize() * 1_000_000L / audioFormat.getSampleRate()) : 0;
     }
 
     @Override
@@ -549,95 +698,109 @@ logger.log(Level.DEBUG, "program change[%d]: %d".formatted(channel, this.program
         }
     }
 
-    private final List<Receiver> receivers = new ArrayList<>();
-
-    private class Opl3Receiver implements MidiDeviceReceiver {
-        @SuppressWarnings("hiding")
-        private boolean isOpen;
-
-        public Opl3Receiver() {
-            receivers.add(this);
-            isOpen = true;
-        }
-
-        @Override
-        public void send(MidiMessage message, long timeStamp) {
-            if (!isOpen) throw new IllegalStateException("receiver is not open");
-
-            switch (message) {
-                case ShortMessage shortMessage -> {
-                    int channel = shortMessage.getChannel();
-                    int command = shortMessage.getCommand();
-                    int data1 = shortMessage.getData1();
-                    int data2 = shortMessage.getData2();
-                    switch (command) {
-                        case ShortMessage.NOTE_OFF:
-                            channels[channel].noteOff(data1, data2);
-                            break;
-                        case ShortMessage.NOTE_ON:
-                            channels[channel].noteOn(data1, data2);
-                            break;
-                        case ShortMessage.POLY_PRESSURE:
-                            channels[channel].setPolyPressure(data1, data2);
-                            break;
-                        case ShortMessage.CONTROL_CHANGE:
-                            channels[channel].controlChange(data1, data2);
-                            break;
-                        case ShortMessage.PROGRAM_CHANGE:
-                            channels[channel].programChange(data1);
-                            break;
-                        case ShortMessage.CHANNEL_PRESSURE:
-                            channels[channel].setChannelPressure(data1);
-                            break;
-                        case ShortMessage.PITCH_BEND:
-                            channels[channel].setPitchBend(data1 | (data2 << 7));
-                            break;
-                        default:
-                            logger.log(Level.DEBUG, "unhandled short: %02X".formatted(command));
-                    }
+    /** applies a message to the opl3 */
+    private void process(MidiMessage message) {
+        switch (message) {
+            case ShortMessage shortMessage -> {
+                int channel = shortMessage.getChannel();
+                int command = shortMessage.getCommand();
+                int data1 = shortMessage.getData1();
+                int data2 = shortMessage.getData2();
+                switch (command) {
+                    case ShortMessage.NOTE_OFF:
+                        channels[channel].noteOff(data1, data2);
+                        break;
+                    case ShortMessage.NOTE_ON:
+                        channels[channel].noteOn(data1, data2);
+                        break;
+                    case ShortMessage.POLY_PRESSURE:
+                        channels[channel].setPolyPressure(data1, data2);
+                        break;
+                    case ShortMessage.CONTROL_CHANGE:
+                        channels[channel].controlChange(data1, data2);
+                        break;
+                    case ShortMessage.PROGRAM_CHANGE:
+                        channels[channel].programChange(data1);
+                        break;
+                    case ShortMessage.CHANNEL_PRESSURE:
+                        channels[channel].setChannelPressure(data1);
+                        break;
+                    case ShortMessage.PITCH_BEND:
+                        channels[channel].setPitchBend(data1 | (data2 << 7));
+                        break;
+                    default:
+                        logger.log(Level.DEBUG, "unhandled short: %02X".formatted(command));
                 }
-                case SysexMessage sysexMessage -> {
-                    byte[] data = sysexMessage.getData();
+            }
+            case SysexMessage sysexMessage -> {
+                byte[] data = sysexMessage.getData();
 logger.log(Level.TRACE, "sysex: %02X\n%s".formatted(sysexMessage.getStatus(), StringUtil.getDump(data, 32)));
-                    switch (data[0]) {
-                        case 0x7f -> { // Universal Realtime
-                            int c = data[1]; // 0x7f: Disregards channel
-                            // Sub-ID, Sub-ID2
-                            if (data[2] == 0x04 && data[3] == 0x01) { // Device Control / Master Volume
-                                float gain = ((data[4] & 0x7f) | ((data[5] & 0x7f) << 7)) / 16383f;
+                switch (data[0]) {
+                    case 0x7f -> { // Universal Realtime
+                        int c = data[1]; // 0x7f: Disregards channel
+                        // Sub-ID, Sub-ID2
+                        if (data[2] == 0x04 && data[3] == 0x01) { // Device Control / Master Volume
+                            float gain = ((data[4] & 0x7f) | ((data[5] & 0x7f) << 7)) / 16383f;
 logger.log(Level.DEBUG, "sysex volume: gain: %4.2f".formatted(gain));
-                                volume(line, gain);
-                            }
+                            volume(line, gain);
                         }
-                        case 0x7d -> { // test
-                            switch (data[1]) {
-                                case 0x10: // 7D 10 ch -- set an instrument to ch
-                                    // TODO maybe for LUCAS only
+                    }
+                    case 0x7d -> { // test
+                        switch (data[1]) {
+                            case 0x10: // 7D 10 ch -- set an instrument to ch
+                                // TODO maybe for LUCAS only
 if (!(type instanceof LucasFile)) {
  logger.log(Level.WARNING, "sysex: set LUCAS_STYLE for " + type);
 }
-                                    adlib.style = Adlib.LUCAS_STYLE | Adlib.MIDI_STYLE;
+                                adlib.style = Adlib.LUCAS_STYLE | Adlib.MIDI_STYLE;
 
-                                    int c = data[2];
-                                    System.arraycopy(MidPlayer.fromSysex(data), 0, channels[c].ins, 0, 11);
+                                int c = data[2];
+                                System.arraycopy(MidPlayer.fromSysex(data), 0, channels[c].ins, 0, 11);
 logger.log(Level.DEBUG, "sysex lucas ins ch: %d".formatted(c));
 
-                                    break;
-                            }
+                                break;
                         }
-                        default -> logger.log(Level.DEBUG, "sysex unhandled: %02x".formatted(data[1]));
                     }
+                    default -> logger.log(Level.DEBUG, "sysex unhandled: %02x".formatted(data[1]));
                 }
-                case MetaMessage metaMessage -> {
+            }
+            case MetaMessage metaMessage -> {
 logger.log(Level.DEBUG, "meta: %02x".formatted(metaMessage.getType()));
-                    switch (metaMessage.getType()) {
-                        case 0x2f -> {}
-                    }
-                }
-                case null, default -> {
-                    assert false;
+                switch (metaMessage.getType()) {
+                    case 0x2f -> {}
                 }
             }
+            case null, default -> {
+                assert false;
+            }
+        }
+    }
+
+    private final List<Receiver> receivers = new ArrayList<>();
+
+    private class Opl3Receiver implements MidiDeviceReceiver {
+        @SuppressWarnings("hiding")
+        private boolean isOpen;
+
+        public Opl3Receiver() {
+            receivers.add(this);
+            isOpen = true;
+        }
+
+        /**
+         * with an internal opl3, messages are applied by the render thread (or the reader of the stream)
+         * at the frame of the time-stamp on {@link #getMicrosecondPosition()}, immediately when it is -1 or passed.
+         */
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (!isOpen) throw new IllegalStateException("receiver is not open");
+
+            if (line == null && !streaming) {
+                process(message);
+            } else {
+                long frame = timeStamp < 0 ? rendered : toFrames(timeStamp);
+                events.add(new Event(frame, sequence.getAndIncrement(), message));
+            }
         }
 
         @Override
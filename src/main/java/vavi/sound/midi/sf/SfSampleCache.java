@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.midi.sf;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.Synthesizer;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.media.sound.ModelByteBuffer;
+import com.sun.media.sound.SF2Instrument;
+import com.sun.media.sound.SF2InstrumentRegion;
+import com.sun.media.sound.SF2LayerRegion;
+import com.sun.media.sound.SF2Sample;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * SfSampleCache. loads instruments of a lazy {@link SfSoundbank} into a
+ * synthesizer within a budget of sample memory.
+ * <p>
+ * gervill reads the file backed samples of an instrument when it is loaded.
+ * samples of unloaded instruments are kept for reloading until the budget
+ * is exceeded, then they are unloaded least recently used first, except the
+ * ones shared with loaded instruments. loaded instruments are never evicted,
+ * the budget can be exceeded by them.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class SfSampleCache {
+
+    private static final Logger logger = getLogger(SfSampleCache.class.getName());
+
+    /** bytes */
+    private final long maxBytes;
+
+    /** file backed sample buffers by instrument, in access order */
+    private final Map<Instrument, List<ModelByteBuffer>> instruments = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** loaded into the synthesizer */
+    private final Set<Instrument> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** */
+    private long evictions;
+
+    /**
+     * @param maxBytes budget of the samples read
+     */
+    public SfSampleCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the result of {@link Synthesizer#loadInstrument(Instrument)}
+     */
+    public synchronized boolean loadInstrument(Synthesizer synthesizer, Instrument instrument) {
+        if (!synthesizer.loadInstrument(instrument)) {
+            return false;
+        }
+        instruments.put(instrument, buffers(instrument));
+        loaded.add(instrument);
+        evict();
+        return true;
+    }
+
+    /** the samples are kept until evicted */
+    public synchronized void unloadInstrument(Synthesizer synthesizer, Instrument instrument) {
+        synthesizer.unloadInstrument(instrument);
+        loaded.remove(instrument);
+        evict();
+    }
+
+    /** @return bytes of the samples read */
+    public synchronized long getLoadedBytes() {
+        long bytes = 0;
+        for (ModelByteBuffer buffer : roots(false)) {
+            if (buffer.array() != null) {
+                bytes += buffer.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /** @return instruments whose samples are unloaded */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** unloads samples of unloaded instruments, least recently used first */
+    private void evict() {
+        long bytes = getLoadedBytes();
+        Set<ModelByteBuffer> used = roots(true);
+        Iterator<Map.Entry<Instrument, List<ModelByteBuffer>>> i = instruments.entrySet().iterator();
+        while (bytes > maxBytes && i.hasNext()) {
+            Map.Entry<Instrument, List<ModelByteBuffer>> entry = i.next();
+            if (loaded.contains(entry.getKey())) {
+                continue;
+            }
+            for (ModelByteBuffer buffer : entry.getValue()) {
+                if (buffer.array() != null && !used.contains(buffer)) {
+                    buffer.unload();
+                    bytes -= buffer.capacity();
+                }
+            }
+            i.remove();
+            evictions++;
+logger.log(Level.DEBUG, "evicted: " + entry.getKey().getName() + ", " + bytes + " bytes left");
+        }
+    }
+
+    /**
+     * distinct roots, not touching the access order.
+     *
+     * @param loadedOnly of the loaded instruments only
+     */
+    private Set<ModelByteBuffer> roots(boolean loadedOnly) {
+        Set<ModelByteBuffer> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Instrument, List<ModelByteBuffer>> entry : instruments.entrySet()) {
+            if (!loadedOnly || loaded.contains(entry.getKey())) {
+                roots.addAll(entry.getValue());
+            }
+        }
+        return roots;
+    }
+
+    /** file backed roots of the sample buffers of an instrument */
+    private static List<ModelByteBuffer> buffers(Instrument instrument) {
+        List<ModelByteBuffer> buffers = new ArrayList<>();
+        if (instrument instanceof SF2Instrument sf2Instrument) {
+            for (SF2InstrumentRegion region : sf2Instrument.getRegions()) {
+                for (SF2LayerRegion layerRegion : region.getLayer().getRegions()) {
+                    SF2Sample sample = layerRegion.getSample();
+                    for (ModelByteBuffer buffer : new ModelByteBuffer[] {sample.getDataBuffer(), sample.getData24Buffer()}) {
+                        if (buffer != null && buffer.getRoot().getFile() != null && !buffers.contains(buffer.getRoot())) {
+                            buffers.add(buffer.getRoot());
+                        }
+                    }
+                }
+            }
+        }
+        return buffers;
+    }
+}
@@ -13,6 +13,7 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.sun.media.sound.ModelByteBuffer;
 import com.sun.media.sound.ModelPatch;
 import com.sun.media.sound.SF2GlobalRegion;
 import com.sun.media.sound.SF2Instrument;
@@ -39,6 +40,10 @@ import static vavi.sound.sf.SFont.Generator.Gen_VelRange;
  * mirrors the zone semantics of the JDK's own SF2 reader: a zone whose
  * generators carry a sample/instrument id becomes a region, a zone
  * without one becomes the global zone.
+ * <p>
+ * samples of a {@link SFont.SoundFont#setLazy(boolean) lazy} soundfont are
+ * file backed, they are read when an instrument using them is loaded into
+ * the synthesizer, see {@link SfSampleCache} for unloading them.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 2026-07-04 nsano initial version <br>
@@ -63,9 +68,14 @@ public class SfSoundbank {
         for (SFont.Sample s : sf.getSamples()) {
             SF2Sample sample = new SF2Sample(sf2);
             sample.setName(s.name);
-            byte[] data = new byte[s.sampleDataSize * Short.BYTES];
-            ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.sampleData, 0, s.sampleDataSize);
-            sample.setData(data);
+            if (s.sampleData == null && s.sampleView != null && sf.getFile() != null) {
+                // lazy, gervill reads it when an instrument using it is loaded
+                sample.setData(new ModelByteBuffer(sf.getFile(), s.filePos, (long) s.numSamples() * Short.BYTES));
+            } else {
+                byte[] data = new byte[s.numSamples() * Short.BYTES];
+                ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.getSampleData());
+                sample.setData(data);
+            }
             sample.setSampleRate(s.samplerate);
             sample.setOriginalPitch(s.origpitch);
             sample.setPitchCorrection((byte) s.pitchadj);
@@ -11,15 +11,26 @@ import javax.sound.midi.Soundbank;
 import javax.sound.midi.spi.SoundbankReader;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import vavi.sound.sf.SFont;
 
@@ -32,6 +43,10 @@ import vavi.sound.sf.SFont;
  * decoders for the compressed samples are discovered via
  * {@code javax.sound.sampled} spi, e.g. tritonus-pvorbis for SF3 and
  * a flac provider for SF4.
+ * <p>
+ * a stream is read chunk by chunk, the smpl chunk is spilled to a
+ * temporary file and memory mapped, so the bank is not held in the heap
+ * twice. a file is read through a {@link FileChannel} directly.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 2026-07-04 nsano initial version <br>
@@ -63,31 +78,52 @@ public class SfSoundbankReader extends SoundbankReader {
         }
         stream.mark(SNIFF_LENGTH);
         byte[] head = stream.readNBytes(SNIFF_LENGTH);
+        stream.reset();
         if (!isCompressedSoundFont(head)) {
-            stream.reset();
             return null;
         }
-        byte[] rest = stream.readAllBytes();
-        byte[] data = new byte[head.length + rest.length];
-        System.arraycopy(head, 0, data, 0, head.length);
-        System.arraycopy(rest, 0, data, head.length, rest.length);
 
-        SFont.SoundFont sf = new SFont.SoundFont(new ByteArrayChannel(data), "SF");
-        sf.read();
-        return SfSoundbank.toSoundbank(sf);
+        // only the smpl chunk is large, it goes to a temporary file
+        Path smpl = Files.createTempFile("sf-", ".smpl");
+        try (SpilledChannel channel = SpilledChannel.spill(stream, smpl)) {
+            SFont.SoundFont sf = new SFont.SoundFont(channel, "SF");
+            sf.read();
+            return SfSoundbank.toSoundbank(sf);
+        } finally {
+            try {
+                Files.deleteIfExists(smpl);
+            } catch (IOException e) {
+                // still mapped on some platforms
+                smpl.toFile().deleteOnExit();
+            }
+        }
     }
 
     @Override
     public Soundbank getSoundbank(File file) throws InvalidMidiDataException, IOException {
-        try (InputStream is = Files.newInputStream(file.toPath())) {
-            byte[] head = is.readNBytes(SNIFF_LENGTH);
-            if (!isCompressedSoundFont(head)) {
+        return getSoundbank(file.toPath());
+    }
+
+    /**
+     * reads from a {@link FileChannel} directly, nothing but the samples
+     * decoded are held in the heap.
+     *
+     * @return null when not an sf3 nor an sf4
+     */
+    public Soundbank getSoundbank(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(SNIFF_LENGTH);
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // fill
+            }
+            if (!isCompressedSoundFont(Arrays.copyOf(head.array(), head.position()))) {
                 return null;
             }
+            channel.position(0);
+            SFont.SoundFont sf = new SFont.SoundFont(channel, path.getFileName().toString());
+            sf.read();
+            return SfSoundbank.toSoundbank(sf);
         }
-        SFont.SoundFont sf = new SFont.SoundFont(file);
-        sf.read();
-        return SfSoundbank.toSoundbank(sf);
     }
 
     /** true for RIFF/sfbk with an ifil version major of 3 (vorbis) or 4 (flac) */
@@ -117,26 +153,87 @@ public class SfSoundbankReader extends SoundbankReader {
         return true;
     }
 
-    /** read-only in-memory channel */
-    private static class ByteArrayChannel implements SeekableByteChannel {
+    /**
+     * read-only channel over a riff stream read chunk by chunk, the smpl chunk
+     * is spilled to a file and memory mapped, the others are in the heap.
+     */
+    private static class SpilledChannel implements SeekableByteChannel {
 
-        private final byte[] data;
-        private int position;
+        /** in the order of the stream */
+        private final List<ByteBuffer> segments = new ArrayList<>();
+
+        /** */
+        private final long size;
+
+        private long position;
         private boolean open = true;
 
-        ByteArrayChannel(byte[] data) {
-            this.data = data;
+        private SpilledChannel(List<ByteBuffer> segments) {
+            this.segments.addAll(segments);
+            this.size = segments.stream().mapToLong(ByteBuffer::capacity).sum();
+        }
+
+        /**
+         * @param smpl a temporary file for the smpl chunk
+         */
+        static SpilledChannel spill(InputStream is, Path smpl) throws IOException {
+            List<ByteBuffer> segments = new ArrayList<>();
+            ByteArrayOutputStream heap = new ByteArrayOutputStream();
+            DataInputStream dis = new DataInputStream(is);
+
+            byte[] header = new byte[12];
+            dis.readFully(header); // RIFF, size, sfbk
+            heap.write(header);
+            long remaining = (ByteBuffer.wrap(header, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xffffffffL) - 4;
+            while (remaining > 0) {
+                dis.readFully(header); // LIST, size, type
+                heap.write(header);
+                long listLength = ByteBuffer.wrap(header, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xffffffffL;
+                remaining -= 8 + listLength;
+                long listRemaining = listLength - 4;
+                while (listRemaining > 0) {
+                    dis.readFully(header, 0, 8);
+                    heap.write(header, 0, 8);
+                    long length = ByteBuffer.wrap(header, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xffffffffL;
+                    listRemaining -= 8 + length;
+                    if (matches(header, 0, "smpl")) {
+                        segments.add(ByteBuffer.wrap(heap.toByteArray()));
+                        heap.reset();
+                        try (FileChannel channel = FileChannel.open(smpl, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                            long n = channel.transferFrom(Channels.newChannel(is), 0, length);
+                            if (n != length) {
+                                throw new EOFException("smpl: " + n + "/" + length);
+                            }
+                            segments.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+                        }
+                    } else {
+                        heap.write(dis.readNBytes(Math.toIntExact(length)));
+                    }
+                }
+            }
+            segments.add(ByteBuffer.wrap(heap.toByteArray()));
+            return new SpilledChannel(segments);
         }
 
         @Override
         public int read(ByteBuffer dst) throws IOException {
             if (!open) throw new ClosedChannelException();
-            if (position >= data.length) {
+            if (position >= size) {
                 return -1;
             }
-            int n = Math.min(dst.remaining(), data.length - position);
-            dst.put(data, position, n);
-            position += n;
+            int n = 0;
+            long start = 0;
+            for (ByteBuffer segment : segments) {
+                long end = start + segment.capacity();
+                if (position < end && dst.hasRemaining()) {
+                    int offset = (int) (position - start);
+                    int l = (int) Math.min(dst.remaining(), end - position);
+                    dst.put(segment.slice(offset, l));
+                    position += l;
+                    n += l;
+                }
+                start = end;
+            }
             return n;
         }
 
@@ -152,13 +249,13 @@ public class SfSoundbankReader extends SoundbankReader {
 
         @Override
         public SeekableByteChannel position(long newPosition) {
-            position = (int) newPosition;
+            position = newPosition;
             return this;
         }
 
         @Override
         public long size() {
-            return data.length;
+            return size;
         }
 
         @Override
@@ -174,6 +271,7 @@ public class SfSoundbankReader extends SoundbankReader {
         @Override
         public void close() {
             open = false;
+            segments.clear();
         }
     }
 }
@@ -19,6 +19,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import vavi.sound.sf.SFZ;
 
@@ -56,18 +57,14 @@ public class SfzSoundbankReader extends SoundbankReader {
         }
         stream.mark(SNIFF_LENGTH);
         byte[] head = stream.readNBytes(SNIFF_LENGTH);
+        stream.reset();
         if (!isSfz(head)) {
-            stream.reset();
             return null;
         }
-        byte[] rest = stream.readAllBytes();
-        byte[] data = new byte[head.length + rest.length];
-        System.arraycopy(head, 0, data, 0, head.length);
-        System.arraycopy(rest, 0, data, head.length, rest.length);
 
         Path tempFile = Files.createTempFile("sfz-", ".sfz");
         try {
-            Files.write(tempFile, data);
+            Files.copy(stream, tempFile, StandardCopyOption.REPLACE_EXISTING);
             SFZ sfz = SFZ.read(tempFile);
             return SfzSoundbank.getSoundbank(sfz, null);
         } finally {
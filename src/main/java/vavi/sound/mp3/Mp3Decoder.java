@@ -26,35 +26,50 @@ class Mp3Decoder {
 
     private static final Logger logger = getLogger(Mp3Decoder.class.getName());
 
-    /** */
-    private record GrInfo(int length, int bigValues, int gain) {
+    /** mutable, reused for every granule */
+    private static class GrInfo {
+        int length;
+        int bigValues;
+        int gain;
+
+        void set(int length, int bigValues, int gain) {
+            this.length = length;
+            this.bigValues = bigValues;
+            this.gain = gain;
+        }
 
         @Override
         public String toString() {
-                return new StringJoiner(", ", GrInfo.class.getSimpleName() + "[", "]")
-                        .add("length=" + length)
-                        .add("bigValues=" + bigValues)
-                        .add("gain=" + gain)
-                        .toString();
-            }
+            return new StringJoiner(", ", GrInfo.class.getSimpleName() + "[", "]")
+                    .add("length=" + length)
+                    .add("bigValues=" + bigValues)
+                    .add("gain=" + gain)
+                    .toString();
         }
+    }
 
     /** */
     static class MpegDecodeParam {
         MpegHeader header;
         /** mp3 */
         byte[] inputBuf;
+        /** offset of the frame header in {@link #inputBuf} */
+        int inputOffset;
         int inputSize;
         /** pcm */
         byte[] outputBuf;
+        /** offset in {@link #outputBuf} */
+        int outputOffset;
         int outputSize;
 
         @Override public String toString() {
             return new StringJoiner(", ", MpegDecodeParam.class.getSimpleName() + "[", "]")
                     .add("header=" + header)
                     .add("inputBuf=" + Arrays.toString(inputBuf))
+                    .add("inputOffset=" + inputOffset)
                     .add("inputSize=" + inputSize)
                     .add("outputBuf=" + Arrays.toString(outputBuf))
+                    .add("outputOffset=" + outputOffset)
                     .add("outputSize=" + outputSize)
                     .toString();
         }
@@ -136,15 +151,21 @@ class Mp3Decoder {
         final int mode;
         /** Gets header information. */
         public MpegHeader(byte[] buf, int offset) {
-logger.log(Level.DEBUG, "offset: " + offset);
+//logger.log(Level.TRACE, "offset: " + offset);
             this.version   = (buf[offset + 1] & 0x18) >> 3;
             this.layer     = (buf[offset + 1] & 0x06) >> 1;
-            this.bitrate   = m_bitrate[3 - layer][(buf[offset + 2] & 0xf0) >> 4];
+            this.bitrate   = bitrate(buf, offset);
             this.frequency = m_frequency[version == 3 ? 0 : 1][(buf[offset + 2] & 0x0c) >> 2];
             this.mode      = (buf[offset + 3] & 0xc0) >> 6;
 //logger.log(Level.TRACE, this);
         }
 
+        /** Gets the bit rate [kbit/s] without creating a header object. */
+        static int bitrate(byte[] buf, int offset) {
+            int layer = (buf[offset + 1] & 0x06) >> 1;
+            return m_bitrate[3 - layer][(buf[offset + 2] & 0xf0) >> 4];
+        }
+
         @Override public String toString() {
             return new StringJoiner(", ", MpegHeader.class.getSimpleName() + "[", "]")
                     .add("version=" + version)
@@ -174,6 +195,33 @@ logger.log(Level.DEBUG, "offset: " + offset);
     private int m_freq;
     private int m_frame_size;
     private int m_pcm_size;
+    /** hybrid filter bank tables are built */
+    private boolean m_initialized;
+
+    // work areas, reused for every frame
+
+    /** side information */
+    private final GrInfo[][] m_info = new GrInfo[GR_MAX][CH_MAX];
+    /** huffman decoded values */
+    private final int[] m_dec = new int[GR_SIZE];
+    /** dequantized spectrum */
+    private final float[] m_spec = new float[GR_SIZE];
+    /** synthesized samples */
+    private final float[] m_sample = new float[GR_SIZE];
+    /** sub band samples */
+    private final float[][] m_sbsamp = new float[SS_SIZE][SB_SIZE];
+    /** imdct output */
+    private final float[] m_sampnow = new float[SCALE_BLOCK];
+    /** synthesis window output */
+    private final float[] m_w = new float[HAN_SIZE];
+
+    {
+        for (GrInfo[] infos : m_info) {
+            for (int ch = 0; ch < CH_MAX; ch++) {
+                infos[ch] = new GrInfo();
+            }
+        }
+    }
 
     /**
      * searches nearest sync address.
@@ -249,7 +297,18 @@ logger.log(Level.DEBUG, "offset: " + offset);
 
         m_channels = (header.mode == 3) ? 1 : 2;
 
-        l3dhybrid_init();
+        if (!m_initialized) {
+            l3dhybrid_init();
+            m_initialized = true;
+        }
+    }
+
+    /**
+     * Gets the frame size in bytes of the frame starts at offset.
+     * the padding slot is not included, the same as {@link #decode(MpegDecodeParam)}.
+     */
+    int getFrameSize(byte[] mpeg, int offset) {
+        return (144 * MpegHeader.bitrate(mpeg, offset) * 1000) / m_freq;
     }
 
     /**
@@ -260,18 +319,14 @@ logger.log(Level.DEBUG, "offset: " + offset);
             throw new IllegalArgumentException("inputSize: " + param.inputSize + " <= 4");
         }
 
-        param.header = new MpegHeader(param.inputBuf, 0);
-
-        MpegHeader header = param.header;
-
-        m_frame_size = (144 * header.bitrate * 1000) / m_freq;
-logger.log(Level.DEBUG, "m_frame_size: " + m_frame_size + ", bitrate: "+ header.bitrate);
+        m_frame_size = getFrameSize(param.inputBuf, param.inputOffset);
+//logger.log(Level.TRACE, "m_frame_size: " + m_frame_size);
 
-        if (param.inputSize < m_frame_size) {
+        if (m_frame_size <= 0 || param.inputSize < m_frame_size) {
             throw new IllegalArgumentException("inputSize: " + param.inputSize + " < frameSize: " + m_frame_size);
         }
 
-        decode_frame(param.outputBuf, param.inputBuf);
+        decode_frame(param.outputBuf, param.outputOffset, param.inputBuf, param.inputOffset);
 
         param.inputSize = m_frame_size;
         param.outputSize = m_pcm_size;
@@ -280,19 +335,21 @@ logger.log(Level.DEBUG, "m_frame_size: " + m_frame_size + ", bitrate: "+ header.
 
     /**
      * @param outBuf pcm
+     * @param out_p offset of outBuf
      * @param inBuf mp3
+     * @param in_p offset of inBuf
      */
-    private void decode_frame(byte[] outBuf, byte[] inBuf) {
+    private void decode_frame(byte[] outBuf, int out_p, byte[] inBuf, int in_p) {
         int main_pos_bit = 0;
         int channels = m_channels;
-        GrInfo[][] info = new GrInfo[GR_MAX][CH_MAX];
-        int[] dec = new int[GR_SIZE];
-        float[] spec = new float[GR_SIZE];
-        float[] sample = new float[GR_SIZE];
+        GrInfo[][] info = m_info;
+        int[] dec = m_dec;
+        float[] spec = m_spec;
+        float[] sample = m_sample;
 
-        int inBuf_pointer = 0;
+        int inBuf_pointer = in_p;
 
-        bitget_init(inBuf, 4);
+        bitget_init(inBuf, in_p + 4);
 
         int side_size = l3dstream_sideinfo(info, channels);
         inBuf_pointer += (4 + side_size);
@@ -331,7 +388,7 @@ logger.log(Level.DEBUG, "m_frame_size: " + m_frame_size + ", bitrate: "+ header.
                         sample[i] = (float) (-1.0 + 1.0e-5);
                     }
 
-                    outBuf[(((gr * GR_SIZE) + i) * channels) + ch] = (byte) (sample[i] * (SCALE - 1));
+                    outBuf[out_p + (((gr * GR_SIZE) + i) * channels) + ch] = (byte) (sample[i] * (SCALE - 1));
                 }
             }
         }
@@ -383,8 +440,8 @@ logger.log(Level.DEBUG, "m_frame_size: " + m_frame_size + ", bitrate: "+ header.
 
         for (int gr = 0; gr < 2; gr++) {
             for (int ch = 0; ch < channels; ch++) {
-                info[gr][ch] = new GrInfo(bitget(12), bitget(9), bitget(8));
-logger.log(Level.DEBUG, info[gr][ch]);
+                info[gr][ch].set(bitget(12), bitget(9), bitget(8));
+logger.log(Level.TRACE, info[gr][ch]);
                 bitget(4);
                 bitget(1);
                 bitget(5);
@@ -668,7 +725,7 @@ logger.log(Level.DEBUG, info[gr][ch]);
 
         if (m_bits < n) {
             while (m_bits <= 24) {
-logger.log(Level.DEBUG, "%02x".formatted(base[m_bs_ptr]));
+//logger.log(Level.TRACE, "%02x".formatted(base[m_bs_ptr]));
                 m_bitbuf = ((m_bitbuf << 8)) | (base[m_bs_ptr++] & 0xff);
                 m_bits += 8;
             }
@@ -741,7 +798,7 @@ logger.log(Level.DEBUG, "%02x".formatted(base[m_bs_ptr]));
      * hybrid filter bank
      */
     private void l3dhybrid(float[] sample, float[] spec, int ch) {
-        float[][] sbsamp = new float[SS_SIZE][SB_SIZE];
+        float[][] sbsamp = m_sbsamp;
 
         // butterfly computation
         l3dalias(spec);
@@ -772,7 +829,7 @@ logger.log(Level.DEBUG, "%02x".formatted(base[m_bs_ptr]));
      * IMDCT
      */
     private void l3imdct(float[][] samp, float[][] sampprv, float[] spec) {
-        float[] sampnow = new float[SCALE_BLOCK];
+        float[] sampnow = m_sampnow;
 
         for (int sb = 0; sb < SB_SIZE; sb++) {
             imdct(spec, sb * SS_SIZE, sampnow);
@@ -1019,7 +1076,7 @@ logger.log(Level.DEBUG, "%02x".formatted(base[m_bs_ptr]));
      */
     private void l3dsubband(float[] sample, int sample_p, float[] s, int ch) {
         float coef = -1.0f;
-        float[] w = new float[512];
+        float[] w = m_w;
 
         // frequency band signal calculation (IDCT,32×64)
         for (int i = 0; i < SCALE_RANGE; i++) {
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.mp3;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Mp3FrameIndex. Frame offset table of an mp3 file.
+ * <p>
+ * when the first frame is a Xing (Info) or VBRI header, the frame count and the table of contents
+ * in it are used, otherwise all frame headers are walked once over a memory-mapped file.
+ * offsets by a table of contents are approximated, the stream re-syncs there.
+ * an index is immutable and can be shared by streams of the same file.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class Mp3FrameIndex {
+
+    private static final Logger logger = getLogger(Mp3FrameIndex.class.getName());
+
+    /** [version == 3 ? 0 : 1][layer] */
+    private static final int[][] samplesPerFrameTable = {
+        // mpeg1.0: reserved, layer3, layer2, layer1
+        { 0, 1152, 1152, 384 },
+        // mpeg2.0, 2.5
+        { 0, 576, 1152, 384 }
+    };
+
+    /** [version][frequency index], version: 2.5, reserved, 2, 1 */
+    private static final int[][] frequencyTable = {
+        { 11025, 12000, 8000 },
+        { 0, 0, 0 },
+        { 22050, 24000, 16000 },
+        { 44100, 48000, 32000 }
+    };
+
+    /** [version == 3 ? 0 : 1][layer][bit rate index] kbps */
+    private static final int[][][] bitrateTable = {
+        {
+            {},
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, -1 },
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384, -1 },
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448, -1 }
+        },
+        {
+            {},
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, -1 },
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, -1 },
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256, -1 }
+        }
+    };
+
+    /** sampling rate [Hz] */
+    private final int frequency;
+    /** pcm samples per frame (per channel) */
+    private final int samplesPerFrame;
+    /** number of audio frames */
+    private final int frames;
+    /** exact frame offsets, null when {@link #toc} is used */
+    private final long[] offsets;
+    /** first audio frame offset */
+    private final long dataStart;
+    /** audio data length in bytes */
+    private final long dataLength;
+    /** toc[i] = frame offset at i / toc.length of frames, relative to {@link #dataStart} */
+    private final long[] toc;
+
+    private Mp3FrameIndex(int frequency, int samplesPerFrame, int frames, long[] offsets, long dataStart, long dataLength, long[] toc) {
+        this.frequency = frequency;
+        this.samplesPerFrame = samplesPerFrame;
+        this.frames = frames;
+        this.offsets = offsets;
+        this.dataStart = dataStart;
+        this.dataLength = dataLength;
+        this.toc = toc;
+    }
+
+    /** number of audio frames */
+    public int getFrames() {
+        return frames;
+    }
+
+    /** sampling rate [Hz] */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    /** pcm samples per frame (per channel) */
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /** total pcm samples (per channel) */
+    public long getTotalSamples() {
+        return (long) frames * samplesPerFrame;
+    }
+
+    /** duration [µs] */
+    public long getMicrosecondLength() {
+        return getTotalSamples() * 1_000_000L / frequency;
+    }
+
+    /** whether {@link #getOffset(int)} is exact or approximated by a table of contents */
+    public boolean isExact() {
+        return offsets != null;
+    }
+
+    /**
+     * frames which an approximated {@link #getOffset(int)} may be ahead of the real frame,
+     * 0 when exact. a table of contents entry covers that many frames.
+     */
+    public int getTolerance() {
+        if (offsets != null) {
+            return 0;
+        }
+        return toc.length > 1 ? (frames + toc.length - 1) / toc.length + 1 : 1;
+    }
+
+    /** frame which contains the sample */
+    public int getFrame(long sample) {
+        return (int) Math.min(sample / samplesPerFrame, frames);
+    }
+
+    /**
+     * @param frame 0 origin
+     * @return absolute byte offset of the frame in the file
+     */
+    public long getOffset(int frame) {
+        if (frame < 0 || frame > frames) {
+            throw new IndexOutOfBoundsException(frame + " / " + frames);
+        }
+        if (offsets != null) {
+            return frame == frames ? dataStart + dataLength : offsets[frame];
+        }
+        // linear interpolation between toc entries
+        double position = (double) frame * toc.length / frames;
+        int i = (int) position;
+        long a = i < toc.length ? toc[i] : dataLength;
+        long b = i + 1 < toc.length ? toc[i + 1] : dataLength;
+        return dataStart + a + (long) ((position - i) * (b - a));
+    }
+
+    /**
+     * Creates an index of the file.
+     * @throws IOException when no frame is found, or the file is over 2 GiB
+     */
+    public static Mp3FrameIndex of(Path path) throws IOException {
+        return of(path, false);
+    }
+
+    /**
+     * Creates an exact index of the file, the table of contents in a vbr header is not used.
+     * @throws IOException when no frame is found, or the file is over 2 GiB
+     */
+    public static Mp3FrameIndex scan(Path path) throws IOException {
+        return of(path, true);
+    }
+
+    /** */
+    private static Mp3FrameIndex of(Path path, boolean exact) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("too large to index, over 2 GiB: " + size + " bytes, " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return of(buffer, exact);
+        }
+    }
+
+    /**
+     * Creates an index of an mp3 image.
+     * @param buffer position 0 must be the beginning of the file
+     * @param exact when true, all frame headers are walked even if there is a vbr header
+     * @throws IOException when no frame is found
+     */
+    public static Mp3FrameIndex of(ByteBuffer buffer, boolean exact) throws IOException {
+        int limit = buffer.limit();
+
+        int first = findFrame(buffer, skipId3v2(buffer), limit);
+        if (first < 0) {
+            throw new IOException("no frame found");
+        }
+        int header = buffer.getInt(first);
+        int frequency = frequency(header);
+        int samplesPerFrame = samplesPerFrame(header);
+
+        // Xing, Info or VBRI
+        Mp3FrameIndex index = ofVbrHeader(buffer, first, header, frequency, samplesPerFrame);
+        if (index != null) {
+logger.log(Level.DEBUG, "vbr header: " + index);
+            if (!exact) {
+                return index;
+            }
+            // vbr header frame is not an audio frame
+            first = findFrame(buffer, first + frameSize(header), limit);
+            if (first < 0) {
+                throw new IOException("no audio frame found");
+            }
+        }
+
+        // walk all frames
+        long[] offsets = new long[Math.max(16, limit / Math.max(1, frameSize(header)))];
+        int frames = 0;
+        int p = first;
+        while (p >= 0 && p + 4 <= limit) {
+            int frameSize = frameSize(buffer.getInt(p));
+            if (p + frameSize > limit) {
+                break;
+            }
+            if (frames == offsets.length) {
+                offsets = Arrays.copyOf(offsets, frames * 2);
+            }
+            offsets[frames++] = p;
+            int next = p + frameSize;
+            p = next + 4 <= limit && isHeader(buffer.getInt(next)) ? next : findFrame(buffer, next, limit);
+        }
+        long dataLength = (frames > 0 ? offsets[frames - 1] + frameSize(buffer.getInt((int) offsets[frames - 1])) : first) - first;
+        index = new Mp3FrameIndex(frequency, samplesPerFrame, frames, Arrays.copyOf(offsets, frames), first, dataLength, null);
+logger.log(Level.DEBUG, "scanned: " + index);
+        return index;
+    }
+
+    /** @return true when the frame at first is a Xing, Info or VBRI header, not an audio frame */
+    static boolean isVbrHeader(ByteBuffer buffer, int first) {
+        int header = buffer.getInt(first);
+        return ofVbrHeader(buffer, first, header, frequency(header), samplesPerFrame(header)) != null;
+    }
+
+    /** @return null when there is no vbr header */
+    private static Mp3FrameIndex ofVbrHeader(ByteBuffer buffer, int first, int header, int frequency, int samplesPerFrame) {
+        boolean mpeg1 = version(header) == 3;
+        boolean mono = ((header >> 6) & 3) == 3;
+        int frameSize = frameSize(header);
+        int limit = buffer.limit();
+
+        // Xing, Info
+        int p = first + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        if (p + 8 <= limit && (tagIs(buffer, p, "Xing") || tagIs(buffer, p, "Info"))) {
+            int flags = buffer.getInt(p + 4);
+            p += 8;
+            int frames = -1;
+            long bytes = -1;
+            long[] toc = null;
+            if ((flags & 0x01) != 0 && p + 4 <= limit) {
+                frames = buffer.getInt(p);
+                p += 4;
+            }
+            if ((flags & 0x02) != 0 && p + 4 <= limit) {
+                bytes = buffer.getInt(p) & 0xffff_ffffL;
+                p += 4;
+            }
+            if (frames <= 0) {
+                return null;
+            }
+            long dataStart = first + frameSize;
+            long dataLength = bytes > 0 ? bytes - frameSize : limit - dataStart;
+            if ((flags & 0x04) != 0 && p + 100 <= limit) {
+                toc = new long[100];
+                for (int i = 0; i < 100; i++) {
+                    toc[i] = (buffer.get(p + i) & 0xff) * dataLength / 256;
+                }
+            } else {
+                // constant bit rate
+                toc = new long[] { 0 };
+            }
+            return new Mp3FrameIndex(frequency, samplesPerFrame, frames, null, dataStart, dataLength, toc);
+        }
+
+        // VBRI, always 32 bytes after the header
+        p = first + 4 + 32;
+        if (p + 26 <= limit && tagIs(buffer, p, "VBRI")) {
+            long bytes = buffer.getInt(p + 10) & 0xffff_ffffL;
+            int frames = buffer.getInt(p + 14);
+            int entries = buffer.getShort(p + 18) & 0xffff;
+            int scale = buffer.getShort(p + 20) & 0xffff;
+            int entrySize = buffer.getShort(p + 22) & 0xffff;
+            p += 26;
+            if (frames <= 0 || p + (long) entries * entrySize > limit) {
+                return null;
+            }
+            long dataStart = first + frameSize;
+            long dataLength = bytes - frameSize;
+            long[] toc = new long[entries + 1];
+            long offset = 0;
+            for (int i = 0; i < entries; i++) {
+                int value = 0;
+                for (int j = 0; j < entrySize; j++) {
+                    value = (value << 8) | (buffer.get(p++) & 0xff);
+                }
+                toc[i] = offset;
+                offset += (long) value * scale;
+            }
+            toc[entries] = Math.min(offset, dataLength);
+            return new Mp3FrameIndex(frequency, samplesPerFrame, frames, null, dataStart, dataLength, toc);
+        }
+
+        return null;
+    }
+
+    /** @return offset after an ID3v2 tag, 0 when there is no tag */
+    private static int skipId3v2(ByteBuffer buffer) {
+        if (buffer.limit() >= 10 && tagIs(buffer, 0, "ID3")) {
+            // syncsafe integer
+            int size = ((buffer.get(6) & 0x7f) << 21) | ((buffer.get(7) & 0x7f) << 14) |
+                       ((buffer.get(8) & 0x7f) << 7) | (buffer.get(9) & 0x7f);
+            return 10 + size + ((buffer.get(5) & 0x10) != 0 ? 10 : 0);
+        }
+        return 0;
+    }
+
+    /** @return absolute offset of the next valid frame header, -1 when not found */
+    private static int findFrame(ByteBuffer buffer, int start, int limit) {
+        for (int i = start; i + 4 <= limit; i++) {
+            if ((buffer.get(i) & 0xff) == 0xff && isHeader(buffer.getInt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean tagIs(ByteBuffer buffer, int p, String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (buffer.get(p + i) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** sync, version, layer, bit rate and frequency are valid */
+    static boolean isHeader(int header) {
+        return (header & 0xffe0_0000) == 0xffe0_0000 &&
+                version(header) != 1 &&
+                layer(header) != 0 &&
+                bitrateIndex(header) != 0 && bitrateIndex(header) != 15 &&
+                ((header >> 10) & 3) != 3;
+    }
+
+    private static int version(int header) {
+        return (header >> 19) & 3;
+    }
+
+    private static int layer(int header) {
+        return (header >> 17) & 3;
+    }
+
+    private static int bitrateIndex(int header) {
+        return (header >> 12) & 15;
+    }
+
+    private static int frequency(int header) {
+        return frequencyTable[version(header)][(header >> 10) & 3];
+    }
+
+    private static int samplesPerFrame(int header) {
+        return samplesPerFrameTable[version(header) == 3 ? 0 : 1][layer(header)];
+    }
+
+    /** frame size in bytes including the padding slot */
+    static int frameSize(int header) {
+        int bitrate = bitrateTable[version(header) == 3 ? 0 : 1][layer(header)][bitrateIndex(header)] * 1000;
+        int frequency = frequency(header);
+        int padding = (header >> 9) & 1;
+        if (layer(header) == 3) {
+            // layer1
+            return (12 * bitrate / frequency + padding) * 4;
+        } else {
+            return samplesPerFrame(header) / 8 * bitrate / frequency + padding;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", Mp3FrameIndex.class.getSimpleName() + "[", "]")
+                .add("frequency=" + frequency)
+                .add("samplesPerFrame=" + samplesPerFrame)
+                .add("frames=" + frames)
+                .add("exact=" + isExact())
+                .add("dataStart=" + dataStart)
+                .add("dataLength=" + dataLength)
+                .toString();
+    }
+}
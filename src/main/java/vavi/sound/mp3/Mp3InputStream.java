@@ -6,20 +6,28 @@
 
 package vavi.sound.mp3;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
-
-import vavi.util.StringUtil;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import static java.lang.System.getLogger;
 
 
 /**
  * Mp3InputStream.
+ * <p>
+ * {@link #read(byte[], int, int)} decodes whole frames as many as fit into the length.
+ * the source stream is read through a sliding window, and decoder work areas are reused,
+ * so no allocation is done per frame.
  * <li> TODO don't use {@link #read()} currently
  * 
  * @author 小杉 篤史 (Kosugi Atsushi)
@@ -37,12 +45,78 @@ public class Mp3InputStream extends FilterInputStream {
     /** */
     private final Mp3Decoder decoder = new Mp3Decoder();
 
+    /** reused for every frame */
+    private final Mp3Decoder.MpegDecodeParam param = new Mp3Decoder.MpegDecodeParam();
+
+    /** max layer3 frame size is 1441 bytes (320 kbps, 32 kHz, padded) */
+    private static final int WINDOW_SIZE = 8192;
+
+    /** sliding window over the source stream */
+    private final byte[] window = new byte[WINDOW_SIZE];
+    /** start of the unconsumed data in {@link #window} */
+    private int windowStart;
+    /** end of the valid data in {@link #window} */
+    private int windowEnd;
+    /** source stream reached the end */
+    private boolean eof;
+    /** absolute offset of {@link #window}[0] in the source */
+    private long windowPosition;
+    /** the position was moved, the next sync word is not trusted */
+    private boolean resync;
+
+    /** null when the source is not a file */
+    private FileChannel channel;
+    /** null when the source is not a file */
+    private Mp3FrameIndex index;
+    /** frames to be decoded and discarded before the seek target, for the overlap of the filter bank */
+    static final int WARM_UP_FRAMES = 2;
+    /** for seeking, lazy */
+    private byte[] scratch;
+
+    /** */
+    private final int totalFrames;
+
+    /**
+     * Opens the file with a frame index, seeking is done by the index.
+     * @throws IOException
+     */
+    public Mp3InputStream(Path path) throws IOException {
+        this(path, Mp3FrameIndex.of(path));
+    }
+
+    /**
+     * Opens the file with a prepared frame index.
+     * @param index an index of the path
+     * @throws IOException
+     */
+    public Mp3InputStream(Path path, Mp3FrameIndex index) throws IOException {
+        this(index, FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /** */
+    private Mp3InputStream(Mp3FrameIndex index, FileChannel channel) throws IOException {
+        this(new BufferedInputStream(Channels.newInputStream(channel)), index);
+        this.channel = channel;
+        // window starts from the first frame
+        seekToFrame(0, 0);
+    }
+
     /**
      * @throws IOException
      */
     public Mp3InputStream(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * @param index nullable
+     * @throws IOException
+     */
+    private Mp3InputStream(InputStream in, Mp3FrameIndex index) throws IOException {
         super(in);
 
+        this.index = index;
+
         // check stream
         if (!in.markSupported()) {
             throw new IllegalArgumentException("mark not supported");
@@ -66,12 +140,18 @@ public class Mp3InputStream extends FilterInputStream {
 logger.log(Level.DEBUG, "firstSyncAddress: %08x".formatted(firstSyncAddress));
         decodeInfo = decoder.getInfo(buf, firstSyncAddress, readBytes - firstSyncAddress);
 logger.log(Level.DEBUG, decodeInfo);
+        decoder.prepareDecode(buf, firstSyncAddress, readBytes - firstSyncAddress);
 
         //
         in.reset();
 logger.log(Level.DEBUG, "mp3 in.available(): " + in.available());
         int length = firstSyncAddress;
 //      int length = firstSyncAddress + 4 + (decodeInfo.header.mode != 3 ? 32 : 17);
+        // a xing, info or vbri header frame is not an audio frame, same as the frame index
+        ByteBuffer first = ByteBuffer.wrap(buf, 0, readBytes);
+        if (firstSyncAddress + 4 <= readBytes && Mp3FrameIndex.isVbrHeader(first, firstSyncAddress)) {
+            length += Mp3FrameIndex.frameSize(first.getInt(firstSyncAddress));
+        }
 logger.log(Level.DEBUG, "skip length: " + length);
         int skipBytes = 0;
         while (skipBytes < length) {
@@ -83,13 +163,13 @@ logger.log(Level.DEBUG, "skip length: " + length);
         }
 
         // collect data
-        int dataSize = size - firstSyncAddress;
-        int frames = dataSize / decodeInfo.inputSize;
+        int dataSize = size - length;
+        int frames = index != null ? index.getFrames() : dataSize / decodeInfo.inputSize;
 
         int channels = decodeInfo.channels;
         int frequency = decodeInfo.frequency;
         int bitRate = decodeInfo.bitRate;
-        int totalFrames = frames;
+        totalFrames = frames;
         int totalSamples = (frames * decodeInfo.outputSize * 8) / 16 / decodeInfo.channels;
         int totalSeconds = totalSamples / decodeInfo.frequency;
 
@@ -105,14 +185,34 @@ logger.log(Level.DEBUG, "totalSamples: " + totalSamples);
 logger.log(Level.DEBUG, "totalSeconds: " + totalSeconds + " [s]");
     }
 
+    /** total frames, accurate when the stream is created from a file */
+    public int getFrameLength() {
+        return totalFrames;
+    }
+
+    /** decoded pcm bytes of a frame */
+    int getOutputFrameSize() {
+        return decodeInfo.outputSize;
+    }
+
+    /** pcm samples per channel in a decoded frame */
+    private int getSamplesPerFrame() {
+        return (decodeInfo.outputSize * 8) / 16 / decodeInfo.channels;
+    }
+
+    /** duration [µs], accurate when the stream is created from a file */
+    public long getMicrosecondLength() {
+        return (long) totalFrames * getSamplesPerFrame() * 1_000_000L / decodeInfo.frequency;
+    }
+
     /**
      * @see java.io.InputStream#available()
      * @throws IOException
      */
     @Override
     public int available() throws IOException {
-logger.log(Level.DEBUG, "wave available: " + in.available() + ", " + decodeInfo.inputSize + ", " + decodeInfo.outputSize);
-        return in.available() / decodeInfo.inputSize * decodeInfo.outputSize;
+//logger.log(Level.TRACE, "wave available: " + in.available() + ", " + decodeInfo.inputSize + ", " + decodeInfo.outputSize);
+        return (in.available() + windowEnd - windowStart) / decodeInfo.inputSize * decodeInfo.outputSize;
     }
 
     /**
@@ -124,138 +224,219 @@ logger.log(Level.DEBUG, "wave available: " + in.available() + ", " + decodeInfo.
     }
 
     /**
+     * Decodes as many whole frames as fit into {@code length}.
      * @see java.io.InputStream#read(byte[], int, int)
      * @throws IllegalArgumentException When length is shorter than DecodeInfo#outputSize to be thrown.
      */
     @Override
     public int read(byte[] data, int offset, int length) throws IOException {
+        if (length < decodeInfo.outputSize) {
+            throw new IllegalArgumentException("length: " + length + " < " + decodeInfo.outputSize);
+        }
+
+        int decoded = 0;
+        while (length - decoded >= decodeInfo.outputSize) {
+            if (!decodeFrame(data, offset + decoded)) {
+                break;
+            }
+            decoded += decodeInfo.outputSize;
+        }
 
-        if (!skipNextSync()) {
+        if (decoded == 0) {
 logger.log(Level.DEBUG, "End of Frames");
             return -1;
         }
+        return decoded;
+    }
 
-        Mp3Decoder.MpegDecodeParam param = new Mp3Decoder.MpegDecodeParam();
-
-//logger.log(Level.TRACE, "length: " + length);
-logger.log(Level.DEBUG, "decodeInfo: " + decodeInfo);
-        param.inputSize = decodeInfo.inputSize;
-logger.log(Level.DEBUG, "param.inputSize: " + param.inputSize);
-        param.inputBuf = new byte[param.inputSize];
-        int readBytes = 0;
-        while (readBytes < param.inputSize) {
-            int l = in.read(param.inputBuf, readBytes, param.inputSize - readBytes);
-            if (l == -1) {
-                throw new EOFException("unexpected EOF");
-            }
-            readBytes += l;
+    /**
+     * Decodes the next frame in the window into data.
+     * @return false when there are no more frames
+     */
+    private boolean decodeFrame(byte[] data, int offset) throws IOException {
+        int frameSize = nextFrame();
+        if (frameSize < 0) {
+            return false;
         }
 
-        //
-logger.log(Level.DEBUG, "mp3:\n" + StringUtil.getDump(param.inputBuf, 16));
-        decoder.prepareDecode(param.inputBuf, 0, param.inputSize);
-
-        param.outputSize = decodeInfo.outputSize;
+        param.inputBuf = window;
+        param.inputOffset = windowStart;
+        param.inputSize = frameSize;
         param.outputBuf = data;
+        param.outputOffset = offset;
+        param.outputSize = decodeInfo.outputSize;
 
         decoder.decode(param);
 
-        return param.outputSize;
+        windowStart += param.inputSize;
+        return true;
     }
 
     /**
-     * @throws IOException
+     * Moves {@link #windowStart} to the next sync word and makes sure the whole frame is in the window.
+     * sync words are scanned in place, no data is re-read.
+     * @return the frame size, -1 when there are no more frames
      */
-    public void seekByFrame(int frame) throws IOException {
-        int sample = (frame * decodeInfo.outputSize * 8) / 16 / decodeInfo.channels;
-        seek(sample);
+    private int nextFrame() throws IOException {
+        while (true) {
+            if (windowEnd - windowStart < 4) {
+                if (!fill()) {
+                    return -1;
+                }
+                continue;
+            }
+
+            int syncAddress = scanSync(window, windowStart, windowEnd);
+            if (syncAddress < 0) {
+                // keep the last byte, it may be the first half of a sync word
+                windowStart = windowEnd - 1;
+                if (!fill()) {
+                    return -1;
+                }
+                continue;
+            }
+            windowStart = syncAddress;
+
+            int header = header(windowStart);
+            int frameSize = decoder.getFrameSize(window, windowStart);
+            if (!Mp3FrameIndex.isHeader(header) || frameSize <= 4 || frameSize > window.length - 4) {
+                // not a frame header, false sync
+                windowStart++;
+                continue;
+            }
+            // after a seek, the position may be in the middle of a frame,
+            // so the next frame header is also confirmed
+            int next = windowStart + Mp3FrameIndex.frameSize(header);
+            if (windowEnd - windowStart < frameSize || (resync && next + 4 > windowEnd && !eof)) {
+                if (!fill()) {
+                    return -1;
+                }
+                continue;
+            }
+            if (resync && next + 4 <= windowEnd) {
+                if (!Mp3FrameIndex.isHeader(header(next))) {
+                    windowStart++;
+                    continue;
+                }
+            }
+            resync = false;
+            return frameSize;
+        }
     }
 
-    /**
-     * @throws IOException
-     */
-    public void seekBySec(int sec) throws IOException {
-        int sample = sec * decodeInfo.frequency;
-        seek(sample);
+    /** */
+    private int header(int p) {
+        return ((window[p] & 0xff) << 24) | ((window[p + 1] & 0xff) << 16) | ((window[p + 2] & 0xff) << 8) | (window[p + 3] & 0xff);
     }
 
     /**
-     * @throws IOException
+     * Scans a sync word over [start, end - 3).
+     * @return absolute address of the sync word in buf, -1 when not found
      */
-    private boolean skipNextSync() throws IOException {
-
-        while (true) {
-
-            //
-            in.mark(1024);
-
-            // read temporary
-            byte[] buf = new byte[decodeInfo.inputSize];
-            int readBytes = 0;
-            while (readBytes < buf.length) {
-                 int l = in.read(buf, readBytes, buf.length - readBytes);
-                 if (l == -1) {
-                     throw new EOFException("unexpected EOF");
-                 }
-                 readBytes += l;
+    private static int scanSync(byte[] buf, int start, int end) {
+        for (int i = start; i < end - 3; i++) {
+            if ((buf[i] & 0xff) == 0xff && (buf[i + 1] & 0xe0) == 0xe0) {
+                return i;
             }
+        }
+        return -1;
+    }
 
-            try {
-                int syncAddress = Mp3Decoder.findSync(buf, 0, readBytes);
-                in.reset();
-                int length = syncAddress;
-                int l = 0;
-                while (l < length) {
-                    l += (int) in.skip(length - l);
-                }
-logger.log(Level.DEBUG, "skip: " + length);
-                return true;
-            } catch (IllegalArgumentException e) {
-logger.log(Level.DEBUG, "no more sync");
-                in.reset();
-                return false; // no more data
+    /**
+     * Compacts the window and reads from the source stream until the window is full.
+     * @return false when no byte could be read
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (windowStart > 0) {
+            windowPosition += windowStart;
+            System.arraycopy(window, windowStart, window, 0, windowEnd - windowStart);
+            windowEnd -= windowStart;
+            windowStart = 0;
+        }
+        int readBytes = 0;
+        while (windowEnd < window.length) {
+            int l = in.read(window, windowEnd, window.length - windowEnd);
+            if (l == -1) {
+                eof = true;
+                break;
             }
+            windowEnd += l;
+            readBytes += l;
         }
+        return readBytes > 0;
     }
 
     /**
+     * when the stream is created from a file, the frame is an absolute position,
+     * otherwise frames are skipped from the current position.
      * @throws IOException
      */
-    private void seek(int seekSample) throws IOException {
-        //
-        Mp3Decoder.MpegDecodeParam param = new Mp3Decoder.MpegDecodeParam();
+    public void seekByFrame(int frame) throws IOException {
+        if (channel != null) {
+            seekToFrame(frame, WARM_UP_FRAMES);
+        } else {
+            seek((long) frame * getSamplesPerFrame());
+        }
+    }
 
-        param.inputSize = decodeInfo.inputSize;
-        param.inputBuf = new byte[param.inputSize];
+    /**
+     * when the stream is created from a file, the second is an absolute position,
+     * otherwise seconds are skipped from the current position.
+     * @throws IOException
+     */
+    public void seekBySec(int sec) throws IOException {
+        long sample = (long) sec * decodeInfo.frequency;
+        if (channel != null) {
+            seekToFrame((int) (sample / getSamplesPerFrame()), WARM_UP_FRAMES);
+        } else {
+            seek(sample);
+        }
+    }
 
-exit:
-        while (true) {
-            int readBytes = 0;
-            readBytes = in.read(param.inputBuf, readBytes, param.inputSize - readBytes);
+    /**
+     * Jumps to the frame by the index, then decodes and discards preceding frames.
+     * when the index is approximated, the jump is made earlier by the tolerance of the index,
+     * so the position lands at or a little before the frame, not over the end of the stream.
+     * @param warmUp number of frames decoded before the target
+     */
+    void seekToFrame(int frame, int warmUp) throws IOException {
+        frame = Math.max(0, Math.min(frame, totalFrames));
+        int start = Math.max(0, frame - warmUp - index.getTolerance());
+        // the offset of the first frame is always exact
+        int skip = start == 0 ? frame : warmUp;
+        long offset = index.getOffset(start);
+        if (offset < windowPosition || offset > windowPosition + windowEnd) {
+            channel.position(offset);
+            in = Channels.newInputStream(channel);
+            windowPosition = offset;
+            windowStart = windowEnd = 0;
+            eof = false;
+        } else {
+            // still in the window
+            windowStart = (int) (offset - windowPosition);
+        }
+        resync = !index.isExact();
+        seek((long) skip * getSamplesPerFrame());
+    }
 
-            if (readBytes == 0) {
-                // no more data
+    /**
+     * Decodes and discards frames from the current position.
+     * @throws IOException
+     */
+    private void seek(long seekSample) throws IOException {
+        if (scratch == null) {
+            scratch = new byte[decodeInfo.outputSize];
+        }
+        int samplesPerFrame = getSamplesPerFrame();
+        long sample = 0;
+        while (sample + samplesPerFrame <= seekSample) {
+            if (!decodeFrame(scratch, 0)) {
                 break;
             }
-
-            //
-            while (true) {
-
-                try {
-                    decoder.decode(param);
-                } catch (IllegalArgumentException e) {
-                    if (!skipNextSync()) {
-                        break exit;
-                    }
-                    continue;
-                }
-
-                int firstSample = (param.outputSize * 8) / decodeInfo.bitRate / decodeInfo.channels;
-
-                if (firstSample >= seekSample) {
-                    break exit;
-                }
-            }
+            sample += samplesPerFrame;
         }
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.mp3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * Mp3ParallelDecoder. Decodes an mp3 file split at frame boundaries on multiple threads.
+ * <p>
+ * each segment is decoded by its own {@link Mp3InputStream} (so its own {@link Mp3Decoder}),
+ * which decodes and discards {@link Mp3InputStream#WARM_UP_FRAMES} frames before the segment
+ * to restore the filter bank overlap. the result is the same as the sequential decoding.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class Mp3ParallelDecoder {
+
+    private static final Logger logger = getLogger(Mp3ParallelDecoder.class.getName());
+
+    /** */
+    private final Path path;
+
+    /** exact index */
+    private final Mp3FrameIndex index;
+
+    /** */
+    private final ExecutorService executor;
+
+    /** number of frames in a segment */
+    private final int segmentFrames;
+
+    /**
+     * uses the common fork join pool, a segment per available processor.
+     * @throws IOException when the file is not mp3
+     */
+    public Mp3ParallelDecoder(Path path) throws IOException {
+        this(path, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor decoding threads
+     * @param segments number of segments the file is split into
+     * @throws IOException when the file is not mp3
+     */
+    public Mp3ParallelDecoder(Path path, ExecutorService executor, int segments) throws IOException {
+        this.path = path;
+        this.index = Mp3FrameIndex.scan(path);
+        this.executor = executor;
+        this.segmentFrames = Math.max(1, (index.getFrames() + segments - 1) / Math.max(1, segments));
+logger.log(Level.DEBUG, "frames: " + index.getFrames() + ", segmentFrames: " + segmentFrames);
+    }
+
+    /** number of audio frames */
+    public int getFrames() {
+        return index.getFrames();
+    }
+
+    /**
+     * Decodes whole the file.
+     * @return pcm
+     */
+    public byte[] decode() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        decode(baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes whole the file, segments are written in order.
+     * @param os pcm output
+     */
+    public void decode(OutputStream os) throws IOException {
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int start = 0; start < index.getFrames(); start += segmentFrames) {
+            int s = start;
+            int e = Math.min(start + segmentFrames, index.getFrames());
+            futures.add(executor.submit(() -> decodeSegment(s, e)));
+        }
+        try {
+            for (Future<byte[]> future : futures) {
+                os.write(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof UncheckedIOException u) {
+                throw u.getCause();
+            } else if (e.getCause() instanceof IOException i) {
+                throw i;
+            } else {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @param start first frame, inclusive
+     * @param end last frame, exclusive
+     */
+    private byte[] decodeSegment(int start, int end) throws IOException {
+        try (Mp3InputStream is = new Mp3InputStream(path, index)) {
+            is.seekToFrame(start, Mp3InputStream.WARM_UP_FRAMES);
+            byte[] pcm = new byte[(end - start) * is.getOutputFrameSize()];
+            int p = 0;
+            while (p < pcm.length) {
+                int l = is.read(pcm, p, pcm.length - p);
+                if (l < 0) {
+                    break;
+                }
+                p += l;
+            }
+logger.log(Level.TRACE, "segment: " + start + "-" + end + ", " + p + " bytes");
+            return p == pcm.length ? pcm : Arrays.copyOf(pcm, p);
+        }
+    }
+}
@@ -387,6 +387,11 @@ logger.log(Level.DEBUG, "version: " + _version + ", subsongs: " + numsubsongs);
         return false;
     }
 
+    @Override
+    public int getSubSongs() {
+        return numsubsongs;
+    }
+
     @Override
     public void rewind(int subSong) {
         // stop current song and re-initialize the opl
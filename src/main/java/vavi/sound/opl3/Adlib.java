@@ -205,9 +205,13 @@ public class Adlib {
     /** internal opl3 */
     private OPL3 opl3;
 
+    /** for internal opl3 */
+    private StereoRenderer renderer;
+
     /** for internal opl3 */
     public Adlib() {
         opl3 = new OPL3();
+        renderer = new StereoRenderer(opl3);
         this.writer = this::write;
     }
 
@@ -355,21 +359,18 @@ logger.log(Level.TRACE, "write: %04x, %02x".formatted(address, data));
         }
     }
 
-    /** */
+    /** for internal opl3, 16 bit little endian stereo */
     public int read(byte[] buf, int ofs, int len) {
-        for (int i = ofs; i < len; i += 4) {
-            short[] data = opl3.read();
-            // sum CHA+CHC / CHB+CHD then clip, so loud passages saturate instead of wrapping around
-            int chA = data[0] + data[2];
-            int chB = data[1] + data[3];
-            if (chA > Short.MAX_VALUE) chA = Short.MAX_VALUE; else if (chA < Short.MIN_VALUE) chA = Short.MIN_VALUE;
-            if (chB > Short.MAX_VALUE) chB = Short.MAX_VALUE; else if (chB < Short.MIN_VALUE) chB = Short.MIN_VALUE;
-            buf[i] = (byte) (chA & 0xff);
-            buf[i + 1] = (byte) ((chA >> 8) & 0xff);
-            buf[i + 2] = (byte) (chB & 0xff);
-            buf[i + 3] = (byte) ((chB >> 8) & 0xff);
-        }
-        return len;
+        return renderer.read(buf, ofs, len);
+    }
+
+    /**
+     * for internal opl3
+     * @param sampleRate output rate of {@link #read(byte[], int, int)}, resampled from the native one while rendering
+     * @see Opl3Player#setSampleRate(float)
+     */
+    public void setSampleRate(float sampleRate) {
+        renderer.setSampleRate(sampleRate);
     }
 
     /** */
@@ -622,7 +622,8 @@ logger.log(Level.DEBUG, "version: " + version + ", subsongs: " + subsongs + ", s
         cursubsong = Math.min(subSong, 0xff);
     }
 
-    private int getSubSongs() {
+    @Override
+    public int getSubSongs() {
         return subsongs;
     }
 
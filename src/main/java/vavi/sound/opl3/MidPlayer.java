@@ -260,6 +260,8 @@ logger.log(Level.TRACE, "\n" + StringUtil.getDump(bitStream, 0, 64));
         DataInputStream dis = new DataInputStream(is);
 
         subsongs = 1;
+        // an own instance, file types are stateful and the one matchFormat() found is shared
+        type = MidiTypeFile.newFileType(dis);
 logger.log(Level.DEBUG, "type: " + type);
 
         dis.reset();
@@ -547,6 +549,11 @@ logger.log(Level.DEBUG, "%02x %02x %02x %02x %02x %02x %02x %02x %02x %02x %02x"
         return Math.max(fwait, 0.01F);
     }
 
+    @Override
+    public int getSubSongs() {
+        return subsongs;
+    }
+
     @Override
     public void rewind(int subSong) throws IOException {
         pos = 0;
@@ -40,6 +40,18 @@ public abstract class MidiTypeFile {
         return midiTypeFiles.stream().filter(f -> f.matchFormat(is)).findFirst().orElseThrow();
     }
 
+    /**
+     * @return a new instance of the file type, the ones {@link #getFileType(InputStream)} returns are shared
+     * @throws NoSuchElementException when not found
+     */
+    public static MidiTypeFile newFileType(InputStream is) {
+        try {
+            return getFileType(is).getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static int maxMarkSize(InputStream is) {
         return midiTypeFiles.stream().mapToInt(MidiTypeFile::markSize).max().getAsInt();
     }
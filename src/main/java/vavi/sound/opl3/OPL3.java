@@ -18,6 +18,8 @@
 
 package vavi.sound.opl3;
 
+import java.util.Random;
+
 
 /**
  * Software implementation of the Yamaha YMF262 sound generator.
@@ -84,37 +86,91 @@ public final class OPL3 {
     private int nts, dam, dvb, ryt, bd, sd, tom, tc, hh, _new, connectionSel;
     private int vibratoIndex, tremoloIndex;
 
-    // The methods read() and write() are the only
+    // Noise for the rhythm section. A seeded instance per emulator instead of
+    // Math.random(), which is shared by all threads, so that the same register
+    // writes always produce the same output.
+    private final Random random = new Random(0x0f13);
+
+    // Accumulators of the four output channels CHA...CHD, reused for every frame.
+    private final double[] outputBuffer = new double[4];
+
+    // Channels which may produce output, in channels[][] order.
+    // An idle channel can only be woken up by a register write (key on, connection, mode),
+    // so the list is rebuilt after writes and shrinks when envelopes reach OFF.
+    private final Channel[] activeChannels = new Channel[18];
+    private int activeChannelCount;
+    private boolean activeChannelsDirty = true;
+
+    // While set, write() only stores the register values, see setRegisterOnly().
+    private boolean registerOnly;
+
+    // The methods read() or render() and write() are the only
     // ones needed by the user to interface with the emulator.
 
     /**
      * read() returns one frame at a time, to be played at 49716 Hz,
      * with each frame being four 16-bit samples,
      * corresponding to the OPL3 four output channels CHA...CHD.
+     * @see #render(short[], int, int)
      */
     public short[] read() {
         short[] output = new short[4];
-        double[] outputBuffer = new double[4];
-        double[] channelOutput;
+        render(output, 0, 1);
+        return output;
+    }
 
-        for (int outputChannelNumber = 0; outputChannelNumber < 4; outputChannelNumber++)
-            outputBuffer[outputChannelNumber] = 0;
+    /**
+     * render() writes frames to be played at 49716 Hz into dst,
+     * with each frame being four 16-bit samples,
+     * corresponding to the OPL3 four output channels CHA...CHD.
+     * Nothing is allocated, so this is the way for block or batch rendering.
+     *
+     * @param dst interleaved CHA, CHB, CHC, CHD
+     * @param offset start index in dst
+     * @param frames number of frames to render, dst needs frames * 4 shorts from offset
+     */
+    public void render(short[] dst, int offset, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            renderFrame();
 
-        // If _new = 0, use OPL2 mode with 9 channels. If _new = 1, use OPL3 18 channels;
-        for (int array = 0; array < (_new + 1); array++)
-            for (int channelNumber = 0; channelNumber < 9; channelNumber++) {
-                // Reads output from each OPL3 channel, and accumulates it in
-                // the output buffer:
-                channelOutput = channels[array][channelNumber].getChannelOutput();
-                for (int outputChannelNumber = 0; outputChannelNumber < 4; outputChannelNumber++)
-                    outputBuffer[outputChannelNumber] += channelOutput[outputChannelNumber];
-            }
+            // Normalizes the output buffer after all channels have been added,
+            // with a maximum of 18 channels,
+            // and multiplies it to get the 16 bit signed output.
+            for (int outputChannelNumber = 0; outputChannelNumber < 4; outputChannelNumber++)
+                dst[offset++] = (short) (outputBuffer[outputChannelNumber] / 18 * 0x7fff);
+        }
+    }
 
-        // Normalizes the output buffer after all channels have been added,
-        // with a maximum of 18 channels,
-        // and multiplies it to get the 16 bit signed output.
-        for (int outputChannelNumber = 0; outputChannelNumber < 4; outputChannelNumber++)
-            output[outputChannelNumber] = (short) (outputBuffer[outputChannelNumber] / 18 * 0x7fff);
+    /** Accumulates one frame of all channels into {@link #outputBuffer}. */
+    private void renderFrame() {
+        double[] outputBuffer = this.outputBuffer;
+        outputBuffer[0] = outputBuffer[1] = outputBuffer[2] = outputBuffer[3] = 0;
+
+        if (activeChannelsDirty)
+            updateActiveChannels();
+
+        // Idle channels would add nothing, so only the active ones are
+        // read and accumulated in the output buffer.
+        int count = 0;
+        for (int i = 0; i < activeChannelCount; i++) {
+            Channel channel = activeChannels[i];
+            double channelOutput = channel.getChannelOutput();
+            if (_new == 0) {
+                outputBuffer[0] += channelOutput;
+                outputBuffer[1] += channelOutput;
+                outputBuffer[2] += channelOutput;
+                outputBuffer[3] += channelOutput;
+            } else {
+                if (channel.chA == 1) outputBuffer[0] += channelOutput;
+                if (channel.chB == 1) outputBuffer[1] += channelOutput;
+                if (channel.chC == 1) outputBuffer[2] += channelOutput;
+                if (channel.chD == 1) outputBuffer[3] += channelOutput;
+            }
+            // Drops the channel when its envelopes went OFF during this frame.
+            if (!channel.isIdle())
+                activeChannels[count++] = channel;
+        }
+        activeChannelCount = count;
 
         // Advances the OPL3-wide vibrato index, which is used by
         // PhaseGenerator.getPhase() in each Operator.
@@ -126,8 +182,26 @@ public final class OPL3 {
         tremoloIndex++;
         if (tremoloIndex >= OPL3Data.tremoloTable[dam].length)
             tremoloIndex = 0;
+    }
 
-        return output;
+    /** Collects the channels which are not idle. */
+    private void updateActiveChannels() {
+        activeChannelCount = 0;
+        // If _new = 0, use OPL2 mode with 9 channels. If _new = 1, use OPL3 18 channels;
+        for (int array = 0; array < (_new + 1); array++)
+            for (int channelNumber = 0; channelNumber < 9; channelNumber++) {
+                Channel channel = channels[array][channelNumber];
+                if (!channel.isIdle())
+                    activeChannels[activeChannelCount++] = channel;
+            }
+        activeChannelsDirty = false;
+    }
+
+    /** @return the number of channels currently rendered */
+    int getActiveChannelCount() {
+        if (activeChannelsDirty)
+            updateActiveChannels();
+        return activeChannelCount;
     }
 
     public void write(int array, int address, int data) {
@@ -141,6 +215,10 @@ public final class OPL3 {
             return;
 
         registers[registerAddress] = data;
+        if (registerOnly)
+            return;
+        // Any write may key on an operator or change what is audible.
+        activeChannelsDirty = true;
         switch (address & 0xe0) {
         // The first 3 bits masking gives the type of the register by using its base address:
         // 0x00, 0x20, 0x40, 0x60, 0x80, 0xA0, 0xC0, 0xE0
@@ -217,6 +295,47 @@ public final class OPL3 {
         }
     }
 
+    /**
+     * In register-only mode write() just stores the register values and
+     * nothing is synthesized, which is for fast-forwarding a song without rendering it.
+     * When the mode is turned off, the stored registers are applied at once,
+     * so the notes still keyed on at that point start sounding.
+     */
+    public void setRegisterOnly(boolean registerOnly) {
+        if (this.registerOnly && !registerOnly) {
+            this.registerOnly = false;
+            applyRegisters();
+        }
+        this.registerOnly = registerOnly;
+    }
+
+    /** Writes back all registers in the order a song would set up the chip. */
+    private void applyRegisters() {
+        // applying NEW changes CHA...CHD, so each value is taken from before applying
+        int[] registers = this.registers.clone();
+
+        write(1, 0x05, registers[0x105]);
+        write(1, 0x04, registers[0x104]);
+        write(0, 0x08, registers[0x08]);
+        // rhythm mode first, so that the drum operators get their settings,
+        // the drums are keyed on at last
+        write(0, 0xbd, (registers[0xbd] & 0xe0) | (bd << 4) | (sd << 3) | (tom << 2) | (tc << 1) | hh);
+        for (int array = 0; array < 2; array++) {
+            int base = array << 8;
+            for (int address = 0x20; address < 0xa0; address++)
+                write(array, address, registers[base | address]);
+            for (int address = 0xe0; address < 0x100; address++)
+                write(array, address, registers[base | address]);
+            for (int address = 0xa0; address <= 0xa8; address++)
+                write(array, address, registers[base | address]);
+            for (int address = 0xc0; address <= 0xc8; address++)
+                write(array, address, registers[base | address]);
+            for (int address = 0xb0; address <= 0xb8; address++)
+                write(array, address, registers[base | address]);
+        }
+        write(0, 0xbd, registers[0xbd]);
+    }
+
     public OPL3() {
         nts = dam = dvb = ryt = bd = sd = tom = tc = hh = _new = connectionSel = 0;
         vibratoIndex = tremoloIndex = 0;
@@ -512,22 +631,16 @@ public final class OPL3 {
             update_CHD1_CHC1_CHB1_CHA1_FB3_CNT1();
         }
 
-        protected double[] getInFourChannels(double channelOutput) {
-            double[] output = new double[4];
-
-            if (_new == 0)
-                output[0] = output[1] = output[2] = output[3] = channelOutput;
-            else {
-                output[0] = (chA == 1) ? channelOutput : 0;
-                output[1] = (chB == 1) ? channelOutput : 0;
-                output[2] = (chC == 1) ? channelOutput : 0;
-                output[3] = (chD == 1) ? channelOutput : 0;
-            }
-
-            return output;
-        }
-
-        abstract double[] getChannelOutput();
+        /**
+         * @return the channel output, which is distributed to CHA...CHD by
+         * {@link OPL3#renderFrame()} according to chA...chD
+         */
+        abstract double getChannelOutput();
+        /**
+         * @return true when {@link #getChannelOutput()} would return 0 without
+         * changing any state, which stays so until a register write
+         */
+        abstract boolean isIdle();
         protected abstract void keyOn();
         protected abstract void keyOff();
         protected abstract void updateOperators();
@@ -544,9 +657,8 @@ public final class OPL3 {
         }
 
         @Override
-        double[] getChannelOutput() {
+        double getChannelOutput() {
             double channelOutput = 0, op1Output = 0, op2Output;
-            double[] output;
             // The feedback uses the last two outputs from
             // the first operator, instead of just the last one.
             double feedbackOutput = (feedback[0] + feedback[1]) / 2;
@@ -556,7 +668,7 @@ public final class OPL3 {
             // CNT = 0, the operators are in series, with the first in feedback.
             case 0:
                 if (op2.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
                 op1Output = op1.getOperatorOutput(feedbackOutput);
                 channelOutput = op2.getOperatorOutput(op1Output * toPhase);
                 break;
@@ -564,7 +676,7 @@ public final class OPL3 {
             case 1:
                 if (op1.envelopeGenerator.stage == Stage.OFF &&
                     op2.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
                 op1Output = op1.getOperatorOutput(feedbackOutput);
                 op2Output = op2.getOperatorOutput(Operator.noModulator);
                 channelOutput = (op1Output + op2Output) / 2;
@@ -572,8 +684,18 @@ public final class OPL3 {
 
             feedback[0] = feedback[1];
             feedback[1] = (op1Output * ChannelData.feedback[fb])%1;
-            output = getInFourChannels(channelOutput);
-            return output;
+            return channelOutput;
+        }
+
+        @Override
+        boolean isIdle() {
+            // Same conditions as the early returns in getChannelOutput()
+            return switch (cnt) {
+                case 0 -> op2.envelopeGenerator.stage == Stage.OFF;
+                case 1 -> op1.envelopeGenerator.stage == Stage.OFF &&
+                          op2.envelopeGenerator.stage == Stage.OFF;
+                default -> false;
+            };
         }
 
         @Override
@@ -624,22 +746,18 @@ public final class OPL3 {
         }
 
         @Override
-        double[] getChannelOutput() {
+        double getChannelOutput() {
             double channelOutput = 0,
                    op1Output = 0, op2Output, op3Output, op4Output;
 
-            double[] output;
-
-            int secondChannelBaseAddress = channelBaseAddress+3;
-            int secondCnt = registers[secondChannelBaseAddress+ChannelData.CHD1_CHC1_CHB1_CHA1_FB3_CNT1_Offset] & 0x1;
-            int cnt4op = (cnt << 1) | secondCnt;
+            int cnt4op = getCnt4op();
 
             double feedbackOutput = (feedback[0] + feedback[1]) / 2;
 
             switch (cnt4op) {
             case 0:
                 if (op4.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
 
                 op1Output = op1.getOperatorOutput(feedbackOutput);
                 op2Output = op2.getOperatorOutput(op1Output * toPhase);
@@ -650,7 +768,7 @@ public final class OPL3 {
             case 1:
                 if (op2.envelopeGenerator.stage == Stage.OFF &&
                     op4.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
 
                 op1Output = op1.getOperatorOutput(feedbackOutput);
                 op2Output = op2.getOperatorOutput(op1Output * toPhase);
@@ -663,7 +781,7 @@ public final class OPL3 {
             case 2:
                 if (op1.envelopeGenerator.stage == Stage.OFF &&
                     op4.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
 
                 op1Output = op1.getOperatorOutput(feedbackOutput);
 
@@ -677,7 +795,7 @@ public final class OPL3 {
                 if (op1.envelopeGenerator.stage == Stage.OFF &&
                     op3.envelopeGenerator.stage == Stage.OFF &&
                     op4.envelopeGenerator.stage == Stage.OFF)
-                    return getInFourChannels(0);
+                    return 0;
 
                 op1Output = op1.getOperatorOutput(feedbackOutput);
 
@@ -692,8 +810,29 @@ public final class OPL3 {
             feedback[0] = feedback[1];
             feedback[1] = (op1Output * ChannelData.feedback[fb]) % 1;
 
-            output = getInFourChannels(channelOutput);
-            return output;
+            return channelOutput;
+        }
+
+        private int getCnt4op() {
+            int secondChannelBaseAddress = channelBaseAddress+3;
+            int secondCnt = registers[secondChannelBaseAddress+ChannelData.CHD1_CHC1_CHB1_CHA1_FB3_CNT1_Offset] & 0x1;
+            return (cnt << 1) | secondCnt;
+        }
+
+        @Override
+        boolean isIdle() {
+            // Same conditions as the early returns in getChannelOutput()
+            return switch (getCnt4op()) {
+                case 0 -> op4.envelopeGenerator.stage == Stage.OFF;
+                case 1 -> op2.envelopeGenerator.stage == Stage.OFF &&
+                          op4.envelopeGenerator.stage == Stage.OFF;
+                case 2 -> op1.envelopeGenerator.stage == Stage.OFF &&
+                          op4.envelopeGenerator.stage == Stage.OFF;
+                case 3 -> op1.envelopeGenerator.stage == Stage.OFF &&
+                          op3.envelopeGenerator.stage == Stage.OFF &&
+                          op4.envelopeGenerator.stage == Stage.OFF;
+                default -> false;
+            };
         }
 
         @Override
@@ -743,7 +882,9 @@ public final class OPL3 {
             super(0);
         }
         @Override
-        double[] getChannelOutput() { return getInFourChannels(0); }
+        double getChannelOutput() { return 0; }
+        @Override
+        boolean isIdle() { return true; }
         @Override
         protected void keyOn() { }
         @Override
@@ -1209,9 +1350,8 @@ public final class OPL3 {
         }
 
         @Override
-        double[] getChannelOutput() {
+        double getChannelOutput() {
             double channelOutput = 0, op1Output = 0, op2Output = 0;
-            double[] output;
 
             // Note that, different from the common channel,
             // we do not check to see if the Operator's envelopes are Off.
@@ -1221,10 +1361,13 @@ public final class OPL3 {
             op2Output = op2.getOperatorOutput(Operator.noModulator);
             channelOutput = (op1Output + op2Output) / 2;
 
-            output = getInFourChannels(channelOutput);
-            return output;
+            return channelOutput;
         }
 
+        // The phases and the noise advance every sample.
+        @Override
+        boolean isIdle() { return false; }
+
         // Rhythm channels are always running,
         // only the envelope is activated by the user.
         @Override
@@ -1312,7 +1455,7 @@ public final class OPL3 {
             // accordingly afterwards.
             double operatorOutput = super.getOperatorOutput(modulator, topCymbalOperatorPhase);
             if (operatorOutput == 0)
-                operatorOutput = Math.random() * envelope * attenuation;
+                operatorOutput = random.nextDouble() * envelope * attenuation;
             return operatorOutput;
         }
     }
@@ -1341,7 +1484,7 @@ public final class OPL3 {
 
             double operatorOutput = getOutput(modulator, phase, waveform);
 
-            double noise = Math.random() * envelope;
+            double noise = random.nextDouble() * envelope;
 
             if (operatorOutput / envelope != 1 && operatorOutput / envelope != -1) {
                 if (operatorOutput > 0)
@@ -1383,14 +1526,18 @@ public final class OPL3 {
         }
 
         @Override
-        double[] getChannelOutput() {
+        double getChannelOutput() {
             // Bass Drum ignores first operator, when it is in series.
             if (cnt == 1)
                 op1.ar = 0;
-            double[] output = super.getChannelOutput();
             // quippy: Base Drum is also too silent. This is however a dirty hack!
-            for (int i = 0; i < output.length; i++) output[i] *= attenuation;
-            return output;
+            return super.getChannelOutput() * attenuation;
+        }
+
+        @Override
+        boolean isIdle() {
+            // getChannelOutput() also has to clear op1.ar when in parallel.
+            return (cnt != 1 || op1.ar == 0) && super.isIdle();
         }
 
         // Key ON and OFF are unused in rhythm channels.
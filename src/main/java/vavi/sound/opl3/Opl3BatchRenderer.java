@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.opl3;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.sound.sampled.AudioFormat;
+
+import static java.lang.System.getLogger;
+import static vavi.sound.opl3.Opl3Player.opl3;
+
+
+/**
+ * Opl3BatchRenderer. Renders songs of the formats {@link Opl3Player}s support into wav files
+ * on multiple threads.
+ * <p>
+ * each sub-song is rendered by its own player instance from {@link Opl3Player#newPlayer(AudioFormat.Encoding)},
+ * so its own {@link OPL3}. outputs are named after the source file, "name.ext.wav" or "name.ext-n.wav"
+ * for the n-th sub-song (1 origin) of a file having several.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class Opl3BatchRenderer {
+
+    private static final Logger logger = getLogger(Opl3BatchRenderer.class.getName());
+
+    /** a rendered (or failed) sub-song */
+    public record Result(Path source, int subSong, Path output, long frames, long nanos, Exception error) {
+
+        /** @return seconds of audio per second of rendering */
+        public double getRealtimeFactor() {
+            return nanos == 0 ? 0 : frames / (double) opl3.getSampleRate() / (nanos / 1e9);
+        }
+    }
+
+    /** totals of a batch, updated while rendering */
+    public static class Metrics {
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger unsupported = new AtomicInteger();
+        private final AtomicInteger songs = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong frames = new AtomicLong();
+        private final AtomicLong renderNanos = new AtomicLong();
+        private final long start = System.nanoTime();
+        private volatile long end;
+
+        /** files given */
+        public int getFiles() { return files.get(); }
+        /** files no player detected */
+        public int getUnsupported() { return unsupported.get(); }
+        /** sub-songs written */
+        public int getSongs() { return songs.get(); }
+        /** sub-songs failed */
+        public int getFailed() { return failed.get(); }
+        /** frames written */
+        public long getFrames() { return frames.get(); }
+        /** wall clock time, until now while rendering */
+        public long getElapsedNanos() { return (end != 0 ? end : System.nanoTime()) - start; }
+        /** seconds of audio per wall clock second */
+        public double getThroughput() {
+            return frames.get() / (double) opl3.getSampleRate() / (getElapsedNanos() / 1e9);
+        }
+        /** sum of rendering time of each sub-song, divided by the elapsed time it shows the parallelism */
+        public long getRenderNanos() { return renderNanos.get(); }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", Metrics.class.getSimpleName() + "[", "]")
+                    .add("files=" + files)
+                    .add("unsupported=" + unsupported)
+                    .add("songs=" + songs)
+                    .add("failed=" + failed)
+                    .add("frames=" + frames)
+                    .add("elapsed=" + getElapsedNanos() / 1_000_000 + "ms")
+                    .add(String.format("throughput=%.1fx", getThroughput()))
+                    .toString();
+        }
+    }
+
+    /** */
+    private final Path outDir;
+
+    /** */
+    private final ExecutorService executor;
+
+    /** songs not ending within this are cut */
+    private int maxSeconds = 10 * 60;
+
+    /** */
+    private Consumer<Result> listener = r -> {};
+
+    /**
+     * uses a fixed thread pool of available processors, shut down by {@link #render(List)}.
+     * @param outDir where wav files are written
+     */
+    public Opl3BatchRenderer(Path outDir) {
+        this(outDir, null);
+    }
+
+    /**
+     * @param outDir where wav files are written
+     * @param executor rendering threads, not shut down by this class
+     */
+    public Opl3BatchRenderer(Path outDir, ExecutorService executor) {
+        this.outDir = outDir;
+        this.executor = executor;
+    }
+
+    /** @param maxSeconds songs not ending within this are cut, 10 minutes by default */
+    public void setMaxSeconds(int maxSeconds) {
+        this.maxSeconds = maxSeconds;
+    }
+
+    /** @param listener called from the rendering threads for each sub-song, for progress */
+    public void setListener(Consumer<Result> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param dir files directly in it are rendered
+     * @return totals
+     */
+    public Metrics render(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return render(files.filter(Files::isRegularFile).sorted().toList());
+        }
+    }
+
+    /**
+     * Renders all sub-songs of the files, failures are reported to the listener and counted.
+     * @return totals
+     */
+    public Metrics render(List<Path> files) throws IOException {
+        Files.createDirectories(outDir);
+        Metrics metrics = new Metrics();
+        ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Path file : files) {
+                metrics.files.incrementAndGet();
+                futures.add(CompletableFuture.supplyAsync(() -> probe(file, metrics), executor)
+                        .thenCompose(song -> song == null ? CompletableFuture.completedFuture(null) :
+                                CompletableFuture.allOf(Stream.iterate(0, i -> i < song.subSongs, i -> i + 1)
+                                        .map(i -> CompletableFuture.runAsync(() -> render(song, i, metrics), executor))
+                                        .toArray(CompletableFuture[]::new))));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            if (this.executor == null) {
+                executor.shutdown();
+            }
+            metrics.end = System.nanoTime();
+        }
+logger.log(Level.INFO, metrics);
+        return metrics;
+    }
+
+    /** a detected file */
+    private record Song(Path source, AudioFormat.Encoding encoding, int subSongs) {}
+
+    /** @return null when unsupported */
+    private Song probe(Path file, Metrics metrics) {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            AudioFormat.Encoding encoding = Opl3Player.getEncoding(is);
+            Opl3Player player = Opl3Player.newPlayer(encoding);
+            player.setProperties(Map.of("uri", file.toUri()));
+            player.load(is);
+logger.log(Level.DEBUG, file + ": " + encoding + ", subsongs: " + player.getSubSongs());
+            return new Song(file, encoding, Math.max(1, player.getSubSongs()));
+        } catch (Exception e) {
+logger.log(Level.DEBUG, file + ": " + e);
+            metrics.unsupported.incrementAndGet();
+            listener.accept(new Result(file, 0, null, 0, 0, e));
+            return null;
+        }
+    }
+
+    /** renders a sub-song into a wav file */
+    private void render(Song song, int subSong, Metrics metrics) {
+        String name = song.source.getFileName().toString();
+        Path output = outDir.resolve(song.subSongs > 1 ? name + "-" + (subSong + 1) + ".wav" : name + ".wav");
+        long start = System.nanoTime();
+        long frames = 0;
+        Result result;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(song.source));
+             FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            Opl3Player player = Opl3Player.newPlayer(song.encoding);
+            player.setProperties(Map.of("uri", song.source.toUri()));
+            player.load(is);
+            // load() has rewound to the first one already, as the decoder expects
+            if (subSong != 0) {
+                player.rewind(subSong);
+            }
+
+            channel.write(waveHeader(0));
+            long limit = (long) opl3.getSampleRate() * maxSeconds;
+            byte[] buf = new byte[0];
+            while (frames < limit && player.update()) {
+                int len = 4 * player.getTickFrames(opl3.getSampleRate());
+                if (buf.length < len) {
+                    buf = new byte[len];
+                }
+                len = player.read(buf, 0, len);
+                channel.write(ByteBuffer.wrap(buf, 0, len));
+                frames += len / 4;
+            }
+            channel.write(waveHeader(frames * 4), 0);
+
+            long nanos = System.nanoTime() - start;
+            metrics.songs.incrementAndGet();
+            metrics.frames.addAndGet(frames);
+            metrics.renderNanos.addAndGet(nanos);
+            result = new Result(song.source, subSong, output, frames, nanos, null);
+logger.log(Level.DEBUG, String.format("%s: %d frames, %.1fx", output.getFileName(), frames, result.getRealtimeFactor()));
+        } catch (Exception e) {
+logger.log(Level.WARNING, song.source + "#" + subSong + ": " + e);
+            metrics.failed.incrementAndGet();
+            result = new Result(song.source, subSong, output, frames, System.nanoTime() - start, e);
+        }
+        listener.accept(result);
+    }
+
+    /** @return a 44 bytes wav header of 16 bit stereo at the opl3 rate */
+    static ByteBuffer waveHeader(long dataLength) {
+        int channels = opl3.getChannels();
+        int sampleRate = (int) opl3.getSampleRate();
+        int blockAlign = channels * opl3.getSampleSizeInBits() / 8;
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt((int) (36 + dataLength)).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) opl3.getSampleSizeInBits());
+        header.put("data".getBytes()).putInt((int) dataLength);
+        return header.flip();
+    }
+}
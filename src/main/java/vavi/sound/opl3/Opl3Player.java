@@ -20,11 +20,17 @@
 
 package vavi.sound.opl3;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -33,7 +39,10 @@ import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioFormat.Encoding;
 
+import vavi.sound.pcm.resampling.FilterDesignCache;
+
 import static java.lang.System.getLogger;
+import static javax.sound.sampled.AudioSystem.NOT_SPECIFIED;
 
 
 /**
@@ -81,24 +90,122 @@ logger.log(Level.DEBUG, "encoding: " + encoding);
         return players.stream().map(Opl3Player::getEncoding).toList();
     }
 
+    /**
+     * Players from {@link #getPlayer(Encoding)} are shared, this creates an own one
+     * which has its own {@link OPL3}, for rendering songs concurrently.
+     */
+    public static Opl3Player newPlayer(AudioFormat.Encoding encoding) {
+        try {
+            return getPlayer(encoding).getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** songs not ending within this are regarded as endless, same as adplug's songlength() */
+    private static final int MAX_MILLISECONDS = 10 * 60 * 1000;
+
+    /** a frame length depends on these, props may locate companion files such as instruments */
+    private record FrameLengthKey(String player, String sha256, Map<String, Object> props, float sampleRate) {}
+
+    /**
+     * frame lengths computed so far, the max size is the system property "vavi.sound.opl3.Opl3Player.frameLengthCacheSize".
+     * the least recently used one is evicted.
+     */
+    private static final FilterDesignCache<FrameLengthKey, Long> frameLengths = new FilterDesignCache<>("frameLengths",
+            Integer.getInteger(Opl3Player.class.getName() + ".frameLengthCacheSize", 64));
+
+    /** @return statistics of the frame lengths cache */
+    public static FilterDesignCache.Metrics getFrameLengthCacheMetrics() {
+        return frameLengths.getMetrics();
+    }
+
+    /**
+     * Computes the length of the song by fast-forwarding it in register-only mode.
+     * Results are cached, so asking it again for the same song is cheap.
+     *
+     * @param song whole data of the song
+     * @param props passed to {@link #setProperties(Map)}
+     * @return frames at sampleRate of all ticks until {@link #update()} returns false,
+     *         {@link javax.sound.sampled.AudioSystem#NOT_SPECIFIED} when the song is endless or unplayable
+     */
+    public static long getFrameLength(AudioFormat.Encoding encoding, byte[] song, Map<String, Object> props, float sampleRate) {
+        FrameLengthKey key;
+        try {
+            key = new FrameLengthKey(getPlayer(encoding).getClass().getName(),
+                    HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(song)),
+                    Collections.unmodifiableMap(new HashMap<>(props)), sampleRate);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return frameLengths.get(key, k -> {
+            try {
+                Opl3Player player = newPlayer(encoding);
+                player.setProperties(props);
+                player.load(new ByteArrayInputStream(song));
+                player.setRegisterOnly(true);
+                long frames = 0;
+                long limit = (long) sampleRate * MAX_MILLISECONDS / 1000;
+                while (player.update()) {
+                    frames += player.getTickFrames(sampleRate);
+                    if (frames > limit) {
+logger.log(Level.DEBUG, "endless: " + k);
+                        return (long) NOT_SPECIFIED;
+                    }
+                }
+logger.log(Level.DEBUG, "frames: " + frames + ", " + k);
+                return frames;
+            } catch (Exception e) {
+logger.log(Level.DEBUG, "unplayable: " + k + ", " + e);
+                return (long) NOT_SPECIFIED;
+            }
+        });
+    }
+
     private final OPL3 opl;
 
+    /** */
+    private final StereoRenderer renderer;
+
     protected Opl3Player() {
         opl = new OPL3();
+        renderer = new StereoRenderer(opl);
     }
 
+    /** register-write log, see {@link #setRegisterLog(PrintStream)} */
+    private PrintStream regLog;
+
     /**
      * Optional register-write log in adplug's playertest format
      * ("reg <- val" in hex), for comparison against the reference dumps
-     * in adplug's test/testref directory. Null (off) by default.
+     * in adplug's test/testref directory.
+     *
+     * @param regLog null (off) by default
      */
-    public static java.io.PrintStream regLog;
+    public void setRegisterLog(PrintStream regLog) {
+        this.regLog = regLog;
+    }
 
     protected void write(int array, int address, int data) {
         if (regLog != null) regLog.printf("%x <- %x%n", ((array & 1) << 8) | (address & 0xff), data & 0xff);
         opl.write(array, address, data);
     }
 
+    /**
+     * While set, the song advances by {@link #update()} without synthesizing,
+     * {@link #read(byte[], int, int)} should not be called.
+     * @see OPL3#setRegisterOnly(boolean)
+     */
+    public void setRegisterOnly(boolean registerOnly) {
+        opl.setRegisterOnly(registerOnly);
+    }
+
+    /** @return frames of the tick just updated, at sampleRate */
+    public int getTickFrames(float sampleRate) {
+        double sec = 1.0 / getRefresh();
+        return (int) (sampleRate * sec + 0.5);
+    }
+
     /** must implement mark/reset inside this method */
     public abstract boolean matchFormat(InputStream is);
 
@@ -108,25 +215,44 @@ logger.log(Level.DEBUG, "encoding: " + encoding);
 //logger.log(Level.WARNING, "Enter in read method");
 
         byte[] buf = new byte[len];
-
-        for (int i = 0; i < len; i += 4) {
-            short[] data = opl.read();
-            // sum CHA+CHC / CHB+CHD then clip, so loud passages saturate instead of wrapping around
-            int chA = data[0] + data[2];
-            int chB = data[1] + data[3];
-            if (chA > Short.MAX_VALUE) chA = Short.MAX_VALUE; else if (chA < Short.MIN_VALUE) chA = Short.MIN_VALUE;
-            if (chB > Short.MAX_VALUE) chB = Short.MAX_VALUE; else if (chB < Short.MIN_VALUE) chB = Short.MIN_VALUE;
-            buf[i] = (byte) (chA & 0xff);
-            buf[i + 1] = (byte) ((chA >> 8) & 0xff);
-            buf[i + 2] = (byte) (chB & 0xff);
-            buf[i + 3] = (byte) ((chB >> 8) & 0xff);
-        }
+        read(buf, 0, len);
 //logger.log(Level.TRACE, "read: " + len);
         return buf;
     }
 
+    /**
+     * Renders 16 bit little endian stereo frames into the caller's buffer.
+     *
+     * @param len bytes, rounded down to a multiple of the frame size (4)
+     * @return bytes written
+     */
+    public int read(byte[] buf, int offset, int len) {
+        return renderer.read(buf, offset, len);
+    }
+
+    /**
+     * Sets the rate {@link #read(byte[], int, int)} outputs at, other rates than
+     * the native {@link #opl3} one (e.g. 44100, 48000) are resampled block by block while rendering.
+     *
+     * @param sampleRate the native rate by default
+     * @throws IllegalArgumentException the rate is not supported
+     */
+    public void setSampleRate(float sampleRate) {
+        renderer.setSampleRate(sampleRate);
+    }
+
+    /** @return the rate {@link #read(byte[], int, int)} outputs at */
+    public float getSampleRate() {
+        return renderer.getSampleRate();
+    }
+
     public abstract void rewind(int subSong) throws IOException;
 
+    /** @return number of sub-songs for {@link #rewind(int)}, valid after {@link #load(InputStream)} */
+    public int getSubSongs() {
+        return 1;
+    }
+
     public abstract float getRefresh();
 
     public abstract boolean update() throws IOException;
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.opl3;
+
+import vavi.sound.pcm.resampling.sox.PerfectResampler;
+
+import static vavi.sound.opl3.Opl3Player.opl3;
+
+
+/**
+ * StereoRenderer. Mixes the four channels of an {@link OPL3} down to 16 bit little endian stereo.
+ * <p>
+ * at other rates than the native one, each block the emulator renders is resampled
+ * on the spot by a {@link PerfectResampler} per channel, so 44.1k or 48k output needs
+ * no conversion stream, pipe nor thread behind the player.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class StereoRenderer {
+
+    /** frames rendered by the emulator at once */
+    private static final int BLOCK_FRAMES = 1024;
+
+    /** */
+    private final OPL3 opl;
+
+    /** four channel block from the emulator, reused */
+    private final short[] block = new short[BLOCK_FRAMES * 4];
+
+    /** output rate */
+    private float sampleRate = opl3.getSampleRate();
+
+    /** left, right, null at the native rate */
+    private PerfectResampler[] resamplers;
+
+    /** mixed block at the native rate */
+    private int[] left, right;
+
+    /** resampled, not output yet from position */
+    private int[] outLeft, outRight;
+
+    /** */
+    private int position, available;
+
+    /** the mixed block was not taken by the resamplers yet */
+    private boolean pending;
+
+    /** work of the resamplers' flows */
+    private final int[] isamp = new int[1], osamp = new int[1];
+
+    StereoRenderer(OPL3 opl) {
+        this.opl = opl;
+    }
+
+    /**
+     * @param sampleRate output rate, resampling state is reset
+     * @throws IllegalArgumentException resampler does not support the rate
+     */
+    void setSampleRate(float sampleRate) {
+        this.sampleRate = sampleRate;
+        position = available = 0;
+        pending = false;
+        if (sampleRate == opl3.getSampleRate()) {
+            resamplers = null;
+        } else {
+            // same as PerfectResamplerInputStream: interpolation 2, intermediate phase, high quality
+            resamplers = new PerfectResampler[] {
+                new PerfectResampler(2, 25, 0, false, -1, opl3.getSampleRate(), sampleRate),
+                new PerfectResampler(2, 25, 0, false, -1, opl3.getSampleRate(), sampleRate)
+            };
+            left = new int[BLOCK_FRAMES];
+            right = new int[BLOCK_FRAMES];
+            // a block's worth with plenty of room
+            int size = 2 * (int) Math.ceil(BLOCK_FRAMES * sampleRate / opl3.getSampleRate()) + BLOCK_FRAMES;
+            outLeft = new int[size];
+            outRight = new int[size];
+        }
+    }
+
+    /** */
+    float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param len bytes, rounded down to a multiple of the frame size (4)
+     * @return bytes written
+     */
+    int read(byte[] buf, int offset, int len) {
+        int frames = len / 4;
+        int i = offset;
+        if (resamplers == null) {
+            while (frames > 0) {
+                int n = Math.min(frames, BLOCK_FRAMES);
+                opl.render(block, 0, n);
+                for (int j = 0; j < n * 4; j += 4) {
+                    // sum CHA+CHC / CHB+CHD then clip, so loud passages saturate instead of wrapping around
+                    i = put(buf, i, block[j] + block[j + 2], block[j + 1] + block[j + 3]);
+                }
+                frames -= n;
+            }
+        } else {
+            while (frames > 0) {
+                if (position == available) {
+                    resample();
+                    continue;
+                }
+                int n = Math.min(frames, available - position);
+                for (int j = position; j < position + n; j++) {
+                    i = put(buf, i, outLeft[j], outRight[j]);
+                }
+                position += n;
+                frames -= n;
+            }
+        }
+        return i - offset;
+    }
+
+    /**
+     * renders a block and takes the output the resamplers have got ready, may be none at first.
+     * a resampler outputs what it has got ready before taking the input, and does not take it
+     * when the output is full, then the same block is given again the next time.
+     */
+    private void resample() {
+        if (!pending) {
+            opl.render(block, 0, BLOCK_FRAMES);
+            for (int j = 0; j < BLOCK_FRAMES; j++) {
+                left[j] = Math.clamp(block[j * 4] + block[j * 4 + 2], Short.MIN_VALUE, Short.MAX_VALUE);
+                right[j] = Math.clamp(block[j * 4 + 1] + block[j * 4 + 3], Short.MIN_VALUE, Short.MAX_VALUE);
+            }
+        }
+        isamp[0] = BLOCK_FRAMES;
+        osamp[0] = outLeft.length;
+        resamplers[0].flow(left, outLeft, isamp, osamp);
+        available = osamp[0];
+        pending = isamp[0] == 0;
+        isamp[0] = BLOCK_FRAMES;
+        osamp[0] = outRight.length;
+        resamplers[1].flow(right, outRight, isamp, osamp);
+        if (available != osamp[0] || pending != (isamp[0] == 0)) {
+            throw new IllegalStateException("channels out of step: " + available + ", " + osamp[0]);
+        }
+        position = 0;
+    }
+
+    /** clips and writes a frame */
+    private static int put(byte[] buf, int i, int chA, int chB) {
+        if (chA > Short.MAX_VALUE) chA = Short.MAX_VALUE; else if (chA < Short.MIN_VALUE) chA = Short.MIN_VALUE;
+        if (chB > Short.MAX_VALUE) chB = Short.MAX_VALUE; else if (chB < Short.MIN_VALUE) chB = Short.MIN_VALUE;
+        buf[i++] = (byte) (chA & 0xff);
+        buf[i++] = (byte) ((chA >> 8) & 0xff);
+        buf[i++] = (byte) (chB & 0xff);
+        buf[i++] = (byte) ((chB >> 8) & 0xff);
+        return i;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.util.Arrays;
+
+
+/**
+ * LookAheadLimiter. Keeps the peaks of interleaved frames under a ceiling.
+ * <p>
+ * the gain is the minimum required over the look-ahead, smoothed by a moving average
+ * of the look-ahead length, so it reaches the required one at a peak without overshoot,
+ * then released exponentially. with true peak detection the peaks between samples
+ * ({@link TruePeakDetector}) are also kept under the ceiling. the output lags the input
+ * by {@link #getLatency()} frames. an instance is not thread safe.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class LookAheadLimiter {
+
+    /** */
+    private final int channels;
+
+    /** linear */
+    private final double ceiling;
+
+    /** frames */
+    private final int lookAhead;
+
+    /** coefficient of a frame */
+    private final double release;
+
+    /** by channel, null for sample peaks */
+    private final TruePeakDetector[] detectors;
+
+    /** frames the peak detection lags */
+    private final int detectionDelay;
+
+    /** delayed frames, ring of {@link #getLatency()} frames */
+    private final double[] line;
+
+    /** */
+    private int linePosition;
+
+    /** sliding minimum of the required gains, a monotonic deque in rings */
+    private final double[] minValues;
+    private final long[] minTimes;
+    private int minHead, minSize;
+
+    /** moving average of the minimums, ring */
+    private final double[] averages;
+    private double averageSum;
+    private int averagePosition;
+
+    /** peak of the segment to the previous frame, for true peak */
+    private double previousSegment;
+
+    /** */
+    private double gain = 1;
+
+    /** frames input */
+    private long time;
+
+    /** frames not output yet at the beginning */
+    private int priming;
+
+    /**
+     * @param ceiling dBFS (or dBTP)
+     * @param lookAheadMillis e.g. 5
+     * @param releaseMillis e.g. 100
+     * @param truePeak detects peaks between samples
+     */
+    public LookAheadLimiter(float sampleRate, int channels, double ceiling, double lookAheadMillis, double releaseMillis, boolean truePeak) {
+        this.channels = channels;
+        this.ceiling = Math.pow(10, ceiling / 20);
+        this.lookAhead = Math.max(1, (int) Math.round(lookAheadMillis * sampleRate / 1000));
+        this.release = 1 - Math.exp(-1 / (releaseMillis * sampleRate / 1000));
+        if (truePeak) {
+            detectors = new TruePeakDetector[channels];
+            for (int c = 0; c < channels; c++) {
+                detectors[c] = new TruePeakDetector();
+            }
+            detectionDelay = TruePeakDetector.DELAY;
+        } else {
+            detectors = null;
+            detectionDelay = 0;
+        }
+        line = new double[getLatency() * channels];
+        minValues = new double[lookAhead + 1];
+        minTimes = new long[lookAhead + 1];
+        averages = new double[lookAhead];
+        Arrays.fill(averages, 1);
+        averageSum = lookAhead;
+        priming = getLatency();
+    }
+
+    /** @return frames the output lags the input */
+    public int getLatency() {
+        return lookAhead + detectionDelay;
+    }
+
+    /**
+     * @param in interleaved
+     * @param out interleaved, may be the same as in at the same offset
+     * @return frames output, less than frames at the beginning
+     */
+    public int process(double[] in, int inOffset, int frames, double[] out, int outOffset) {
+        int o = 0;
+        for (int f = 0; f < frames; f++) {
+            if (frame(in, inOffset + f * channels, out, outOffset + o * channels)) {
+                o++;
+            }
+        }
+        return o;
+    }
+
+    /**
+     * outputs the frames left in the delay line, then the limiter can be used for a new stream.
+     *
+     * @param out room of {@link #getLatency()} frames
+     * @return frames output
+     */
+    public int flush(double[] out, int offset) {
+        double[] silence = new double[channels];
+        int o = 0;
+        int pending = getLatency() - priming;
+        while (o < pending) {
+            if (frame(silence, 0, out, offset + o * channels)) {
+                o++;
+            }
+        }
+        reset();
+        return o;
+    }
+
+    /** clears the state */
+    public void reset() {
+        Arrays.fill(line, 0);
+        linePosition = 0;
+        minHead = 0;
+        minSize = 0;
+        Arrays.fill(averages, 1);
+        averageSum = lookAhead;
+        averagePosition = 0;
+        previousSegment = 0;
+        gain = 1;
+        time = 0;
+        priming = getLatency();
+        if (detectors != null) {
+            for (TruePeakDetector detector : detectors) {
+                detector.reset();
+            }
+        }
+    }
+
+    /**
+     * takes a frame into the delay line, and outputs the oldest one with the gain applied.
+     *
+     * @return whether a frame is output, false while priming
+     */
+    private boolean frame(double[] in, int p, double[] out, int o) {
+        int q = linePosition * channels;
+        double peak = 0;
+        for (int c = 0; c < channels; c++) {
+            double x = in[p + c];
+            if (detectors != null) {
+                peak = Math.max(peak, detectors[c].process(x));
+            } else {
+                peak = Math.max(peak, Math.abs(x));
+            }
+        }
+        if (detectors != null) {
+            // a frame is between the segments before and after it
+            double segment = peak;
+            peak = Math.max(peak, previousSegment);
+            previousSegment = segment;
+        }
+        double required = peak > ceiling ? ceiling / peak : 1;
+
+        // sliding minimum over look-ahead + 1 frames
+        int capacity = minValues.length;
+        while (minSize > 0 && minValues[(minHead + minSize - 1) % capacity] >= required) {
+            minSize--;
+        }
+        minValues[(minHead + minSize) % capacity] = required;
+        minTimes[(minHead + minSize) % capacity] = time;
+        minSize++;
+        if (minTimes[minHead] <= time - capacity) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        double minimum = minValues[minHead];
+
+        // moving average over look-ahead frames
+        averageSum += minimum - averages[averagePosition];
+        averages[averagePosition] = minimum;
+        averagePosition = (averagePosition + 1) % lookAhead;
+        double average = Math.min(averageSum / lookAhead, 1);
+
+        gain = Math.min(average, gain + (1 - gain) * release);
+
+        boolean output = priming == 0;
+        for (int c = 0; c < channels; c++) {
+            // clipped for the rounding of the average
+            double y = Math.clamp(line[q + c] * gain, -ceiling, ceiling);
+            line[q + c] = in[p + c];
+            if (output) {
+                out[o + c] = y;
+            }
+        }
+        linePosition = (linePosition + 1) % getLatency();
+        time++;
+        if (!output) {
+            priming--;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.util.Arrays;
+
+
+/**
+ * LoudnessMeter. Measures loudness as ITU-R BS.1770-4 / EBU R128 and the true peak.
+ * <p>
+ * samples are k-weighted, the mean squares of 400 ms blocks overlapping by 75 % are
+ * gated absolutely at -70 LUFS and relatively at -10 LU. gated blocks are kept in a
+ * histogram of 0.01 LU, so memory is constant for streams of any length.
+ * an instance is not thread safe.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ * @see "https://www.itu.int/rec/R-REC-BS.1770"
+ * @see "https://tech.ebu.ch/docs/r/r128.pdf"
+ */
+public class LoudnessMeter {
+
+    /** LUFS */
+    private static final double ABSOLUTE_GATE = -70;
+
+    /** LU */
+    private static final double RELATIVE_GATE = -10;
+
+    /** LU */
+    private static final double BIN_WIDTH = 0.01;
+
+    /** LUFS, louder blocks are in the last bin */
+    private static final double MAX_LOUDNESS = 10;
+
+    /** */
+    private static final int BINS = (int) ((MAX_LOUDNESS - ABSOLUTE_GATE) / BIN_WIDTH);
+
+    /** sub blocks of a gating block */
+    private static final int SUB_BLOCKS = 4;
+
+    /** blocks by bin */
+    private final long[] counts = new long[BINS];
+
+    /** sum of the mean squares of the blocks by bin */
+    private final double[] energies = new double[BINS];
+
+    /** */
+    private final int channels;
+
+    /** by channel */
+    private final double[] weights;
+
+    /** k-weighting, the pre-filter (high shelf) and the rlb filter (high pass) */
+    private final double pb0, pb1, pb2, pa1, pa2, rb0, rb1, rb2, ra1, ra2;
+
+    /** states of the filters, [channel][4] */
+    private final double[][] states;
+
+    /** 100 ms */
+    private final int subBlockFrames;
+
+    /** frames in the current sub block */
+    private int subBlockFill;
+
+    /** weighted sum of squares of the current sub block */
+    private double current;
+
+    /** of the last sub blocks, ring */
+    private final double[] subBlocks = new double[SUB_BLOCKS];
+
+    /** */
+    private long subBlockCount;
+
+    /** */
+    private final TruePeakDetector[] detectors;
+
+    /** linear */
+    private double truePeak, samplePeak;
+
+    /** LUFS of the last block */
+    private double momentary = Double.NEGATIVE_INFINITY;
+
+    /** */
+    private long frames;
+
+    /**
+     * channel weights are 1 but 1.41 for the surround channels and 0 for lfe
+     * of 5 (L R C Ls Rs) or 6 (L R C LFE Ls Rs) channels.
+     */
+    public LoudnessMeter(float sampleRate, int channels) {
+        this(sampleRate, channels, defaultWeights(channels));
+    }
+
+    /**
+     * @param weights by channel
+     */
+    public LoudnessMeter(float sampleRate, int channels, double[] weights) {
+        if (weights.length != channels) {
+            throw new IllegalArgumentException("weights for " + weights.length + " channels");
+        }
+        this.channels = channels;
+        this.weights = weights.clone();
+        this.states = new double[channels][4];
+        this.subBlockFrames = Math.round(sampleRate / 10);
+
+        this.detectors = new TruePeakDetector[channels];
+        for (int c = 0; c < channels; c++) {
+            detectors[c] = new TruePeakDetector();
+        }
+
+        // coefficients for any sample rate, as libebur128
+        double f0 = 1681.974450955533;
+        double g = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, g / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        pb0 = (vh + vb * k / q + k * k) / a0;
+        pb1 = 2 * (k * k - vh) / a0;
+        pb2 = (vh - vb * k / q + k * k) / a0;
+        pa1 = 2 * (k * k - 1) / a0;
+        pa2 = (1 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1 + k / q + k * k;
+        rb0 = 1;
+        rb1 = -2;
+        rb2 = 1;
+        ra1 = 2 * (k * k - 1) / a0;
+        ra2 = (1 - k / q + k * k) / a0;
+    }
+
+    /** */
+    private static double[] defaultWeights(int channels) {
+        double[] weights = new double[channels];
+        Arrays.fill(weights, 1);
+        if (channels == 5) {
+            weights[3] = weights[4] = 1.41;
+        } else if (channels >= 6) {
+            weights[3] = 0;
+            weights[4] = weights[5] = 1.41;
+        }
+        return weights;
+    }
+
+    /** */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @param samples interleaved, full scale is 1
+     */
+    public void process(double[] samples, int offset, int frames) {
+        for (int f = 0, p = offset; f < frames; f++) {
+            for (int c = 0; c < channels; c++, p++) {
+                double x = samples[p];
+                samplePeak = Math.max(samplePeak, Math.abs(x));
+                truePeak = Math.max(truePeak, detectors[c].process(x));
+                if (weights[c] != 0) {
+                    double[] s = states[c];
+                    // direct form 2 transposed
+                    double y = pb0 * x + s[0];
+                    s[0] = pb1 * x - pa1 * y + s[1];
+                    s[1] = pb2 * x - pa2 * y;
+                    double z = rb0 * y + s[2];
+                    s[2] = rb1 * y - ra1 * z + s[3];
+                    s[3] = rb2 * y - ra2 * z;
+                    current += weights[c] * z * z;
+                }
+            }
+            if (++subBlockFill == subBlockFrames) {
+                endSubBlock();
+            }
+        }
+        this.frames += frames;
+    }
+
+    /** a gating block ends every sub block */
+    private void endSubBlock() {
+        subBlocks[(int) (subBlockCount++ % SUB_BLOCKS)] = current;
+        current = 0;
+        subBlockFill = 0;
+        if (subBlockCount >= SUB_BLOCKS) {
+            double sum = 0;
+            for (double subBlock : subBlocks) {
+                sum += subBlock;
+            }
+            double z = sum / (SUB_BLOCKS * subBlockFrames);
+            double l = loudness(z);
+            momentary = l;
+            if (l > ABSOLUTE_GATE) {
+                int bin = Math.min(BINS - 1, (int) ((l - ABSOLUTE_GATE) / BIN_WIDTH));
+                counts[bin]++;
+                energies[bin] += z;
+            }
+        }
+    }
+
+    /** @return LUFS of a weighted mean square */
+    private static double loudness(double z) {
+        return -0.691 + 10 * Math.log10(z);
+    }
+
+    /** @return LUFS, negative infinity when no block is over the gates */
+    public double getIntegratedLoudness() {
+        long n = 0;
+        double sum = 0;
+        for (int i = 0; i < BINS; i++) {
+            n += counts[i];
+            sum += energies[i];
+        }
+        if (n == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double gate = loudness(sum / n) + RELATIVE_GATE;
+
+        n = 0;
+        sum = 0;
+        for (int i = Math.max(0, (int) ((gate - ABSOLUTE_GATE) / BIN_WIDTH)); i < BINS; i++) {
+            if (ABSOLUTE_GATE + (i + 0.5) * BIN_WIDTH > gate) {
+                n += counts[i];
+                sum += energies[i];
+            }
+        }
+        return n == 0 ? Double.NEGATIVE_INFINITY : loudness(sum / n);
+    }
+
+    /** @return LUFS of the last 400 ms, negative infinity before it */
+    public double getMomentaryLoudness() {
+        return momentary;
+    }
+
+    /** @return linear, the max of all channels */
+    public double getTruePeak() {
+        return truePeak;
+    }
+
+    /** @return linear, the max of all channels */
+    public double getSamplePeak() {
+        return samplePeak;
+    }
+
+    /** @return frames processed */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** @return dB of a linear value */
+    public static double toDb(double linear) {
+        return 20 * Math.log10(linear);
+    }
+}
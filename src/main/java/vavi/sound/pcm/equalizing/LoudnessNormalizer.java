@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * LoudnessNormalizer. Normalizes a wave file to a target loudness in two passes.
+ * <p>
+ * the first pass measures the integrated loudness and the true peak by a {@link LoudnessMeter},
+ * the second one applies the gain, optionally through a true peak {@link LookAheadLimiter}.
+ * without the limiter the gain is reduced so that the true peak stays under the ceiling.
+ * the data chunk is read through memory mapped windows and written by blocks,
+ * so the file is never held in the heap. 8/16/24/32 bit integer and 32/64 bit float pcm
+ * of any channels are supported. chunks other than the data are copied as they are.
+ * <p>
+ * for a stream which cannot be read twice, see {@link LoudnessNormalizerInputStream}.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class LoudnessNormalizer {
+
+    private static final Logger logger = getLogger(LoudnessNormalizer.class.getName());
+
+    /** LUFS, EBU R128 */
+    public static final double DEFAULT_TARGET = -23;
+
+    /** dBTP, EBU R128 */
+    public static final double DEFAULT_CEILING = -1;
+
+    /** frames processed at once */
+    private static final int BLOCK_FRAMES = 8192;
+
+    /** bytes mapped at once */
+    private static final long WINDOW_BYTES = 16 * 1024 * 1024;
+
+    /** for the limiter */
+    private static final double LOOK_AHEAD_MILLIS = 5;
+
+    /** for the limiter */
+    private static final double RELEASE_MILLIS = 100;
+
+    /** LUFS */
+    private double target = DEFAULT_TARGET;
+
+    /** dBTP */
+    private double ceiling = DEFAULT_CEILING;
+
+    /** */
+    private boolean limiting;
+
+    /** result of the first pass */
+    public record Analysis(SampleFormat format, float sampleRate, int channels, long frames,
+                           double integratedLoudness, double truePeak, double samplePeak) {
+        /** @return dBTP */
+        public double getTruePeakDb() {
+            return LoudnessMeter.toDb(truePeak);
+        }
+    }
+
+    /** the format and the location of the data chunk */
+    private record Wave(SampleFormat format, float sampleRate, int channels, long dataOffset, long dataLength) {
+        /** */
+        int getFrameSize() {
+            return format.getBytes() * channels;
+        }
+    }
+
+    /** @param target LUFS */
+    public void setTarget(double target) {
+        this.target = target;
+    }
+
+    /** @param ceiling dBTP */
+    public void setCeiling(double ceiling) {
+        this.ceiling = ceiling;
+    }
+
+    /** @param limiting true: the gain is not reduced for the peaks but the peaks are limited */
+    public void setLimiting(boolean limiting) {
+        this.limiting = limiting;
+    }
+
+    /**
+     * the first pass.
+     *
+     * @throws IllegalArgumentException the format is not supported
+     * @throws IOException the file is not a wave file
+     */
+    public Analysis analyze(Path in) throws IOException {
+        try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+            Wave wave = parse(channel);
+            LoudnessMeter meter = new LoudnessMeter(wave.sampleRate, wave.channels);
+            double[] samples = new double[BLOCK_FRAMES * wave.channels];
+            read(channel, wave, samples, (s, frames) -> meter.process(s, 0, frames));
+            Analysis analysis = new Analysis(wave.format, wave.sampleRate, wave.channels, meter.getFrames(),
+                    meter.getIntegratedLoudness(), meter.getTruePeak(), meter.getSamplePeak());
+logger.log(Level.DEBUG, analysis);
+            return analysis;
+        }
+    }
+
+    /**
+     * @return dB to be applied, 0 for silence
+     */
+    public double getGain(Analysis analysis) {
+        if (Double.isInfinite(analysis.integratedLoudness)) {
+            return 0;
+        }
+        double gain = target - analysis.integratedLoudness;
+        if (!limiting && analysis.truePeak > 0) {
+            gain = Math.min(gain, ceiling - analysis.getTruePeakDb());
+        }
+        return gain;
+    }
+
+    /**
+     * analyzes in then writes the normalized one to out.
+     *
+     * @return the analysis of in
+     * @throws IllegalArgumentException the format is not supported
+     * @throws IOException the file is not a wave file
+     */
+    public Analysis normalize(Path in, Path out) throws IOException {
+        Analysis analysis = analyze(in);
+        double gain = Math.pow(10, getGain(analysis) / 20);
+logger.log(Level.DEBUG, "gain: " + getGain(analysis) + " dB");
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Wave wave = parse(src);
+            transfer(src, 0, wave.dataOffset, dst);
+
+            LookAheadLimiter limiter = limiting ? new LookAheadLimiter(wave.sampleRate, wave.channels, ceiling, LOOK_AHEAD_MILLIS, RELEASE_MILLIS, true) : null;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(BLOCK_FRAMES, limiter != null ? limiter.getLatency() : 0) * wave.getFrameSize())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            double[] samples = new double[BLOCK_FRAMES * wave.channels];
+            read(src, wave, samples, (s, frames) -> {
+                for (int i = 0; i < frames * wave.channels; i++) {
+                    s[i] *= gain;
+                }
+                if (limiter != null) {
+                    frames = limiter.process(s, 0, frames, s, 0);
+                }
+                write(wave, s, frames, buffer, dst);
+            });
+            if (limiter != null) {
+                double[] rest = new double[limiter.getLatency() * wave.channels];
+                write(wave, rest, limiter.flush(rest, 0), buffer, dst);
+            }
+
+            long end = wave.dataOffset + wave.dataLength;
+            transfer(src, end, src.size() - end, dst);
+        }
+        return analysis;
+    }
+
+    /** a block of decoded samples */
+    @FunctionalInterface
+    private interface BlockConsumer {
+        /** @param samples interleaved, may be modified */
+        void accept(double[] samples, int frames) throws IOException;
+    }
+
+    /** reads the data chunk through memory mapped windows */
+    private static void read(FileChannel channel, Wave wave, double[] samples, BlockConsumer consumer) throws IOException {
+        int frameSize = wave.getFrameSize();
+        long window = WINDOW_BYTES / frameSize * frameSize;
+        for (long position = 0; position < wave.dataLength; position += window) {
+            long length = Math.min(window, wave.dataLength - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, wave.dataOffset + position, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.remaining() >= frameSize) {
+                int frames = Math.min(BLOCK_FRAMES, buffer.remaining() / frameSize);
+                wave.format.decode(buffer, samples, 0, frames * wave.channels);
+                consumer.accept(samples, frames);
+            }
+        }
+    }
+
+    /** */
+    private static void write(Wave wave, double[] samples, int frames, ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.clear();
+        wave.format.encode(samples, 0, frames * wave.channels, buffer);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** */
+    private static void transfer(FileChannel src, long position, long length, FileChannel dst) throws IOException {
+        while (length > 0) {
+            long n = src.transferTo(position, length, dst);
+            if (n <= 0) {
+                throw new IOException("transfer stopped at " + position);
+            }
+            position += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * finds the fmt and the data chunk.
+     *
+     * @throws IllegalArgumentException the format is not supported
+     * @throws IOException the file is not a wave file
+     */
+    private static Wave parse(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0, 12);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            throw new IOException("not a wave file");
+        }
+        SampleFormat format = null;
+        float sampleRate = 0;
+        int channels = 0;
+        long position = 12;
+        while (position + 8 <= size) {
+            readFully(channel, header, position, 8);
+            int id = header.getInt(0);
+            long length = header.getInt(4) & 0xffffffffL;
+            if (id == 0x20746d66) { // "fmt "
+                readFully(channel, header, position + 8, (int) Math.min(length, 40));
+                int tag = header.getShort(0) & 0xffff;
+                channels = header.getShort(2) & 0xffff;
+                sampleRate = header.getInt(4);
+                int blockAlign = header.getShort(12) & 0xffff;
+                int bits = header.getShort(14) & 0xffff;
+                if (tag == 0xfffe && length >= 26) { // extensible, the sub format starts with the tag
+                    tag = header.getShort(24) & 0xffff;
+                }
+                format = SampleFormat.valueOf(tag, bits);
+                if (channels == 0 || blockAlign != format.getBytes() * channels) {
+                    throw new IllegalArgumentException("unsupported block align: " + blockAlign + ", " + channels + " channels");
+                }
+            } else if (id == 0x61746164) { // "data"
+                if (format == null) {
+                    throw new IOException("no fmt chunk before the data chunk");
+                }
+                long dataOffset = position + 8;
+                // an unfinished or over 4GB file
+                long dataLength = Math.min(length, size - dataOffset);
+                dataLength -= dataLength % (format.getBytes() * channels);
+                return new Wave(format, sampleRate, channels, dataOffset, dataLength);
+            }
+            position += 8 + length + (length & 1);
+        }
+        throw new IOException("no data chunk");
+    }
+
+    /** reads length bytes at position into the start of buffer */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+}
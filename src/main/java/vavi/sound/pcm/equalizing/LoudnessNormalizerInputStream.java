@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+
+import vavi.io.OutputEngine;
+import vavi.io.OutputEngineInputStream;
+
+
+/**
+ * LoudnessNormalizerInputStream. Normalizes a pcm stream to a target loudness in a single pass.
+ * <p>
+ * the gain follows the integrated loudness measured so far, it is ramped across each block
+ * and the peaks are kept under the ceiling by a true peak {@link LookAheadLimiter}.
+ * the gain is 0 dB until the first gating block, and at most {@link #MAX_GAIN}.
+ * the output has the same format and length as the input.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class LoudnessNormalizerInputStream extends FilterInputStream {
+
+    /** dB */
+    public static final double MAX_GAIN = 20;
+
+    /** frames read at once */
+    private static final int BLOCK_FRAMES = 4096;
+
+    /**
+     * with {@link LoudnessNormalizer#DEFAULT_TARGET} and {@link LoudnessNormalizer#DEFAULT_CEILING}.
+     *
+     * @throws IllegalArgumentException the format is not supported
+     */
+    public LoudnessNormalizerInputStream(InputStream is, AudioFormat format) throws IOException {
+        this(is, format, LoudnessNormalizer.DEFAULT_TARGET, LoudnessNormalizer.DEFAULT_CEILING);
+    }
+
+    /**
+     * @param target LUFS
+     * @param ceiling dBTP
+     * @throws IllegalArgumentException the format is not supported
+     */
+    public LoudnessNormalizerInputStream(InputStream is, AudioFormat format, double target, double ceiling) throws IOException {
+        super(new OutputEngineInputStream(new LoudnessNormalizerOutputEngine(is, format, target, ceiling)));
+    }
+
+    /** normalizes a block at a time */
+    private static class LoudnessNormalizerOutputEngine implements OutputEngine {
+
+        /** */
+        private final InputStream in;
+
+        /** */
+        private OutputStream out;
+
+        /** */
+        private final SampleFormat format;
+
+        /** */
+        private final int channels;
+
+        /** LUFS */
+        private final double target;
+
+        /** */
+        private final LoudnessMeter meter;
+
+        /** */
+        private final LookAheadLimiter limiter;
+
+        /** a block of input */
+        private final byte[] sample;
+
+        /** */
+        private final ByteBuffer result;
+
+        /** */
+        private final double[] samples;
+
+        /** linear, applied at the end of the last block */
+        private double gain = 1;
+
+        /** */
+        LoudnessNormalizerOutputEngine(InputStream is, AudioFormat format, double target, double ceiling) {
+            this.in = is;
+            this.format = SampleFormat.valueOf(format);
+            this.channels = format.getChannels();
+            this.target = target;
+            this.meter = new LoudnessMeter(format.getSampleRate(), channels);
+            this.limiter = new LookAheadLimiter(format.getSampleRate(), channels, ceiling, 5, 100, true);
+            int frames = Math.max(BLOCK_FRAMES, limiter.getLatency());
+            this.sample = new byte[BLOCK_FRAMES * format.getFrameSize()];
+            this.result = ByteBuffer.allocate(frames * format.getFrameSize())
+                    .order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            this.samples = new double[frames * channels];
+        }
+
+        @Override
+        public void initialize(OutputStream out) throws IOException {
+            if (this.out != null) {
+                throw new IOException("Already initialized");
+            } else {
+                this.out = out;
+            }
+        }
+
+        @Override
+        public void execute() throws IOException {
+            if (out == null) {
+                throw new IOException("Not yet initialized");
+            } else {
+                int frameSize = format.getBytes() * channels;
+                int r = in.readNBytes(sample, 0, sample.length);
+                int frames = r / frameSize;
+                if (frames > 0) {
+                    format.decode(ByteBuffer.wrap(sample, 0, frames * frameSize).order(result.order()), samples, 0, frames * channels);
+                    meter.process(samples, 0, frames);
+
+                    double next = gain;
+                    double loudness = meter.getIntegratedLoudness();
+                    if (!Double.isInfinite(loudness)) {
+                        next = Math.pow(10, Math.min(target - loudness, MAX_GAIN) / 20);
+                    }
+                    for (int f = 0, p = 0; f < frames; f++) {
+                        double g = gain + (next - gain) * (f + 1) / frames;
+                        for (int c = 0; c < channels; c++, p++) {
+                            samples[p] *= g;
+                        }
+                    }
+                    gain = next;
+
+                    write(limiter.process(samples, 0, frames, samples, 0));
+                }
+                if (r < sample.length) {
+                    write(limiter.flush(samples, 0));
+                    out.flush();
+                    out.close();
+                }
+            }
+        }
+
+        /** */
+        private void write(int frames) throws IOException {
+            result.clear();
+            format.encode(samples, 0, frames * channels, result);
+            out.write(result.array(), 0, result.position());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            in.close();
+        }
+    }
+}
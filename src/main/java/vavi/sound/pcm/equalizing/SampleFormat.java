@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFormat;
+
+
+/**
+ * SampleFormat. Converts pcm samples in a {@link ByteBuffer} from and to doubles of full scale 1.
+ * <p>
+ * multibyte samples are in the order of the buffer. encoding clips and rounds integer samples.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public enum SampleFormat {
+    /** 8 bit unsigned, as wave files */
+    U8(1) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = ((src.get() & 0xff) - 0x80) / 128d;
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.put((byte) (quantize(src[offset + i], 128) + 0x80));
+            }
+        }
+    },
+    /** 8 bit signed */
+    S8(1) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = src.get() / 128d;
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.put((byte) quantize(src[offset + i], 128));
+            }
+        }
+    },
+    /** 16 bit signed */
+    S16(2) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = src.getShort() / 32768d;
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.putShort((short) quantize(src[offset + i], 32768));
+            }
+        }
+    },
+    /** 24 bit signed */
+    S24(3) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            boolean little = src.order() == ByteOrder.LITTLE_ENDIAN;
+            for (int i = 0; i < length; i++) {
+                int b0 = src.get(), b1 = src.get(), b2 = src.get();
+                int v = little ? (b0 & 0xff) | ((b1 & 0xff) << 8) | (b2 << 16) : (b2 & 0xff) | ((b1 & 0xff) << 8) | (b0 << 16);
+                dst[offset + i] = v / 8388608d;
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            boolean little = dst.order() == ByteOrder.LITTLE_ENDIAN;
+            for (int i = 0; i < length; i++) {
+                long v = quantize(src[offset + i], 8388608);
+                dst.put((byte) (little ? v : v >> 16));
+                dst.put((byte) (v >> 8));
+                dst.put((byte) (little ? v >> 16 : v));
+            }
+        }
+    },
+    /** 32 bit signed */
+    S32(4) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = src.getInt() / 2147483648d;
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.putInt((int) quantize(src[offset + i], 2147483648L));
+            }
+        }
+    },
+    /** 32 bit float, not clipped */
+    F32(4) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = src.getFloat();
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.putFloat((float) src[offset + i]);
+            }
+        }
+    },
+    /** 64 bit float, not clipped */
+    F64(8) {
+        @Override
+        public void decode(ByteBuffer src, double[] dst, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = src.getDouble();
+            }
+        }
+
+        @Override
+        public void encode(double[] src, int offset, int length, ByteBuffer dst) {
+            for (int i = 0; i < length; i++) {
+                dst.putDouble(src[offset + i]);
+            }
+        }
+    };
+
+    /** */
+    private final int bytes;
+
+    /** */
+    SampleFormat(int bytes) {
+        this.bytes = bytes;
+    }
+
+    /** bytes of a sample */
+    public int getBytes() {
+        return bytes;
+    }
+
+    /** @return rounded and clipped to -scale ~ scale - 1 */
+    private static long quantize(double v, long scale) {
+        return Math.clamp(Math.round(v * scale), -scale, scale - 1);
+    }
+
+    /**
+     * reads samples from the position of src.
+     *
+     * @param length samples, not frames
+     */
+    public abstract void decode(ByteBuffer src, double[] dst, int offset, int length);
+
+    /**
+     * writes samples at the position of dst.
+     *
+     * @param length samples, not frames
+     */
+    public abstract void encode(double[] src, int offset, int length, ByteBuffer dst);
+
+    /**
+     * @throws IllegalArgumentException not supported
+     */
+    public static SampleFormat valueOf(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        int bits = format.getSampleSizeInBits();
+        if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED)) {
+            switch (bits) {
+            case 8: return S8;
+            case 16: return S16;
+            case 24: return S24;
+            case 32: return S32;
+            }
+        } else if (encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED) && bits == 8) {
+            return U8;
+        } else if (encoding.equals(AudioFormat.Encoding.PCM_FLOAT)) {
+            switch (bits) {
+            case 32: return F32;
+            case 64: return F64;
+            }
+        }
+        throw new IllegalArgumentException("unsupported format: " + format);
+    }
+
+    /**
+     * @param formatTag of a wave file, 1: pcm, 3: ieee float
+     * @throws IllegalArgumentException not supported
+     */
+    public static SampleFormat valueOf(int formatTag, int bits) {
+        if (formatTag == 1) {
+            switch (bits) {
+            case 8: return U8;
+            case 16: return S16;
+            case 24: return S24;
+            case 32: return S32;
+            }
+        } else if (formatTag == 3) {
+            switch (bits) {
+            case 32: return F32;
+            case 64: return F64;
+            }
+        }
+        throw new IllegalArgumentException("unsupported format: " + formatTag + ", " + bits + " bits");
+    }
+}
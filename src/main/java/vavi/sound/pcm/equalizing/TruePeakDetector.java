@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.util.Arrays;
+
+
+/**
+ * TruePeakDetector. Estimates the peak between samples of a channel by 4 times
+ * oversampling, as ITU-R BS.1770 annex 2.
+ * <p>
+ * the interpolation filter is a windowed sinc of 48 taps, 12 for each phase.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class TruePeakDetector {
+
+    /** oversampling */
+    private static final int FACTOR = 4;
+
+    /** taps of a phase */
+    private static final int TAPS = 12;
+
+    /** [phase][tap] */
+    private static final double[][] PHASES = new double[FACTOR][TAPS];
+
+    /* */
+    static {
+        int n = FACTOR * TAPS;
+        double center = (n - 1) / 2d;
+        for (int i = 0; i < n; i++) {
+            double t = (i - center) / FACTOR;
+            double sinc = Math.sin(Math.PI * t) / (Math.PI * t);
+            // blackman
+            double w = 0.42 + 0.5 * Math.cos(2 * Math.PI * (i - center) / n) + 0.08 * Math.cos(4 * Math.PI * (i - center) / n);
+            PHASES[i % FACTOR][i / FACTOR] = sinc * w;
+        }
+        // unity gain for each phase
+        for (double[] phase : PHASES) {
+            double sum = 0;
+            for (double h : phase) {
+                sum += h;
+            }
+            for (int i = 0; i < TAPS; i++) {
+                phase[i] /= sum;
+            }
+        }
+    }
+
+    /**
+     * frames a result of {@link #process(double)} lags the input. the result is
+     * of between the samples of that many frames before and the next.
+     */
+    public static final int DELAY = TAPS / 2;
+
+    /** past samples doubled for contiguous access */
+    private final double[] history = new double[TAPS * 2];
+
+    /** */
+    private int position;
+
+    /**
+     * @param x a sample
+     * @return the peak from the sample of {@link #DELAY} frames before to the next one, inclusive
+     */
+    public double process(double x) {
+        position = (position + TAPS - 1) % TAPS;
+        history[position] = x;
+        history[position + TAPS] = x;
+
+        // history[position + j] is the sample of j frames before
+        double peak = Math.max(Math.abs(history[position + DELAY]), Math.abs(history[position + DELAY - 1]));
+        for (double[] phase : PHASES) {
+            double y = 0;
+            for (int j = 0; j < TAPS; j++) {
+                y += phase[j] * history[position + j];
+            }
+            peak = Math.max(peak, Math.abs(y));
+        }
+        return peak;
+    }
+
+    /** clears the history */
+    public void reset() {
+        Arrays.fill(history, 0);
+    }
+}
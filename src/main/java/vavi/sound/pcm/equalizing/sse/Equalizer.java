@@ -19,8 +19,10 @@ import java.lang.System.Logger.Level;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 
 import vavi.io.LittleEndianDataOutputStream;
 import vavi.util.SplitRadixFft;
@@ -30,6 +32,15 @@ import static java.lang.System.getLogger;
 
 /**
  * Shibatch Super Equalizer.
+ * <p>
+ * in the window mode a window of winlen frames is filtered by an fft at a time,
+ * in the partitioned mode ({@link #Equalizer(int, int)}) a block of blockFrames frames
+ * is filtered by uniformly partitioned overlap-save convolution with the same fir.
+ * <p>
+ * {@link #equ_makeTable} may be called on a control thread while another thread calls
+ * {@link #equ_modifySamples}. the tables are made on the calling thread and published
+ * atomically, the audio thread takes them at the next window or block, and crossfades
+ * the outputs of the old and the new firs over it. {@link #equ_modifySamples} allocates nothing.
  *
  * @author <a href="shibatch@users.sourceforge.net">Naoki Shibata</a>
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
@@ -85,21 +96,30 @@ public class Equalizer {
     /** */
     private final double iza;
 
-    /** */
-    private double[] lires, lires1, lires2, rires, rires1, rires2, irest;
+    /** firs of both channels, not modified after published */
+    private record Tables(double[] lires, double[] rires, double[][] lparts, double[][] rparts) {}
+
+    /** tables published by {@link #equ_makeTable}, not yet taken */
+    private final AtomicReference<Tables> nextTables = new AtomicReference<>();
+
+    /** tables in use, and the previous ones while crossfading, only on the audio thread */
+    private Tables tables, fadeTables;
+
+    /** tables before the first ones published */
+    private final Tables silence;
 
     /** */
     private double[] fsamples;
 
+    /** filter output of the old fir or of the previous window while crossfading */
+    private double[] fadebuf;
+
     /** */
     private final double[] ditherbuf;
 
     /** */
     private int ditherptr = 0;
 
-    /** */
-    private volatile int chg_ires, cur_ires;
-
     /** */
     private final int winlen;
     private final int tabsize;
@@ -111,9 +131,47 @@ public class Equalizer {
     /** */
     private int[] inbuf;
 
+    /** input of the previous window */
+    private int[] previnbuf;
+
     /** */
     private double[] outbuf;
 
+    /** frames of a block of the partitioned mode, 0 for the window mode */
+    private final int blockFrames;
+
+    /** fft size of the partitioned mode */
+    private final int fftsize;
+
+    /** number of partitions of the fir */
+    private final int nparts;
+
+    /** spectrum of a delta at the group delay for bypass, of the partition {@link #bypasspart} */
+    private double[] bypass;
+    private int bypasspart;
+
+    /** frequency domain delay line, spectra of past input blocks, [ch][partition][fftsize] */
+    private double[][][] fdl;
+
+    /** index of the spectrum of the newest block in {@link #fdl} */
+    private int fdlptr;
+
+    /** planar input, the previous block and the current one, [ch][fftsize] */
+    private float[][] pinbuf;
+
+    /** planar output of the previous block, [ch][blockFrames] */
+    private float[][] poutbuf;
+
+    /** quantized samples of a channel */
+    private int[] qbuf;
+
+    /** sum of the partitions, by the old fir while crossfading */
+    private double[] acc, fadeacc;
+
+    /** fft tables, initialized at construction, read only after */
+    private int[] ip;
+    private double[] w;
+
     /** */
     private int maxamp;
 
@@ -185,30 +243,71 @@ System.err.println("property band." + c + " not found, break");
     }
 
     /**
+     * the window mode.
      *
      * @param wb window length bits ???
      */
     public Equalizer(int wb) {
+        this(wb, 0);
+    }
+
+    /**
+     * the partitioned mode for low latency. output lags input by {@link #getLatency()},
+     * blockFrames plus the group delay of the linear phase fir (winlen / 2).
+     * use smaller wb for less group delay.
+     *
+     * @param wb window length bits ???
+     * @param blockFrames frames of a block, a power of 2 e.g. 64 ~ 1024, 0 for the window mode
+     * @throws IllegalArgumentException blockFrames is not a power of 2 up to the table size
+     */
+    public Equalizer(int wb, int blockFrames) {
 
         winlen = (1 << (wb - 1)) - 1;
         winlenbit = wb;
         tabsize = 1 << wb;
 //System.err.println("tablesize: " + tabsize);
 
-        lires1 = new double[tabsize];
-        lires2 = new double[tabsize];
-        rires1 = new double[tabsize];
-        rires2 = new double[tabsize];
-        irest = new double[tabsize];
-        fsamples = new double[tabsize];
-        inbuf = new int[winlen * NCH];
-        outbuf = new double[tabsize * NCH];
+        if (blockFrames < 0 || blockFrames == 1 || Integer.bitCount(blockFrames) > 1 || blockFrames > tabsize) {
+            throw new IllegalArgumentException("blockFrames: " + blockFrames);
+        }
+        this.blockFrames = blockFrames;
+        fftsize = blockFrames * 2;
+        nparts = blockFrames == 0 ? 0 : (winlen + blockFrames - 1) / blockFrames;
+
         ditherbuf = new double[DITHERLEN];
+        if (blockFrames == 0) {
+            double[] zero = new double[tabsize];
+            silence = new Tables(zero, zero, null, null);
+            fsamples = new double[tabsize];
+            fadebuf = new double[tabsize];
+            inbuf = new int[winlen * NCH];
+            previnbuf = new int[winlen * NCH];
+            outbuf = new double[tabsize * NCH];
+            ip = new int[(int) (2 + Math.sqrt(tabsize / 2d))];
+            w = new double[tabsize / 2];
+
+            // initializes the fft tables, they are read only after this
+            SplitRadixFft.rdft(tabsize, 1, fsamples, ip, w);
+        } else {
+            double[][] zeros = new double[nparts][fftsize];
+            silence = new Tables(null, null, zeros, zeros);
+            fdl = new double[NCH][nparts][fftsize];
+            pinbuf = new float[NCH][fftsize];
+            poutbuf = new float[NCH][blockFrames];
+            qbuf = new int[blockFrames];
+            acc = new double[fftsize];
+            fadeacc = new double[fftsize];
+            ip = new int[(int) (2 + Math.sqrt(fftsize / 2d))];
+            w = new double[fftsize / 2];
+
+            // also initializes the fft tables, they are read only after this
+            bypasspart = winlen / 2 / blockFrames;
+            bypass = new double[fftsize];
+            bypass[winlen / 2 % blockFrames] = 1;
+            SplitRadixFft.rdft(fftsize, 1, bypass, ip, w);
+        }
 
-        lires = lires1;
-        rires = rires1;
-        cur_ires = 1;
-        chg_ires = 1;
+        tables = silence;
 
         for (int i = 0; i < DITHERLEN; i++) {
             ditherbuf[i] = Math.random() - 0.5;
@@ -224,6 +323,11 @@ System.err.println("property band." + c + " not found, break");
         iza = izero(alpha(aa));
     }
 
+    /** @return frames output lags input, buffering plus the group delay of the fir */
+    public int getLatency() {
+        return (blockFrames == 0 ? winlen : blockFrames) + winlen / 2;
+    }
+
     /** -(N - 1) / 2 <= n <= (N - 1) / 2 */
     private double win(double n, int N) {
         return izero(alpha(aa) * Math.sqrt(1 - 4 * n * n / ((N - 1) * (N - 1)))) / iza;
@@ -378,40 +482,33 @@ for (Parameter pp : param2) {
      * @param fs frequency in Hz
      */
     public void equ_makeTable(double[] lbc, double[] rbc, List<Parameter> param, double fs) {
-        int i, cires = cur_ires;
-        double[] nires;
-
         if (fs <= 0) {
             throw new IllegalArgumentException("fs is <= 0");
         }
 
-        // L
-
-        List<Parameter> param2 = new ArrayList<>();
-
-        process_param(lbc, param, param2, fs, 0);
-
-        for (i = 0; i < winlen; i++) {
-            irest[i] = hn(i - winlen / 2, param2, fs) * win(i - winlen / 2, winlen);
-        }
+        double[] lfir = fir(lbc, param, fs, 0);
+        double[] rfir = fir(rbc, param, fs, 1);
 
-        for (; i < tabsize; i++) {
-            irest[i] = 0;
+        Tables next;
+        if (blockFrames == 0) {
+            SplitRadixFft.rdft(tabsize, 1, lfir, ip, w);
+            SplitRadixFft.rdft(tabsize, 1, rfir, ip, w);
+            next = new Tables(lfir, rfir, null, null);
+        } else {
+            next = new Tables(null, null, makeParts(lfir), makeParts(rfir));
         }
 
-        rfft(tabsize, 1, irest);
-
-        nires = cires == 1 ? lires2 : lires1;
-
-        for (i = 0; i < tabsize; i++) {
-            nires[i] = irest[i];
-        }
+        nextTables.set(next);
+    }
 
-        // R
+    /** @return the fir of the channel, zero padded to the table size */
+    private double[] fir(double[] bc, List<Parameter> param, double fs, int ch) {
+        int i;
+        double[] irest = new double[tabsize];
 
-        param2.clear();
+        List<Parameter> param2 = new ArrayList<>();
 
-        process_param(rbc, param, param2, fs, 1);
+        process_param(bc, param, param2, fs, ch);
 
         for (i = 0; i < winlen; i++) {
             irest[i] = hn(i - winlen / 2, param2, fs) * win(i - winlen / 2, winlen);
@@ -421,38 +518,66 @@ for (Parameter pp : param2) {
             irest[i] = 0;
         }
 
-        rfft(tabsize, 1, irest);
-
-        nires = cires == 1 ? rires2 : rires1;
+        return irest;
+    }
 
-        for (i = 0; i < tabsize; i++) {
-            nires[i] = irest[i];
+    /** splits the fir into the spectra of the partitions, the fft tables are read only here */
+    private double[][] makeParts(double[] h) {
+        double[][] parts = new double[nparts][fftsize];
+        for (int k = 0; k < nparts; k++) {
+            double[] part = parts[k];
+            int n = Math.min(blockFrames, winlen - k * blockFrames);
+            System.arraycopy(h, k * blockFrames, part, 0, n);
+            Arrays.fill(part, n, fftsize, 0);
+            SplitRadixFft.rdft(fftsize, 1, part, ip, w);
         }
+        return parts;
+    }
 
-        //
-
-        chg_ires = cires == 1 ? 2 : 1;
+    /** takes the tables published at a boundary of windows or blocks, on the audio thread */
+    private void swapTables() {
+        Tables next = nextTables.getAndSet(null);
+        if (next != null) {
+            // no crossfade from the initial silence
+            fadeTables = tables != silence ? tables : null;
+            tables = next;
+        } else {
+            fadeTables = null;
+        }
     }
 
     /** */
     public void equ_quit() {
-        lires1 = null;
-        lires2 = null;
-        rires1 = null;
-        rires2 = null;
-        irest = null;
+        tables = null;
+        fadeTables = null;
+        nextTables.set(null);
         fsamples = null;
+        fadebuf = null;
         inbuf = null;
+        previnbuf = null;
         outbuf = null;
-
-        rfft(0, 0, null);
+        fdl = null;
+        pinbuf = null;
+        poutbuf = null;
     }
 
     /** */
     void equ_clearbuf(int bps, int srate) {
         nbufsamples = 0;
-        for (int i = 0; i < tabsize * NCH; i++) {
-            outbuf[i] = 0;
+        if (blockFrames == 0) {
+            for (int i = 0; i < tabsize * NCH; i++) {
+                outbuf[i] = 0;
+            }
+            Arrays.fill(previnbuf, 0);
+        } else {
+            for (int ch = 0; ch < NCH; ch++) {
+                Arrays.fill(pinbuf[ch], 0);
+                Arrays.fill(poutbuf[ch], 0);
+                for (double[] spectrum : fdl[ch]) {
+                    Arrays.fill(spectrum, 0);
+                }
+            }
+            Arrays.fill(hms, 0);
         }
     }
 
@@ -461,6 +586,9 @@ for (Parameter pp : param2) {
 //    /** */
 //    private double hm2 = 0;
 
+    /** error feedback of dithering by channel in the partitioned mode */
+    private final double[] hms = new double[NCH];
+
     /**
      * @param buf PCM sample.  8, 16 and 24 bits are available.
      * @param nsamples
@@ -473,11 +601,8 @@ for (Parameter pp : param2) {
         int amax = (1 << (bps - 1)) - 1;
         int amin = -(1 << (bps - 1));
 
-        if (chg_ires != 0) {
-            cur_ires = chg_ires;
-            lires = cur_ires == 1 ? lires1 : lires2;
-            rires = cur_ires == 1 ? rires1 : rires2;
-            chg_ires = 0;
+        if (blockFrames != 0) {
+            return equ_modifySamplesPartitioned(buf, nsamples, nch, bps);
         }
 
         p = 0;
@@ -554,7 +679,7 @@ for (Parameter pp : param2) {
 
             case 24:
                 for (i = 0; i < (winlen - nbufsamples) * nch; i++) {
-                    inbuf[nbufsamples * nch + i] = (buf[(i + p * nch) * 3] & 0xff) + ((buf[(i + p * nch) * 3 + 1] & 0xff) << 8) + ((buf[(i + p * nch) * 3 + 2] & 0xff) << 16);
+                    inbuf[nbufsamples * nch + i] = (buf[(i + p * nch) * 3] & 0xff) + ((buf[(i + p * nch) * 3 + 1] & 0xff) << 8) + (buf[(i + p * nch) * 3 + 2] << 16);
 
                     double s = outbuf[nbufsamples * nch + i];
 //                    if (dither != 0) {
@@ -587,57 +712,29 @@ for (Parameter pp : param2) {
             nsamples -= winlen - nbufsamples;
             nbufsamples = 0;
 
+            swapTables();
+
             for (ch = 0; ch < nch; ch++) {
-                ires = ch == 0 ? lires : rires;
+                ires = ch == 0 ? tables.lires : tables.rires;
 
-                if (bps == 24) {
-                    for (i = 0; i < winlen; i++) {
-                        fsamples[i] = inbuf[nch * i + ch];
-                    }
+                filter(ires, inbuf, ch, nch, fsamples);
+
+                if (enable && fadeTables != null) {
+                    crossfade(ires, ch == 0 ? fadeTables.lires : fadeTables.rires, ch, nch);
                 } else {
                     for (i = 0; i < winlen; i++) {
-                        fsamples[i] = inbuf[nch * i + ch];
+                        outbuf[i * nch + ch] += fsamples[i] / tabsize * 2;
                     }
-                }
 
-                for (i = winlen; i < tabsize; i++) {
-                    fsamples[i] = 0;
-                }
-
-                if (enable) {
-                    rfft(tabsize, 1, fsamples);
-
-                    fsamples[0] = ires[0] * fsamples[0];
-                    fsamples[1] = ires[1] * fsamples[1];
-
-                    for (i = 1; i < tabsize / 2; i++) {
-                        double re, im;
-
-                        re = ires[i * 2] * fsamples[i * 2] - ires[i * 2 + 1] * fsamples[i * 2 + 1];
-                        im = ires[i * 2 + 1] * fsamples[i * 2] + ires[i * 2] * fsamples[i * 2 + 1];
-
-                        fsamples[i * 2] = re;
-                        fsamples[i * 2 + 1] = im;
-                    }
-
-                    rfft(tabsize, -1, fsamples);
-                } else {
-                    for (i = winlen - 1 + winlen / 2; i >= winlen / 2; i--) {
-                        fsamples[i] = fsamples[i - winlen / 2] * tabsize / 2;
-                    }
-                    for (; i >= 0; i--) {
-                        fsamples[i] = 0;
+                    for (i = winlen; i < tabsize; i++) {
+                        outbuf[i * nch + ch] = fsamples[i] / tabsize * 2;
                     }
                 }
-
-                for (i = 0; i < winlen; i++) {
-                    outbuf[i * nch + ch] += fsamples[i] / tabsize * 2;
-                }
-
-                for (i = winlen; i < tabsize; i++) {
-                    outbuf[i * nch + ch] = fsamples[i] / tabsize * 2;
-                }
             }
+
+            int[] t = previnbuf;
+            previnbuf = inbuf;
+            inbuf = t;
         }
 
         switch (bps) {
@@ -703,7 +800,7 @@ for (Parameter pp : param2) {
 
         case 24:
             for (i = 0; i < nsamples * nch; i++) {
-                inbuf[nbufsamples * nch + i] = (buf[(i + p * nch) * 3] & 0xff) + ((buf[(i + p * nch) * 3 + 1] & 0xff) << 8) + ((buf[(i + p * nch) * 3 + 2] & 0xff) << 16);
+                inbuf[nbufsamples * nch + i] = (buf[(i + p * nch) * 3] & 0xff) + ((buf[(i + p * nch) * 3 + 1] & 0xff) << 8) + (buf[(i + p * nch) * 3 + 2] << 16);
 
                 double s = outbuf[nbufsamples * nch + i];
 //                if (dither != 0) {
@@ -735,41 +832,232 @@ for (Parameter pp : param2) {
     }
 
     /**
+     * filters a window of the channel.
      *
-     * @param n table size
-     * @param isign
-     * @param x
+     * @param out the result, not scaled yet
      */
-    private static void rfft(int n, int isign, double[] x) {
-        int ipsize = 0, wsize = 0;
-        int[] ip = null;
-        double[] w = null;
-        int newipsize, newwsize;
-
-        if (n == 0) {
-            ip = null;
-            ipsize = 0;
-            w = null;
-            wsize = 0;
-//System.err.println("n is zero");
-//new Exception().printStackTrace(System.err);
-            return;
+    private void filter(double[] ires, int[] in, int ch, int nch, double[] out) {
+        int i;
+
+        for (i = 0; i < winlen; i++) {
+            out[i] = in[nch * i + ch];
+        }
+
+        for (i = winlen; i < tabsize; i++) {
+            out[i] = 0;
+        }
+
+        if (enable) {
+            SplitRadixFft.rdft(tabsize, 1, out, ip, w);
+
+            out[0] = ires[0] * out[0];
+            out[1] = ires[1] * out[1];
+
+            for (i = 1; i < tabsize / 2; i++) {
+                double re, im;
+
+                re = ires[i * 2] * out[i * 2] - ires[i * 2 + 1] * out[i * 2 + 1];
+                im = ires[i * 2 + 1] * out[i * 2] + ires[i * 2] * out[i * 2 + 1];
+
+                out[i * 2] = re;
+                out[i * 2 + 1] = im;
+            }
+
+            SplitRadixFft.rdft(tabsize, -1, out, ip, w);
+        } else {
+            for (i = winlen - 1 + winlen / 2; i >= winlen / 2; i--) {
+                out[i] = out[i - winlen / 2] * tabsize / 2;
+            }
+            for (; i >= 0; i--) {
+                out[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * crossfades the outputs of the old fir and the new one over the next window.
+     * the output of the new one needs the tail of the previous window by it.
+     *
+     * @param ires the new fir, the current window filtered by it is in {@link #fsamples}
+     * @param fires the old fir
+     */
+    private void crossfade(double[] ires, double[] fires, int ch, int nch) {
+        int i;
+
+        // old, the tail of the previous window by it is in outbuf already
+        filter(fires, inbuf, ch, nch, fadebuf);
+        for (i = 0; i < winlen; i++) {
+            outbuf[i * nch + ch] += fadebuf[i] / tabsize * 2;
+        }
+
+        // new
+        filter(ires, previnbuf, ch, nch, fadebuf);
+        for (i = 0; i < winlen; i++) {
+            double o = outbuf[i * nch + ch];
+            double n = (fadebuf[winlen + i] + fsamples[i]) / tabsize * 2;
+            outbuf[i * nch + ch] = o + (n - o) * (i + 1) / winlen;
         }
 
-        newipsize = (int) (2 + Math.sqrt(n / 2d));
-        if (newipsize > ipsize) {
-            ipsize = newipsize;
-            ip = new int[ipsize];
-            ip[0] = 0;
+        for (i = winlen; i < tabsize; i++) {
+            outbuf[i * nch + ch] = fsamples[i] / tabsize * 2;
         }
+    }
 
-        newwsize = n / 2;
-        if (newwsize > wsize) {
-            wsize = newwsize;
-            w = new double[wsize];
+    /**
+     * the partitioned mode, input is converted to planar float, filtered by blocks,
+     * then converted back, in separate loops.
+     */
+    private int equ_modifySamplesPartitioned(byte[] buf, int nsamples, int nch, int bps) {
+        int p = 0;
+        while (nsamples > 0) {
+            int n = Math.min(nsamples, blockFrames - nbufsamples);
+            decode(buf, p, n, nch, bps, blockFrames + nbufsamples);
+            encode(buf, p, n, nch, bps, nbufsamples);
+            p += n;
+            nsamples -= n;
+            nbufsamples += n;
+
+            if (nbufsamples == blockFrames) {
+                swapTables();
+                for (int ch = 0; ch < nch; ch++) {
+                    convolve(ch);
+                }
+                fdlptr = (fdlptr + nparts - 1) % nparts;
+                nbufsamples = 0;
+            }
         }
+        return p;
+    }
 
-        SplitRadixFft.rdft(n, isign, x, ip, w);
+    /** reads n frames at p of buf into {@link #pinbuf} at offset */
+    private void decode(byte[] buf, int p, int n, int nch, int bps, int offset) {
+        for (int ch = 0; ch < nch; ch++) {
+            float[] in = pinbuf[ch];
+            int q = p * nch + ch;
+            switch (bps) {
+            case 8:
+                for (int i = 0; i < n; i++, q += nch) {
+                    in[offset + i] = (buf[q] & 0xff) - 0x80;
+                }
+                break;
+            case 16:
+                for (int i = 0; i < n; i++, q += nch) {
+                    in[offset + i] = readShort(buf, q);
+                }
+                break;
+            case 24:
+                for (int i = 0; i < n; i++, q += nch) {
+                    in[offset + i] = (buf[q * 3] & 0xff) | ((buf[q * 3 + 1] & 0xff) << 8) | (buf[q * 3 + 2] << 16);
+                }
+                break;
+            default:
+                assert false;
+            }
+        }
+    }
+
+    /** writes n frames of {@link #poutbuf} from offset into buf at p, clipped and dithered */
+    private void encode(byte[] buf, int p, int n, int nch, int bps, int offset) {
+        int amax = (1 << (bps - 1)) - 1;
+        int amin = -(1 << (bps - 1));
+        boolean dithering = dither != 0 && bps != 24;
+        for (int ch = 0; ch < nch; ch++) {
+            float[] out = poutbuf[ch];
+            if (dithering) {
+                double hm = hms[ch];
+                for (int i = 0; i < n; i++) {
+                    double s = out[offset + i] - hm;
+                    double u = s;
+                    s += ditherbuf[(ditherptr++) & (DITHERLEN - 1)];
+                    qbuf[i] = RINT(Math.clamp(s, amin, amax));
+                    hm = qbuf[i] - u;
+                }
+                hms[ch] = hm;
+            } else {
+                for (int i = 0; i < n; i++) {
+                    qbuf[i] = RINT(Math.clamp(out[offset + i], amin, amax));
+                }
+            }
+
+            int q = p * nch + ch;
+            switch (bps) {
+            case 8:
+                for (int i = 0; i < n; i++, q += nch) {
+                    buf[q] = (byte) (qbuf[i] + 0x80);
+                }
+                break;
+            case 16:
+                for (int i = 0; i < n; i++, q += nch) {
+                    writeShort(buf, q, qbuf[i]);
+                }
+                break;
+            case 24:
+                for (int i = 0; i < n; i++, q += nch) {
+                    buf[q * 3] = (byte) qbuf[i];
+                    buf[q * 3 + 1] = (byte) (qbuf[i] >> 8);
+                    buf[q * 3 + 2] = (byte) (qbuf[i] >> 16);
+                }
+                break;
+            default:
+                assert false;
+            }
+        }
+    }
+
+    /** filters the current block of the channel in {@link #pinbuf} into {@link #poutbuf} */
+    private void convolve(int ch) {
+        float[] in = pinbuf[ch];
+        double[][] spectra = fdl[ch];
+        double[] x = spectra[fdlptr];
+        for (int i = 0; i < fftsize; i++) {
+            x[i] = in[i];
+        }
+        System.arraycopy(in, blockFrames, in, 0, blockFrames);
+        SplitRadixFft.rdft(fftsize, 1, x, ip, w);
+
+        Arrays.fill(acc, 0);
+        if (enable) {
+            sum(ch == 0 ? tables.lparts : tables.rparts, spectra, acc);
+        } else {
+            mac(bypass, spectra[(fdlptr + bypasspart) % nparts], acc);
+        }
+        SplitRadixFft.rdft(fftsize, -1, acc, ip, w);
+
+        // overlap-save, the first half is wrapped around
+        float[] out = poutbuf[ch];
+        double scale = 2d / fftsize;
+        if (enable && fadeTables != null) {
+            Arrays.fill(fadeacc, 0);
+            sum(ch == 0 ? fadeTables.lparts : fadeTables.rparts, spectra, fadeacc);
+            SplitRadixFft.rdft(fftsize, -1, fadeacc, ip, w);
+
+            for (int i = 0; i < blockFrames; i++) {
+                double o = fadeacc[blockFrames + i] * scale;
+                double n = acc[blockFrames + i] * scale;
+                out[i] = (float) (o + (n - o) * (i + 1) / blockFrames);
+            }
+        } else {
+            for (int i = 0; i < blockFrames; i++) {
+                out[i] = (float) (acc[blockFrames + i] * scale);
+            }
+        }
+    }
+
+    /** sums the partitions applied to the spectra, partition k to the block of k blocks before */
+    private void sum(double[][] parts, double[][] spectra, double[] acc) {
+        for (int k = 0; k < nparts; k++) {
+            mac(parts[k], spectra[(fdlptr + k) % nparts], acc);
+        }
+    }
+
+    /** acc += h * x, packed spectra of rdft */
+    private static void mac(double[] h, double[] x, double[] acc) {
+        acc[0] += h[0] * x[0];
+        acc[1] += h[1] * x[1];
+        for (int i = 2; i < acc.length; i += 2) {
+            acc[i] += h[i] * x[i] - h[i + 1] * x[i + 1];
+            acc[i + 1] += h[i + 1] * x[i] + h[i] * x[i + 1];
+        }
     }
 
     /** when bps = 16 */
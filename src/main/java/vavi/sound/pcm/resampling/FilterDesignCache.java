@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * FilterDesignCache. A process-wide cache of filter designs of a resampler, shared by its instances.
+ * <p>
+ * designs must not be modified after they are cached. a design is made once even if
+ * it is requested by several threads at the same time, the others wait for it.
+ * the least recently used one is evicted over the max size, instances using it keep it.
+ *
+ * @param <K> the parameters of a design, must implement equals and hashCode
+ * @param <V> the design
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class FilterDesignCache<K, V> {
+
+    private static final Logger logger = getLogger(FilterDesignCache.class.getName());
+
+    /** statistics */
+    public record Metrics(long hits, long misses, long evictions, long designNanos, int size) {
+
+        /** @return 0 ~ 1, 0 when nothing has been requested */
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : hits / (double) requests;
+        }
+
+        /** @return average time of a design */
+        public long getAverageDesignNanos() {
+            return misses == 0 ? 0 : designNanos / misses;
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", Metrics.class.getSimpleName() + "[", "]")
+                    .add("hits=" + hits)
+                    .add("misses=" + misses)
+                    .add("evictions=" + evictions)
+                    .add(String.format("hitRate=%.2f", getHitRate()))
+                    .add("design=" + designNanos / 1_000_000 + "ms")
+                    .add("size=" + size)
+                    .toString();
+        }
+    }
+
+    /** for logging */
+    private final String name;
+
+    /** */
+    private final int maxSize;
+
+    /** access ordered, guarded by itself */
+    private final Map<K, CompletableFuture<V>> designs;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong designNanos = new AtomicLong();
+
+    /**
+     * @param name for logging
+     * @param maxSize designs kept at most, 0 for no caching
+     */
+    public FilterDesignCache(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.designs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
+                if (size() > FilterDesignCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param designer makes the design of the key when it is not cached
+     * @return the design of the key
+     * @throws RuntimeException thrown by the designer, the failure is not cached
+     */
+    public V get(K key, Function<K, V> designer) {
+        CompletableFuture<V> design;
+        boolean owner = false;
+        synchronized (designs) {
+            design = designs.get(key);
+            if (design == null) {
+                design = new CompletableFuture<>();
+                designs.put(key, design);
+                owner = true;
+            }
+        }
+        if (owner) {
+            misses.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                design.complete(designer.apply(key));
+            } catch (RuntimeException | Error e) {
+                synchronized (designs) {
+                    designs.remove(key, design);
+                }
+                design.completeExceptionally(e);
+                throw e;
+            }
+            long nanos = System.nanoTime() - start;
+            designNanos.addAndGet(nanos);
+logger.log(Level.DEBUG, "%s: designed %s in %d us".formatted(name, key, nanos / 1000));
+        } else {
+            hits.incrementAndGet();
+        }
+        try {
+            return design.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) {
+                throw r;
+            }
+            throw e;
+        }
+    }
+
+    /** @return the statistics so far */
+    public Metrics getMetrics() {
+        int size;
+        synchronized (designs) {
+            size = designs.size();
+        }
+        return new Metrics(hits.get(), misses.get(), evictions.get(), designNanos.get(), size);
+    }
+
+    /** removes all designs, the statistics are kept */
+    public void clear() {
+        synchronized (designs) {
+            designs.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getMetrics();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling;
+
+import java.util.function.IntFunction;
+
+
+/**
+ * InterleavedResampler. Resamples interleaved multichannel pcm by a {@link StreamResampler}
+ * per channel, in blocks of a fixed size.
+ * <p>
+ * work buffers are allocated at construction, nothing is allocated while resampling.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class InterleavedResampler {
+
+    /** */
+    private final StreamResampler[] resamplers;
+
+    /** frames resampled at once */
+    private final int blockFrames;
+
+    /** de-interleaved input of a block */
+    private final int[][] ins;
+
+    /** output of a block by channel */
+    private final int[][] outs;
+
+    /**
+     * @param channels number of channels
+     * @param blockFrames frames resampled at once
+     * @param factory creates the resampler of a channel, same kind and rates for all
+     */
+    public InterleavedResampler(int channels, int blockFrames, IntFunction<StreamResampler> factory) {
+        this.blockFrames = blockFrames;
+        resamplers = new StreamResampler[channels];
+        ins = new int[channels][blockFrames];
+        outs = new int[channels][];
+        for (int c = 0; c < channels; c++) {
+            resamplers[c] = factory.apply(c);
+            outs[c] = new int[Math.max(resamplers[c].getMaxOutput(blockFrames), resamplers[c].getMaxOutput(0))];
+        }
+    }
+
+    /** */
+    public int getChannels() {
+        return resamplers.length;
+    }
+
+    /**
+     * @param frames input frames
+     * @return output frames at most for them, with 0 for a call of drain
+     */
+    public int getMaxOutput(int frames) {
+        int blocks = (frames + blockFrames - 1) / blockFrames;
+        return Math.max(blocks * outs[0].length, resamplers[0].getMaxOutput(0));
+    }
+
+    /**
+     * @param in interleaved
+     * @param out interleaved, must have room of {@link #getMaxOutput(int)} frames from outOffset
+     * @return frames written
+     */
+    public int resample(int[] in, int offset, int frames, int[] out, int outOffset) {
+        int channels = resamplers.length;
+        int written = 0;
+        for (int f = 0; f < frames; f += blockFrames) {
+            int n = Math.min(blockFrames, frames - f);
+            for (int c = 0; c < channels; c++) {
+                int[] channel = ins[c];
+                for (int i = 0, p = offset + f * channels + c; i < n; i++, p += channels) {
+                    channel[i] = in[p];
+                }
+            }
+            int o = resampleBlock(n);
+            for (int c = 0; c < channels; c++) {
+                int[] channel = outs[c];
+                for (int i = 0, p = outOffset + (written + i) * channels + c; i < o; i++, p += channels) {
+                    out[p] = channel[i];
+                }
+            }
+            written += o;
+        }
+        return written;
+    }
+
+    /**
+     * @param out interleaved, must have room of {@link #getMaxOutput(int) getMaxOutput(0)} frames from outOffset
+     * @return frames written, 0 when all have been output
+     */
+    public int drain(int[] out, int outOffset) {
+        int channels = resamplers.length;
+        int o = drainBlock();
+        for (int c = 0; c < channels; c++) {
+            int[] channel = outs[c];
+            for (int i = 0, p = outOffset + c; i < o; i++, p += channels) {
+                out[p] = channel[i];
+            }
+        }
+        return o;
+    }
+
+    /**
+     * for 16 bit little endian pcm, output is clipped.
+     *
+     * @param out must have room of {@link #getMaxOutput(int)} frames from outOffset
+     * @return frames written
+     */
+    public int resample(byte[] in, int offset, int frames, byte[] out, int outOffset) {
+        int channels = resamplers.length;
+        int written = 0;
+        for (int f = 0; f < frames; f += blockFrames) {
+            int n = Math.min(blockFrames, frames - f);
+            for (int c = 0; c < channels; c++) {
+                int[] channel = ins[c];
+                for (int i = 0, p = offset + (f * channels + c) * 2; i < n; i++, p += channels * 2) {
+                    channel[i] = (short) ((in[p] & 0xff) | (in[p + 1] << 8));
+                }
+            }
+            int o = resampleBlock(n);
+            toBytes(o, out, outOffset + written * channels * 2);
+            written += o;
+        }
+        return written;
+    }
+
+    /**
+     * for 16 bit little endian pcm, output is clipped.
+     *
+     * @param out must have room of {@link #getMaxOutput(int) getMaxOutput(0)} frames from outOffset
+     * @return frames written, 0 when all have been output
+     */
+    public int drain(byte[] out, int outOffset) {
+        int o = drainBlock();
+        toBytes(o, out, outOffset);
+        return o;
+    }
+
+    /** @return frames in {@link #outs} */
+    private int resampleBlock(int frames) {
+        int o = resamplers[0].resample(ins[0], 0, frames, outs[0], 0);
+        for (int c = 1; c < resamplers.length; c++) {
+            int oc = resamplers[c].resample(ins[c], 0, frames, outs[c], 0);
+            if (oc != o) {
+                throw new IllegalStateException("channels out of step: " + o + ", " + oc);
+            }
+        }
+        return o;
+    }
+
+    /** @return frames in {@link #outs} */
+    private int drainBlock() {
+        int o = resamplers[0].drain(outs[0], 0);
+        for (int c = 1; c < resamplers.length; c++) {
+            int oc = resamplers[c].drain(outs[c], 0);
+            if (oc != o) {
+                throw new IllegalStateException("channels out of step: " + o + ", " + oc);
+            }
+        }
+        return o;
+    }
+
+    /** interleaves {@link #outs} into 16 bit little endian */
+    private void toBytes(int frames, byte[] out, int outOffset) {
+        int channels = resamplers.length;
+        for (int c = 0; c < channels; c++) {
+            int[] channel = outs[c];
+            for (int i = 0, p = outOffset + c * 2; i < frames; i++, p += channels * 2) {
+                int v = Math.clamp(channel[i], Short.MIN_VALUE, Short.MAX_VALUE);
+                out[p] = (byte) v;
+                out[p + 1] = (byte) (v >> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+
+import vavi.io.OutputEngine;
+
+import static java.lang.System.getLogger;
+
+
+/**
+ * InterleavedResamplerOutputEngine. Resamples a 16 bit little endian interleaved pcm stream
+ * by an {@link InterleavedResampler}, a block at a time.
+ * <p>
+ * input and output buffers are allocated at construction.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class InterleavedResamplerOutputEngine implements OutputEngine {
+
+    private static final Logger logger = getLogger(InterleavedResamplerOutputEngine.class.getName());
+
+    /** frames read at once by default */
+    public static final int BLOCK_FRAMES = 4096;
+
+    /** */
+    private final InputStream in;
+
+    /** */
+    private OutputStream out;
+
+    /** */
+    private final InterleavedResampler resampler;
+
+    /** a block of input */
+    private final byte[] sample;
+
+    /** output of a block or a drain */
+    private final byte[] result;
+
+    /** */
+    private final int frameSize;
+
+    /**
+     * @param resampler reads blocks of {@link #BLOCK_FRAMES}
+     */
+    public InterleavedResamplerOutputEngine(InputStream is, InterleavedResampler resampler) {
+        this.in = is;
+        this.resampler = resampler;
+        this.frameSize = resampler.getChannels() * 2;
+        this.sample = new byte[BLOCK_FRAMES * frameSize];
+        this.result = new byte[Math.max(resampler.getMaxOutput(BLOCK_FRAMES), resampler.getMaxOutput(0)) * frameSize];
+    }
+
+    @Override
+    public void initialize(OutputStream out) throws IOException {
+        if (this.out != null) {
+            throw new IOException("Already initialized");
+        } else {
+            this.out = out;
+        }
+    }
+
+    @Override
+    public void execute() throws IOException {
+        if (out == null) {
+            throw new IOException("Not yet initialized");
+        } else {
+            int r = in.readNBytes(sample, 0, sample.length);
+            int frames = r / frameSize;
+            if (frames > 0) {
+                int o = resampler.resample(sample, 0, frames, result, 0);
+                out.write(result, 0, o * frameSize);
+            }
+            if (r < sample.length) {
+                int o;
+                while ((o = resampler.drain(result, 0)) > 0) {
+logger.log(Level.DEBUG, "drain: " + o);
+                    out.write(result, 0, o * frameSize);
+                }
+                out.flush();
+                out.close();
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        in.close();
+    }
+}
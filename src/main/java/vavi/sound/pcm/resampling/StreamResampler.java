@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling;
+
+/**
+ * StreamResampler. A resampler of a single channel which keeps its filter state
+ * between calls and writes into the caller's buffer.
+ * <p>
+ * samples are 16 bit values in ints, the output is not clipped to 16 bit.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ * @see InterleavedResampler
+ */
+public interface StreamResampler {
+
+    /**
+     * @param length input samples
+     * @return room {@link #resample(int[], int, int, int[], int)} needs for the input,
+     *         with 0 the room {@link #drain(int[], int)} needs
+     */
+    int getMaxOutput(int length);
+
+    /**
+     * Resamples a successive chunk of a stream.
+     *
+     * @param out must have room of {@link #getMaxOutput(int)} from outOffset
+     * @return samples written to out
+     */
+    int resample(int[] in, int offset, int length, int[] out, int outOffset);
+
+    /**
+     * Outputs the rest held by the filter after the last chunk, call until it returns 0.
+     *
+     * @param out must have room of {@link #getMaxOutput(int) getMaxOutput(0)} from outOffset
+     * @return samples written to out
+     */
+    int drain(int[] out, int outOffset);
+}
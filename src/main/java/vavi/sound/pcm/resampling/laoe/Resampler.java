@@ -20,6 +20,9 @@ package vavi.sound.pcm.resampling.laoe;
 
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.util.Arrays;
+
+import vavi.sound.pcm.resampling.StreamResampler;
 
 import static java.lang.System.getLogger;
 
@@ -37,7 +40,7 @@ import static java.lang.System.getLogger;
  *          21.04.01 oli4 usage of toolkit<br>
  *          19.09.01 oli4 index-calculation double-precision<br>
  */
-public class Resampler {
+public class Resampler implements StreamResampler {
 
     private static final Logger logger = getLogger(Resampler.class.getName());
 
@@ -166,6 +169,67 @@ public class Resampler {
         return results;
     }
 
+    /** samples kept from the previous chunk for the streaming api, enough for the third order */
+    private static final int HISTORY = 3;
+
+    /** history, then the current chunk, grows to the largest chunk */
+    private int[] window = new int[HISTORY + 2];
+
+    /** position in the current chunk of the next output for the streaming api, negative is in the history */
+    private double position;
+
+    /** the rest has been output */
+    private boolean drained;
+
+    @Override
+    public int getMaxOutput(int length) {
+        return (int) Math.ceil((length + HISTORY) / sampleRateFactor) + 1;
+    }
+
+    /** constant resampling over chunks */
+    @Override
+    public int resample(int[] in, int offset, int length, int[] out, int outOffset) {
+        if (window.length < HISTORY + length) {
+            window = Arrays.copyOf(window, HISTORY + length);
+        }
+        System.arraycopy(in, offset, window, HISTORY, length);
+        int o = outOffset;
+        // two samples ahead are needed
+        for (double index = position + HISTORY; (int) index + 2 < HISTORY + length; index += sampleRateFactor) {
+            out[o++] = interpolate(window, index);
+            position += sampleRateFactor;
+        }
+        System.arraycopy(window, length, window, 0, HISTORY);
+        position -= length;
+        return o - outOffset;
+    }
+
+    /** the positions before the end are output with silence after it */
+    @Override
+    public int drain(int[] out, int outOffset) {
+        if (drained) {
+            return 0;
+        }
+        drained = true;
+        window[HISTORY] = 0;
+        window[HISTORY + 1] = 0;
+        int o = outOffset;
+        for (; position < 0; position += sampleRateFactor) {
+            out[o++] = interpolate(window, position + HISTORY);
+        }
+        return o - outOffset;
+    }
+
+    /** by the order */
+    private int interpolate(int[] data, double index) {
+        return switch (order) {
+            case 0 -> interpolate0(data, index);
+            case 1 -> interpolate1(data, index);
+            case 3 -> interpolate3(data, index);
+            default -> interpolate2(data, index);
+        };
+    }
+
     /**
      * zeroth order interpolation
      *
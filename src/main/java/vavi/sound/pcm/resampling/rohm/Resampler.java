@@ -6,13 +6,16 @@
 
 package vavi.sound.pcm.resampling.rohm;
 
+import vavi.sound.pcm.resampling.StreamResampler;
+
+
 /**
  * Rohm Resampler.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 060131 nsano initial version <br>
  */
-public class Resampler {
+public class Resampler implements StreamResampler {
 
     /** number of bits per sample */
     private static final int nBitPerSample = 16;
@@ -110,4 +113,54 @@ public class Resampler {
 
         return pbyNewPcm;
     }
+
+    /** input position of the next output for the streaming api, -1 is the last sample of the previous chunk */
+    private double position;
+
+    /** the last sample of the previous chunk */
+    private int last;
+
+    /** the rest has been output */
+    private boolean drained;
+
+    @Override
+    public int getMaxOutput(int length) {
+        return (int) Math.ceil((length + 1) * (nFreq / nSampleFreq)) + 1;
+    }
+
+    /** linear interpolation over chunks */
+    @Override
+    public int resample(int[] in, int offset, int length, int[] out, int outOffset) {
+        double step = nSampleFreq / nFreq;
+        int o = outOffset;
+        while (position < length - 1) {
+            int index1 = (int) Math.floor(position);
+            double rat1 = position - index1;
+            int n1 = index1 < 0 ? last : in[offset + index1];
+            int n2 = in[offset + index1 + 1];
+            out[o++] = (short) Math.clamp(rat1 * n2 + (1.0 - rat1) * n1, -32768, 32767);
+            position += step;
+        }
+        if (length > 0) {
+            last = in[offset + length - 1];
+            position -= length;
+        }
+        return o - outOffset;
+    }
+
+    /** the last sample is held for the positions after it */
+    @Override
+    public int drain(int[] out, int outOffset) {
+        if (drained) {
+            return 0;
+        }
+        drained = true;
+        double step = nSampleFreq / nFreq;
+        int o = outOffset;
+        while (position < 0) {
+            out[o++] = last;
+            position += step;
+        }
+        return o - outOffset;
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling.sox;
+
+import java.nio.FloatBuffer;
+
+import vavi.sound.pcm.resampling.sox.PerfectResampler.RateShared;
+
+
+/**
+ * MultiChannelPerfectResampler. A {@link PerfectResampler} per channel for planar buffers.
+ * <p>
+ * all channels use the same filters (poly-phase coefficients, half-band dft coefficients
+ * and fft tables), as sox does. an instance is not thread safe.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+public class MultiChannelPerfectResampler {
+
+    /** */
+    private final PerfectResampler[] resamplers;
+
+    /** work */
+    private final int[] isamp = new int[1], osamp = new int[1];
+
+    /**
+     * @param channels number of channels
+     * @see PerfectResampler#PerfectResampler(int, int, double, boolean, int, float, float)
+     */
+    public MultiChannelPerfectResampler(int channels, int coef_interp, int phase, double bandwidth, boolean allow_aliasing, int quality, float in_rate, float out_rate) {
+        RateShared shared = PerfectResampler.design(coef_interp, phase, bandwidth, allow_aliasing, quality, in_rate, out_rate);
+        resamplers = new PerfectResampler[channels];
+        for (int c = 0; c < channels; c++) {
+            resamplers[c] = new PerfectResampler(coef_interp, phase, bandwidth, allow_aliasing, quality, in_rate, out_rate, shared);
+        }
+    }
+
+    /** */
+    public int getChannels() {
+        return resamplers.length;
+    }
+
+    /** @return the resampler of the channel, e.g. for {@link PerfectResampler#quantize(double)} */
+    public PerfectResampler getChannel(int channel) {
+        return resamplers[channel];
+    }
+
+    /** @see PerfectResampler#setDither(boolean) */
+    public void setDither(boolean dither) {
+        for (PerfectResampler resampler : resamplers) {
+            resampler.setDither(dither);
+        }
+    }
+
+    /**
+     * @param ibuf [channel][sample], null for no input
+     * @param obuf [channel][sample]
+     * @param isamp [in/out] input samples of each channel
+     * @param osamp [in/out] room of each channel, samples written to each channel
+     * @see PerfectResampler#flow(double[], int, double[], int, int[], int[])
+     */
+    public void flow(double[][] ibuf, int ioffset, double[][] obuf, int ooffset, int[] isamp, int[] osamp) {
+        int in = isamp[0];
+        int out = osamp[0];
+        for (int c = 0; c < resamplers.length; c++) {
+            this.isamp[0] = in;
+            this.osamp[0] = out;
+            resamplers[c].flow(ibuf != null ? ibuf[c] : null, ioffset, obuf[c], ooffset, this.isamp, this.osamp);
+            check(c, isamp, osamp);
+        }
+    }
+
+    /** @see #flow(double[][], int, double[][], int, int[], int[]) */
+    public void flow(float[][] ibuf, int ioffset, float[][] obuf, int ooffset, int[] isamp, int[] osamp) {
+        int in = isamp[0];
+        int out = osamp[0];
+        for (int c = 0; c < resamplers.length; c++) {
+            this.isamp[0] = in;
+            this.osamp[0] = out;
+            resamplers[c].flow(ibuf != null ? ibuf[c] : null, ioffset, obuf[c], ooffset, this.isamp, this.osamp);
+            check(c, isamp, osamp);
+        }
+    }
+
+    /**
+     * @param in by channel, null for no input
+     * @param out by channel
+     * @see PerfectResampler#flow(FloatBuffer, FloatBuffer)
+     */
+    public void flow(FloatBuffer[] in, FloatBuffer[] out) {
+        for (int c = 0; c < resamplers.length; c++) {
+            resamplers[c].flow(in != null ? in[c] : null, out[c]);
+        }
+    }
+
+    /** @see PerfectResampler#drain(double[], int, int[]) */
+    public void drain(double[][] obuf, int ooffset, int[] osamp) {
+        int out = osamp[0];
+        for (int c = 0; c < resamplers.length; c++) {
+            this.isamp[0] = 0;
+            this.osamp[0] = out;
+            resamplers[c].drain(obuf[c], ooffset, this.osamp);
+            check(c, this.isamp, osamp);
+        }
+    }
+
+    /** @see PerfectResampler#drain(float[], int, int[]) */
+    public void drain(float[][] obuf, int ooffset, int[] osamp) {
+        int out = osamp[0];
+        for (int c = 0; c < resamplers.length; c++) {
+            this.isamp[0] = 0;
+            this.osamp[0] = out;
+            resamplers[c].drain(obuf[c], ooffset, this.osamp);
+            check(c, this.isamp, osamp);
+        }
+    }
+
+    /** @see PerfectResampler#drain(FloatBuffer) */
+    public void drain(FloatBuffer[] out) {
+        for (int c = 0; c < resamplers.length; c++) {
+            resamplers[c].drain(out[c]);
+        }
+    }
+
+    /** stores the counts of the first channel, then checks the others are the same */
+    private void check(int channel, int[] isamp, int[] osamp) {
+        if (channel == 0) {
+            isamp[0] = this.isamp[0];
+            osamp[0] = this.osamp[0];
+        } else if (isamp[0] != this.isamp[0] || osamp[0] != this.osamp[0]) {
+            throw new IllegalStateException("channels out of step: " + osamp[0] + ", " + this.osamp[0]);
+        }
+    }
+}
@@ -20,8 +20,11 @@ package vavi.sound.pcm.resampling.sox;
 
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
+import vavi.sound.pcm.resampling.FilterDesignCache;
 import vavi.util.I0Bessel;
 import vavi.util.SplitRadixFft;
 
@@ -164,6 +167,8 @@ public class PerfectResampler {
         /** For step: > 1 for rational; 1 otherwise */
         int divisor;
         double out_in_ratio;
+        /** dft work of half_sample, double_sample */
+        double[] work;
         Stage() {
             shared = new RateShared();
             at = new Union();
@@ -224,7 +229,7 @@ public class PerfectResampler {
             output = output_fifo.data;
             output_fifo.trim_by((f.dft_length + overlap) >> 1);
 
-            double[] o = new double[f.dft_length];
+            double[] o = work(stage, f.dft_length);
             System.arraycopy(input, inputP, o, 0, f.dft_length);
             if (s.bit_rev_table == null) {
                 s.bit_rev_table = new int[dft_br_len(f.dft_length)];
@@ -272,7 +277,7 @@ public class PerfectResampler {
                 output[outputP + i + 1] = 0;
             }
 
-            double[] o = new double[f.dft_length];
+            double[] o = work(stage, f.dft_length);
             System.arraycopy(output, outputP, o, 0, f.dft_length);
             if (s.bit_rev_table == null) {
                 s.bit_rev_table = new int[dft_br_len(f.dft_length)];
@@ -293,6 +298,14 @@ public class PerfectResampler {
         }
     };
 
+    /** @return the dft work of the stage, overwritten entirely by the caller */
+    private static double[] work(Stage stage, int length) {
+        if (stage.work == null || stage.work.length < length) {
+            stage.work = new double[length];
+        }
+        return stage.work;
+    }
+
     /** */
     private static double[] make_lpf(int num_taps, double Fc, double beta, double scale) {
         double[] h = new double[num_taps];
@@ -1331,9 +1344,9 @@ logger.log(Level.DEBUG, "stage=%-3dpre_post=%-3dpre=%-3dpreload=%d".formatted(i,
         final Rate rate;
         final RateShared shared;
         int shared_ptr;
-        Priv() {
+        Priv(RateShared shared) {
             rate = new Rate();
-            shared = new RateShared();
+            this.shared = shared;
         }
     }
 
@@ -1350,7 +1363,46 @@ logger.log(Level.DEBUG, "stage=%-3dpre_post=%-3dpre=%-3dpreload=%d".formatted(i,
      * @param quality
      */
     public PerfectResampler(int coef_interp, int phase, double bandwidth, boolean allow_aliasing, int quality, float in_rate, float out_rate) {
-        this.priv = new Priv();
+        this(coef_interp, phase, bandwidth, allow_aliasing, quality, in_rate, out_rate, design(coef_interp, phase, bandwidth, allow_aliasing, quality, in_rate, out_rate));
+    }
+
+    /** the parameters of a design */
+    private record DesignKey(int coef_interp, int phase, double bandwidth, boolean allow_aliasing, int quality, float in_rate, float out_rate) {}
+
+    /** designs shared by all instances, the max size is the system property "vavi.sound.pcm.resampling.sox.PerfectResampler.cacheSize" */
+    private static final FilterDesignCache<DesignKey, RateShared> cache = new FilterDesignCache<>(PerfectResampler.class.getSimpleName(),
+            Integer.getInteger(PerfectResampler.class.getName() + ".cacheSize", 32));
+
+    /** @return statistics of the designs shared by instances */
+    public static FilterDesignCache.Metrics getCacheMetrics() {
+        return cache.getMetrics();
+    }
+
+    /**
+     * @return the filters for the parameters from the cache, designed if not cached.
+     *         they are read only after this, so instances on any threads can share them.
+     * @throws IllegalArgumentException the parameters are wrong
+     */
+    static RateShared design(int coef_interp, int phase, double bandwidth, boolean allow_aliasing, int quality, float in_rate, float out_rate) {
+        return cache.get(new DesignKey(coef_interp, phase, bandwidth, allow_aliasing, quality, in_rate, out_rate), k -> {
+            RateShared shared = new RateShared();
+            new PerfectResampler(k.coef_interp, k.phase, k.bandwidth, k.allow_aliasing, k.quality, k.in_rate, k.out_rate, shared);
+            // let the fft set its tables up for the largest length now, not while processing
+            int length = Math.max(shared.half_band[0].dft_length, shared.half_band[1].dft_length);
+            if (length != 0) {
+                SplitRadixFft.rdft(length, 1, new double[length], shared.bit_rev_table, shared.sin_cos_table);
+            }
+            return shared;
+        });
+    }
+
+    /**
+     * @param shared filters designed by the first instance are used by the others given the same one,
+     *               the parameters must be the same.
+     * @see MultiChannelPerfectResampler
+     */
+    PerfectResampler(int coef_interp, int phase, double bandwidth, boolean allow_aliasing, int quality, float in_rate, float out_rate, RateShared shared) {
+        this.priv = new Priv(shared);
         priv.quality = Quality.Default;
         priv.phase = 25;
         priv.shared_ptr = 0; // p.shared
@@ -1386,14 +1438,14 @@ logger.log(Level.DEBUG, "stage=%-3dpre_post=%-3dpre=%-3dpreload=%d".formatted(i,
      */
     public void flow(int[] ibuf, int[] obuf, int[] isamp, int[] osamp) {
         int i;
-        int[] odone = { osamp[0] };
+        odone[0] = osamp[0];
 
         int sP = rate_output(priv.rate, null, odone);
 logger.log(Level.DEBUG, "odone: " + odone[0]);
         double[] s = priv.rate.stages[priv.rate.output_stage_num + 1].fifo.data;
         int obufP = 0;
         for (i = 0; i < odone[0]; ++i) {
-            obuf[obufP++] = (int) Math.round(s[sP++]);
+            obuf[obufP++] = quantize(s[sP++]);
         }
 
         if (isamp[0] != 0 && odone[0] < osamp[0]) {
@@ -1415,11 +1467,122 @@ logger.log(Level.DEBUG, "odone: " + odone[0]);
      * @param osamp [out]
      */
     public void drain(int[] obuf, int[] osamp) {
-        int[] isamp = { 0 };
+        isamp[0] = 0;
         rate_flush(priv.rate);
         flow(null, obuf, isamp, osamp);
     }
 
+    /** work of flows */
+    private final int[] odone = new int[1], isamp = new int[1];
+
+    /** tpdf dither of the integer output, null for none */
+    private SplittableRandom dither;
+
+    /**
+     * @param dither adds triangular pdf dither of &plusmn;1 lsb when the output is rounded
+     *               to integers by {@link #flow(int[], int[], int[], int[])} or {@link #quantize(double)},
+     *               the floating point apis are not affected.
+     */
+    public void setDither(boolean dither) {
+        this.dither = dither ? new SplittableRandom() : null;
+    }
+
+    /** @return the sample rounded to an integer, dithered if set, not clipped */
+    public int quantize(double sample) {
+        if (dither != null) {
+            sample += dither.nextDouble() - dither.nextDouble();
+        }
+        return (int) Math.round(sample);
+    }
+
+    /**
+     * The planar floating point version of {@link #flow(int[], int[], int[], int[])}, nothing is rounded.
+     * samples are in any scale, e.g. &plusmn;1.0 or &plusmn;32768.
+     *
+     * @param isamp [in/out] input samples from ioffset, 0 when the input was not taken because obuf was filled
+     * @param osamp [in/out] room of obuf from ooffset, samples written
+     */
+    public void flow(double[] ibuf, int ioffset, double[] obuf, int ooffset, int[] isamp, int[] osamp) {
+        odone[0] = osamp[0];
+        int sP = rate_output(priv.rate, null, odone);
+        System.arraycopy(priv.rate.stages[priv.rate.output_stage_num + 1].fifo.data, sP, obuf, ooffset, odone[0]);
+
+        if (isamp[0] != 0 && odone[0] < osamp[0]) {
+            int tP = rate_input(priv.rate, null, isamp[0]);
+            System.arraycopy(ibuf, ioffset, priv.rate.stages[priv.rate.input_stage_num + 1].fifo.data, tP, isamp[0]);
+            rate_process(priv.rate);
+        } else {
+            isamp[0] = 0;
+        }
+        osamp[0] = odone[0];
+    }
+
+    /** @see #flow(double[], int, double[], int, int[], int[]) */
+    public void flow(float[] ibuf, int ioffset, float[] obuf, int ooffset, int[] isamp, int[] osamp) {
+        odone[0] = osamp[0];
+        int sP = rate_output(priv.rate, null, odone);
+        double[] s = priv.rate.stages[priv.rate.output_stage_num + 1].fifo.data;
+        for (int i = 0; i < odone[0]; i++) {
+            obuf[ooffset + i] = (float) s[sP + i];
+        }
+
+        if (isamp[0] != 0 && odone[0] < osamp[0]) {
+            int tP = rate_input(priv.rate, null, isamp[0]);
+            double[] t = priv.rate.stages[priv.rate.input_stage_num + 1].fifo.data;
+            for (int i = 0; i < isamp[0]; i++) {
+                t[tP + i] = ibuf[ioffset + i];
+            }
+            rate_process(priv.rate);
+        } else {
+            isamp[0] = 0;
+        }
+        osamp[0] = odone[0];
+    }
+
+    /**
+     * @param in all remaining are taken unless out is filled by the output ready, the position is advanced
+     * @param out the output ready is put up to its remaining
+     * @see #flow(double[], int, double[], int, int[], int[])
+     */
+    public void flow(FloatBuffer in, FloatBuffer out) {
+        odone[0] = out.remaining();
+        int sP = rate_output(priv.rate, null, odone);
+        double[] s = priv.rate.stages[priv.rate.output_stage_num + 1].fifo.data;
+        for (int i = 0; i < odone[0]; i++) {
+            out.put((float) s[sP + i]);
+        }
+
+        if (in != null && in.hasRemaining() && out.hasRemaining()) {
+            int n = in.remaining();
+            int tP = rate_input(priv.rate, null, n);
+            double[] t = priv.rate.stages[priv.rate.input_stage_num + 1].fifo.data;
+            for (int i = 0; i < n; i++) {
+                t[tP + i] = in.get();
+            }
+            rate_process(priv.rate);
+        }
+    }
+
+    /** @see #drain(int[], int[]) */
+    public void drain(double[] obuf, int ooffset, int[] osamp) {
+        isamp[0] = 0;
+        rate_flush(priv.rate);
+        flow((double[]) null, 0, obuf, ooffset, isamp, osamp);
+    }
+
+    /** @see #drain(int[], int[]) */
+    public void drain(float[] obuf, int ooffset, int[] osamp) {
+        isamp[0] = 0;
+        rate_flush(priv.rate);
+        flow((float[]) null, 0, obuf, ooffset, isamp, osamp);
+    }
+
+    /** @see #drain(int[], int[]) */
+    public void drain(FloatBuffer out) {
+        rate_flush(priv.rate);
+        flow(null, out);
+    }
+
     // "rate",
     // "[-q|-l|-m|-h|-v] [-p PHASE|-M|-I|-L] [-b BANDWIDTH] [-a] [RATE[k]]" +
     // "\n\n\tQuality\t\tPhase\tBW %   Rej dB\tTypical Use" +
@@ -6,7 +6,6 @@
 
 package vavi.sound.pcm.resampling.sox;
 
-import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -16,7 +15,6 @@ import java.lang.System.Logger.Level;
 
 import vavi.io.OutputEngine;
 import vavi.io.OutputEngineInputStream;
-import vavi.util.ByteUtil;
 
 import static java.lang.System.getLogger;
 
@@ -25,43 +23,79 @@ import static java.lang.System.getLogger;
  * PerfectResamplerInputStream.
  *
  * Wraps {@link PerfectResampler} (SoX `rate` "Perfect Resampler") as a 16bit LE
- * mono PCM {@link InputStream} filter, following the same flow/drain protocol
+ * interleaved PCM {@link InputStream} filter, following the same flow/drain protocol
  * used by {@code PerfectResamplerTest}.
+ * <p>
+ * samples go through the resampler as doubles and are rounded only when written,
+ * optionally with tpdf dither.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 250707 nsano initial version <br>
  * @see PerfectResampler
+ * @see MultiChannelPerfectResampler
  */
 public class PerfectResamplerInputStream extends FilterInputStream {
 
     private static final Logger logger = getLogger(PerfectResamplerInputStream.class.getName());
 
-    /** */
+    /** for monaural */
     public PerfectResamplerInputStream(InputStream is, float in, float out) throws IOException {
-        super(new OutputEngineInputStream(new PerfectResamplerOutputEngine(is, in, out)));
+        this(is, in, out, 1, false);
+    }
+
+    /**
+     * @param channels of the interleaved stream
+     * @param dither tpdf dither when rounded to 16 bit
+     */
+    public PerfectResamplerInputStream(InputStream is, float in, float out, int channels, boolean dither) throws IOException {
+        super(new OutputEngineInputStream(new PerfectResamplerOutputEngine(is, in, out, channels, dither)));
     }
 
     /** */
     private static class PerfectResamplerOutputEngine implements OutputEngine {
 
+        /** frames read at once */
+        private static final int BLOCK_FRAMES = 8192;
+
         /** */
         private final InputStream in;
 
         /** */
-        private DataOutputStream out;
+        private OutputStream out;
 
         /** */
-        private final PerfectResampler resampler;
+        private final MultiChannelPerfectResampler resampler;
+
+        /** */
+        private final int channels;
+
+        /** a block of input */
+        private final byte[] sample;
+
+        /** input by channel */
+        private final double[][] ibuf;
+
+        /** working output buffer by channel, drained fully every call */
+        private final double[][] obuf;
 
-        /** working output buffer, drained fully every call */
-        private final int[] obuf = new int[65536];
+        /** output of {@link #obuf} */
+        private final byte[] result;
+
+        /** work */
+        private final int[] isamp = new int[1], osamp = new int[1];
 
         /** */
-        public PerfectResamplerOutputEngine(InputStream is, float in, float out) throws IOException {
+        public PerfectResamplerOutputEngine(InputStream is, float in, float out, int channels, boolean dither) throws IOException {
             this.in = is;
             // coef_interp=2, phase=25 (intermediate), no bandwidth override,
             // no aliasing, quality=Default(-1) -> high
-            this.resampler = new PerfectResampler(2, 25, 0, false, -1, in, out);
+            this.resampler = new MultiChannelPerfectResampler(channels, 2, 25, 0, false, -1, in, out);
+            resampler.setDither(dither);
+            this.channels = channels;
+            this.sample = new byte[BLOCK_FRAMES * channels * 2];
+            this.ibuf = new double[channels][BLOCK_FRAMES];
+            this.obuf = new double[channels][BLOCK_FRAMES];
+            this.result = new byte[BLOCK_FRAMES * channels * 2];
         }
 
         @Override
@@ -69,58 +103,65 @@ public class PerfectResamplerInputStream extends FilterInputStream {
             if (this.out != null) {
                 throw new IOException("Already initialized");
             } else {
-                this.out = new DataOutputStream(out);
+                this.out = out;
             }
         }
 
-        private final byte[] sample = new byte[8192 * 2];
-
         @Override
         public void execute() throws IOException {
             if (out == null) {
                 throw new IOException("Not yet initialized");
             } else {
-                int r = in.read(sample);
-                if (r < 0) {
+                int r = in.readNBytes(sample, 0, sample.length);
+                int frames = r / (channels * 2);
+                for (int c = 0; c < channels; c++) {
+                    double[] channel = ibuf[c];
+                    for (int i = 0, p = c * 2; i < frames; i++, p += channels * 2) {
+                        channel[i] = (short) ((sample[p] & 0xff) | (sample[p + 1] << 8)); // LE
+                    }
+                }
+                // feed this chunk (emits some previously-produced output)
+                int offset = 0;
+                while (offset < frames) {
+                    isamp[0] = frames - offset;
+                    osamp[0] = BLOCK_FRAMES;
+                    resampler.flow(ibuf, offset, obuf, 0, isamp, osamp);
+                    write(osamp[0]);
+                    offset += isamp[0];
+                }
+                // pump the rest that is now ready without feeding new input
+                do {
+                    isamp[0] = 0;
+                    osamp[0] = BLOCK_FRAMES;
+                    resampler.flow((double[][]) null, 0, obuf, 0, isamp, osamp);
+                    write(osamp[0]);
+                } while (osamp[0] > 0);
+logger.log(Level.DEBUG, frames + " in");
+                if (r < sample.length) {
                     // drain remaining buffered output
-                    int[] osamp = { obuf.length };
                     do {
-                        osamp[0] = obuf.length;
-                        resampler.drain(obuf, osamp);
-                        out.write(toBytes(obuf, osamp[0]));
+                        osamp[0] = BLOCK_FRAMES;
+                        resampler.drain(obuf, 0, osamp);
+                        write(osamp[0]);
                     } while (osamp[0] > 0);
                     out.flush();
                     out.close();
-                } else {
-                    int[] samples = new int[r / 2];
-                    for (int i = 0; i < samples.length; i++) {
-                        samples[i] = ByteUtil.readLeShort(sample, i * 2); // LE
-                    }
-                    // feed this chunk (emits some previously-produced output)
-                    int[] isamp = { samples.length };
-                    int[] osamp = { obuf.length };
-                    resampler.flow(samples, obuf, isamp, osamp);
-                    out.write(toBytes(obuf, osamp[0]));
-                    // pump the rest that is now ready without feeding new input
-                    do {
-                        isamp[0] = 0;
-                        osamp[0] = obuf.length;
-                        resampler.flow(null, obuf, isamp, osamp);
-                        out.write(toBytes(obuf, osamp[0]));
-                    } while (osamp[0] > 0);
-logger.log(Level.DEBUG, r / 2 + " in");
                 }
             }
         }
 
-        /** 16bit LE */
-        private static byte[] toBytes(int[] samples, int length) {
-            byte[] result = new byte[length * 2];
-            for (int i = 0; i < length; i++) {
-                int v = Math.clamp(samples[i], -32768, 32767);
-                ByteUtil.writeLeShort((short) v, result, i * 2); // LE
+        /** writes {@link #obuf} as 16bit LE interleaved */
+        private void write(int frames) throws IOException {
+            for (int c = 0; c < channels; c++) {
+                double[] channel = obuf[c];
+                PerfectResampler quantizer = resampler.getChannel(c);
+                for (int i = 0, p = c * 2; i < frames; i++, p += channels * 2) {
+                    int v = Math.clamp(quantizer.quantize(channel[i]), -32768, 32767);
+                    result[p] = (byte) v; // LE
+                    result[p + 1] = (byte) (v >> 8);
+                }
             }
-            return result;
+            out.write(result, 0, frames * channels * 2);
         }
 
         @Override
@@ -23,6 +23,9 @@ import java.lang.System.Logger.Level;
 import java.util.Arrays;
 import java.util.Random;
 
+import vavi.sound.pcm.resampling.FilterDesignCache;
+import vavi.sound.pcm.resampling.StreamResampler;
+
 import static java.lang.System.getLogger;
 
 
@@ -36,7 +39,7 @@ import static java.lang.System.getLogger;
  *          October 29, 1999 Stan Brooks Various changes, bugfixes, speedups. <br>
  *          2006 nsano ported to java. <br>
  */
-public class Polyphase {
+public class Polyphase implements StreamResampler {
 
     private static final Logger logger = getLogger(Polyphase.class.getName());
 
@@ -133,11 +136,8 @@ logger.log(Level.DEBUG, " %d".formatted(q0[pr]));
         return q;
     }
 
-    /** */
-    private final Random random;
-
-    /** */
-    private int permute(int[] m, int[] l, int ct, int ct1, int amalg) {
+    /** @param random seeded by the design */
+    private int permute(int[] m, int[] l, int ct, int ct1, int amalg, Random random) {
 
         int p = 0; // l
         int q = 0; // m
@@ -184,8 +184,8 @@ logger.log(Level.DEBUG, " %d".formatted(q0[pr]));
         return p;
     }
 
-    /** */
-    private int optimize_factors(int numer, int denom, int[] l1, int[] l2) {
+    /** @param random seeded by the design */
+    private int optimize_factors(int numer, int denom, int[] l1, int[] l2, Random random) {
 
         int[] m1 = new int[MF];
         int[] m2 = new int[MF];
@@ -211,9 +211,9 @@ fail:
                 f = denom;
                 u = Math.min(ct1, ct2) + 1;
 //logger.log(Level.DEBUG, "pfacts(%d): ".formatted(numer)));
-                u1 = permute(m1, l1, ct1, u, amalg);
+                u1 = permute(m1, l1, ct1, u, amalg, random);
 //logger.log(Level.DEBUG, "pfacts(%d): ".formatted(denom)));
-                u2 = permute(m2, l2, ct2, u, amalg);
+                u2 = permute(m2, l2, ct2, u, amalg, random);
                 u = Math.max(u1, u2);
                 for (j = 0; j < u; j++) {
                     if (j >= u1) {
@@ -363,23 +363,63 @@ fail:
      * @param cutoff frequency cutoff of base bandwidth in percentage. default is 0.95f (95%)
      */
     public Polyphase(float inrate, float outrate, int win_type, int win_width, float cutoff) {
-        int[] l1 = new int[MF];
-        int[] l2 = new int[MF];
+        if (inrate == outrate) {
+            throw new IllegalArgumentException("Input and Output rate must not be the same to use polyphase effect");
+        }
 
-        // 
         this.win_type = win_type;
 
-        // start
+        PolyWork design = cache.get(new DesignKey(inrate, outrate, win_type, win_width, cutoff), k -> design(inrate, outrate, win_width, cutoff));
+        work.lcmrate = design.lcmrate;
+        work.inskip = design.inskip;
+        work.outskip = design.outskip;
+        work.factor = design.factor;
+        work.total = design.total;
+        work.oskip = design.oskip;
+        work.inpipe = 0;
+        // filters are shared, windows are our own
+        for (int k = 0; k <= design.total; k++) {
+            PolyStage d = design.stage[k];
+            PolyStage s = new PolyStage();
+            work.stage[k] = s;
+            s.up = d.up;
+            s.down = d.down;
+            s.size = d.size;
+            s.hsize = d.hsize;
+            s.held = 0;
+            s.filt_len = d.filt_len;
+            s.filt_array = d.filt_array;
+            s.window = new double[s.hsize + s.size];
+        }
+    }
+
+    /** the parameters of a design */
+    private record DesignKey(float inrate, float outrate, int win_type, int win_width, float cutoff) {}
+
+    /** designs shared by all instances, the max size is the system property "vavi.sound.pcm.resampling.sox.Polyphase.cacheSize" */
+    private static final FilterDesignCache<DesignKey, PolyWork> cache = new FilterDesignCache<>(Polyphase.class.getSimpleName(),
+            Integer.getInteger(Polyphase.class.getName() + ".cacheSize", 32));
+
+    /** @return statistics of the designs shared by instances */
+    public static FilterDesignCache.Metrics getCacheMetrics() {
+        return cache.getMetrics();
+    }
+
+    /**
+     * Designs the stages and their filters, the windows are not allocated.
+     * the result is cached, so it must not be modified.
+     */
+    private PolyWork design(float inrate, float outrate, int win_width, float cutoff) {
+        PolyWork work = new PolyWork();
+        int[] l1 = new int[MF];
+        int[] l2 = new int[MF];
 
         double skip = 0;
         int size;
         int k;
 
-        if (inrate == outrate) {
-            throw new IllegalArgumentException("Input and Output rate must not be the same to use polyphase effect");
-        }
-
-        random = new Random(System.currentTimeMillis());
+        // seeded by the rates so instances for the channels of a stream get the same stages (same delay)
+        Random random = new Random(((long) inrate << 32) | (long) outrate);
 
         work.lcmrate = st_lcm(inrate, outrate);
 
@@ -400,7 +440,7 @@ fail:
         }
 
         // Find the prime factors of inskip and outskip
-        int total = optimize_factors(work.inskip, work.outskip, l1, l2);
+        int total = optimize_factors(work.inskip, work.outskip, l1, l2, random);
         work.total = total;
         // l1 and l2 are now lists of the up/down factors for conversion
 
@@ -429,7 +469,6 @@ logger.log(Level.DEBUG, "Poly:  window: %s  size: %d  cutoff: %.2f.".formatted((
 logger.log(Level.DEBUG, "Poly:  stage %d:  Up by %d, down by %d,  i_samps %d, hsize %d".formatted(k + 1, s.up, s.down, size, s.hsize));
             s.filt_len = f_len;
             s.filt_array = new double[f_len];
-            s.window = new double[s.hsize + size];
             uprate *= s.up;
 logger.log(Level.DEBUG, "Poly:         :  filt_len %d, cutoff freq %.1f".formatted(f_len, uprate * cutoff / f_cutoff));
             uprate /= s.down;
@@ -452,9 +491,9 @@ logger.log(Level.DEBUG, "Poly:         :  filt_len %d, cutoff freq %.1f".formatt
             s.held = 0;
             s.filt_len = 0;
             s.filt_array = null;
-            s.window = new double[size];
         }
 logger.log(Level.DEBUG, "Poly:  output samples %d, oskip %d".formatted(size, work.oskip));
+        return work;
     }
 
     /**
@@ -543,6 +582,55 @@ logger.log(Level.DEBUG, "Poly:  output samples %d, oskip %d".formatted(size, wor
         return flowAll(null);
     }
 
+    /** output of a {@link #flow} for the streaming api, allocated at the first use */
+    private int[] flowBuf;
+
+    /** counts of a {@link #flow} for the streaming api */
+    private final int[] isamp = new int[1], osamp = new int[1];
+
+    /** @return {@link #flowBuf} */
+    private int[] flowBuf() {
+        if (flowBuf == null) {
+            flowBuf = new int[work.stage[work.total].size];
+        }
+        return flowBuf;
+    }
+
+    @Override
+    public int getMaxOutput(int length) {
+        PolyStage s0 = work.stage[0];
+        PolyStage s1 = work.stage[work.total];
+        // a flow processes a full input window at most once and outputs all it got
+        return ((length + s0.size - 1) / s0.size + 1) * s1.size;
+    }
+
+    @Override
+    public int resample(int[] in, int offset, int length, int[] out, int outOffset) {
+        int[] buf = flowBuf();
+        int total = 0;
+        int remaining = length;
+        do {
+            isamp[0] = remaining;
+            osamp[0] = buf.length;
+            flow(in, offset, isamp, buf, osamp);
+            System.arraycopy(buf, 0, out, outOffset + total, osamp[0]);
+            total += osamp[0];
+            offset += isamp[0];
+            remaining -= isamp[0];
+        } while (remaining > 0);
+        return total;
+    }
+
+    @Override
+    public int drain(int[] out, int outOffset) {
+        int[] buf = flowBuf();
+        isamp[0] = 0;
+        osamp[0] = buf.length;
+        flow(null, 0, isamp, buf, osamp);
+        System.arraycopy(buf, 0, out, outOffset, osamp[0]);
+        return osamp[0];
+    }
+
     /**
      * Drives {@link #flow} like the sox effects engine: keeps offering the
      * remaining input until all is consumed (null input: drains until dry),
@@ -6,102 +6,33 @@
 
 package vavi.sound.pcm.resampling.sox;
 
-import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.System.Logger;
-import java.lang.System.Logger.Level;
 
-import vavi.io.OutputEngine;
 import vavi.io.OutputEngineInputStream;
-import vavi.util.ByteUtil;
-
-import static java.lang.System.getLogger;
+import vavi.sound.pcm.resampling.InterleavedResampler;
+import vavi.sound.pcm.resampling.InterleavedResamplerOutputEngine;
 
 
 /**
  * PolyphaseInputStream.
+ * <p>
+ * 16 bit little endian, each channel is resampled by its own {@link Polyphase}.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 111022 nsano initial version <br>
  */
 public class PolyphaseInputStream extends FilterInputStream {
 
-    private static final Logger logger = getLogger(PolyphaseInputStream.class.getName());
-
-    /** */
+    /** for monaural */
     public PolyphaseInputStream(InputStream is, float in, float out) throws IOException {
-        super(new OutputEngineInputStream(new PolyphaseOutputEngine(is, in, out)));
+        this(is, in, out, 1);
     }
 
     /** */
-    private static class PolyphaseOutputEngine implements OutputEngine {
-
-        /** */
-        private final InputStream in;
-
-        /** */
-        private DataOutputStream out;
-
-        /** */
-        private final Polyphase resampler;
-
-        /** */
-        public PolyphaseOutputEngine(InputStream is, float in, float out) throws IOException {
-            this.in = is;
-            this.resampler = new Polyphase(in, out);
-        }
-
-        @Override
-        public void initialize(OutputStream out) throws IOException {
-            if (this.out != null) {
-                throw new IOException("Already initialized");
-            } else {
-                this.out = new DataOutputStream(out);
-            }
-        }
-
-        private final byte[] sample = new byte[44100 * 2];
-
-        @Override
-        public void execute() throws IOException {
-            if (out == null) {
-                throw new IOException("Not yet initialized");
-            } else {
-                int r = in.read(sample);
-                if (r < 0) {
-                    int[] resamples = resampler.drain();
-logger.log(Level.DEBUG, "drain: " + resamples.length);
-                    out.write(toBytes(resamples));
-                    out.flush();
-                    out.close();
-                } else {
-                    int[] samples = new int[r / 2];
-                    for (int i = 0; i < samples.length; i++) {
-                        samples[i] = ByteUtil.readLeShort(sample, i * 2); // LE
-                    }
-                    int[] resamples = resampler.resample(samples);  // TODO single channel ???
-logger.log(Level.DEBUG, r / 2 + ", " + resamples.length);
-                    out.write(toBytes(resamples));
-                }
-            }
-        }
-
-        /** 16bit LE */
-        private static byte[] toBytes(int[] samples) {
-            byte[] result = new byte[samples.length * 2];
-            for (int i = 0; i < samples.length; i++) {
-                int v = Math.clamp(samples[i], -32768, 32767);
-                ByteUtil.writeLeShort((short) v, result, i * 2); // LE
-            }
-            return result;
-        }
-
-        @Override
-        public void finish() throws IOException {
-            in.close();
-        }
+    public PolyphaseInputStream(InputStream is, float in, float out, int channels) throws IOException {
+        super(new OutputEngineInputStream(new InterleavedResamplerOutputEngine(is,
+                new InterleavedResampler(channels, InterleavedResamplerOutputEngine.BLOCK_FRAMES, c -> new Polyphase(in, out)))));
     }
 }
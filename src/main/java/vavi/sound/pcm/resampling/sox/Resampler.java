@@ -10,6 +10,8 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.util.Arrays;
 
+import vavi.sound.pcm.resampling.StreamResampler;
+
 import static java.lang.System.getLogger;
 
 
@@ -51,7 +53,7 @@ import static java.lang.System.getLogger;
  *          too low by 2 when downsampling. <br>
  *          2006 nsano ported to java. <br>
  */
-public class Resampler {
+public class Resampler implements StreamResampler {
 
     private static final Logger logger = getLogger(Resampler.class.getName());
 
@@ -117,6 +119,14 @@ public class Resampler {
         int xRead;
         /** Current time/pos in input sample */
         double time;
+        /** output sampling period in input samples, for the approx coeff's method */
+        double dt;
+        /** {@link #dt} being approached for a variable ratio */
+        double targetDt;
+        /** change of {@link #dt} per output sample while approaching */
+        double dtStep;
+        /** largest factor to process, above factor for a variable ratio */
+        double maxFactor;
         /** I/O buffers */
         double[] x, y;
         /** Current time/pos for exact-coeff's method */
@@ -126,12 +136,29 @@ public class Resampler {
     /** */
     private final ResampleWork work = new ResampleWork();
 
+    /** largest deviation from the nominal ratio {@link #setRatio(double)} accepts */
+    public static final double MAX_DEVIATION = 0.05;
+
+    /** output samples over which a ratio set is reached */
+    private static final int RAMP = 1024;
+
+    /** whether {@link #setRatio(double)} is allowed */
+    private final boolean variable;
+
     /** */
     public Resampler(float inRate, float outRate) {
         // These defaults are conservative with respect to aliasing.
         this(inRate, outRate, 0.80f, 0, 45, 16);
     }
 
+    /**
+     * @param variable true for a variable ratio by {@link #setRatio(double)},
+     *                 the approx coeff's method is used even for ratios the exact one can do
+     */
+    public Resampler(float inRate, float outRate, boolean variable) {
+        this(inRate, outRate, 0.80f, 0, 45, 16, variable);
+    }
+
     /**
      * Prepare processing.
      * <pre>
@@ -157,7 +184,22 @@ public class Resampler {
                      int quadr,
                      int nMult,
                      int beta) {
+        this(inRate, outRate, rollOff, quadr, nMult, beta, false);
+    }
+
+    /**
+     * @param variable true for a variable ratio by {@link #setRatio(double)}
+     * @see #Resampler(float, float, float, int, int, int)
+     */
+    public Resampler(float inRate,
+                     float outRate,
+                     float rollOff,
+                     int quadr,
+                     int nMult,
+                     int beta,
+                     boolean variable) {
 
+        this.variable = variable;
 
         work.quadr = quadr;
         this.nMult = nMult;
@@ -187,7 +229,7 @@ logger.log(Level.DEBUG, "r.factor: " + work.factor);
         work.inRate = inRate / gcdRate;
         work.outRate = outRate / gcdRate;
 
-        if (work.inRate <= work.outRate && work.outRate <= NQMAX) {
+        if (work.inRate <= work.outRate && work.outRate <= NQMAX && !variable) {
             work.quadr = -1;                // exact coeff's
             work.nq = (int) work.outRate;   // max(inRate, outRate);
         } else {
@@ -225,6 +267,10 @@ logger.log(Level.DEBUG, "resample: rate ratio " + work.inRate + " : " + work.out
         work.xRead = work.xOff;
         // Current-time pointer for converter
         work.time = work.xOff;
+        work.dt = 1.0f / work.factor;
+        work.targetDt = work.dt;
+        // the filter and the buffers stay as designed for the nominal ratio
+        work.maxFactor = variable ? work.factor * (1 + MAX_DEVIATION) : work.factor;
         if (work.quadr < 0) { // exact coeff's method
             work.t = work.xOff * work.nq;
         }
@@ -241,6 +287,31 @@ logger.log(Level.DEBUG, "xSize %d, ySize %d, xOff %d".formatted(xSize, ySize, wo
         // need xOff zeros at beginning of x[] (java arrays are zero filled)
     }
 
+    /**
+     * Changes the ratio mid-stream, it is reached gradually over {@link #RAMP} output samples
+     * so that the output has no discontinuity. for drift compensation of streams
+     * of independent clocks. call it between resamplings on the thread resampling.
+     *
+     * @param ratio relative to the nominal one (out rate / in rate), 1.001 outputs 0.1% more samples
+     * @throws IllegalStateException not constructed as variable
+     * @throws IllegalArgumentException the ratio deviates over {@link #MAX_DEVIATION}
+     */
+    public void setRatio(double ratio) {
+        if (!variable) {
+            throw new IllegalStateException("not variable");
+        }
+        if (ratio < 1 - MAX_DEVIATION || ratio > 1 + MAX_DEVIATION) {
+            throw new IllegalArgumentException("ratio out of range: " + ratio);
+        }
+        work.targetDt = 1 / (work.factor * ratio);
+        work.dtStep = Math.abs(work.targetDt - work.dt) / RAMP;
+    }
+
+    /** @return the current ratio relative to the nominal one, may be on the way to the one set */
+    public double getRatio() {
+        return 1 / (work.dt * work.factor);
+    }
+
     /**
      * Gets gcd rate.
      * @param inRate
@@ -277,6 +348,65 @@ logger.log(Level.DEBUG, "xOff " + work.xOff + "  <--- DRAIN");
         return flowAll(null, work.xOff);
     }
 
+    /** output of a {@link #flow} for the streaming api, allocated at the first use */
+    private int[] flowBuf;
+
+    /** counts of a {@link #flow} for the streaming api */
+    private final int[] isamp = new int[1], osamp = new int[1];
+
+    /** zeros left to feed for draining by the streaming api, -1 before draining */
+    private int drainRemaining = -1;
+
+    /** @return {@link #flowBuf} */
+    private int[] flowBuf() {
+        if (flowBuf == null) {
+            flowBuf = new int[work.y.length];
+        }
+        return flowBuf;
+    }
+
+    @Override
+    public int getMaxOutput(int length) {
+        return (int) Math.ceil((length + work.x.length) * work.maxFactor) + work.y.length;
+    }
+
+    @Override
+    public int resample(int[] in, int offset, int length, int[] out, int outOffset) {
+        int[] buf = flowBuf();
+        int total = 0;
+        int remaining = length;
+        while (remaining > 0) {
+            isamp[0] = remaining;
+            osamp[0] = buf.length;
+            flow(in, offset, isamp, buf, osamp);
+            System.arraycopy(buf, 0, out, outOffset + total, osamp[0]);
+            total += osamp[0];
+            offset += isamp[0];
+            remaining -= isamp[0];
+        }
+        return total;
+    }
+
+    @Override
+    public int drain(int[] out, int outOffset) {
+        int[] buf = flowBuf();
+        if (drainRemaining < 0) {
+            // stuff end with xOff zeros
+            drainRemaining = work.xOff;
+        }
+        while (drainRemaining > 0) {
+            isamp[0] = drainRemaining;
+            osamp[0] = buf.length;
+            flow(null, 0, isamp, buf, osamp);
+            drainRemaining -= isamp[0];
+            if (osamp[0] > 0) {
+                System.arraycopy(buf, 0, out, outOffset, osamp[0]);
+                return osamp[0];
+            }
+        }
+        return 0;
+    }
+
     /**
      * Drives {@link #flow} like the sox effects engine: keeps offering the
      * remaining input until all is consumed, collecting whatever output is
@@ -321,8 +451,8 @@ logger.log(Level.DEBUG, "xp: " + work.xp + ", xRead: " + work.xRead + ", iSamp:
         int nProc = work.x.length - work.xp;
 
         int i = Math.min(work.y.length, osamp[0]);
-        if (nProc * work.factor >= i) {
-            nProc = (int) (i / work.factor);
+        if (nProc * work.maxFactor >= i) {
+            nProc = (int) (i / work.maxFactor);
         }
 
         int nx = nProc - work.xRead; // space for right-wing future-data
@@ -485,7 +615,7 @@ logger.log(Level.DEBUG, "k: " + k + ", last: " + last);
         double time = work.time;
         // Output sampling period
         // Step through input signal
-        double dt = 1.0f / work.factor;
+        double dt = work.dt;
 //logger.log(Level.DEBUG, "factor %f, dt %f, ".formatted(factor, dt));
 //logger.log(Level.DEBUG, "Time %f, ".formatted(this.Time));
         // (Xh * dhb) >> La is max index into imp[]
@@ -493,8 +623,9 @@ logger.log(Level.DEBUG, "k: " + k + ", last: " + last);
 //logger.log(Level.DEBUG, "ct=" + (double) this.nWing * NA / this.dhb + " " + this.Xh));
 //logger.log(Level.DEBUG, "ct=%ld, T=%.6f, dhb=%6f, dt=%.6f".formatted(this.Xh, time - Math.floor(time),(double) this.dhb / NA, dt));
         int y_pointer = 0;
-        int n = (int) Math.ceil(nx / dt);
-        while (n-- != 0) {
+        // bounded by the time, not by a count of the current dt, dt moves while a ratio set is approached
+        double end = time + nx;
+        while (time < end) {
             double v;
             double t = time - Math.floor(time); // fractional part of time
             int xp_pointer = (int) time;        // Ptr to current input sample
@@ -516,8 +647,12 @@ logger.log(Level.DEBUG, "k: " + k + ", last: " + last);
             }
             work.y[y_pointer++] = v;            // Deposit output
             time += dt;                         // Move to next sample by time increment
+            if (dt != work.targetDt) {          // Variable ratio: approach the one set
+                dt = Math.abs(work.targetDt - dt) <= work.dtStep ? work.targetDt : dt + Math.copySign(work.dtStep, work.targetDt - dt);
+            }
         }
         work.time = time;
+        work.dt = dt;
 //logger.log(Level.TRACE, "time " + time);
         return y_pointer;                       // Return the number of output samples
     }
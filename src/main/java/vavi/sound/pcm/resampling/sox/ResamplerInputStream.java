@@ -6,102 +6,91 @@
 
 package vavi.sound.pcm.resampling.sox;
 
-import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.System.Logger;
-import java.lang.System.Logger.Level;
+import java.util.function.DoubleSupplier;
 
-import vavi.io.OutputEngine;
 import vavi.io.OutputEngineInputStream;
-import vavi.util.ByteUtil;
-
-import static java.lang.System.getLogger;
+import vavi.sound.pcm.resampling.InterleavedResampler;
+import vavi.sound.pcm.resampling.InterleavedResamplerOutputEngine;
 
 
 /**
  * ResamplerInputStream.
+ * <p>
+ * 16 bit little endian, each channel is resampled by its own {@link Resampler}.
+ * <p>
+ * with a ratio supplier, the ratio is variable. it is read before each block of
+ * {@link InterleavedResamplerOutputEngine#BLOCK_FRAMES} frames and set to all channels,
+ * so a controller watching a buffer level can compensate drift of clocks.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 201029 nsano initial version <br>
  */
 public class ResamplerInputStream extends FilterInputStream {
 
-    private static final Logger logger = getLogger(ResamplerInputStream.class.getName());
-
-    /** */
+    /** for monaural */
     public ResamplerInputStream(InputStream is, float in, float out) throws IOException {
-        super(new OutputEngineInputStream(new ResamplerOutputEngine(is, in, out)));
+        this(is, in, out, 1);
     }
 
     /** */
-    private static class ResamplerOutputEngine implements OutputEngine {
+    public ResamplerInputStream(InputStream is, float in, float out, int channels) throws IOException {
+        super(new OutputEngineInputStream(new InterleavedResamplerOutputEngine(is,
+                new InterleavedResampler(channels, InterleavedResamplerOutputEngine.BLOCK_FRAMES, c -> new Resampler(in, out)))));
+    }
+
+    /**
+     * @param ratio supplies the ratio relative to the nominal one for {@link Resampler#setRatio(double)}
+     */
+    public ResamplerInputStream(InputStream is, float in, float out, int channels, DoubleSupplier ratio) throws IOException {
+        super(new OutputEngineInputStream(new VariableRatioOutputEngine(is, in, out, channels, ratio)));
+    }
+
+    /** applies the ratio supplied before each block */
+    private static class VariableRatioOutputEngine extends InterleavedResamplerOutputEngine {
 
         /** */
-        private final InputStream in;
+        private final Resampler[] resamplers;
 
         /** */
-        private DataOutputStream out;
+        private final DoubleSupplier ratio;
+
+        /** ratio set */
+        private double current = 1;
 
         /** */
-        private final Resampler resampler;
+        VariableRatioOutputEngine(InputStream is, float in, float out, int channels, DoubleSupplier ratio) {
+            this(is, resamplers(in, out, channels), ratio);
+        }
 
         /** */
-        public ResamplerOutputEngine(InputStream is, float in, float out) throws IOException {
-            this.in = is;
-            this.resampler = new Resampler(in, out);
+        private VariableRatioOutputEngine(InputStream is, Resampler[] resamplers, DoubleSupplier ratio) {
+            super(is, new InterleavedResampler(resamplers.length, BLOCK_FRAMES, c -> resamplers[c]));
+            this.resamplers = resamplers;
+            this.ratio = ratio;
         }
 
-        @Override
-        public void initialize(OutputStream out) throws IOException {
-            if (this.out != null) {
-                throw new IOException("Already initialized");
-            } else {
-                this.out = new DataOutputStream(out);
+        /** */
+        private static Resampler[] resamplers(float in, float out, int channels) {
+            Resampler[] resamplers = new Resampler[channels];
+            for (int c = 0; c < channels; c++) {
+                resamplers[c] = new Resampler(in, out, true);
             }
+            return resamplers;
         }
 
-        private final byte[] sample = new byte[44100 * 2];
-
         @Override
         public void execute() throws IOException {
-            if (out == null) {
-                throw new IOException("Not yet initialized");
-            } else {
-                int r = in.read(sample);
-                if (r < 0) {
-                    int[] resamples = resampler.drain();
-logger.log(Level.DEBUG, "drain: " + resamples.length);
-                    out.write(toBytes(resamples));
-                    out.flush();
-                    out.close();
-                } else {
-                    int[] samples = new int[r / 2];
-                    for (int i = 0; i < samples.length; i++) {
-                        samples[i] = ByteUtil.readLeShort(sample, i * 2); // LE
-                    }
-                    int[] resamples = resampler.resample(samples);  // TODO single channel ???
-logger.log(Level.DEBUG, r / 2 + ", " + resamples.length);
-                    out.write(toBytes(resamples));
+            double r = ratio.getAsDouble();
+            if (r != current) {
+                for (Resampler resampler : resamplers) {
+                    resampler.setRatio(r);
                 }
+                current = r;
             }
-        }
-
-        /** 16bit LE */
-        private static byte[] toBytes(int[] samples) {
-            byte[] result = new byte[samples.length * 2];
-            for (int i = 0; i < samples.length; i++) {
-                int v = Math.clamp(samples[i], -32768, 32767);
-                ByteUtil.writeLeShort((short) v, result, i * 2); // LE
-            }
-            return result;
-        }
-
-        @Override
-        public void finish() throws IOException {
-            in.close();
+            super.execute();
         }
     }
 }
@@ -77,7 +77,7 @@ public class Opl3AudioFileReader extends AudioFileReader {
      * @param bitStream input to decode
      * @param mediaLength unused
      * @return an AudioInputStream object based on the audio file data contained
-     * in the input stream.
+     * in the input stream. the frame length is of pcm decoded from it.
      * @param uri for advanced sierra file
      * @throws UnsupportedAudioFileException if the File does not point to a
      *                                       valid audio file data recognized by the system.
@@ -97,9 +97,41 @@ logger.log(TRACE, e.getMessage(), e);
         Map<String, Object> props = new HashMap<>();
 logger.log(TRACE, "uri: " + uri);
         props.put("uri", uri); // for advanced sierra file
+        long frameLength = getFrameLength(bitStream, encoding, props);
+        Map<String, Object> fileProps = new HashMap<>();
+        if (frameLength != NOT_SPECIFIED) {
+            props.put("frameLength", frameLength); // for Opl3ToPcmAudioInputStream
+            fileProps.put("duration", frameLength * 1_000_000 / (long) opl3.getSampleRate());
+        }
         // specification for around frame might cause AudioInputStream modification at below (*1)
         AudioFormat format = new AudioFormat(encoding, opl3.getSampleRate(), NOT_SPECIFIED, opl3.getChannels(), NOT_SPECIFIED, NOT_SPECIFIED, opl3.isBigEndian(), props);
-        return new AudioFileFormat(type, format, NOT_SPECIFIED);
+        return new AudioFileFormat(type, format, (int) Math.min(frameLength, Integer.MAX_VALUE), fileProps);
+    }
+
+    /** songs larger than this are not measured */
+    private static final int MAX_SONG_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * @param bitStream must support mark/reset for measuring
+     * @return pcm frames Opl3ToPcmAudioInputStream will output, cached by the player
+     */
+    private static long getFrameLength(InputStream bitStream, AudioFormat.Encoding encoding, Map<String, Object> props) throws IOException {
+        if (!bitStream.markSupported()) {
+            return NOT_SPECIFIED;
+        }
+        byte[] song;
+        bitStream.mark(MAX_SONG_SIZE + 1);
+        try {
+            song = bitStream.readNBytes(MAX_SONG_SIZE + 1);
+        } finally {
+            bitStream.reset();
+        }
+        if (song.length > MAX_SONG_SIZE) {
+            return NOT_SPECIFIED;
+        }
+        long songFrames = Opl3Player.getFrameLength(encoding, song, props, opl3.getSampleRate());
+logger.log(DEBUG, "song frames: " + songFrames);
+        return songFrames == NOT_SPECIFIED ? NOT_SPECIFIED : Opl3ToPcmAudioInputStream.getFrameLength(songFrames, opl3.getSampleRate());
     }
 
     @Override
@@ -152,7 +184,8 @@ logger.log(TRACE, "uri: " + uri);
      */
     protected static AudioInputStream getAudioInputStream(InputStream inputStream, int mediaLength, URI uri) throws UnsupportedAudioFileException, IOException {
         AudioFileFormat audioFileFormat = getAudioFileFormat(inputStream, mediaLength, uri);
-        // (*1) audioFileFormat should not be detailed about frame size
-        return new AudioInputStream(inputStream, audioFileFormat.getFormat(), audioFileFormat.getFrameLength());
+        // (*1) audioFileFormat should not be detailed about frame size,
+        // the frame length is of pcm, it's passed to the decoder by the format property
+        return new AudioInputStream(inputStream, audioFileFormat.getFormat(), NOT_SPECIFIED);
     }
 }
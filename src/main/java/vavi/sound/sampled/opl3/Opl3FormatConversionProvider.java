@@ -24,6 +24,20 @@ import vavi.sound.opl3.Opl3Player;
  */
 public class Opl3FormatConversionProvider extends FormatConversionProvider {
 
+    /** rates rendered directly besides the native one, see {@link Opl3Player#setSampleRate(float)} */
+    private static final float[] sampleRates = {44100, 48000};
+
+    /** @return the frame length {@link Opl3AudioFileReader} has put in the source format, at the target rate */
+    private static long getFrameLength(AudioFormat sourceFormat, AudioFormat targetFormat) {
+        Object frameLength = sourceFormat.getProperty("frameLength");
+        if (frameLength instanceof Long) {
+            return targetFormat.getSampleRate() == AudioSystem.NOT_SPECIFIED ? (Long) frameLength :
+                    Opl3ToPcmAudioInputStream.toFrames((Long) frameLength, targetFormat.getSampleRate());
+        } else {
+            return AudioSystem.NOT_SPECIFIED;
+        }
+    }
+
     @Override
     public AudioFormat.Encoding[] getSourceEncodings() {
         return Opl3Player.getEncodings().toArray(AudioFormat.Encoding[]::new);
@@ -47,13 +61,16 @@ public class Opl3FormatConversionProvider extends FormatConversionProvider {
     public AudioFormat[] getTargetFormats(AudioFormat.Encoding targetEncoding, AudioFormat sourceFormat) {
         if (sourceFormat.getEncoding() instanceof Opl3Encoding && targetEncoding.equals(AudioFormat.Encoding.PCM_SIGNED)) {
             // TODO signed, endian should be free (means add more 3 patterns)
-            return new AudioFormat[] {
-                    new AudioFormat(sourceFormat.getSampleRate(),
+            AudioFormat[] formats = new AudioFormat[1 + sampleRates.length];
+            formats[0] = new AudioFormat(sourceFormat.getSampleRate(),
                             16,           // sample size in bits
                             sourceFormat.getChannels(),
                             true,                // signed
-                            false)                      // little endian (for PCM wav)
-            };
+                            false);                     // little endian (for PCM wav)
+            for (int i = 0; i < sampleRates.length; i++) {
+                formats[1 + i] = new AudioFormat(sampleRates[i], 16, sourceFormat.getChannels(), true, false);
+            }
+            return formats;
         } else {
             return new AudioFormat[0];
         }
@@ -70,7 +87,7 @@ public class Opl3FormatConversionProvider extends FormatConversionProvider {
                     if (sourceFormat.equals(targetFormat)) {
                         return sourceStream;
                     } else if (sourceFormat.getEncoding() instanceof Opl3Encoding && targetFormat.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)) {
-                        return new Opl3ToPcmAudioInputStream(sourceStream, targetFormat, AudioSystem.NOT_SPECIFIED, sourceFormat);
+                        return new Opl3ToPcmAudioInputStream(sourceStream, targetFormat, getFrameLength(sourceFormat, targetFormat), sourceFormat);
                     } else if (sourceFormat.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) && targetFormat.getEncoding() instanceof Opl3Encoding) {
                         throw new IllegalArgumentException("unable to convert " + sourceFormat + " to " + targetFormat);
                     } else {
@@ -98,7 +115,7 @@ public class Opl3FormatConversionProvider extends FormatConversionProvider {
                         return sourceStream;
                     } else if (sourceFormat.getEncoding() instanceof Opl3Encoding &&
                             targetFormat.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)) {
-                        return new Opl3ToPcmAudioInputStream(sourceStream, targetFormat, AudioSystem.NOT_SPECIFIED, sourceFormat);
+                        return new Opl3ToPcmAudioInputStream(sourceStream, targetFormat, getFrameLength(sourceFormat, targetFormat), sourceFormat);
                     } else if (sourceFormat.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) && targetFormat.getEncoding() instanceof Opl3Encoding) {
                         throw new IllegalArgumentException("unable to convert " + sourceFormat + " to " + targetFormat);
                     } else {
@@ -6,6 +6,7 @@
 
 package vavi.sound.sampled.opl3;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -13,16 +14,27 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 import vavi.io.OutputEngine;
 import vavi.io.OutputEngineInputStream;
 import vavi.sound.opl3.Opl3Player;
 
 import static java.lang.System.getLogger;
+import static vavi.sound.opl3.Opl3Player.opl3;
 
 
 /**
  * Opl3ToPcmAudioInputStream.
+ * <p>
+ * properties of the target format
+ * <ul>
+ * <li>offline ... {@link Boolean} true renders about a second per engine execution
+ * instead of one tick, for converting files faster than realtime</li>
+ * </ul>
+ * the sample rate of the target format other than the native one is rendered by
+ * the player resampling ({@link Opl3Player#setSampleRate(float)}).
+ * {@link #skip(long)} before reading fast-forwards the song by register writes only.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
  * @version 0.00 2020/10/23 umjammer initial version <br>
@@ -32,9 +44,78 @@ public class Opl3ToPcmAudioInputStream extends AudioInputStream {
 
     private static final Logger logger = getLogger(Opl3ToPcmAudioInputStream.class.getName());
 
+    /** silence appended after the end of the song */
+    private static final int TAIL_BLOCKS = 30;
+
+    /** seconds of a tail block */
+    private static final double TAIL_BLOCK_SEC = 0.1;
+
     /** decode */
     public Opl3ToPcmAudioInputStream(InputStream stream, AudioFormat format, long length, AudioFormat sourceFormat) throws IOException {
-        super(new OutputEngineInputStream(new Opl3OutputEngine(stream, sourceFormat)), format, length);
+        this(new Opl3OutputEngine(stream, sourceFormat, format.getSampleRate(), Boolean.TRUE.equals(format.getProperty("offline"))), format, length);
+    }
+
+    /** */
+    private Opl3ToPcmAudioInputStream(Opl3OutputEngine engine, AudioFormat format, long length) throws IOException {
+        super(new SkippableInputStream(new OutputEngineInputStream(engine), engine), format, length);
+    }
+
+    /**
+     * @param songFrames frames of the song
+     * @return frames of the pcm stream including the tail
+     * @see Opl3Player#getFrameLength(AudioFormat.Encoding, byte[], java.util.Map, float)
+     */
+    static long getFrameLength(long songFrames, float sampleRate) {
+        return songFrames + (long) TAIL_BLOCKS * (int) (sampleRate * TAIL_BLOCK_SEC);
+    }
+
+    /**
+     * @param nativeFrames frames at the native rate
+     * @return frames at sampleRate, the stream keeps to the native timing this way
+     */
+    static long toFrames(long nativeFrames, float sampleRate) {
+        return sampleRate == opl3.getSampleRate() ? nativeFrames : (long) (nativeFrames * (double) sampleRate / opl3.getSampleRate());
+    }
+
+    /** skips by the engine until something is read */
+    private static class SkippableInputStream extends FilterInputStream {
+
+        /** */
+        private final Opl3OutputEngine engine;
+
+        /** */
+        private boolean started;
+
+        SkippableInputStream(InputStream in, Opl3OutputEngine engine) {
+            super(in);
+            this.engine = engine;
+        }
+
+        @Override
+        public int read() throws IOException {
+            started = true;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            started = true;
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            if (!started) {
+                started = true;
+                skipped = engine.skip(n);
+            }
+            // after the song end, or once rendering has started
+            if (skipped < n) {
+                skipped += in.skip(n - skipped);
+            }
+            return skipped;
+        }
     }
 
     /** */
@@ -49,14 +130,45 @@ public class Opl3ToPcmAudioInputStream extends AudioInputStream {
         /** */
         private final float sampleRate;
 
-        /** */
-        public Opl3OutputEngine(InputStream is, AudioFormat format) throws IOException {
-            player = Opl3Player.getPlayer(format.getEncoding());
+        /** minimum bytes per execution, a tick when 0 */
+        private final int batchBytes;
+
+        /** the song ended while skipping */
+        private boolean ended;
+
+        /** pcm work area, grows to the largest tick */
+        private byte[] buf = new byte[0];
+
+        /** frames so far at the native rate and at the output rate */
+        private long nativeFrames, frames;
+
+        /**
+         * @param format source
+         * @param sampleRate output, not specified means the native rate
+         */
+        public Opl3OutputEngine(InputStream is, AudioFormat format, float sampleRate, boolean offline) throws IOException {
+            player = Opl3Player.newPlayer(format.getEncoding());
 logger.log(Level.TRACE, "props: " + format.properties());
             player.setProperties(format.properties());
             player.load(is);
 
-            sampleRate = format.getSampleRate();
+            this.sampleRate = sampleRate == AudioSystem.NOT_SPECIFIED ? opl3.getSampleRate() : sampleRate;
+            if (this.sampleRate != opl3.getSampleRate()) {
+                player.setSampleRate(this.sampleRate);
+            }
+            batchBytes = offline ? 4 * (int) this.sampleRate : 0;
+        }
+
+        /**
+         * @param nativeFrames to advance at the native rate
+         * @return frames to output for them, ticks do not drift by rounding at other rates
+         */
+        private int advance(int nativeFrames) {
+            this.nativeFrames += nativeFrames;
+            long frames = toFrames(this.nativeFrames, sampleRate);
+            int n = (int) (frames - this.frames);
+            this.frames = frames;
+            return n;
         }
 
         @Override
@@ -74,23 +186,74 @@ logger.log(Level.DEBUG, "engin start");
             if (out == null) {
                 throw new IOException("Not yet initialized");
             } else {
-                if (player.update()) {
-                    double sec = 1.0 / player.getRefresh();
-logger.log(Level.TRACE, "engine bytes: " + (int) (sampleRate * sec + 0.5) + ", " + player.getRefresh());
-
-                    byte[] buf = player.read(4 * (int) (sampleRate * sec + 0.5));
-                    out.write(buf, 0, buf.length);
-                } else {
-                    for (int wait = 0; wait < 30; ++wait) {
-                        double sec = 0.1;
-
-                        byte[] buf = player.read(4 * (int) (sampleRate * sec));
-                        out.write(buf, 0, buf.length);
-                    }
+                int bytes = 0;
+                do {
+                    if (!ended && player.update()) {
+logger.log(Level.TRACE, "engine bytes: " + player.getTickFrames(opl3.getSampleRate()) + ", " + player.getRefresh());
+
+                        int len = 4 * advance(player.getTickFrames(opl3.getSampleRate()));
+                        len = player.read(buffer(len), 0, len);
+                        out.write(buf, 0, len);
+                        bytes += len;
+                    } else {
+                        for (int wait = 0; wait < TAIL_BLOCKS; ++wait) {
+                            int len = 4 * advance((int) (opl3.getSampleRate() * TAIL_BLOCK_SEC));
+                            len = player.read(buffer(len), 0, len);
+                            out.write(buf, 0, len);
+                        }
 logger.log(Level.DEBUG, "engine last");
-                    out.close();
+                        out.close();
+                        return;
+                    }
+                } while (bytes < batchBytes);
+            }
+        }
+
+        /**
+         * Fast-forwards whole ticks in register-only mode, the tick containing
+         * the destination is rendered and its rest is output.
+         *
+         * @param n bytes
+         * @return bytes skipped, less than n when the song has ended
+         */
+        long skip(long n) throws IOException {
+            if (out == null) {
+                throw new IOException("Not yet initialized");
+            }
+            long frames = n / 4;
+            long skipped = 0;
+            player.setRegisterOnly(true);
+            try {
+                while (skipped < frames) {
+                    if (!player.update()) {
+                        ended = true;
+                        break;
+                    }
+                    int tick = advance(player.getTickFrames(opl3.getSampleRate()));
+                    if (skipped + tick > frames) {
+                        player.setRegisterOnly(false);
+                        int len = 4 * tick;
+                        len = player.read(buffer(len), 0, len);
+                        int head = (int) (frames - skipped) * 4;
+                        out.write(buf, head, len - head);
+                        skipped = frames;
+                    } else {
+                        skipped += tick;
+                    }
                 }
+            } finally {
+                player.setRegisterOnly(false);
+            }
+logger.log(Level.DEBUG, "skipped: " + skipped + " frames");
+            return skipped * 4;
+        }
+
+        /** @return the work area at least of length bytes */
+        private byte[] buffer(int length) {
+            if (buf.length < length) {
+                buf = new byte[length];
             }
+            return buf;
         }
 
         @Override
@@ -35,4 +35,9 @@ public class LaoeSamplingRateConversionProvider extends SamplingRateConversionPr
     protected InputStream createStream(InputStream in, float inRate, float outRate) throws IOException {
         return new LaoeInputStream(in, inRate, outRate);
     }
+
+    @Override
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        return new LaoeInputStream(in, inRate, outRate, channels);
+    }
 }
@@ -35,4 +35,9 @@ public class RohmSamplingRateConversionProvider extends SamplingRateConversionPr
     protected InputStream createStream(InputStream in, float inRate, float outRate) throws IOException {
         return new RohmInputStream(in, inRate, outRate);
     }
+
+    @Override
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        return new RohmInputStream(in, inRate, outRate, channels);
+    }
 }
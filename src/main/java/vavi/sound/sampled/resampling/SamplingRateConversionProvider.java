@@ -25,8 +25,9 @@ import javax.sound.sampled.spi.FormatConversionProvider;
  * is taken from the {@link AudioFormat} passed to
  * {@link #getAudioInputStream(AudioFormat, AudioInputStream)}.
  * <p>
- * The underlying resamplers are single-channel (see their {@code TODO stereo}
- * notes); the interleaved byte stream is passed through as-is.
+ * Multichannel streams are resampled channel by channel by the providers overriding
+ * {@link #createStream(InputStream, float, float, int)}, the others pass the
+ * interleaved byte stream to their single-channel resampler as-is.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 250707 nsano initial version <br>
@@ -36,6 +37,19 @@ abstract class SamplingRateConversionProvider extends FormatConversionProvider {
     /** Wrap the raw 16bit LE PCM stream with the concrete resampler. */
     protected abstract InputStream createStream(InputStream in, float inRate, float outRate) throws IOException;
 
+    /** Wrap the raw 16bit LE interleaved PCM stream of the channels, single-channel by default. */
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        return createStream(in, inRate, outRate);
+    }
+
+    /**
+     * Wrap the raw 16bit LE interleaved PCM stream for the formats, by rates and channels by default.
+     * override this to take {@link AudioFormat#getProperty(String) properties} of the target format.
+     */
+    protected InputStream createStream(InputStream in, AudioFormat sourceFormat, AudioFormat targetFormat) throws IOException {
+        return createStream(in, sourceFormat.getSampleRate(), targetFormat.getSampleRate(), sourceFormat.getChannels());
+    }
+
     /** whether the given format is something our resamplers can read/write */
     private static boolean isPcm16(AudioFormat format) {
         return format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) &&
@@ -100,7 +114,7 @@ abstract class SamplingRateConversionProvider extends FormatConversionProvider {
             return sourceStream;
         }
         try {
-            InputStream resampled = createStream(sourceStream, inRate, outRate);
+            InputStream resampled = createStream(sourceStream, sourceFormat, targetFormat);
             AudioFormat outFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
                     outRate,
                     16,
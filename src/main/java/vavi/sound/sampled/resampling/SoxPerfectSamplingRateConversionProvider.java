@@ -35,4 +35,11 @@ public class SoxPerfectSamplingRateConversionProvider extends SamplingRateConver
     protected InputStream createStream(InputStream in, float inRate, float outRate) throws IOException {
         return new PerfectResamplerInputStream(in, inRate, outRate);
     }
+
+    /** tpdf dither is added by the system property "vavi.sound.sampled.spi.sox_perfect.dither" */
+    @Override
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        boolean dither = Boolean.parseBoolean(System.getProperty("vavi.sound.sampled.spi.sox_perfect.dither", "false"));
+        return new PerfectResamplerInputStream(in, inRate, outRate, channels, dither);
+    }
 }
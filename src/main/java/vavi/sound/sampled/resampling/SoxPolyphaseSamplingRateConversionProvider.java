@@ -44,4 +44,9 @@ public class SoxPolyphaseSamplingRateConversionProvider extends SamplingRateConv
     protected InputStream createStream(InputStream in, float inRate, float outRate) throws IOException {
         return new PolyphaseInputStream(in, inRate, outRate);
     }
+
+    @Override
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        return new PolyphaseInputStream(in, inRate, outRate, channels);
+    }
 }
@@ -8,6 +8,7 @@ package vavi.sound.sampled.resampling;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.function.DoubleSupplier;
 
 import javax.sound.sampled.AudioFormat;
 
@@ -16,6 +17,10 @@ import vavi.sound.pcm.resampling.sox.ResamplerInputStream;
 
 /**
  * SoxResamplingSamplingRateConversionProvider.
+ * <p>
+ * when the target format has a property "ratio" of {@link DoubleSupplier}, the ratio is variable.
+ * it supplies the ratio relative to the nominal one (e.g. 1.001 for 0.1% more output),
+ * within {@link vavi.sound.pcm.resampling.sox.Resampler#MAX_DEVIATION}, and is polled each block.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 250707 nsano initial version <br>
@@ -35,4 +40,17 @@ public class SoxResamplingSamplingRateConversionProvider extends SamplingRateCon
     protected InputStream createStream(InputStream in, float inRate, float outRate) throws IOException {
         return new ResamplerInputStream(in, inRate, outRate);
     }
+
+    @Override
+    protected InputStream createStream(InputStream in, float inRate, float outRate, int channels) throws IOException {
+        return new ResamplerInputStream(in, inRate, outRate, channels);
+    }
+
+    @Override
+    protected InputStream createStream(InputStream in, AudioFormat sourceFormat, AudioFormat targetFormat) throws IOException {
+        if (targetFormat.getProperty("ratio") instanceof DoubleSupplier ratio) {
+            return new ResamplerInputStream(in, sourceFormat.getSampleRate(), targetFormat.getSampleRate(), sourceFormat.getChannels(), ratio);
+        }
+        return super.createStream(in, sourceFormat, targetFormat);
+    }
 }
@@ -11,9 +11,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.System.Logger;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
@@ -33,7 +30,8 @@ import static java.lang.System.getLogger;
  * Mirrors the decode loop of the {@code @audio/wma-decode} npm package: ASF
  * demux, split each data-packet payload into {@code blockAlign}-sized WMA
  * superframes, decode each with a single {@link WmaDecoder}, then interleave the
- * planar float output to little-endian PCM16.
+ * planar float output to little-endian PCM16. The container is demuxed a packet
+ * at a time as the stream is read, so memory does not grow with the file.
  *
  * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
  * @version 0.00 260707 nsano initial version <br>
@@ -59,29 +57,27 @@ class Wma2PcmAudioInputStream extends AudioInputStream {
         /** */
         private DataOutputStream out;
 
+        private final AsfDemuxer demuxer;
         private final WmaDecoder decoder;
         private final int channels;
-        private final List<byte[]> frames;
+        /** the current superframe, reused */
+        private final byte[] superframe;
         private int frameIndex;
         private boolean flushed;
+        /** planar samples of a superframe, reused */
+        private final float[][] planar;
+        /** interleaved PCM16 of a superframe, reused */
+        private final byte[] pcm;
 
         /** */
         public WmaOutputEngine(InputStream is) throws IOException {
-            byte[] data = is.readAllBytes();
-            AsfInfo info = AsfDemuxer.demux(data);
+            this.demuxer = new AsfDemuxer(is);
+            AsfInfo info = demuxer.info();
             this.decoder = new WmaDecoder(info);
             this.channels = decoder.channels();
-
-            // de-packetise into blockAlign-sized WMA superframes
-            this.frames = new ArrayList<>();
-            int ba = info.blockAlign;
-            for (byte[] pkt : info.packets) {
-                for (byte[] payload : AsfDemuxer.parsePacket(pkt)) {
-                    for (int off = 0; off + ba <= payload.length; off += ba) {
-                        frames.add(Arrays.copyOfRange(payload, off, off + ba));
-                    }
-                }
-            }
+            this.planar = new float[channels][decoder.maxSuperframeLength()];
+            this.pcm = new byte[decoder.maxSuperframeLength() * channels * 2];
+            this.superframe = new byte[info.blockAlign];
         }
 
         @Override
@@ -98,33 +94,29 @@ class Wma2PcmAudioInputStream extends AudioInputStream {
             if (out == null) {
                 throw new IOException("Not yet initialized");
             }
-            if (frameIndex < frames.size()) {
-                float[][] planar;
+            if (!flushed && demuxer.nextSuperframe(superframe)) {
+                int samples;
                 try {
-                    planar = decoder.decodeSuperframe(frames.get(frameIndex));
+                    samples = decoder.decodeSuperframe(superframe, planar, 0);
                 } catch (RuntimeException e) {
 logger.log(DEBUG, "frame " + frameIndex + ": " + e);
-                    planar = null;
+                    samples = 0;
                 }
                 frameIndex++;
-                if (planar != null) {
-                    writeInterleaved(planar);
-                }
+                writeInterleaved(samples);
             } else if (!flushed) {
                 flushed = true;
-                writeInterleaved(decoder.flush());
+                writeInterleaved(decoder.flush(planar, 0));
             } else {
                 out.close();
             }
         }
 
         /** Clamps planar float samples to [-1, 1] and writes interleaved LE PCM16. */
-        private void writeInterleaved(float[][] planar) throws IOException {
-            int samples = planar.length > 0 ? planar[0].length : 0;
+        private void writeInterleaved(int samples) throws IOException {
             if (samples == 0) {
                 return;
             }
-            byte[] pcm = new byte[samples * channels * 2];
             int pos = 0;
             for (int n = 0; n < samples; n++) {
                 for (int c = 0; c < channels; c++) {
@@ -139,7 +131,7 @@ logger.log(DEBUG, "frame " + frameIndex + ": " + e);
                     pcm[pos++] = (byte) ((s >> 8) & 0xFF);
                 }
             }
-            out.write(pcm, 0, pcm.length);
+            out.write(pcm, 0, pos);
         }
 
         @Override
@@ -56,6 +56,8 @@ class Xma2PcmAudioInputStream extends AudioInputStream {
         private final float[][][] streamOutputs;
         private final float[][] combined;
         private final XmaFrame[] frameSet;
+        /** interleaved PCM16 of a frame set, reused */
+        private final byte[] pcm;
         private final int channels;
         private final int samplesPerFrame;
 
@@ -85,6 +87,7 @@ class Xma2PcmAudioInputStream extends AudioInputStream {
             }
 
             this.frameSet = new XmaFrame[info.numStreams];
+            this.pcm = new byte[samplesPerFrame * channels * 2];
         }
 
         @Override
@@ -111,7 +114,6 @@ class Xma2PcmAudioInputStream extends AudioInputStream {
                     channelOffset += decoders[s].channels();
                 }
 
-                byte[] pcm = new byte[samples * channels * 2];
                 int pos = 0;
                 for (int n = 0; n < samples; n++) {
                     for (int c = 0; c < channels; c++) {
@@ -126,7 +128,7 @@ class Xma2PcmAudioInputStream extends AudioInputStream {
                         pcm[pos++] = (byte) ((s >> 8) & 0xFF);
                     }
                 }
-                out.write(pcm, 0, pcm.length);
+                out.write(pcm, 0, pos);
             } else {
                 out.close();
             }
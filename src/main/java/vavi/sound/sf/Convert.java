@@ -140,6 +140,15 @@ public class Convert {
         if (convert) {
             logger.log(Level.DEBUG, "Writing " + outFilename.getAbsolutePath());
             sf.write(outFilename, format, quality);
+
+            long raw = 0, compressed = 0, nanos = 0;
+            for (SoundFont.SampleReport report : sf.getSampleReports()) {
+                raw += report.rawBytes();
+                compressed += report.compressedBytes();
+                nanos += report.nanos();
+            }
+            if (raw > 0)
+                logger.log(Level.INFO, "Compressed " + sf.getSampleReports().size() + " samples: " + Math.round(100d * compressed / raw) + "%, " + nanos / 1000000 + "ms of encoding");
         }
     }
 }
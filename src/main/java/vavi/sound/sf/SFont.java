@@ -30,18 +30,36 @@ import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.sound.sampled.spi.AudioFileReader;
+import javax.sound.sampled.spi.FormatConversionProvider;
 
 import vavi.io.LittleEndianSeekableDataInputStream;
 import vavi.io.LittleEndianSeekableDataOutputStream;
@@ -257,10 +275,35 @@ public class SFont {
         public final int numSamples() {
             if (sampleData != null)
                 return sampleDataSize;
+            else if (sampleView != null)
+                return sampleView.capacity();
             else
                 return end - start;
         }
 
+        /**
+         * Native SF2 sample data, decompressed or a zero-copy view of the
+         * mapped file in lazy mode. The position is 0, the limit is the
+         * number of samples, little endian already resolved.
+         */
+        public ShortBuffer getSampleData() {
+            if (sampleData != null)
+                return ShortBuffer.wrap(sampleData, 0, sampleDataSize).slice();
+            else if (sampleView != null)
+                return sampleView.duplicate();
+            else
+                return ShortBuffer.allocate(0);
+        }
+
+        /** Copies the lazy view into {@link #sampleData}, if not yet. */
+        public void loadSampleData() {
+            if (sampleData == null && sampleView != null) {
+                sampleDataSize = sampleView.capacity();
+                sampleData = new short[sampleDataSize];
+                sampleView.duplicate().get(sampleData);
+            }
+        }
+
         public SampleCompression getCompressionType() {
             if ((sampletype & SampleType.TypeVorbis.v) != 0) return SampleCompression.Vorbis;
             if ((sampletype & SampleType.TypeFlac.v) != 0) return SampleCompression.Flac;
@@ -276,6 +319,7 @@ public class SFont {
             }
         }
 
+        /** In lazy mode the view is kept, so the data can be loaded again. */
         public void dropSampleData() {
             sampleData = null;
             sampleDataSize = 0;
@@ -325,6 +369,10 @@ public class SFont {
         // Native SF2 sample data, after decompression
         public int sampleDataSize;
         public short[] sampleData;
+        // Lazy SF2 only: zero-copy view of the mapped smpl chunk,
+        // and the absolute byte position in the file
+        public ShortBuffer sampleView;
+        public long filePos;
 
         public SampleMeta meta;
     }
@@ -367,28 +415,40 @@ public class SFont {
                     readSection(fourcc, len3);
                 }
             }
+            if (_lazy && _fileFormatIn == FileType.SF2Format && channel instanceof FileChannel fc) {
+                mapSampleData(fc);
+                return;
+            }
             // load sample data
+            if (_fileFormatIn != FileType.SF2Format) {
+                readSampleDataCompressed();
+                return;
+            }
             for (Sample sample : _samples) {
                 try {
-                    readSampleData(sample);
-                } catch (UnsupportedAudioFileException e) {
-                    throw new IOException("no audio decoder for " + _fileFormatIn, e);
+                    readSampleDataRaw(sample);
                 } catch (IOException | RuntimeException e) {
-                    logger.log(Level.WARNING, "cannot decode sample: " + sample.name + ": " + e);
-                    sample.sampleData = new short[0];
-                    sample.sampleDataSize = 0;
-                    sample.start = 0;
-                    sample.end = 0;
+                    failed(sample, e);
                 }
             }
         }
 
+        private static void failed(Sample sample, Exception e) {
+            logger.log(Level.WARNING, "cannot decode sample: " + sample.name + ": " + e);
+            sample.sampleData = new short[0];
+            sample.sampleDataSize = 0;
+            sample.start = 0;
+            sample.end = 0;
+            sample.dropByteData();
+        }
+
         public void write(File filename, FileType format, int quality) throws IOException {
 
             _outfile = new LittleEndianSeekableDataOutputStream(Files.newByteChannel(filename.toPath(),
                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
             _outfile.position(0);
             _fileFormatOut = format;
+            _sampleReports.clear();
 
             // Add a warning that samples were decompressed from a lossy format
             if (_fileFormatIn == FileType.SF3Format && _fileFormatOut != _fileFormatIn) {
@@ -802,12 +862,34 @@ public class SFont {
             skip(SampleMetaSize);   // trailing record
         }
 
-        private void readSampleData(Sample s) throws IOException, UnsupportedAudioFileException {
-            switch (_fileFormatIn) {
-                case SF2Format -> readSampleDataRaw(s);
-                case SF3Format -> readSampleDataCompressed(s);
-                case SF4Format -> readSampleDataCompressed(s);
+        /**
+         * Lazy mode: maps the smpl chunk and hands out a view per sample,
+         * nothing is copied into the heap. The mapping stays valid after
+         * the channel is closed.
+         */
+        private void mapSampleData(FileChannel channel) throws IOException {
+            ShortBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, _samplePos, _sampleLen)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            for (Sample s : _samples) {
+                int start = Math.clamp(s.start, 0, map.capacity());
+                int end = Math.clamp(s.end, start, map.capacity());
+                if (start != s.start || end != s.end)
+                    logger.log(Level.WARNING, "sample out of the smpl chunk: " + s.name);
+                int numSamples = end - start;
+                s.sampleView = map.slice(start, numSamples).asReadOnlyBuffer();
+                s.filePos = _samplePos + (long) start * Short.BYTES;
+
+                // normalize offsets & make loop relative, as readSampleDataRaw
+                s.loopstart -= start;
+                s.loopend -= start;
+                s.start = 0;
+                s.end = numSamples;
+
+                s.createMeta();
             }
+            logger.log(Level.DEBUG, "mapped " + _sampleLen + " bytes of " + _samples.size() + " samples");
+            if (_channel == null)
+                channel.close();
         }
 
         private void readSampleDataRaw(Sample s) throws IOException {
@@ -831,47 +913,238 @@ public class SFont {
             s.createMeta();
         }
 
-        /** SF3 (Ogg Vorbis) and SF4 (FLAC): offsets are byte positions into the smpl chunk */
-        private void readSampleDataCompressed(Sample s) throws IOException, UnsupportedAudioFileException {
-            int numBytes = (s.end - s.start);
-            s.byteDataSize = numBytes;
-            s.byteData = new byte[numBytes];
-            _infile.position(_samplePos + s.start);
-            _infile.readFully(s.byteData, 0, numBytes);
-
-            AudioInputStream encoded = AudioSystem.getAudioInputStream(
-                    new ByteArrayInputStream(s.byteData, 0, s.byteDataSize));
-            // decoders only accept enumerated sample rates, but the rate is
-            // irrelevant for decoding, so hide it from the provider lookup
-            AudioFormat ef = encoded.getFormat();
-            AudioFormat lax = new AudioFormat(ef.getEncoding(), AudioSystem.NOT_SPECIFIED,
-                    ef.getSampleSizeInBits(), ef.getChannels(), ef.getFrameSize(),
-                    AudioSystem.NOT_SPECIFIED, ef.isBigEndian(), ef.properties());
-            encoded = new AudioInputStream(encoded, lax, AudioSystem.NOT_SPECIFIED);
-            byte[] buffer;
-            ByteOrder order;
-            // convert by encoding first, decoders reject fully specified target formats
-            try (AudioInputStream decoded = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, encoded)) {
-                AudioFormat format = decoded.getFormat();
-                // decoders may leave fields unspecified, then 16 bit is implied
-                if (format.getSampleSizeInBits() != AudioSystem.NOT_SPECIFIED && format.getSampleSizeInBits() != 16)
-                    throw new IOException("unexpected decoded format: " + format);
-                order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
-                buffer = decoded.readAllBytes();
+        /**
+         * SF3 (Ogg Vorbis) and SF4 (FLAC): offsets are byte positions into the smpl chunk.
+         * <p>
+         * The compressed bytes are read sequentially, then the samples are decoded
+         * concurrently by the {@link #setExecutor(ExecutorService) executor}. When a
+         * {@link #setCacheDirectory(Path) cache directory} is set, the decoded pcm is
+         * stored there keyed by the hash of the compressed bytes, and is read from
+         * there next time instead of decoding.
+         */
+        private void readSampleDataCompressed() throws IOException {
+            MessageDigest digest = _cacheDirectory != null ? sha256() : null;
+            for (Sample s : _samples) {
+                try {
+                    int numBytes = (s.end - s.start);
+                    s.byteData = new byte[numBytes];
+                    _infile.position(_samplePos + s.start);
+                    _infile.readFully(s.byteData, 0, numBytes);
+                    s.byteDataSize = numBytes;
+                } catch (IOException | RuntimeException e) {
+                    failed(s, e);
+                    digest = null; // incomplete, not to be cached
+                }
+                if (digest != null) {
+                    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(s.byteDataSize).flip());
+                    digest.update(s.byteData, 0, s.byteDataSize);
+                }
             }
-            int numSamples = buffer.length / Short.BYTES;
 
-            s.sampleDataSize = numSamples;
-            s.sampleData = new short[numSamples];
-            ByteBuffer.wrap(buffer).order(order).asShortBuffer().get(s.sampleData);
+            Path cache = null;
+            if (digest != null) {
+                cache = _cacheDirectory.resolve(HexFormat.of().formatHex(digest.digest()) + ".pcm");
+                if (readCache(cache)) {
+                    return;
+                }
+            }
 
-            // normalize offsets, loop offsets in the file are already relative
-            s.start = 0;
-            s.end = numSamples;
+            List<Future<?>> futures = new ArrayList<>();
+            for (Sample s : _samples) {
+                if (s.byteData == null) {
+                    continue;
+                }
+                futures.add(_executor.submit(() -> {
+                    decode(s, _fileFormatIn);
+                    return null;
+                }));
+            }
+            boolean complete = true;
+            try {
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof UnsupportedAudioFileException u) {
+                            futures.forEach(f -> f.cancel(true));
+                            throw new IOException("no audio decoder for " + _fileFormatIn, u);
+                        }
+                        complete = false;
+                    }
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+
+            if (cache != null && complete) {
+                writeCache(cache);
+            }
+        }
+
+        /**
+         * Decodes {@link Sample#byteData} into {@link Sample#sampleData}, thread safe.
+         * A sample failed is emptied.
+         */
+        private static void decode(Sample s, FileType type) throws UnsupportedAudioFileException, IOException {
+            try {
+                byte[] buffer;
+                ByteOrder order;
+                try (AudioInputStream decoded = Decoder.decode(type, s.byteData, s.byteDataSize)) {
+                    AudioFormat format = decoded.getFormat();
+                    // decoders may leave fields unspecified, then 16 bit is implied
+                    if (format.getSampleSizeInBits() != AudioSystem.NOT_SPECIFIED && format.getSampleSizeInBits() != 16)
+                        throw new IOException("unexpected decoded format: " + format);
+                    order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                    buffer = decoded.readAllBytes();
+                }
+                int numSamples = buffer.length / Short.BYTES;
+
+                s.sampleDataSize = numSamples;
+                s.sampleData = new short[numSamples];
+                ByteBuffer.wrap(buffer).order(order).asShortBuffer().get(s.sampleData);
+
+                // normalize offsets, loop offsets in the file are already relative
+                s.start = 0;
+                s.end = numSamples;
+
+                if (!s.checkMeta())
+                    logger.log(Level.WARNING, "sample verification failed: " + s.name);
+                s.dropByteData();
+            } catch (UnsupportedAudioFileException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                failed(s, e);
+                throw e;
+            }
+        }
+
+        /**
+         * Resolves the spi providers decoding a compressed sample once per file type,
+         * discovery through {@link AudioSystem} for each sample is slow.
+         */
+        private record Decoder(AudioFileReader reader, FormatConversionProvider converter) {
+
+            private static final Map<FileType, Decoder> decoders = new ConcurrentHashMap<>();
+
+            static AudioInputStream decode(FileType type, byte[] data, int length) throws UnsupportedAudioFileException, IOException {
+                Decoder decoder = decoders.get(type);
+                if (decoder != null) {
+                    try {
+                        AudioInputStream encoded = decoder.reader.getAudioInputStream(new ByteArrayInputStream(data, 0, length));
+                        return decoder.converter.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, lax(encoded));
+                    } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+                        logger.log(Level.DEBUG, "cached decoder failed, discovering: " + e);
+                    }
+                }
+                AudioInputStream encoded = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data, 0, length));
+                AudioInputStream decoded = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, lax(encoded));
+                resolve(type, data, length, encoded.getFormat());
+                return decoded;
+            }
+
+            /** finds the providers which {@link AudioSystem} would have used */
+            private static synchronized void resolve(FileType type, byte[] data, int length, AudioFormat format) {
+                if (decoders.containsKey(type))
+                    return;
+                AudioFormat lax = lax(format);
+                for (AudioFileReader reader : ServiceLoader.load(AudioFileReader.class)) {
+                    try {
+                        AudioFormat f = reader.getAudioFileFormat(new ByteArrayInputStream(data, 0, length)).getFormat();
+                        if (!f.getEncoding().equals(format.getEncoding()))
+                            continue;
+                    } catch (UnsupportedAudioFileException | IOException | RuntimeException e) {
+                        continue;
+                    }
+                    for (FormatConversionProvider converter : ServiceLoader.load(FormatConversionProvider.class)) {
+                        if (converter.isConversionSupported(AudioFormat.Encoding.PCM_SIGNED, lax)) {
+                            logger.log(Level.DEBUG, type + ": " + reader.getClass().getName() + ", " + converter.getClass().getName());
+                            decoders.put(type, new Decoder(reader, converter));
+                            return;
+                        }
+                    }
+                    return;
+                }
+            }
+
+            /** decoders only accept enumerated sample rates, but the rate is irrelevant for decoding, so hide it */
+            private static AudioFormat lax(AudioFormat ef) {
+                return new AudioFormat(ef.getEncoding(), AudioSystem.NOT_SPECIFIED,
+                        ef.getSampleSizeInBits(), ef.getChannels(), ef.getFrameSize(),
+                        AudioSystem.NOT_SPECIFIED, ef.isBigEndian(), ef.properties());
+            }
+
+            private static AudioInputStream lax(AudioInputStream encoded) {
+                return new AudioInputStream(encoded, lax(encoded.getFormat()), AudioSystem.NOT_SPECIFIED);
+            }
+        }
+
+        /** "SFPC" */
+        private static final int CACHE_MAGIC = 0x53465043;
+        private static final int CACHE_VERSION = 1;
+
+        /** @return false when missing or not matching */
+        private boolean readCache(Path cache) {
+            if (!Files.exists(cache))
+                return false;
+            try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION || buffer.getInt() != _samples.size())
+                    throw new IOException("not matching");
+                for (Sample s : _samples) {
+                    int numSamples = buffer.getInt();
+                    s.sampleData = new short[numSamples];
+                    buffer.asShortBuffer().get(s.sampleData);
+                    buffer.position(buffer.position() + numSamples * Short.BYTES);
+                    s.sampleDataSize = numSamples;
+                    s.start = 0;
+                    s.end = numSamples;
+                    s.dropByteData();
+                }
+                logger.log(Level.DEBUG, "decoded samples from cache: " + cache);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "ignoring cache: " + cache + ": " + e);
+                for (Sample s : _samples) {
+                    s.dropSampleData();
+                }
+                return false;
+            }
+        }
+
+        /** written to a temporary file then moved, for concurrent readers */
+        private void writeCache(Path cache) {
+            try {
+                Files.createDirectories(cache.getParent());
+                Path temp = Files.createTempFile(cache.getParent(), cache.getFileName().toString(), ".tmp");
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 3).order(ByteOrder.LITTLE_ENDIAN)
+                            .putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putInt(_samples.size()).flip();
+                    while (header.hasRemaining())
+                        channel.write(header);
+                    for (Sample s : _samples) {
+                        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + s.sampleDataSize * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.putInt(s.sampleDataSize);
+                        buffer.asShortBuffer().put(s.sampleData, 0, s.sampleDataSize);
+                        buffer.rewind();
+                        while (buffer.hasRemaining())
+                            channel.write(buffer);
+                    }
+                }
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.log(Level.DEBUG, "decoded samples cached: " + cache);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "cannot write cache: " + cache + ": " + e);
+            }
+        }
 
-            if (!s.checkMeta())
-                logger.log(Level.WARNING, "sample verification failed: " + s.name);
-            s.dropByteData();
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
         }
 
         private void writeDword(int val) throws IOException {
@@ -992,29 +1265,11 @@ public class SFont {
                     break;
                 }
                 case SF3Format: {
-                    for (Sample s : _samples) {
-                        int written = writeSampleDataCompressed(s, VORBIS, OGG, quality);
-
-                        s.setCompressionType(SampleCompression.Vorbis);
-                        // Offsets in SF3 based on byte offset in file.
-                        // Hack start/end of sample metadata to accommodate this:
-                        s.start = (int) offsetFromChunk;
-                        offsetFromChunk += written;
-                        s.end = (int) offsetFromChunk;
-                        // Important: keep relative loop offsets in file, so it can be restored after loading.
-                    }
+                    writeSamplesCompressed(VORBIS, OGG, SampleCompression.Vorbis, quality);
                     break;
                 }
                 case SF4Format: {
-                    for (Sample s : _samples) {
-                        int written = writeSampleDataCompressed(s, FLAC_ENC, FLAC, quality);
-
-                        s.setCompressionType(SampleCompression.Flac);
-                        // Offsets in SF4 based on byte offset in file.
-                        s.start = (int) offsetFromChunk;
-                        offsetFromChunk += written;
-                        s.end = (int) offsetFromChunk;
-                    }
+                    writeSamplesCompressed(FLAC_ENC, FLAC, SampleCompression.Flac, quality);
                     break;
                 }
             }
@@ -1173,19 +1428,82 @@ public class SFont {
 
             int numBytes = s.numSamples() * Short.BYTES;
             byte[] b = new byte[numBytes];
-            ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.sampleData, 0, s.numSamples());
+            ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.getSampleData());
             write(b, numBytes);
             return numBytes;
         }
 
-        private int writeSampleDataCompressed(Sample s, AudioFormat.Encoding encoding, AudioFileFormat.Type fileType, int quality) throws IOException {
+        /**
+         * Compresses samples concurrently by the {@link #setExecutor(ExecutorService) executor},
+         * and writes them in the original order as soon as they and the preceding ones are done.
+         * At most {@link #setEncodeWindow(int) window} samples are in flight, so the memory
+         * does not grow with the soundfont. The output does not depend on the parallelism.
+         */
+        private void writeSamplesCompressed(AudioFormat.Encoding encoding, AudioFileFormat.Type fileType, SampleCompression compression, int quality) throws IOException {
+            Deque<Future<Encoded>> pending = new ArrayDeque<>();
+            long offsetFromChunk = 0;
+            try {
+                for (Sample s : _samples) {
+                    pending.add(_executor.submit(() -> encode(s, encoding, fileType, quality)));
+                    if (pending.size() >= _encodeWindow)
+                        offsetFromChunk = writeEncoded(pending.removeFirst().get(), compression, offsetFromChunk);
+                }
+                while (!pending.isEmpty())
+                    offsetFromChunk = writeEncoded(pending.removeFirst().get(), compression, offsetFromChunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException i) {
+                    throw i;
+                } else {
+                    throw new IOException(e.getCause());
+                }
+            } finally {
+                // left by a failure
+                pending.forEach(f -> f.cancel(true));
+            }
+        }
+
+        /** @return the offset after the sample */
+        private long writeEncoded(Encoded encoded, SampleCompression compression, long offsetFromChunk) throws IOException {
+            Sample s = encoded.sample;
+            write(encoded.data, encoded.data.length);
+
+            s.setCompressionType(compression);
+            // Offsets in SF3/SF4 based on byte offset in file.
+            // Hack start/end of sample metadata to accommodate this:
+            s.start = (int) offsetFromChunk;
+            offsetFromChunk += encoded.data.length;
+            s.end = (int) offsetFromChunk;
+            // Important: keep relative loop offsets in file, so it can be restored after loading.
+
+            _sampleReports.add(encoded.report);
+            return offsetFromChunk;
+        }
+
+        /** Per sample result of compression. */
+        public record SampleReport(String name, int rawBytes, int compressedBytes, long nanos) {
+
+            /** compressed / raw, 0 for an empty sample */
+            public double getRatio() {
+                return rawBytes == 0 ? 0 : (double) compressedBytes / rawBytes;
+            }
+        }
+
+        private record Encoded(Sample sample, byte[] data, SampleReport report) {
+        }
+
+        /** Compresses a sample, thread safe. */
+        private static Encoded encode(Sample s, AudioFormat.Encoding encoding, AudioFileFormat.Type fileType, int quality) throws IOException {
+            long start = System.nanoTime();
             if (s.numSamples() <= 0)
-                return 0;
+                return new Encoded(s, new byte[0], new SampleReport(s.name, 0, 0, System.nanoTime() - start));
             int numSamples = s.numSamples();
             int rawBytes = numSamples * Short.BYTES;
 
             byte[] b = new byte[rawBytes];
-            ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.sampleData, 0, numSamples);
+            ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(s.getSampleData());
 
             // TODO quality is currently not passed to the encoders
             ByteArrayOutputStream output = new ByteArrayOutputStream();
@@ -1194,13 +1512,10 @@ public class SFont {
             AudioInputStream encoded = AudioSystem.getAudioInputStream(encoding, pcm);
             AudioSystem.write(encoded, fileType, output);
 
-            int numBytes = output.size();
-            write(output.toByteArray(), numBytes);
+            SampleReport report = new SampleReport(s.name, rawBytes, output.size(), System.nanoTime() - start);
+            logger.log(Level.DEBUG, "Compressed " + fileType + ": " + s.name + " (" + Math.round(100 * report.getRatio()) + "%, " + report.nanos / 1000000 + "ms)");
 
-            int percent = Math.round(100.f * (float) numBytes / (float) rawBytes);
-            logger.log(Level.DEBUG, "Compressed " + fileType + ": " + s.name + " (" + percent + "%)");
-
-            return numBytes;
+            return new Encoded(s, output.toByteArray(), report);
         }
 
         // accessors
@@ -1253,6 +1568,47 @@ public class SFont {
             return _fileFormatIn;
         }
 
+        /** null when read from a channel */
+        public File getFile() {
+            return _path;
+        }
+
+        /**
+         * Lazy mode, set before {@link #read()}. SF2 samples read from a file
+         * are not loaded but memory mapped, see {@link Sample#getSampleData()}.
+         * Compressed samples are decoded anyway.
+         */
+        public void setLazy(boolean lazy) {
+            _lazy = lazy;
+        }
+
+        public boolean isLazy() {
+            return _lazy;
+        }
+
+        /** Decodes compressed samples, the common pool by default. */
+        public void setExecutor(ExecutorService executor) {
+            _executor = executor;
+        }
+
+        /** Samples compressed ahead of writing, the available processors by default. */
+        public void setEncodeWindow(int window) {
+            _encodeWindow = Math.max(1, window);
+        }
+
+        /** Compression results of the last {@link #write(File, FileType, int)}, in the sample order. */
+        public List<SampleReport> getSampleReports() {
+            return _sampleReports;
+        }
+
+        /**
+         * Stores decoded pcm of compressed soundfonts, null not to cache.
+         * The default is the system property {@code vavi.sound.sf.cache}.
+         */
+        public void setCacheDirectory(Path directory) {
+            _cacheDirectory = directory;
+        }
+
         protected final List<Preset> _presets = new ArrayList<>();
         protected final List<Instrument> _instruments = new ArrayList<>();
         protected final List<Sample> _samples = new ArrayList<>();
@@ -1272,6 +1628,11 @@ public class SFont {
 
         private long _samplePos;
         private long _sampleLen;
+        private boolean _lazy;
+        private ExecutorService _executor = ForkJoinPool.commonPool();
+        private int _encodeWindow = Runtime.getRuntime().availableProcessors();
+        private final List<SampleReport> _sampleReports = new ArrayList<>();
+        private Path _cacheDirectory = System.getProperty("vavi.sound.sf.cache") != null ? Path.of(System.getProperty("vavi.sound.sf.cache")) : null;
 
         private LittleEndianSeekableDataInputStream _infile;
         private LittleEndianSeekableDataOutputStream _outfile;
@@ -8,6 +8,11 @@
 
 package vavi.sound.wma;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -20,12 +25,16 @@ import java.util.List;
  * {@link #parsePacket}.
  * <p>
  * Direct port of the JavaScript ASF demuxer in {@code @audio/wma-decode}.
+ * <p>
+ * Besides the whole-file {@link #demux} an instance demuxes incrementally: it
+ * reads the header object on construction, then one data packet at a time into
+ * a reused buffer ({@link #nextPacket}, {@link #nextPayload},
+ * {@link #nextSuperframe}). Opened on a {@link SeekableByteChannel} it also
+ * seeks, by packet number or by time through the ASF simple index object.
  *
  * @see "https://www.npmjs.com/package/@audio/wma-decode"
  */
-public final class AsfDemuxer {
-
-    private AsfDemuxer() {}
+public final class AsfDemuxer implements Closeable {
 
     // ASF object GUIDs (16 bytes each, stored little-endian).
     private static final int[] GUID_HEADER = {
@@ -38,6 +47,15 @@ public final class AsfDemuxer {
             0x40, 0x9e, 0x69, 0xf8, 0x4d, 0x5b, 0xcf, 0x11, 0xa8, 0xfd, 0x00, 0x80, 0x5f, 0x5c, 0x44, 0x2b};
     private static final int[] GUID_DATA = {
             0x36, 0x26, 0xb2, 0x75, 0x8e, 0x66, 0xcf, 0x11, 0xa6, 0xd9, 0x00, 0xaa, 0x00, 0x62, 0xce, 0x6c};
+    private static final int[] GUID_SIMPLE_INDEX = {
+            0x90, 0x08, 0x00, 0x33, 0xb1, 0xe5, 0xcf, 0x11, 0x89, 0xf4, 0x00, 0xa0, 0xc9, 0x03, 0x49, 0xcb};
+
+    /** header object preamble: GUID, size, number of objects, 2 reserved bytes */
+    private static final int HEADER_PREAMBLE = 30;
+    /** data object header: GUID, size, file ID, total packets, 2 reserved bytes */
+    private static final int DATA_HEADER = 50;
+    /** 6 bits of payload count */
+    private static final int MAX_PAYLOADS = 64;
 
     /** Returns true if the buffer begins with the ASF header object GUID. */
     public static boolean isAsf(byte[] buf) {
@@ -73,21 +91,54 @@ public final class AsfDemuxer {
      * @throws IllegalArgumentException if the buffer is not a valid ASF/WMA file
      */
     public static AsfInfo demux(byte[] buf) {
-        if (buf == null || buf.length < 30 || !guidEq(buf, 0, GUID_HEADER)) {
+        if (buf == null || buf.length < HEADER_PREAMBLE || !guidEq(buf, 0, GUID_HEADER)) {
             throw new IllegalArgumentException("Not an ASF/WMA file");
         }
 
         long headerSize = u64(buf, 16);
-        long numObjects = u32(buf, 24);
-
-        WaveFormat audio = null;
-        int packetSize = 0;
+        Header header = parseHeader(buf, Math.min(headerSize, buf.length));
+        int packetSize = header.packetSize;
         long datSize = 0;
         int datOff = 0;
         long totalPackets = 0;
 
-        int pos = 30;
-        long headerEnd = Math.min(headerSize, buf.length);
+        // Data Object after header.
+        int pos = (int) headerSize;
+        if (pos + DATA_HEADER <= buf.length && guidEq(buf, pos, GUID_DATA)) {
+            datSize = u64(buf, pos + 16);
+            totalPackets = u64(buf, pos + 24 + 16);
+            datOff = pos + DATA_HEADER;
+        }
+
+        List<byte[]> packets = new ArrayList<>();
+        if (datOff != 0 && packetSize > 0) {
+            long datEnd = Math.min(pos + datSize, buf.length);
+            int ppos = datOff;
+            while (ppos + packetSize <= datEnd) {
+                packets.add(Arrays.copyOfRange(buf, ppos, ppos + packetSize));
+                ppos += packetSize;
+            }
+        } else if (datOff != 0 && totalPackets > 0) {
+            long datEnd = Math.min(pos + datSize, buf.length);
+            if (datOff < datEnd) {
+                packets.add(Arrays.copyOfRange(buf, datOff, (int) datEnd));
+            }
+        }
+
+        return header.toInfo(packets);
+    }
+
+    /**
+     * Parses the objects of the header object.
+     *
+     * @param headerEnd the end of the header object in {@code buf}
+     * @throws IllegalArgumentException if there is no audio stream
+     */
+    private static Header parseHeader(byte[] buf, long headerEnd) {
+        long numObjects = u32(buf, 24);
+
+        Header header = new Header();
+        int pos = HEADER_PREAMBLE;
         for (int i = 0; i < numObjects && pos < headerEnd - 24; i++) {
             long objSize = u64(buf, pos + 16);
             if (objSize < 24) {
@@ -98,47 +149,22 @@ public final class AsfDemuxer {
             if (guidEq(buf, pos, GUID_STREAM_PROPS)) {
                 WaveFormat a = parseStreamProps(buf, pos + 24, objEnd);
                 if (a != null) {
-                    audio = a;
+                    header.audio = a;
                 }
             } else if (guidEq(buf, pos, GUID_FILE_PROPS)) {
                 int ps = parseFileProps(buf, pos + 24, objEnd);
                 if (ps >= 0) {
-                    packetSize = ps;
+                    header.packetSize = ps;
+                    header.preroll = u64(buf, pos + 24 + 56);
                 }
             }
             pos = objEnd;
         }
 
-        if (audio == null) {
+        if (header.audio == null) {
             throw new IllegalArgumentException("No audio stream in ASF");
         }
-
-        // Data Object after header.
-        pos = (int) headerSize;
-        if (pos + 50 <= buf.length && guidEq(buf, pos, GUID_DATA)) {
-            datSize = u64(buf, pos + 16);
-            totalPackets = u64(buf, pos + 24 + 16);
-            datOff = pos + 24 + 26;
-        }
-
-        List<byte[]> packets = new ArrayList<>();
-        if (datOff != 0 && packetSize > 0) {
-            long datEnd = Math.min(pos + datSize, buf.length);
-            int ppos = datOff;
-            while (ppos + packetSize <= datEnd) {
-                packets.add(Arrays.copyOfRange(buf, ppos, ppos + packetSize));
-                ppos += packetSize;
-            }
-        } else if (datOff != 0 && totalPackets > 0) {
-            long datEnd = Math.min(pos + datSize, buf.length);
-            if (datOff < datEnd) {
-                packets.add(Arrays.copyOfRange(buf, datOff, (int) datEnd));
-            }
-        }
-
-        return new AsfInfo(audio.formatTag, audio.channels, audio.sampleRate,
-                (int) (audio.avgBytesPerSec * 8L), audio.blockAlign, audio.bitsPerSample,
-                audio.codecData, packetSize, packets);
+        return header;
     }
 
     private static WaveFormat parseStreamProps(byte[] buf, int start, int end) {
@@ -186,9 +212,31 @@ public final class AsfDemuxer {
      */
     public static List<byte[]> parsePacket(byte[] pkt) {
         List<byte[]> payloads = new ArrayList<>();
-        if (pkt == null || pkt.length < 3) {
+        if (pkt == null) {
             return payloads;
         }
+        int[] offsets = new int[MAX_PAYLOADS];
+        int[] lengths = new int[MAX_PAYLOADS];
+        int n = parsePacket(pkt, offsets, lengths, null);
+        for (int i = 0; i < n; i++) {
+            payloads.add(Arrays.copyOfRange(pkt, offsets[i], offsets[i] + lengths[i]));
+        }
+        return payloads;
+    }
+
+    /**
+     * Locates the payloads of an ASF data packet without copying them.
+     *
+     * @param offsets receives the start of each payload in {@code pkt}
+     * @param lengths receives the length of each payload
+     * @param sendTime receives the packet send time in ms at index 0, may be null
+     * @return the number of payloads
+     */
+    private static int parsePacket(byte[] pkt, int[] offsets, int[] lengths, long[] sendTime) {
+        int count = 0;
+        if (pkt.length < 3) {
+            return count;
+        }
         int pos = 0;
 
         int ecFlags = pkt[pos++] & 0xFF;
@@ -197,7 +245,7 @@ public final class AsfDemuxer {
             pos += ecLen;
         }
         if (pos >= pkt.length) {
-            return payloads;
+            return count;
         }
 
         int ppFlags = pkt[pos++] & 0xFF;
@@ -227,9 +275,12 @@ public final class AsfDemuxer {
         }
 
         // Send time (4 bytes) + duration (2 bytes).
+        if (sendTime != null && pos + 4 <= pkt.length) {
+            sendTime[0] = u32(pkt, pos);
+        }
         pos += 6;
         if (pos >= pkt.length) {
-            return payloads;
+            return count;
         }
 
         if (!multiplePayloads) {
@@ -245,7 +296,8 @@ public final class AsfDemuxer {
             }
             int payloadLen = pkt.length - pos - padLen;
             if (payloadLen > 0 && pos + payloadLen <= pkt.length) {
-                payloads.add(Arrays.copyOfRange(pkt, pos, pos + payloadLen));
+                offsets[count] = pos;
+                lengths[count++] = payloadLen;
             }
         } else {
             int payloadFlags = pkt[pos++] & 0xFF;
@@ -275,12 +327,13 @@ public final class AsfDemuxer {
                     payLen = pkt.length - pos;
                 }
                 if (payLen > 0 && pos + payLen <= pkt.length) {
-                    payloads.add(Arrays.copyOfRange(pkt, pos, pos + payLen));
+                    offsets[count] = pos;
+                    lengths[count++] = payLen;
                 }
                 pos += payLen;
             }
         }
-        return payloads;
+        return count;
     }
 
     private static int fieldSize(int type) {
@@ -309,4 +362,341 @@ public final class AsfDemuxer {
         int bitsPerSample;
         byte[] codecData;
     }
+
+    /** what the header object tells */
+    private static final class Header {
+        WaveFormat audio;
+        int packetSize;
+        /** ms */
+        long preroll;
+
+        AsfInfo toInfo(List<byte[]> packets) {
+            return new AsfInfo(audio.formatTag, audio.channels, audio.sampleRate,
+                    (int) (audio.avgBytesPerSec * 8L), audio.blockAlign, audio.bitsPerSample,
+                    audio.codecData, packetSize, packets);
+        }
+    }
+
+    // ---- incremental demuxing
+
+    /** either this */
+    private final InputStream is;
+    /** or this is the source */
+    private final SeekableByteChannel channel;
+
+    private final AsfInfo info;
+    /** ms */
+    private final long preroll;
+    /** source position of the first data packet */
+    private final long dataOffset;
+    /** {@link Long#MAX_VALUE} when a stream does not tell */
+    private final long packetCount;
+    /** the first packet number of each simple index interval, null without a simple index */
+    private int[] index;
+    /** simple index interval in 100 ns units */
+    private long indexInterval;
+
+    /** the current packet, reused */
+    private final byte[] packet;
+    private final ByteBuffer packetBuffer;
+    private final int[] payloadOffsets = new int[MAX_PAYLOADS];
+    private final int[] payloadLengths = new int[MAX_PAYLOADS];
+    private final long[] sendTime = new long[1];
+    /** the number of the packet {@link #nextPacket} reads */
+    private long packetNumber;
+    private int payloadCount;
+    /** the current payload, -1 before the first one of a packet */
+    private int payload = -1;
+    /** {@link #nextSuperframe} position in the current payload */
+    private int superframeOffset;
+
+    /**
+     * Reads the header object and the data object header from a stream, which
+     * is left at the first data packet.
+     *
+     * @throws IllegalArgumentException if the stream is not a valid ASF/WMA file
+     */
+    public AsfDemuxer(InputStream is) throws IOException {
+        this(is, null);
+    }
+
+    /**
+     * Reads the header object and the data object header from the current
+     * position of a channel, and the simple index object after the data object
+     * if there is one.
+     *
+     * @throws IllegalArgumentException if the channel is not a valid ASF/WMA file
+     */
+    public AsfDemuxer(SeekableByteChannel channel) throws IOException {
+        this(null, channel);
+    }
+
+    private AsfDemuxer(InputStream is, SeekableByteChannel channel) throws IOException {
+        this.is = is;
+        this.channel = channel;
+        long start = channel != null ? channel.position() : 0;
+
+        byte[] preamble = new byte[HEADER_PREAMBLE];
+        if (!readFully(ByteBuffer.wrap(preamble)) || !guidEq(preamble, 0, GUID_HEADER)) {
+            throw new IllegalArgumentException("Not an ASF/WMA file");
+        }
+        long headerSize = u64(preamble, 16);
+        if (headerSize < HEADER_PREAMBLE || headerSize > Integer.MAX_VALUE - DATA_HEADER) {
+            throw new IllegalArgumentException("Bad ASF header size: " + headerSize);
+        }
+        // the header object followed by the data object header
+        byte[] buf = Arrays.copyOf(preamble, (int) headerSize + DATA_HEADER);
+        if (!readFully(ByteBuffer.wrap(buf, HEADER_PREAMBLE, buf.length - HEADER_PREAMBLE))) {
+            throw new IllegalArgumentException("Truncated ASF header");
+        }
+        Header header = parseHeader(buf, headerSize);
+        int pos = (int) headerSize;
+        if (!guidEq(buf, pos, GUID_DATA)) {
+            throw new IllegalArgumentException("No data object in ASF");
+        }
+        if (header.packetSize <= 0) {
+            throw new IllegalArgumentException("No packet size in ASF");
+        }
+        long datSize = u64(buf, pos + 16);
+        long totalPackets = u64(buf, pos + 24 + 16);
+
+        this.info = header.toInfo(List.of());
+        this.preroll = header.preroll;
+        this.dataOffset = start + headerSize + DATA_HEADER;
+        this.packet = new byte[header.packetSize];
+        this.packetBuffer = ByteBuffer.wrap(packet);
+
+        if (datSize >= DATA_HEADER) {
+            packetCount = (datSize - DATA_HEADER) / packet.length;
+        } else if (totalPackets > 0) {
+            packetCount = totalPackets;
+        } else if (channel != null) {
+            packetCount = (channel.size() - dataOffset) / packet.length;
+        } else {
+            packetCount = Long.MAX_VALUE;
+        }
+
+        if (channel != null) {
+            if (datSize >= DATA_HEADER) {
+                readSimpleIndex(start + headerSize + datSize);
+            }
+            channel.position(dataOffset);
+        }
+    }
+
+    /** Reads the first simple index object among the objects from {@code pos}. */
+    private void readSimpleIndex(long pos) throws IOException {
+        byte[] objHeader = new byte[24];
+        while (pos + 24 <= channel.size()) {
+            channel.position(pos);
+            if (!readFully(ByteBuffer.wrap(objHeader))) {
+                return;
+            }
+            long objSize = u64(objHeader, 16);
+            if (objSize < 24 || objSize > Integer.MAX_VALUE) {
+                return;
+            }
+            if (guidEq(objHeader, 0, GUID_SIMPLE_INDEX) && objSize >= 24 + 32) {
+                // file ID, entry time interval, max packet count, entries count
+                byte[] body = new byte[(int) objSize - 24];
+                if (!readFully(ByteBuffer.wrap(body))) {
+                    return;
+                }
+                long interval = u64(body, 16);
+                long entries = u32(body, 28);
+                if (interval <= 0 || entries == 0 || 32 + entries * 6 > body.length) {
+                    return;
+                }
+                int[] packets = new int[(int) entries];
+                for (int i = 0; i < packets.length; i++) {
+                    // packet number (4 bytes) + packet count (2 bytes)
+                    packets[i] = (int) u32(body, 32 + i * 6);
+                }
+                index = packets;
+                indexInterval = interval;
+                return;
+            }
+            pos += objSize;
+        }
+    }
+
+    /** @return false at end of source before {@code buffer} is full */
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        if (channel != null) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            int length = buffer.remaining();
+            return is.readNBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length) == length;
+        }
+    }
+
+    /** The audio stream properties, {@link AsfInfo#packets} is empty. */
+    public AsfInfo info() {
+        return info;
+    }
+
+    /** The number of data packets, {@link Long#MAX_VALUE} when a stream does not tell. */
+    public long packetCount() {
+        return packetCount;
+    }
+
+    /** Whether the simple index object was found, {@link #seek} uses it. */
+    public boolean hasIndex() {
+        return index != null;
+    }
+
+    /**
+     * Reads the next data packet into {@link #packet()}.
+     *
+     * @return false at the end of the data object
+     */
+    public boolean nextPacket() throws IOException {
+        payloadCount = 0;
+        payload = -1;
+        if (packetNumber >= packetCount) {
+            return false;
+        }
+        packetBuffer.clear();
+        if (!readFully(packetBuffer)) {
+            return false;
+        }
+        packetNumber++;
+        payloadCount = parsePacket(packet, payloadOffsets, payloadLengths, sendTime);
+        return true;
+    }
+
+    /** The current packet, overwritten by the next {@link #nextPacket}. */
+    public byte[] packet() {
+        return packet;
+    }
+
+    /** The send time of the current packet in ms. */
+    public long packetSendTime() {
+        return sendTime[0];
+    }
+
+    /**
+     * Moves to the next payload, reading packets as needed.
+     *
+     * @return false at the end of the data object
+     * @see #payloadOffset()
+     * @see #payloadLength()
+     */
+    public boolean nextPayload() throws IOException {
+        while (++payload >= payloadCount) {
+            if (!nextPacket()) {
+                return false;
+            }
+        }
+        superframeOffset = 0;
+        return true;
+    }
+
+    /** The start of the current payload in {@link #packet()}. */
+    public int payloadOffset() {
+        return payloadOffsets[payload];
+    }
+
+    /** The length of the current payload. */
+    public int payloadLength() {
+        return payloadLengths[payload];
+    }
+
+    /**
+     * Copies the next {@link AsfInfo#blockAlign}-sized WMA superframe, reading
+     * payloads as needed.
+     *
+     * @param superframe receives {@link AsfInfo#blockAlign} bytes
+     * @return false at the end of the data object
+     */
+    public boolean nextSuperframe(byte[] superframe) throws IOException {
+        int ba = info.blockAlign;
+        if (ba <= 0) {
+            throw new IllegalStateException("no block_align in ASF");
+        }
+        while (payload < 0 || superframeOffset + ba > payloadLengths[payload]) {
+            if (!nextPayload()) {
+                return false;
+            }
+        }
+        System.arraycopy(packet, payloadOffsets[payload] + superframeOffset, superframe, 0, ba);
+        superframeOffset += ba;
+        return true;
+    }
+
+    /**
+     * Positions at a data packet, {@link #nextPacket} reads it next.
+     *
+     * @throws UnsupportedOperationException when not opened on a channel
+     */
+    public void seekPacket(long number) throws IOException {
+        if (channel == null) {
+            throw new UnsupportedOperationException("seeking needs a SeekableByteChannel");
+        }
+        if (number < 0 || number > packetCount) {
+            throw new IndexOutOfBoundsException("packet " + number + " of " + packetCount);
+        }
+        channel.position(dataOffset + number * packet.length);
+        packetNumber = number;
+        payloadCount = 0;
+        payload = -1;
+    }
+
+    /**
+     * Positions at the packet to start decoding from for a time. Takes the
+     * packet from the simple index object when there is one (as FFmpeg's
+     * {@code asf_read_seek} does, the index counts the preroll in), otherwise
+     * binary-searches the packet send times.
+     *
+     * @param millis presentation time in ms
+     * @return the send time in ms of the packet {@link #nextPacket} reads next
+     * @throws UnsupportedOperationException when not opened on a channel
+     */
+    public long seek(long millis) throws IOException {
+        if (channel == null) {
+            throw new UnsupportedOperationException("seeking needs a SeekableByteChannel");
+        }
+        long number;
+        if (index != null) {
+            long entry = Math.max(0, millis + preroll) * 10000 / indexInterval;
+            number = index[(int) Math.min(entry, index.length - 1)];
+        } else {
+            // the last packet sent at or before millis
+            long lo = 0;
+            long hi = packetCount - 1;
+            while (lo < hi) {
+                long mid = (lo + hi + 1) >>> 1;
+                if (sendTimeOf(mid) <= millis) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            number = lo;
+        }
+        number = Math.min(number, Math.max(packetCount - 1, 0));
+        long time = sendTimeOf(number);
+        seekPacket(number);
+        return time;
+    }
+
+    private long sendTimeOf(long number) throws IOException {
+        seekPacket(number);
+        return nextPacket() ? sendTime[0] : Long.MAX_VALUE;
+    }
+
+    /** Closes the source. */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else {
+            is.close();
+        }
+    }
 }
@@ -27,7 +27,10 @@ public final class AsfInfo {
     public final byte[] codecData;
     /** ASF data-packet size in bytes. */
     public final int packetSize;
-    /** Raw ASF data packets (each {@code packetSize} bytes). */
+    /**
+     * Raw ASF data packets (each {@code packetSize} bytes), empty from an
+     * incremental {@link AsfDemuxer} which reads them one at a time.
+     */
     public final List<byte[]> packets;
 
     AsfInfo(int formatTag, int channels, int sampleRate, int bitRate, int blockAlign,
@@ -8,6 +8,14 @@
 
 package vavi.sound.wma;
 
+import java.util.Arrays;
+
+import vavi.sound.dsp.BitReader;
+import vavi.sound.dsp.FloatDsp;
+import vavi.sound.dsp.Imdct;
+import vavi.sound.dsp.SineWindow;
+import vavi.sound.dsp.Vlc;
+
 
 /**
  * Windows Media Audio v1 (0x0160) / v2 (0x0161) decoder producing planar float
@@ -15,6 +23,10 @@ package vavi.sound.wma;
  * {@link AsfDemuxer}) via {@link #decodeSuperframe}; call {@link #flush} once at
  * end of stream to drain the final MDCT overlap frame.
  * <p>
+ * {@link #decodeSuperframe(byte[], float[][], int)} and
+ * {@link #flush(float[][], int)} write into caller buffers, decoding allocates
+ * nothing after construction.
+ * <p>
  * Direct port of FFmpeg {@code libavcodec/wmadec.c} and {@code wma.c}.
  *
  * @see "https://github.com/FFmpeg/FFmpeg libavcodec/wmadec.c"
@@ -75,7 +87,10 @@ public final class WmaDecoder {
     private final float[][] windows;
 
     // ---- per-decode state ----
+    /** the one of the readers below the current frame is read from */
     private BitReader gb;
+    private final BitReader packetReader = new BitReader();
+    private final BitReader reservoirReader = new BitReader();
     private boolean msStereo;
     private final boolean[] channelCoded = new boolean[MAX_CHANNELS];
     private int blockLenBits;
@@ -96,6 +111,9 @@ public final class WmaDecoder {
     private final float[][] frameOut = new float[MAX_CHANNELS][BLOCK_MAX_SIZE * 2];
     private final int[][] highBandCoded = new int[MAX_CHANNELS][HIGH_BAND_MAX_SIZE];
     private final int[][] highBandValues = new int[MAX_CHANNELS][HIGH_BAND_MAX_SIZE];
+    private final int[] nbCoefs = new int[MAX_CHANNELS];
+    private final float[] expPower = new float[HIGH_BAND_MAX_SIZE];
+    private final float[] lspCoefs = new float[NB_LSP_COEFS];
 
     private final byte[] lastSuperframe = new byte[MAX_CODED_SUPERFRAME_SIZE + 8];
     private int lastBitoffset;
@@ -500,19 +518,49 @@ public final class WmaDecoder {
         return frameLen;
     }
 
+    /**
+     * The maximum number of samples per channel one superframe decodes to,
+     * the room {@link #decodeSuperframe(byte[], float[][], int)} needs.
+     */
+    public int maxSuperframeLength() {
+        // 4 bits of frame count, less one for the frame completed from the reservoir
+        return useBitReservoir ? 15 * frameLen : frameLen;
+    }
+
     /**
      * Decodes one {@code block_align}-sized superframe.
      *
      * @param buf the superframe bytes (should be {@code block_align} long)
      * @return planar PCM {@code [channels][nbFrames * frameLen]}; the second
      *         dimension may be 0 when the frame is buffered by the bit reservoir
+     * @see #decodeSuperframe(byte[], float[][], int)
      */
     public float[][] decodeSuperframe(byte[] buf) {
+        float[][] samples = new float[channels][maxSuperframeLength()];
+        int n = decodeSuperframe(buf, samples, 0);
+        for (int ch = 0; ch < channels; ch++) {
+            samples[ch] = Arrays.copyOf(samples[ch], n);
+        }
+        return samples;
+    }
+
+    /**
+     * Decodes one {@code block_align}-sized superframe into caller buffers.
+     *
+     * @param buf the superframe bytes (should be {@code block_align} long)
+     * @param out planar PCM, {@code out[ch]} for each {@code ch} in {@code [0..channels())}
+     *            must have room for {@link #maxSuperframeLength()} samples from {@code offset}
+     * @param offset the index in {@code out[ch]} the first sample is written at
+     * @return the number of samples written per channel ({@code nbFrames * frameLen}),
+     *         0 when the frame is buffered by the bit reservoir
+     */
+    public int decodeSuperframe(byte[] buf, float[][] out, int offset) {
         if (buf == null || buf.length < blockAlign) {
             throw new IllegalArgumentException("input smaller than block_align");
         }
         int bufSize = blockAlign;
-        gb = new BitReader(buf, 0, bufSize * 8);
+        gb = packetReader;
+        gb.reset(buf, 0, bufSize * 8);
 
         int nbFrames;
         if (useBitReservoir) {
@@ -527,14 +575,18 @@ public final class WmaDecoder {
                     len--;
                 }
                 lastSuperframeLen += 8 * bufSize - 8;
-                return new float[channels][0];
+                return 0;
             }
         } else {
             nbFrames = 1;
         }
 
-        float[][] samples = new float[channels][nbFrames * frameLen];
-        int samplesOffset = 0;
+        for (int ch = 0; ch < channels; ch++) {
+            if (out[ch].length - offset < nbFrames * frameLen) {
+                throw new IndexOutOfBoundsException("out[" + ch + "] too short for " + nbFrames * frameLen + " samples");
+            }
+        }
+        int samplesOffset = offset;
 
         if (useBitReservoir) {
             int bitOffset = gb.readBits(byteOffsetBits + 3);
@@ -549,19 +601,19 @@ public final class WmaDecoder {
                 if (len > 0) {
                     lastSuperframe[q++] = (byte) (gb.readBits(len) << (8 - len));
                 }
-                BitReader saved = gb;
-                gb = new BitReader(lastSuperframe, 0, lastSuperframeLen * 8 + bitOffset);
+                gb = reservoirReader;
+                gb.reset(lastSuperframe, 0, lastSuperframeLen * 8 + bitOffset);
                 if (lastBitoffset > 0) {
                     gb.skipBits(lastBitoffset);
                 }
-                decodeFrame(samples, samplesOffset);
+                decodeFrame(out, samplesOffset);
                 samplesOffset += frameLen;
                 nbFrames--;
-                gb = saved;
             }
 
             int pos = bitOffset + 4 + 4 + byteOffsetBits + 3;
-            gb = new BitReader(buf, (pos >> 3) * 8, (bufSize - (pos >> 3)) * 8);
+            gb = packetReader;
+            gb.reset(buf, (pos >> 3) * 8, (bufSize - (pos >> 3)) * 8);
             int len = pos & 7;
             if (len > 0) {
                 gb.skipBits(len);
@@ -569,7 +621,7 @@ public final class WmaDecoder {
 
             resetBlockLengths = true;
             for (int i = 0; i < nbFrames; i++) {
-                decodeFrame(samples, samplesOffset);
+                decodeFrame(out, samplesOffset);
                 samplesOffset += frameLen;
             }
 
@@ -580,22 +632,54 @@ public final class WmaDecoder {
             lastSuperframeLen = len;
             System.arraycopy(buf, pos, lastSuperframe, 0, len);
         } else {
-            decodeFrame(samples, samplesOffset);
+            decodeFrame(out, samplesOffset);
+            samplesOffset += frameLen;
         }
-        return samples;
+        return samplesOffset - offset;
     }
 
-    /** Drains the final overlap frame at end of stream. */
+    /**
+     * Drains the final overlap frame at end of stream.
+     *
+     * @see #flush(float[][], int)
+     */
     public float[][] flush() {
+        float[][] out = new float[channels][eofDone ? 0 : frameLen];
+        flush(out, 0);
+        return out;
+    }
+
+    /**
+     * Drains the final overlap frame at end of stream into caller buffers.
+     *
+     * @param out planar PCM, {@code out[ch]} must have room for {@link #frameLength()} samples
+     * @param offset the index in {@code out[ch]} the first sample is written at
+     * @return the number of samples written per channel, 0 after the first call
+     */
+    public int flush(float[][] out, int offset) {
         if (eofDone) {
-            return new float[channels][0];
+            return 0;
         }
         eofDone = true;
-        float[][] out = new float[channels][frameLen];
         for (int ch = 0; ch < channels; ch++) {
-            System.arraycopy(frameOut[ch], 0, out[ch], 0, frameLen);
+            System.arraycopy(frameOut[ch], 0, out[ch], offset, frameLen);
+        }
+        return frameLen;
+    }
+
+    /**
+     * Forgets the bit reservoir and the overlap after a seek, the next
+     * superframe decodes as the first one of a stream. Mirrors FFmpeg's
+     * {@code flush} callback of wmadec.
+     */
+    public void reset() {
+        lastBitoffset = 0;
+        lastSuperframeLen = 0;
+        resetBlockLengths = true;
+        eofDone = false;
+        for (int ch = 0; ch < channels; ch++) {
+            Arrays.fill(frameOut[ch], 0f);
         }
-        return out;
     }
 
     private void decodeFrame(float[][] samples, int samplesOffset) {
@@ -688,7 +772,6 @@ public final class WmaDecoder {
         int coefNbBits = totalGainToBits(totalGain);
 
         int nCoefs = coefsEnd[bsize] - coefsStart;
-        int[] nbCoefs = new int[MAX_CHANNELS];
         for (int ch = 0; ch < channels; ch++) {
             nbCoefs[ch] = nCoefs;
         }
@@ -750,7 +833,7 @@ public final class WmaDecoder {
             if (channelCoded[ch]) {
                 int tindex = (ch == 1 && msStereo) ? 1 : 0;
                 float[] ptr = coefs1[ch];
-                java.util.Arrays.fill(ptr, 0, blockLen, 0f);
+                Arrays.fill(ptr, 0, blockLen, 0f);
                 runLevelDecode(coefVlc[tindex], levelTable[tindex], runTable[tindex],
                         ptr, nbCoefs[ch], coefNbBits);
             }
@@ -776,7 +859,7 @@ public final class WmaDecoder {
         // ms stereo
         if (msStereo && channelCoded[1]) {
             if (!channelCoded[0]) {
-                java.util.Arrays.fill(coefs[0], 0, blockLen, 0f);
+                Arrays.fill(coefs[0], 0, blockLen, 0f);
                 channelCoded[0] = true;
             }
             FloatDsp.butterfliesFloat(coefs[0], 0, coefs[1], 0, blockLen);
@@ -795,7 +878,7 @@ public final class WmaDecoder {
             if (channelCoded[ch]) {
                 mdct[bsize].inverseFull(coefs[ch], 0, output, 0);
             } else if (!(msStereo && ch == 1)) {
-                java.util.Arrays.fill(output, 0, 2 * blockLen, 0f);
+                Arrays.fill(output, 0, 2 * blockLen, 0f);
             }
             int index = (frameLen / 2) + blockPos - n4;
             wmaWindow(frameOut[ch], index);
@@ -823,7 +906,6 @@ public final class WmaDecoder {
             // power of high bands
             int expIdx = (highBandStart[bsize] << bsize) >> esize;
             int lastHighBand = 0;
-            float[] expPower = new float[HIGH_BAND_MAX_SIZE];
             for (int j = 0; j < n1; j++) {
                 int n = exponentHighBands[bsize][j];
                 if (highBandCoded[ch][j] != 0) {
@@ -955,7 +1037,6 @@ public final class WmaDecoder {
     }
 
     private void decodeExpLsp(int ch) {
-        float[] lspCoefs = new float[NB_LSP_COEFS];
         for (int i = 0; i < NB_LSP_COEFS; i++) {
             int val;
             if (i == 0 || i >= 8) {
@@ -4,6 +4,9 @@
 
 package vavi.sound.xma;
 
+import vavi.sound.dsp.BitReader;
+import vavi.sound.dsp.Vlc;
+
 
 /**
  * Helpers shared with the WMA family (ff_wma_get_large_val, WMA-Pro branch of
@@ -20,11 +23,11 @@ final class WmaCommon {
     /** Decode an uncompressed coefficient. Consumes up to 31 bits. */
     static int getLargeVal(BitReader reader) {
         int nBits = 8;
-        if (reader.read(1) != 0) {
+        if (reader.readBits(1) != 0) {
             nBits += 8;
-            if (reader.read(1) != 0) {
+            if (reader.readBits(1) != 0) {
                 nBits += 8;
-                if (reader.read(1) != 0) {
+                if (reader.readBits(1) != 0) {
                     nBits += 7;
                 }
             }
@@ -59,7 +62,7 @@ final class WmaCommon {
             if (code > 1) {
                 // normal: pre-quantised float, sign-flip via IEEE bit XOR
                 offset += runTable[code];
-                int sign = reader.read(1) - 1;     // 0 or -1
+                int sign = reader.readBits(1) - 1;     // 0 or -1
                 int bits = Float.floatToRawIntBits(levelTable[code]) ^ ((sign & 1) << 31);
                 ptr[ptrOff + (offset & coefMask)] = Float.intBitsToFloat(bits);
             } else if (code == 1) {
@@ -69,18 +72,18 @@ final class WmaCommon {
                 // escape (version=1 / wmapro branch)
                 int level = getLargeVal(reader);
 
-                if (reader.read(1) != 0) {
-                    if (reader.read(1) != 0) {
-                        if (reader.read(1) != 0) {
+                if (reader.readBits(1) != 0) {
+                    if (reader.readBits(1) != 0) {
+                        if (reader.readBits(1) != 0) {
                             return false; // broken escape
                         }
-                        offset += reader.read(frameLenBits) + 4;
+                        offset += reader.readBits(frameLenBits) + 4;
                     } else {
-                        offset += reader.read(2) + 1;
+                        offset += reader.readBits(2) + 1;
                     }
                 }
 
-                int sign = reader.read(1) - 1; // 0 or -1
+                int sign = reader.readBits(1) - 1; // 0 or -1
                 int val = (level ^ sign) - sign;
                 ptr[ptrOff + (offset & coefMask)] = val;
             }
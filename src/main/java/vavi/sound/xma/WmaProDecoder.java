@@ -7,6 +7,12 @@ package vavi.sound.xma;
 
 import java.util.Arrays;
 
+import vavi.sound.dsp.BitReader;
+import vavi.sound.dsp.FloatDsp;
+import vavi.sound.dsp.Imdct;
+import vavi.sound.dsp.SineWindow;
+import vavi.sound.dsp.Vlc;
+
 
 /**
  * Per-substream WMA Pro / XMA decoder. Operates on one stream of 1 or 2
@@ -97,6 +103,14 @@ public final class WmaProDecoder {
     private boolean transmitNumVecCoeffs;
     private boolean parsedAllSubframes;
 
+    // scratch, so that decoding allocates nothing after construction
+    private final BitReader bitReader = new BitReader();
+    private final int[] numSamples = new int[WMA_PRO_MAX_CHANNELS];
+    private final boolean[] containsSubframe = new boolean[WMA_PRO_MAX_CHANNELS];
+    private final byte[] rotationOffset = new byte[WMA_PRO_MAX_CHANNELS * WMA_PRO_MAX_CHANNELS];
+    private final float[] channelData = new float[WMA_PRO_MAX_CHANNELS];
+    private final int[] vals = new int[4];
+
     private final int channels;
     private final int samplesPerFrame;
 
@@ -208,41 +222,53 @@ public final class WmaProDecoder {
      * true on success.
      */
     public boolean decodeFrame(XmaFrame frame, float[][] output) {
-        BitReader gb = new BitReader(frame.buffer(), frame.startBit(), frame.lengthBits());
+        return decodeFrame(frame, output, 0);
+    }
+
+    /**
+     * Decode one XMA frame. Writes {@link #samplesPerFrame()} floats into
+     * {@code output[ch]} from {@code offset} for each {@code ch} in
+     * {@code [0..channels())}, silence on failure. Allocates nothing.
+     *
+     * @return true on success
+     */
+    public boolean decodeFrame(XmaFrame frame, float[][] output, int offset) {
+        BitReader gb = bitReader;
+        gb.reset(frame.buffer(), frame.startBit(), frame.lengthBits());
 
         // 15-bit frame size prefix — read & discard.
         if (lenPrefix) {
-            gb.read(logFrameSize);
+            gb.readBits(logFrameSize);
         }
 
         if (!decodeTileHeader(gb)) {
-            fillSilence(output);
+            fillSilence(output, offset);
             return false;
         }
 
         // postproc transform — must be 0 for XMA
-        if (channels > 1 && gb.read(1) != 0) {
-            if (gb.read(1) != 0) {
+        if (channels > 1 && gb.readBits(1) != 0) {
+            if (gb.readBits(1) != 0) {
                 int n = channels * channels;
                 for (int i = 0; i < n; i++) {
-                    gb.read(4);
+                    gb.readBits(4);
                 }
             }
         }
 
         // DRC gain (read & discard)
         if (dynamicRangeCompression) {
-            gb.read(8);
+            gb.readBits(8);
         }
 
         // trim_start / trim_end (read & discard)
-        if (gb.read(1) != 0) {
+        if (gb.readBits(1) != 0) {
             int b = log2(samplesPerFrame * 2);
-            if (gb.read(1) != 0) {
-                gb.read(b);
+            if (gb.readBits(1) != 0) {
+                gb.readBits(b);
             }
-            if (gb.read(1) != 0) {
-                gb.read(b);
+            if (gb.readBits(1) != 0) {
+                gb.readBits(b);
             }
         }
 
@@ -256,13 +282,13 @@ public final class WmaProDecoder {
 
         while (!parsedAllSubframes) {
             if (!decodeSubframe(gb)) {
-                fillSilence(output);
+                fillSilence(output, offset);
                 return false;
             }
         }
 
         for (int i = 0; i < channels; i++) {
-            System.arraycopy(channelsCtx[i].out, 0, output[i], 0, samplesPerFrame);
+            System.arraycopy(channelsCtx[i].out, 0, output[i], offset, samplesPerFrame);
             System.arraycopy(channelsCtx[i].out, samplesPerFrame, channelsCtx[i].out, 0,
                     samplesPerFrame / 2);
         }
@@ -270,16 +296,13 @@ public final class WmaProDecoder {
         return true;
     }
 
-    private void fillSilence(float[][] output) {
+    private void fillSilence(float[][] output, int offset) {
         for (int i = 0; i < channels; i++) {
-            Arrays.fill(output[i], 0, samplesPerFrame, 0f);
+            Arrays.fill(output[i], offset, offset + samplesPerFrame, 0f);
         }
     }
 
     private boolean decodeTileHeader(BitReader gb) {
-        int[] numSamples = new int[WMA_PRO_MAX_CHANNELS];
-        boolean[] containsSubframe = new boolean[WMA_PRO_MAX_CHANNELS];
-
         int channelsForCurSubframeLocal = channels;
         boolean fixedChannelLayout = false;
         int minChannelLen = 0;
@@ -289,7 +312,7 @@ public final class WmaProDecoder {
             numSamples[c] = 0;
         }
 
-        if (maxNumSubframes == 1 || gb.read(1) != 0) {
+        if (maxNumSubframes == 1 || gb.readBits(1) != 0) {
             fixedChannelLayout = true;
         }
 
@@ -304,7 +327,7 @@ public final class WmaProDecoder {
                             || channelsForCurSubframeLocal == 1
                             || minChannelLen == samplesPerFrame - minSamplesPerSubframe;
 
-                    containsSubframe[c] = oneChoice || gb.read(1) != 0;
+                    containsSubframe[c] = oneChoice || gb.readBits(1) != 0;
                 } else {
                     containsSubframe[c] = false;
                 }
@@ -359,11 +382,11 @@ public final class WmaProDecoder {
         }
 
         if (maxSubframeLenBit != 0) {
-            if (gb.read(1) != 0) {
-                frameLenShift = 1 + gb.read(subframeLenBits - 1);
+            if (gb.readBits(1) != 0) {
+                frameLenShift = 1 + gb.readBits(subframeLenBits - 1);
             }
         } else {
-            frameLenShift = gb.read(subframeLenBits);
+            frameLenShift = gb.readBits(subframeLenBits);
         }
 
         int subframeLen = samplesPerFrame >> frameLenShift;
@@ -419,19 +442,19 @@ public final class WmaProDecoder {
         escLen = log2(subframeLen - 1) + 1;
 
         // Skip extended header (fill bits) if present
-        if (gb.read(1) != 0) {
-            int numFillBits = gb.read(2);
+        if (gb.readBits(1) != 0) {
+            int numFillBits = gb.readBits(2);
             if (numFillBits == 0) {
-                int n = gb.read(4);
-                numFillBits = (n > 0 ? gb.read(n) : 0) + 1;
+                int n = gb.readBits(4);
+                numFillBits = (n > 0 ? gb.readBits(n) : 0) + 1;
             }
             for (int j = 0; j < numFillBits; j++) {
-                gb.read(1);
+                gb.readBits(1);
             }
         }
 
         // Reserved bit
-        if (gb.read(1) != 0) {
+        if (gb.readBits(1) != 0) {
             return false;
         }
 
@@ -441,7 +464,7 @@ public final class WmaProDecoder {
 
         for (int i = 0; i < channelsForCurSubframe; i++) {
             int c = channelIndexesForCurSubframe[i];
-            channelsCtx[c].transmitCoefs = gb.read(1) != 0;
+            channelsCtx[c].transmitCoefs = gb.readBits(1) != 0;
             if (channelsCtx[c].transmitCoefs) {
                 transmitCoeffs = true;
             }
@@ -450,12 +473,12 @@ public final class WmaProDecoder {
         if (transmitCoeffs) {
             int quantStep = 90 * bitsPerSample >> 4;  // = 90
 
-            transmitNumVecCoeffs = gb.read(1) != 0;
+            transmitNumVecCoeffs = gb.readBits(1) != 0;
             if (transmitNumVecCoeffs) {
                 int numBits = log2((subframeLen + 3) / 4) + 1;
                 for (int i = 0; i < channelsForCurSubframe; i++) {
                     int c = channelIndexesForCurSubframe[i];
-                    int n = gb.read(numBits) << 2;
+                    int n = gb.readBits(numBits) << 2;
                     if (n > subframeLen) {
                         return false;
                     }
@@ -475,7 +498,7 @@ public final class WmaProDecoder {
                 int sign = step == 31 ? 0 : -1;
                 int extra = 0;
                 int s2;
-                while ((s2 = gb.read(5)) == 31) {
+                while ((s2 = gb.readBits(5)) == 31) {
                     extra += 31;
                 }
                 quantStep += ((extra + s2) ^ sign) - sign;
@@ -484,13 +507,13 @@ public final class WmaProDecoder {
             if (channelsForCurSubframe == 1) {
                 channelsCtx[channelIndexesForCurSubframe[0]].quantStep = quantStep;
             } else {
-                int modifierLen = gb.read(3);
+                int modifierLen = gb.readBits(3);
                 for (int i = 0; i < channelsForCurSubframe; i++) {
                     int c = channelIndexesForCurSubframe[i];
                     channelsCtx[c].quantStep = quantStep;
-                    if (gb.read(1) != 0) {
+                    if (gb.readBits(1) != 0) {
                         if (modifierLen != 0) {
-                            channelsCtx[c].quantStep += gb.read(modifierLen) + 1;
+                            channelsCtx[c].quantStep += gb.readBits(modifierLen) + 1;
                         } else {
                             channelsCtx[c].quantStep++;
                         }
@@ -506,7 +529,7 @@ public final class WmaProDecoder {
         // Decode (or zero) coefficient buffers
         for (int i = 0; i < channelsForCurSubframe; i++) {
             int c = channelIndexesForCurSubframe[i];
-            if (channelsCtx[c].transmitCoefs && gb.remainingBits() > 0) {
+            if (channelsCtx[c].transmitCoefs && gb.bitsLeft() > 0) {
                 if (!decodeCoeffs(gb, c)) {
                     return false;
                 }
@@ -545,7 +568,7 @@ public final class WmaProDecoder {
                             end - start);
                 }
 
-                imdct.inverse(tmp, 0, ch.out, ch.coeffsBase);
+                imdct.inverseHalf(tmp, 0, ch.out, ch.coeffsBase);
             }
         }
 
@@ -571,7 +594,7 @@ public final class WmaProDecoder {
         int remainingChannels = channelsForCurSubframe;
 
         // "Channel transform bit" — must be 0 for our subset
-        if (gb.read(1) != 0) {
+        if (gb.readBits(1) != 0) {
             return false;
         }
 
@@ -584,7 +607,7 @@ public final class WmaProDecoder {
             if (remainingChannels > 2) {
                 for (int i = 0; i < channelsForCurSubframe; i++) {
                     int ci = channelIndexesForCurSubframe[i];
-                    if (!channelsCtx[ci].grouped && gb.read(1) != 0) {
+                    if (!channelsCtx[ci].grouped && gb.readBits(1) != 0) {
                         grp.numChannels++;
                         channelsCtx[ci].grouped = true;
                         grp.channelIndex[writeIdx++] = ci;
@@ -602,8 +625,8 @@ public final class WmaProDecoder {
             }
 
             if (grp.numChannels == 2) {
-                if (gb.read(1) != 0) {
-                    if (gb.read(1) != 0) {
+                if (gb.readBits(1) != 0) {
+                    if (gb.readBits(1) != 0) {
                         return false;  // patch-welcome
                     }
                 } else {
@@ -621,9 +644,9 @@ public final class WmaProDecoder {
                     }
                 }
             } else if (grp.numChannels > 2) {
-                if (gb.read(1) != 0) {
+                if (gb.readBits(1) != 0) {
                     grp.transform = true;
-                    if (gb.read(1) != 0) {
+                    if (gb.readBits(1) != 0) {
                         decodeDecorrelationMatrix(gb, grp);
                     } else if (grp.numChannels <= 6) {
                         int srcOff = WmaProTables.DefaultDecorrOffsets[grp.numChannels];
@@ -635,9 +658,9 @@ public final class WmaProDecoder {
             }
 
             if (grp.transform) {
-                if (gb.read(1) == 0) {
+                if (gb.readBits(1) == 0) {
                     for (int i = 0; i < numBands; i++) {
-                        grp.transformBand[i] = (byte) gb.read(1);
+                        grp.transformBand[i] = (byte) gb.readBits(1);
                     }
                 } else {
                     for (int i = 0; i < numBands; i++) {
@@ -653,18 +676,17 @@ public final class WmaProDecoder {
     }
 
     private void decodeDecorrelationMatrix(BitReader gb, ChannelGrp grp) {
-        byte[] rotationOffset = new byte[WMA_PRO_MAX_CHANNELS * WMA_PRO_MAX_CHANNELS];
         int offset = 0;
 
         Arrays.fill(grp.decorrelationMatrix, 0, channels * channels, 0f);
 
         int n = grp.numChannels * (grp.numChannels - 1) / 2;
         for (int i = 0; i < n; i++) {
-            rotationOffset[i] = (byte) gb.read(6);
+            rotationOffset[i] = (byte) gb.readBits(6);
         }
 
         for (int i = 0; i < grp.numChannels; i++) {
-            grp.decorrelationMatrix[grp.numChannels * i + i] = gb.read(1) != 0 ? 1.0f : -1.0f;
+            grp.decorrelationMatrix[grp.numChannels * i + i] = gb.readBits(1) != 0 ? 1.0f : -1.0f;
         }
 
         float[] sin64 = WmaProTables.Sin64;
@@ -694,7 +716,7 @@ public final class WmaProDecoder {
     }
 
     private void inverseChannelTransform() {
-        float[] data = new float[WMA_PRO_MAX_CHANNELS];
+        float[] data = channelData;
 
         for (int gi = 0; gi < numChgroups; gi++) {
             ChannelGrp grp = chgroup[gi];
@@ -758,7 +780,7 @@ public final class WmaProDecoder {
         float[] coeffsBuf = chan.out;
         int coeffsOff = chan.coeffsBase;
 
-        int vlcTable = gb.read(1);
+        int vlcTable = gb.readBits(1);
         Vlc vlc;
         int[] runTab;
         float[] levelTab;
@@ -777,8 +799,6 @@ public final class WmaProDecoder {
         int curCoeff = 0;
         int numZeros = 0;
 
-        int[] vals = new int[4];
-
         while ((transmitNumVecCoeffs || rlMode == 0)
                 && curCoeff + 3 < chan.numVecCoeffs) {
             int idx = WmaProVlc.vec4().decode(gb);
@@ -810,7 +830,7 @@ public final class WmaProDecoder {
 
             for (int j = 0; j < 4; j++) {
                 if (vals[j] != 0) {
-                    int sign = (gb.read(1) - 1) & 1;
+                    int sign = (gb.readBits(1) - 1) & 1;
                     int bits = vals[j] ^ (sign << 31);
                     coeffsBuf[coeffsOff + curCoeff] = Float.intBitsToFloat(bits);
                     numZeros = 0;
@@ -857,10 +877,10 @@ public final class WmaProDecoder {
                 }
             }
 
-            boolean readNewSf = chan.curSubframe == 0 || gb.read(1) != 0;
+            boolean readNewSf = chan.curSubframe == 0 || gb.readBits(1) != 0;
             if (readNewSf) {
                 if (!chan.reuseSf) {
-                    chan.scaleFactorStep = gb.read(2) + 1;
+                    chan.scaleFactorStep = gb.readBits(2) + 1;
                     int val = 45 / chan.scaleFactorStep;
                     for (int b = 0; b < numBands; b++) {
                         val += WmaProVlc.scale().decode(gb);
@@ -874,7 +894,7 @@ public final class WmaProDecoder {
                         int sign;
 
                         if (idx == 0) {
-                            int code = gb.read(14);
+                            int code = gb.readBits(14);
                             val = code >>> 6;
                             sign = (code & 1) - 1;
                             skip = (code & 0x3F) >> 1;
@@ -883,7 +903,7 @@ public final class WmaProDecoder {
                         } else {
                             skip = WmaProTables.ScaleRlRun[idx];
                             val = WmaProTables.ScaleRlLevel[idx];
-                            sign = gb.read(1) - 1;
+                            sign = gb.readBits(1) - 1;
                         }
 
                         b += skip;
@@ -946,7 +966,7 @@ public final class WmaProDecoder {
     }
 
     private static int readSbits(BitReader gb, int n) {
-        int v = gb.read(n);
+        int v = gb.readBits(n);
         int shift = 32 - n;
         return (v << shift) >> shift;
     }
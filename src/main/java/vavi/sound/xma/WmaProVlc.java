@@ -4,6 +4,8 @@
 
 package vavi.sound.xma;
 
+import vavi.sound.dsp.Vlc;
+
 
 /**
  * Lazily-constructed singletons for the WMA Pro VLC tables.
@@ -27,49 +29,49 @@ public final class WmaProVlc {
 
     public static synchronized Vlc scale() {
         if (scale == null) {
-            scale = new Vlc(WmaProTables.ScaleLens, WmaProTables.ScaleSyms, WmaProTables.HuffScaleOffset);
+            scale = Vlc.fromLengths(WmaProTables.ScaleLens, WmaProTables.ScaleSyms, WmaProTables.HuffScaleOffset);
         }
         return scale;
     }
 
     public static synchronized Vlc scaleRl() {
         if (scaleRl == null) {
-            scaleRl = new Vlc(WmaProTables.ScaleRlLens, WmaProTables.ScaleRlSyms, WmaProTables.HuffScaleRlOffset);
+            scaleRl = Vlc.fromLengths(WmaProTables.ScaleRlLens, WmaProTables.ScaleRlSyms, WmaProTables.HuffScaleRlOffset);
         }
         return scaleRl;
     }
 
     public static synchronized Vlc coef0() {
         if (coef0 == null) {
-            coef0 = new Vlc(WmaProTables.Coef0Lens, WmaProTables.Coef0Syms, WmaProTables.HuffCoef0Offset);
+            coef0 = Vlc.fromLengths(WmaProTables.Coef0Lens, WmaProTables.Coef0Syms, WmaProTables.HuffCoef0Offset);
         }
         return coef0;
     }
 
     public static synchronized Vlc coef1() {
         if (coef1 == null) {
-            coef1 = new Vlc(WmaProTables.Coef1Lens, WmaProTables.Coef1Syms, WmaProTables.HuffCoef1Offset);
+            coef1 = Vlc.fromLengths(WmaProTables.Coef1Lens, WmaProTables.Coef1Syms, WmaProTables.HuffCoef1Offset);
         }
         return coef1;
     }
 
     public static synchronized Vlc vec4() {
         if (vec4 == null) {
-            vec4 = new Vlc(WmaProTables.Vec4Lens, WmaProTables.Vec4Syms, WmaProTables.HuffVec4Offset);
+            vec4 = Vlc.fromLengths(WmaProTables.Vec4Lens, WmaProTables.Vec4Syms, WmaProTables.HuffVec4Offset);
         }
         return vec4;
     }
 
     public static synchronized Vlc vec2() {
         if (vec2 == null) {
-            vec2 = new Vlc(WmaProTables.Vec2Lens, WmaProTables.Vec2Syms, WmaProTables.HuffVec2Offset);
+            vec2 = Vlc.fromLengths(WmaProTables.Vec2Lens, WmaProTables.Vec2Syms, WmaProTables.HuffVec2Offset);
         }
         return vec2;
     }
 
     public static synchronized Vlc vec1() {
         if (vec1 == null) {
-            vec1 = new Vlc(WmaProTables.Vec1Lens, WmaProTables.Vec1Syms, WmaProTables.HuffVec1Offset);
+            vec1 = Vlc.fromLengths(WmaProTables.Vec1Lens, WmaProTables.Vec1Syms, WmaProTables.HuffVec1Offset);
         }
         return vec1;
     }
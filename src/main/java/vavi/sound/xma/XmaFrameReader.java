@@ -8,6 +8,8 @@ import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
 
+import vavi.sound.dsp.BitReader;
+
 
 /**
  * De-packetises an XMA stream into per-substream frames.
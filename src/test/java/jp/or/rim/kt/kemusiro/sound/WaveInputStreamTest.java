@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package jp.or.rim.kt.kemusiro.sound;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+
+import jp.or.rim.kt.kemusiro.sound.tone.FMParameter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * WaveInputStreamTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class WaveInputStreamTest {
+
+    /** tone numbers 100 ~ 107 are the algorithms 0 ~ 7 */
+    @BeforeAll
+    static void setup() throws Exception {
+        FMGeneralInstrument.readParameterByResource();
+        for (int algorithm = 0; algorithm < 8; algorithm++) {
+            FMParameter p = new FMParameter(100 + algorithm, 4);
+            p.setAlgorithm(algorithm);
+            for (int op = 0; op < 4; op++) {
+                p.setMultiplier(op, op + 1);
+                p.setAttackRate(op, 20.0);
+                p.setDecayRate(op, 7.0);
+                p.setSustainRate(op, 0.8);
+                p.setReleaseRate(op, 4.0);
+                p.setSustainLevel(op, 0.8);
+                p.setMaxLevel(op, 1.0);
+            }
+            FMGeneralInstrument.setParameter(100 + algorithm, p);
+        }
+    }
+
+    /** the same values by the tables as by the sample, the error of the table is amplified by the modulations */
+    @ParameterizedTest
+    @ValueSource(ints = {100, 101, 102, 103, 104, 105, 106, 107})
+    void test1(int tone) throws Exception {
+        Instrument expected = new FMGeneralInstrument(tone);
+        Instrument actual = new FMGeneralInstrument(tone);
+        expected.setTimeStep(1 / 44100.0);
+        actual.setTimeStep(1 / 44100.0);
+        expected.press();
+        actual.press();
+        float[] buffer = new float[300];
+        for (int i = 0; i < 100; i++) {
+            if (i == 50) {
+                expected.release();
+                actual.release();
+            }
+            actual.render(69, buffer, 0, buffer.length);
+            for (float v : buffer) {
+                assertEquals(expected.getValue(69), v, 2e-4);
+            }
+        }
+    }
+
+    /** the same bytes as the former rendering by the sample */
+    @ParameterizedTest
+    @ValueSource(strings = {"BADINERIE.mml", "PROMENADE.mml", "KIEV.mml"})
+    void test2(String name) throws Exception {
+        byte[] expected = renderBySample(score(name), 44100);
+        InputStream is = new WaveInputStream(score(name), 44100, 16);
+        byte[] actual = is.readAllBytes();
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i += 2) {
+            short e = (short) ((expected[i] << 8) | (expected[i + 1] & 0xff));
+            short a = (short) ((actual[i] << 8) | (actual[i + 1] & 0xff));
+            assertEquals(e, a, 1, "at " + i);
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        for (int r = 0; r < 3; r++) {
+            for (String name : new String[] {"BADINERIE.mml", "PROMENADE.mml", "KIEV.mml"}) {
+                MusicScore score = score(name);
+                long t = System.nanoTime();
+                byte[] pcm = renderBySample(score, 44100);
+                long sample = System.nanoTime() - t;
+
+                score = score(name);
+                t = System.nanoTime();
+                InputStream is = new WaveInputStream(score, 44100, 16);
+                byte[] buffer = new byte[8192];
+                while (is.read(buffer, 0, buffer.length) > 0) {
+                }
+                long block = System.nanoTime() - t;
+Debug.printf("%s: sample: %d ms, block: %d ms for %d sec", name, sample / 1_000_000, block / 1_000_000, pcm.length / 2 / 44100);
+            }
+        }
+    }
+
+    /** fm tones on the first and the second channel, a sine wave on the third */
+    static MusicScore score(String name) throws Exception {
+        String mml = String.join("", Files.readAllLines(Path.of("src/test/resources/mml", name)));
+        String[] mmls = {"@c105" + mml, "@c1O3" + mml, "@b" + mml};
+        MusicScore score = new MusicScore(240, mmls.length);
+        new MMLCompiler(240, mmls.length).compile(score, mmls);
+        return score;
+    }
+
+    /** the former {@link WaveInputStream}, {@link Instrument#getValue(int)} by the sample, 16 bit big endian */
+    static byte[] renderBySample(MusicScore score, int rate) {
+        LinkedList<MusicEvent> events = score.getEventList();
+        int channels = score.getChannelCount();
+        Instrument[] insts = new Instrument[channels];
+        NoteOn[] notes = new NoteOn[channels];
+        int tempo = 60;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int tick = 0; !events.isEmpty(); tick++) {
+            while (!events.isEmpty() && events.getFirst().getTick() == tick) {
+                MusicEvent e = events.removeFirst();
+                int ch = e.getChannel();
+                switch (e) {
+                    case ChangeInstrument changeInstrument -> {
+                        insts[ch] = changeInstrument.getInstrument();
+                        insts[ch].setTimeStep(1.0 / rate);
+                    }
+                    case ChangeTempo changeTempo -> tempo = changeTempo.getTempo();
+                    case NoteOn noteOn -> {
+                        notes[ch] = noteOn;
+                        insts[ch].press();
+                    }
+                    case NoteOff noteOff -> insts[ch].release();
+                    default -> {
+                    }
+                }
+            }
+            int samples = (int) (60.0 / tempo / score.getTickPerBeat() * rate);
+            for (int p = 0; p < samples; p++) {
+                double value = 0.0;
+                for (int ch = 0; ch < channels; ch++) {
+                    if (notes[ch] != null) {
+                        value += notes[ch].getVelocity() * insts[ch].getValue(notes[ch].getNumber());
+                    }
+                }
+                int intValue = (int) (value / channels);
+                output.write((intValue & 0xff00) >> 8);
+                output.write(intValue & 0xff);
+            }
+        }
+        return output.toByteArray();
+    }
+}
@@ -12,19 +12,26 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.CountDownLatch;
 import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioInputStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import vavi.sound.midi.SequenceRenderer;
 import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static vavi.sound.midi.MidiUtil.volume;
 
 
@@ -156,4 +163,37 @@ System.err.println("END");
         sequencer.close();
         synthesizer.close();
     }
+
+    /** @return the peak of 16 bit little endian samples */
+    static int peak(byte[] pcm) {
+        int peak = 0;
+        for (int i = 0; i + 1 < pcm.length; i += 2) {
+            peak = Math.max(peak, Math.abs((short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8))));
+        }
+        return peak;
+    }
+
+    @Test
+    @DisplayName("offline, a sequence through the stream")
+    void testStream() throws Exception {
+        // 4 notes at each second by 120 bpm
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        int notes = 4;
+        for (int i = 0; i < notes; i++) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 960L * (i + 1)));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 960L * (i + 1) + 96));
+        }
+
+        JSynSynthesizer synthesizer = new JSynSynthesizer();
+        AudioInputStream stream = SequenceRenderer.render(synthesizer, sequence, null, 500_000);
+        byte[] pcm = stream.readAllBytes();
+        synthesizer.close();
+
+        float rate = stream.getFormat().getSampleRate();
+        assertEquals((long) (4.6 * rate), pcm.length / stream.getFormat().getFrameSize(), 1);
+        int peak = peak(pcm);
+Debug.println("peak: " + peak);
+        assertTrue(peak > 100);
+    }
 }
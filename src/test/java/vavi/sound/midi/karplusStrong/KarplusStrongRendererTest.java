@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.midi.karplusStrong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vavi.sound.karplusStrong.GuitarString;
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * KarplusStrongRendererTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class KarplusStrongRendererTest {
+
+    /** the same output as {@link GuitarString} plucked by the same noise */
+    @Test
+    void test1() throws Exception {
+        int note = 57;
+        int length = (int) Math.ceil(44100 / KarplusStrongRenderer.midiToFrequency(note));
+        SplittableRandom random = new SplittableRandom(1);
+        double[] noise = new double[length];
+        for (int i = 0; i < length; i++) {
+            noise[i] = random.nextDouble() - 0.5;
+        }
+        GuitarString string = new GuitarString(noise);
+
+        KarplusStrongRenderer renderer = new KarplusStrongRenderer(4, new SplittableRandom(1));
+        renderer.noteOn(0, note, 100, 0.5f);
+        float[] out = new float[44100];
+        for (int i = 0; i < out.length; i += 500) {
+            renderer.render(out, i, Math.min(500, out.length - i));
+        }
+
+        for (float v : out) {
+            assertEquals(string.sample() * 0.5, v, 1e-5);
+            string.tic();
+        }
+    }
+
+    @Test
+    void test2() throws Exception {
+        KarplusStrongRenderer renderer = new KarplusStrongRenderer(8);
+        float[] out = new float[512];
+        for (int i = 0; i < 10; i++) {
+            renderer.noteOn(i % 2, 60 + i, 100, 1);
+        }
+        renderer.render(out, 0, out.length);
+        // the oldest ones are stolen
+        assertEquals(8, renderer.getActiveVoices());
+        assertEquals(62, renderer.getVoiceStatus()[2].note);
+
+        renderer.noteOff(0, 62);
+        renderer.release(1);
+        for (int i = 0; i < 20; i++) {
+            renderer.render(out, 0, out.length);
+        }
+        assertEquals(3, renderer.getActiveVoices());
+
+        renderer.clear();
+        renderer.render(out, 0, out.length);
+        assertEquals(0, renderer.getActiveVoices());
+    }
+
+    /** {@link GuitarString}s by the sample vs. the renderer by blocks */
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        int frames = 44100 * 10;
+        for (int voices : new int[] {1, 16, 64, 128}) {
+            List<GuitarString> strings = new ArrayList<>();
+            for (int i = 0; i < voices; i++) {
+                GuitarString string = new GuitarString(KarplusStrongRenderer.midiToFrequency(40 + i % 60));
+                string.pluck();
+                strings.add(string);
+            }
+            long t = System.nanoTime();
+            double sum = 0;
+            for (int i = 0; i < frames; i++) {
+                for (GuitarString string : strings) {
+                    sum += string.sample();
+                    string.tic();
+                }
+            }
+            long sample = System.nanoTime() - t;
+
+            KarplusStrongRenderer renderer = new KarplusStrongRenderer(voices);
+            for (int i = 0; i < voices; i++) {
+                renderer.noteOn(0, 40 + i % 60, 100, 1);
+            }
+            float[] block = new float[512];
+            t = System.nanoTime();
+            for (int i = 0; i < frames; i += block.length) {
+                renderer.render(block, 0, block.length);
+            }
+            long render = System.nanoTime() - t;
+Debug.printf("%3d voices: sample: %d ms, render: %d ms for %d sec (%s)", voices, sample / 1_000_000, render / 1_000_000, frames / 44100, sum != 0);
+        }
+    }
+}
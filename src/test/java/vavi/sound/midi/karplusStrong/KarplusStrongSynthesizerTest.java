@@ -18,14 +18,20 @@ import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import vavi.sound.midi.SequenceRenderer;
 import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static vavi.sound.midi.MidiUtil.volume;
 
 
@@ -175,4 +181,23 @@ System.err.println("END");
         sequencer.close();
         synthesizer.close();
     }
+
+    @Test
+    @DisplayName("offline")
+    void test4() throws Exception {
+        Sequence sequence = MidiSystem.getSequence(new BufferedInputStream(Files.newInputStream(Paths.get(karplusStrongTest))));
+        KarplusStrongSynthesizer synthesizer = new KarplusStrongSynthesizer();
+        long t = System.nanoTime();
+        AudioInputStream stream = SequenceRenderer.render(synthesizer, sequence, null, 1_000_000);
+        Path out = Paths.get("tmp", "karplusStrong.wav");
+        Files.createDirectories(out.getParent());
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, out.toFile());
+        long elapsed = System.nanoTime() - t;
+        synthesizer.close();
+
+        long frames = (Files.size(out) - 44) / 2;
+Debug.printf("%d ms for %.1f sec", elapsed / 1_000_000, frames / 44100f);
+        assertEquals((sequence.getMicrosecondLength() + 1_000_000) * 44100 / 1_000_000, frames, 44100 * 0.1);
+        assertTrue(elapsed / 1e9 < frames / 44100d);
+    }
 }
@@ -15,10 +15,14 @@ import java.util.concurrent.CountDownLatch;
 import java.util.stream.Stream;
 import javax.sound.midi.MetaEventListener;
 import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.LineEvent;
 
 import jp.or.rim.kt.kemusiro.sound.FMGeneralInstrument;
@@ -30,10 +34,13 @@ import org.junit.jupiter.api.condition.DisabledIfEnvironmentVariable;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import vavi.sound.midi.SequenceRenderer;
 import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static vavi.sound.midi.MidiUtil.volume;
 
@@ -222,4 +229,31 @@ Debug.println("synthesizer: " + synthesizer);
 
         synthesizer.close();
     }
+
+    @Test
+    @DisplayName("offline, a sequence through the stream")
+    void testStream() throws Exception {
+        // 4 notes at each second by 120 bpm
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        int notes = 4;
+        for (int i = 0; i < notes; i++) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 960L * (i + 1)));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 960L * (i + 1) + 96));
+        }
+
+        MmlSynthesizer synthesizer = new MmlSynthesizer();
+        AudioInputStream stream = SequenceRenderer.render(synthesizer, sequence, null, 500_000);
+        byte[] pcm = stream.readAllBytes();
+        synthesizer.close();
+
+        float rate = stream.getFormat().getSampleRate();
+        assertEquals((long) (4.6 * rate), pcm.length / stream.getFormat().getFrameSize(), 1);
+        int peak = 0;
+        for (int i = 0; i + 1 < pcm.length; i += 2) {
+            peak = Math.max(peak, Math.abs((short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8))));
+        }
+Debug.println("peak: " + peak);
+        assertTrue(peak > 100);
+    }
 }
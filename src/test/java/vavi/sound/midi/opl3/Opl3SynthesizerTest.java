@@ -7,28 +7,47 @@
 package vavi.sound.midi.opl3;
 
 import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vavi.sound.midi.SequenceRenderer;
 import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static vavi.sound.midi.MidiUtil.volume;
 
 
@@ -189,4 +208,175 @@ Debug.println("instrument[" + i + "]");
 
         synthesizer.close();
     }
+
+    /** a line consuming frames in real time from start like a sound card, records what is written */
+    static class MockLine implements SourceDataLine {
+        AudioFormat format;
+        int bufferSize;
+        long start;
+        long written;
+        /** frames the clock ran ahead of the written */
+        long lost;
+        /** times the clock found nothing to play */
+        int underruns;
+        boolean running;
+        final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+
+        long played;
+
+        /** frames played */
+        private synchronized long position() {
+            if (running) {
+                played = (long) ((System.nanoTime() - start) * (double) format.getSampleRate() / 1e9) - lost;
+                if (played > written) {
+                    underruns++;
+                    lost += played - written;
+                    played = written;
+                }
+            }
+            return played;
+        }
+
+        @Override public void open(AudioFormat format, int bufferSize) { this.format = format; this.bufferSize = bufferSize; }
+        @Override public void open(AudioFormat format) { open(format, (int) format.getSampleRate() / 10 * format.getFrameSize()); }
+        @Override public void open() { throw new UnsupportedOperationException(); }
+        @Override public synchronized int available() { return bufferSize - (int) (written - position()) * format.getFrameSize(); }
+        @Override public int write(byte[] b, int off, int len) {
+            while (available() < len) {
+                LockSupport.parkNanos(100_000);
+            }
+            synchronized (this) {
+                pcm.write(b, off, len);
+                written += len / format.getFrameSize();
+            }
+            return len;
+        }
+        @Override public void drain() {}
+        @Override public void flush() {}
+        @Override public synchronized void start() { start = System.nanoTime(); running = true; }
+        @Override public synchronized void stop() { running = false; }
+        @Override public boolean isRunning() { return running; }
+        @Override public boolean isActive() { return running; }
+        @Override public AudioFormat getFormat() { return format; }
+        @Override public int getBufferSize() { return bufferSize; }
+        @Override public int getFramePosition() { return (int) position(); }
+        @Override public long getLongFramePosition() { return position(); }
+        @Override public long getMicrosecondPosition() { return (long) (position() * 1e6 / format.getSampleRate()); }
+        @Override public float getLevel() { return AudioSystem.NOT_SPECIFIED; }
+        @Override public Line.Info getLineInfo() { return new DataLine.Info(SourceDataLine.class, format); }
+        @Override public void close() { running = false; }
+        @Override public boolean isOpen() { return format != null; }
+        @Override public Control[] getControls() { return new Control[0]; }
+        @Override public boolean isControlSupported(Control.Type control) { return false; }
+        @Override public Control getControl(Control.Type control) { throw new IllegalArgumentException(control.toString()); }
+        @Override public void addLineListener(LineListener listener) {}
+        @Override public void removeLineListener(LineListener listener) {}
+    }
+
+    /** @return first frames of sounds after silence of at least gap frames */
+    static List<Long> onsets(byte[] pcm, int gap) {
+        List<Long> onsets = new ArrayList<>();
+        long silent = gap;
+        for (int i = 0; i < pcm.length; i += 4) {
+            if (pcm[i] != 0 || pcm[i + 1] != 0 || pcm[i + 2] != 0 || pcm[i + 3] != 0) {
+                if (silent >= gap) {
+                    onsets.add((long) i / 4);
+                }
+                silent = 0;
+            } else {
+                silent++;
+            }
+        }
+        return onsets;
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    @DisplayName("latency, jitter on a mock line")
+    void testLatency() throws Exception {
+        MockLine line = new MockLine();
+        Opl3Synthesizer synthesizer = new Opl3Synthesizer() {
+            @Override SourceDataLine getLine(AudioFormat audioFormat) { return line; }
+        };
+        synthesizer.open();
+        float rate = line.getFormat().getSampleRate();
+Debug.println("latency: " + synthesizer.getLatency() + " us");
+        Receiver receiver = synthesizer.getReceiver();
+        receiver.send(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 0, 67, 0), -1); // releases fast
+        Thread.sleep(100);
+
+        int notes = 8;
+        long[] scheduled = new long[notes];
+        long[] sent = new long[notes];
+        for (int i = 0; i < notes; i++) {
+            if (i < notes / 2) {
+                // time-stamped, beyond the buffer
+                long t = synthesizer.getMicrosecondPosition() + synthesizer.getLatency() + 50_000;
+                scheduled[i] = (long) (t * rate / 1_000_000);
+                receiver.send(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), t);
+                receiver.send(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), t + 100_000);
+                Thread.sleep(400);
+            } else {
+                sent[i] = line.getLongFramePosition();
+                receiver.send(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), -1);
+                Thread.sleep(100);
+                receiver.send(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), -1);
+                Thread.sleep(300);
+            }
+        }
+        synthesizer.close();
+
+        List<Long> onsets = onsets(line.pcm.toByteArray(), (int) rate / 20);
+Debug.println("onsets: " + onsets + ", underruns: " + line.underruns);
+        assertEquals(notes, onsets.size());
+
+        // time-stamped ones sound at the same distance from the frame, it's the attack
+        long[] errors = new long[notes / 2];
+        for (int i = 0; i < notes / 2; i++) {
+            errors[i] = onsets.get(i) - scheduled[i];
+        }
+Debug.println("time-stamped, frames from the scheduled: " + Arrays.toString(errors));
+        assertTrue(Arrays.stream(errors).max().getAsLong() - Arrays.stream(errors).min().getAsLong() <= 2, Arrays.toString(errors));
+
+        double[] latencies = new double[notes / 2];
+        for (int i = notes / 2; i < notes; i++) {
+            latencies[i - notes / 2] = (onsets.get(i) - sent[i]) * 1000 / rate;
+        }
+        double mean = Arrays.stream(latencies).average().orElse(0);
+        double jitter = Math.sqrt(Arrays.stream(latencies).map(l -> (l - mean) * (l - mean)).average().orElse(0));
+Debug.printf("immediate, latency: %.1f ms, jitter: %.2f ms, %s", mean, jitter, Arrays.toString(latencies));
+    }
+
+    @Test
+    @DisplayName("offline, a sequence faster than realtime")
+    void testStream() throws Exception {
+        // 4 notes at each second by 120 bpm
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 0, 67, 0), 0));
+        int notes = 4;
+        for (int i = 0; i < notes; i++) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 960L * (i + 1)));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 960L * (i + 1) + 96));
+        }
+
+        Opl3Synthesizer synthesizer = new Opl3Synthesizer();
+        long t = System.nanoTime();
+        AudioInputStream stream = SequenceRenderer.render(synthesizer, sequence, null, 500_000);
+        byte[] pcm = stream.readAllBytes();
+        long elapsed = System.nanoTime() - t;
+        synthesizer.close();
+
+        float rate = stream.getFormat().getSampleRate();
+        assertEquals((long) (4.6 * rate), pcm.length / stream.getFormat().getFrameSize(), 1);
+        List<Long> onsets = onsets(pcm, (int) rate / 20);
+Debug.println("onsets: " + onsets + ", " + elapsed / 1_000_000 + " ms for 4.6 sec");
+        assertEquals(notes, onsets.size());
+        // at the same distance from the scheduled frames, it's the attack
+        long first = onsets.getFirst() - (long) rate;
+        for (int i = 0; i < notes; i++) {
+            assertEquals(first, onsets.get(i) - (long) (rate * (i + 1)), 2);
+        }
+        assertTrue(elapsed < 5_500_000_000L);
+    }
 }
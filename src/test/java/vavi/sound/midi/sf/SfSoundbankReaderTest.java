@@ -6,6 +6,7 @@
 
 package vavi.sound.midi.sf;
 
+import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
@@ -15,13 +16,19 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import com.sun.media.sound.SF2Instrument;
 import com.sun.media.sound.SF2InstrumentRegion;
@@ -36,7 +43,9 @@ import vavi.util.Debug;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -220,4 +229,130 @@ Debug.println("sf3 max amplitude: " + max);
 Debug.println("expanded sf2 max amplitude: " + max);
         assertTrue(max > 1000, "rendered audio is silent");
     }
+
+    /** lazy sf2: mapped views, samples read by loading instruments, evicted after unloading */
+    @Test
+    void test4() throws Exception {
+        SF2Soundbank sf2 = createTestSf2();
+        SF2Layer layer = sf2.getInstruments()[0].getRegions().getFirst().getLayer();
+        SF2Instrument second = new SF2Instrument(sf2);
+        second.setName("second");
+        second.setPatch(new javax.sound.midi.Patch(0, 1));
+        SF2InstrumentRegion region = new SF2InstrumentRegion();
+        region.setLayer(layer);
+        second.getRegions().add(region);
+        sf2.addInstrument(second);
+        File sf2File = new File("tmp/lazy.sf2");
+        sf2.save(sf2File);
+
+        SFont.SoundFont eager = new SFont.SoundFont(sf2File);
+        eager.read();
+        SFont.SoundFont lazy = new SFont.SoundFont(sf2File);
+        lazy.setLazy(true);
+        lazy.read();
+        SFont.Sample sample = lazy.getSamples().getFirst();
+        assertNull(sample.sampleData);
+        assertEquals(eager.getSamples().getFirst().getSampleData(), sample.getSampleData());
+        assertEquals(eager.getSamples().getFirst().loopend, sample.loopend);
+
+        Soundbank soundbank = SfSoundbank.toSoundbank(lazy);
+        try (SoftSynthesizer synthesizer = new SoftSynthesizer()) {
+            synthesizer.openStream(new AudioFormat(44100, 16, 2, true, false), null);
+            SfSampleCache cache = new SfSampleCache(0);
+            assertEquals(0, cache.getLoadedBytes());
+            Instrument[] instruments = soundbank.getInstruments();
+            assertTrue(cache.loadInstrument(synthesizer, instruments[0]));
+            long bytes = sample.numSamples() * 2L;
+            assertEquals(bytes, cache.getLoadedBytes());
+            // shared by a loaded instrument, kept
+            assertTrue(cache.loadInstrument(synthesizer, instruments[1]));
+            cache.unloadInstrument(synthesizer, instruments[0]);
+            assertEquals(bytes, cache.getLoadedBytes());
+            // unused, evicted
+            cache.unloadInstrument(synthesizer, instruments[1]);
+            assertEquals(0, cache.getLoadedBytes());
+Debug.println("evictions: " + cache.getEvictions());
+            assertEquals(2, cache.getEvictions());
+        }
+
+        int max = render(soundbank, 69, "tmp/sf2-lazy.wav");
+Debug.println("lazy sf2 max amplitude: " + max);
+        assertTrue(max > 1000, "rendered audio is silent");
+    }
+
+    /** sf4 decoded concurrently equals sequentially, then read from the pcm cache */
+    @Test
+    void test5(@TempDir Path tmp) throws Exception {
+        SFont.SoundFont sequential = new SFont.SoundFont(resource("/sf/test.sf4"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        sequential.setExecutor(executor);
+        sequential.read();
+        executor.shutdown();
+
+        for (int i = 0; i < 2; i++) {
+            SFont.SoundFont sf = new SFont.SoundFont(resource("/sf/test.sf4"));
+            sf.setCacheDirectory(tmp);
+            sf.read();
+            try (Stream<Path> files = Files.list(tmp)) {
+                assertEquals(1, files.count());
+            }
+            for (int j = 0; j < sf.getSamples().size(); j++) {
+                SFont.Sample expected = sequential.getSamples().get(j);
+                SFont.Sample actual = sf.getSamples().get(j);
+                assertTrue(expected.numSamples() > 0);
+                assertEquals(expected.getSampleData(), actual.getSampleData());
+                assertEquals(expected.loopend, actual.loopend);
+            }
+        }
+    }
+
+    /** sf2 -> sf4 compressed concurrently is the same file as sequentially */
+    @Test
+    void test6(@TempDir Path tmp) throws Exception {
+        assumeTrue(AudioSystem.isConversionSupported(SFont.FLAC_ENC, new AudioFormat(44100, 16, 1, true, false)), "no flac encoder");
+        File sf2File = tmp.resolve("test.sf2").toFile();
+        createTestSf2().save(sf2File);
+
+        SFont.SoundFont sequential = new SFont.SoundFont(sf2File);
+        sequential.read();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        sequential.setExecutor(executor);
+        sequential.setEncodeWindow(1);
+        sequential.write(tmp.resolve("sequential.sf4").toFile(), SFont.FileType.SF4Format, 1);
+        executor.shutdown();
+
+        SFont.SoundFont parallel = new SFont.SoundFont(sf2File);
+        parallel.read();
+        parallel.write(tmp.resolve("parallel.sf4").toFile(), SFont.FileType.SF4Format, 1);
+
+        assertEquals(-1, Files.mismatch(tmp.resolve("sequential.sf4"), tmp.resolve("parallel.sf4")));
+        SFont.SoundFont.SampleReport report = parallel.getSampleReports().getFirst();
+Debug.println(report + ", " + report.getRatio());
+        assertEquals(parallel.getSamples().size(), parallel.getSampleReports().size());
+        assertTrue(report.getRatio() > 0 && report.getRatio() < 1);
+    }
+
+    /** a stream, spilled chunk by chunk, gives the same bank as a file */
+    @Test
+    void test7() throws Exception {
+        SfSoundbankReader reader = new SfSoundbankReader();
+        Soundbank expected = reader.getSoundbank(resource("/sf/test.sf4").toPath());
+        Soundbank actual;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(resource("/sf/test.sf4").toPath()))) {
+            actual = reader.getSoundbank(is);
+        }
+        assertNotNull(actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getResources().length, actual.getResources().length);
+        for (int i = 0; i < expected.getResources().length; i++) {
+            if (expected.getResources()[i] instanceof SF2Sample sample) {
+                ByteArrayOutputStream e = new ByteArrayOutputStream();
+                sample.getDataBuffer().writeTo(e);
+                ByteArrayOutputStream a = new ByteArrayOutputStream();
+                ((SF2Sample) actual.getResources()[i]).getDataBuffer().writeTo(a);
+                assertArrayEquals(e.toByteArray(), a.toByteArray());
+            }
+        }
+        assertEquals(render(expected, 69, "tmp/sf4f.wav"), render(actual, 69, "tmp/sf4s.wav"));
+    }
 }
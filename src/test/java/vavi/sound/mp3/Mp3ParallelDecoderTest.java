@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.mp3;
+
+import java.io.BufferedInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Mp3ParallelDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class Mp3ParallelDecoderTest {
+
+    /** with a xing/info header frame */
+    static final Path inFile = Paths.get("src/test/resources/test.mp3");
+
+    /** without a vbr header */
+    static final Path rawFile = Paths.get("src/test/resources/raw.mp3");
+
+    /** sequential, by the plain stream decoder, no frame index involved */
+    static byte[] decodeSequential(Path path) throws Exception {
+        try (Mp3InputStream is = new Mp3InputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return Mp3InputStreamTest.readAll(is);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 16})
+    void test1(int segments) throws Exception {
+        for (Path path : new Path[] {inFile, rawFile}) {
+            byte[] expected = decodeSequential(path);
+
+            try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+                byte[] actual = new Mp3ParallelDecoder(path, executor, segments).decode();
+                assertArrayEquals(expected, actual, path.toString());
+            }
+        }
+    }
+
+    /** the xing/info frame is not decoded as audio by any path */
+    @Test
+    void testVbrHeaderFrame() throws Exception {
+        byte[] sequential = decodeSequential(inFile);
+        try (Mp3InputStream is = new Mp3InputStream(inFile)) {
+            byte[] indexed = Mp3InputStreamTest.readAll(is);
+            assertEquals(indexed.length, sequential.length);
+            assertEquals(is.getFrameLength() * is.getOutputFrameSize(), sequential.length);
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testScaling() throws Exception {
+        Path path = Paths.get(System.getProperty("vavi.test.mp3", inFile.toString()));
+
+        // warm up
+        decodeSequential(path);
+
+long time = System.nanoTime();
+        decodeSequential(path);
+long sequential = System.nanoTime() - time;
+Debug.println("sequential: " + sequential / 1_000_000 + " ms");
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+                Mp3ParallelDecoder decoder = new Mp3ParallelDecoder(path, executor, threads * 4);
+                decoder.decode();
+time = System.nanoTime();
+                decoder.decode();
+long parallel = System.nanoTime() - time;
+Debug.printf("threads: %2d, %5d ms, x%.2f", threads, parallel / 1_000_000, (double) sequential / parallel);
+            }
+        }
+    }
+}
@@ -158,19 +158,15 @@ public class AdplugRefTest {
 
             AudioFormat.Encoding encoding = Opl3Player.getEncoding(is);
             assertTrue(encoding != null, path + ": no player detected");
-            Opl3Player player = Opl3Player.getPlayer(encoding);
+            Opl3Player player = Opl3Player.newPlayer(encoding);
             player.setProperties(Map.of("uri", path.toUri()));
+            player.setRegisterLog(ps);
 
-            Opl3Player.regLog = ps;
-            try {
-                player.load(is);
+            player.load(is);
 
-                int updates = 0;
-                while (player.update() && updates++ < MAX_UPDATES) {
-                    ps.printf(Locale.ROOT, "r%.2f%n", player.getRefresh());
-                }
-            } finally {
-                Opl3Player.regLog = null;
+            int updates = 0;
+            while (player.update() && updates++ < MAX_UPDATES) {
+                ps.printf(Locale.ROOT, "r%.2f%n", player.getRefresh());
             }
         }
         return bos.toString(StandardCharsets.US_ASCII).lines().toList();
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.opl3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import vavi.sound.pcm.resampling.FilterDesignCache;
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * OPL3Test.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class OPL3Test {
+
+    static final Path MUSIC_DIR = Path.of("src/test/resources/opl3");
+
+    /** "file sha256" lines of the first {@link #RENDER_SECONDS} of pcm rendered by each player */
+    static final Path RENDER_REF = Path.of("src/test/resources/opl3render.txt");
+
+    static final double RENDER_SECONDS = 5;
+
+    /** {@link OPL3#write(int, int, int)} of {@link OPL3} or {@link OPL3Reference} */
+    interface Registers {
+        void write(int array, int address, int data);
+    }
+
+    /** key on a few melodic channels and the rhythm section, opl3 mode if specified */
+    static void setup(Registers opl, boolean opl3) {
+        if (opl3) {
+            opl.write(1, 0x05, 0x01); // NEW
+        }
+        for (int c = 0; c < 6; c++) {
+            int op = (c / 3) * 8 + c % 3;
+            opl.write(0, 0x20 + op, 0x21);
+            opl.write(0, 0x23 + op, 0x21);
+            opl.write(0, 0x40 + op, 0x10);
+            opl.write(0, 0x43 + op, 0x00);
+            opl.write(0, 0x60 + op, 0xf4);
+            opl.write(0, 0x63 + op, 0xf4);
+            opl.write(0, 0x80 + op, 0x56);
+            opl.write(0, 0x83 + op, 0x56);
+            opl.write(0, 0xc0 + c, 0x30 | (c << 1) & 0x0e); // CHA, CHB, fb
+            opl.write(0, 0xa0 + c, 0x41 + c * 17);
+            opl.write(0, 0xb0 + c, 0x32);
+        }
+        opl.write(0, 0xbd, 0xff); // dam, dvb, rhythm, all drums on
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    @DisplayName("block rendering is bit identical to the per-sample reference")
+    void testRenderEqualsReference(boolean opl3) throws Exception {
+        OPL3Reference expected = new OPL3Reference();
+        OPL3 actual = new OPL3();
+        setup(expected::write, opl3);
+        setup(actual::write, opl3);
+
+        int frames = 49716;
+        short[] e = new short[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(expected.read(), 0, e, i * 4, 4);
+        }
+        short[] a = new short[frames * 4 + 2];
+        int offset = 2;
+        for (int n = 1; offset < a.length; n = n * 3 % 1001) { // uneven blocks
+            int f = Math.min(n, (a.length - offset) / 4);
+            actual.render(a, offset, f);
+            offset += f * 4;
+        }
+
+        short[] b = new short[frames * 4];
+        System.arraycopy(a, 2, b, 0, b.length);
+        assertArrayEquals(e, b);
+    }
+
+    @Test
+    void testActiveChannels() throws Exception {
+        OPL3 opl = new OPL3();
+        assertEquals(0, opl.getActiveChannelCount());
+
+        setup(opl::write, true);
+        short[] block = new short[1024 * 4];
+        opl.render(block, 0, 1024);
+        assertEquals(8, opl.getActiveChannelCount()); // 6 melodic + hi-hat/snare, tom/cymbal, bass drum has no ar
+
+        opl.write(0, 0xbd, 0x00); // melodic mode, drums off
+        for (int c = 0; c < 6; c++) {
+            opl.write(0, 0xb0 + c, 0x12); // key off
+        }
+        for (int i = 0; i < 100; i++) { // release rate 6
+            opl.render(block, 0, 1024);
+        }
+        assertEquals(0, opl.getActiveChannelCount());
+    }
+
+    /** @return sha256 of the first seconds of pcm rendered as Opl3ToPcmAudioInputStream does */
+    static String render(Path path, double seconds) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+            Opl3Player player = Opl3Player.getPlayer(Opl3Player.getEncoding(is));
+            player.setProperties(Map.of("uri", path.toUri()));
+            player.load(is);
+            double t = 0;
+            while (t < seconds && player.update()) {
+                double sec = 1.0 / player.getRefresh();
+                md.update(player.read(4 * (int) (Opl3Player.opl3.getSampleRate() * sec + 0.5)));
+                t += sec;
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    static Stream<Arguments> renderSamples() throws IOException {
+        return Files.readAllLines(RENDER_REF).stream()
+                .map(line -> line.split(" "))
+                .map(fields -> Arguments.arguments(fields[0], fields[1]));
+    }
+
+    @ParameterizedTest
+    @MethodSource("renderSamples")
+    @DisplayName("rendered pcm is bit identical to the reference")
+    void testRenderRegression(String music, String sha256) throws Exception {
+        assertEquals(sha256, render(MUSIC_DIR.resolve(music), RENDER_SECONDS), music);
+    }
+
+    @Test
+    @DisplayName("frame lengths are cached by the song and the properties")
+    void testFrameLengthCache() throws Exception {
+        Path path = MUSIC_DIR.resolve("dro_v2.dro");
+        byte[] song = Files.readAllBytes(path);
+        AudioFormat.Encoding encoding;
+        try (InputStream is = new BufferedInputStream(new ByteArrayInputStream(song))) {
+            encoding = Opl3Player.getEncoding(is);
+        }
+        float sampleRate = Opl3Player.opl3.getSampleRate();
+
+        FilterDesignCache.Metrics before = Opl3Player.getFrameLengthCacheMetrics();
+        long frames = Opl3Player.getFrameLength(encoding, song, Map.of("uri", path.toUri()), sampleRate);
+        assertEquals(frames, Opl3Player.getFrameLength(encoding, song, new HashMap<>(Map.of("uri", path.toUri())), sampleRate));
+        FilterDesignCache.Metrics after = Opl3Player.getFrameLengthCacheMetrics();
+        assertEquals(before.misses() + 1, after.misses());
+        assertEquals(before.hits() + 1, after.hits());
+
+        // other properties are another entry
+        Opl3Player.getFrameLength(encoding, song, Map.of(), sampleRate);
+        assertEquals(after.misses() + 1, Opl3Player.getFrameLengthCacheMetrics().misses());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        int frames = 49716 * 10;
+        for (int r = 0; r < 3; r++) {
+            OPL3Reference reference = new OPL3Reference();
+            setup(reference::write, true);
+            long t = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                reference.read();
+            }
+            long read = System.nanoTime() - t;
+
+            OPL3 opl = new OPL3();
+            setup(opl::write, true);
+            short[] block = new short[1024 * 4];
+            t = System.nanoTime();
+            for (int i = 0; i < frames; i += 1024) {
+                opl.render(block, 0, Math.min(1024, frames - i));
+            }
+            long render = System.nanoTime() - t;
+Debug.printf("per sample: %d ms, render: %d ms for %d sec", read / 1_000_000, render / 1_000_000, frames / 49716);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.opl3;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Opl3BatchRendererTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class Opl3BatchRendererTest {
+
+    static final Path MUSIC_DIR = Path.of("src/test/resources/opl3");
+
+    /** different players, mid types and sub-songs */
+    static final List<Path> files = List.of(
+            MUSIC_DIR.resolve("2001.MKJ"),
+            MUSIC_DIR.resolve("SCALES.SA2"),
+            MUSIC_DIR.resolve("dro_v2.dro"),
+            MUSIC_DIR.resolve("michaeld.cmf"),
+            MUSIC_DIR.resolve("ice_thnk.sci"),
+            MUSIC_DIR.resolve("thealibi.d00")
+    );
+
+    @Test
+    void test1(@TempDir Path tmp) throws Exception {
+        Path text = Files.writeString(tmp.resolve("readme.txt"), "not a song");
+        List<Path> files = Stream.concat(Opl3BatchRendererTest.files.stream(), Stream.of(text)).toList();
+
+        Path serialDir = tmp.resolve("serial");
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        Opl3BatchRenderer serial = new Opl3BatchRenderer(serialDir, single);
+        serial.setMaxSeconds(5);
+        Opl3BatchRenderer.Metrics expected = serial.render(files);
+        single.shutdown();
+Debug.println(expected);
+
+        Path parallelDir = tmp.resolve("parallel");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        Opl3BatchRenderer parallel = new Opl3BatchRenderer(parallelDir, pool);
+        parallel.setMaxSeconds(5);
+        parallel.setListener(r -> Debug.println(r.source().getFileName() + "#" + r.subSong() + ": " + r.frames() + " frames" + (r.error() != null ? ", " + r.error() : "")));
+        Opl3BatchRenderer.Metrics actual = parallel.render(files);
+        pool.shutdown();
+Debug.println(actual);
+
+        assertEquals(files.size(), actual.getFiles());
+        assertEquals(1, actual.getUnsupported());
+        assertEquals(0, actual.getFailed());
+        assertEquals(expected.getSongs(), actual.getSongs());
+        assertEquals(expected.getFrames(), actual.getFrames());
+
+        // players running concurrently do not affect each other
+        try (var outputs = Files.list(serialDir)) {
+            for (Path output : outputs.toList()) {
+                assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(parallelDir.resolve(output.getFileName())), output.toString());
+            }
+        }
+
+        AudioInputStream ais = AudioSystem.getAudioInputStream(parallelDir.resolve("2001.MKJ.wav").toFile());
+        assertEquals(Opl3Player.opl3.getSampleRate(), ais.getFormat().getSampleRate());
+        assertEquals((Files.size(parallelDir.resolve("2001.MKJ.wav")) - 44) / 4, ais.getFrameLength());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void test2(@TempDir Path tmp) throws Exception {
+        Opl3BatchRenderer renderer = new Opl3BatchRenderer(tmp);
+        renderer.setMaxSeconds(30);
+        Opl3BatchRenderer.Metrics metrics = renderer.render(MUSIC_DIR);
+Debug.println(metrics + ", parallelism: " + metrics.getRenderNanos() / (double) metrics.getElapsedNanos());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.opl3;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import vavi.sound.pcm.resampling.sox.PerfectResampler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static vavi.sound.opl3.Opl3Player.opl3;
+
+
+/**
+ * StereoRendererTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class StereoRendererTest {
+
+    /**
+     * resamples the mixed blocks of the emulator with output room enough for all,
+     * so every block is taken at once.
+     * @return interleaved left, right
+     */
+    static short[] reference(float sampleRate, int frames) {
+        OPL3 opl = new OPL3();
+        OPL3Test.setup(opl::write, true);
+        PerfectResampler[] resamplers = {
+            new PerfectResampler(2, 25, 0, false, -1, opl3.getSampleRate(), sampleRate),
+            new PerfectResampler(2, 25, 0, false, -1, opl3.getSampleRate(), sampleRate)
+        };
+        short[] block = new short[1024 * 4];
+        int[][] in = new int[2][1024];
+        int[][] out = new int[2][65536];
+        short[] result = new short[frames * 2];
+        int p = 0;
+        while (p < frames) {
+            opl.render(block, 0, 1024);
+            for (int j = 0; j < 1024; j++) {
+                in[0][j] = Math.clamp(block[j * 4] + block[j * 4 + 2], Short.MIN_VALUE, Short.MAX_VALUE);
+                in[1][j] = Math.clamp(block[j * 4 + 1] + block[j * 4 + 3], Short.MIN_VALUE, Short.MAX_VALUE);
+            }
+            int n = 0;
+            for (int c = 0; c < 2; c++) {
+                int[] isamp = {1024};
+                int[] osamp = {out[c].length};
+                resamplers[c].flow(in[c], out[c], isamp, osamp);
+                n = osamp[0];
+            }
+            for (int j = 0; j < n && p < frames; j++, p++) {
+                result[p * 2] = (short) Math.clamp(out[0][j], Short.MIN_VALUE, Short.MAX_VALUE);
+                result[p * 2 + 1] = (short) Math.clamp(out[1][j], Short.MIN_VALUE, Short.MAX_VALUE);
+            }
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {8000, 44100, 48000, 96000, 192000})
+    void testResampledBlocksAreNotDropped(float sampleRate) throws Exception {
+        int frames = (int) sampleRate * 3;
+        short[] expected = reference(sampleRate, frames);
+
+        OPL3 opl = new OPL3();
+        OPL3Test.setup(opl::write, true);
+        StereoRenderer renderer = new StereoRenderer(opl);
+        renderer.setSampleRate(sampleRate);
+        byte[] buf = new byte[frames * 4];
+        int offset = 0;
+        for (int n = 1; offset < buf.length; n = n * 7 % 10007) { // uneven reads
+            offset += renderer.read(buf, offset, Math.min(n * 4, buf.length - offset));
+        }
+        short[] actual = new short[frames * 2];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = (short) ((buf[i * 2] & 0xff) | (buf[i * 2 + 1] << 8));
+        }
+
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.equalizing;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * LoudnessNormalizerTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class LoudnessNormalizerTest {
+
+    /** interleaved, the same on all channels */
+    static double[] sine(float sampleRate, int channels, double db, double frequency, double seconds, double phase) {
+        double amplitude = Math.pow(10, db / 20);
+        int frames = (int) (sampleRate * seconds);
+        double[] samples = new double[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate + phase);
+            }
+        }
+        return samples;
+    }
+
+    /** with a chunk after the data */
+    static void write(Path path, int tag, int bits, int channels, float sampleRate, double[] samples) throws Exception {
+        SampleFormat format = SampleFormat.valueOf(tag, bits);
+        int length = samples.length * format.getBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(44 + length + 10).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + length + 10).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) tag).putShort((short) channels)
+                .putInt((int) sampleRate).putInt((int) sampleRate * channels * format.getBytes())
+                .putShort((short) (channels * format.getBytes())).putShort((short) bits);
+        buffer.put("data".getBytes()).putInt(length);
+        format.encode(samples, 0, samples.length, buffer);
+        buffer.put("LIST".getBytes()).putInt(2).put((byte) 1).put((byte) 2);
+        Files.write(path, buffer.array());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"48000", "44100"})
+    void testMeter(float sampleRate) throws Exception {
+        LoudnessMeter meter = new LoudnessMeter(sampleRate, 2);
+        double[] samples = sine(sampleRate, 2, -23, 1000, 10, 0);
+        meter.process(samples, 0, samples.length / 2);
+Debug.println(sampleRate + ": " + meter.getIntegratedLoudness() + " LUFS");
+        assertEquals(-23, meter.getIntegratedLoudness(), 0.1);
+        assertEquals(-23, meter.getMomentaryLoudness(), 0.1);
+        assertEquals(-23, LoudnessMeter.toDb(meter.getSamplePeak()), 0.01);
+    }
+
+    @Test
+    void testTruePeak() throws Exception {
+        // samples are at ±0.707 but the peaks between them are at ±1
+        LoudnessMeter meter = new LoudnessMeter(48000, 1);
+        double[] samples = sine(48000, 1, 0, 12000, 1, Math.PI / 4);
+        meter.process(samples, 0, samples.length);
+Debug.println("sample peak: " + LoudnessMeter.toDb(meter.getSamplePeak()) + ", true peak: " + LoudnessMeter.toDb(meter.getTruePeak()));
+        assertEquals(-3.01, LoudnessMeter.toDb(meter.getSamplePeak()), 0.01);
+        assertEquals(0, LoudnessMeter.toDb(meter.getTruePeak()), 0.2);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 8, false",
+            "1, 16, false",
+            "1, 24, false",
+            "1, 32, false",
+            "3, 32, false",
+            "1, 16, true",
+            "1, 24, true",
+            "3, 32, true",
+    })
+    void testNormalize(int tag, int bits, boolean limiting, @TempDir Path tmp) throws Exception {
+        Path in = tmp.resolve("in.wav");
+        Path out = tmp.resolve("out.wav");
+        double[] samples = sine(44100, 2, -6, 997, 5, 0);
+        write(in, tag, bits, 2, 44100, samples);
+
+        LoudnessNormalizer normalizer = new LoudnessNormalizer();
+        normalizer.setLimiting(limiting);
+        // without the limiter the peaks are far from the ceiling, with it they are over it
+        double target = limiting ? -3 : -23;
+        normalizer.setTarget(target);
+        LoudnessNormalizer.Analysis input = normalizer.normalize(in, out);
+        LoudnessNormalizer.Analysis output = normalizer.analyze(out);
+Debug.println(input + " -> " + output);
+
+        assertEquals(input.frames(), output.frames());
+        assertEquals(Files.size(in), Files.size(out));
+        byte[] expected = Files.readAllBytes(in);
+        byte[] actual = Files.readAllBytes(out);
+        assertArrayEquals(Arrays.copyOfRange(expected, 0, 44), Arrays.copyOfRange(actual, 0, 44));
+        assertArrayEquals(Arrays.copyOfRange(expected, expected.length - 10, expected.length),
+                Arrays.copyOfRange(actual, actual.length - 10, actual.length));
+        assertEquals(target, output.integratedLoudness(), limiting ? 0.2 : 0.1);
+        assertTrue(output.getTruePeakDb() <= LoudnessNormalizer.DEFAULT_CEILING + (bits == 8 ? 0.1 : 0.01));
+    }
+
+    @Test
+    void testCeiling() throws Exception {
+        double[] samples = sine(44100, 2, 0, 1000, 1, 0);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] *= 1 + i % 4410 / 4410d; // up to +6 dB
+        }
+
+        LookAheadLimiter limiter = new LookAheadLimiter(44100, 2, -1, 5, 100, true);
+        double[] out = new double[samples.length + limiter.getLatency() * 2];
+        int frames = limiter.process(samples, 0, samples.length / 2, out, 0);
+        assertEquals(samples.length / 2 - limiter.getLatency(), frames);
+        frames += limiter.flush(out, frames * 2);
+        assertEquals(samples.length / 2, frames);
+
+        LoudnessMeter meter = new LoudnessMeter(44100, 2);
+        meter.process(out, 0, frames);
+Debug.println("true peak: " + LoudnessMeter.toDb(meter.getTruePeak()));
+        assertTrue(LoudnessMeter.toDb(meter.getTruePeak()) <= -1 + 0.05);
+    }
+
+    @Test
+    void testInputStream() throws Exception {
+        float sampleRate = 48000;
+        double[] samples = sine(sampleRate, 2, -40, 1000, 20, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        SampleFormat.S16.encode(samples, 0, samples.length, buffer);
+        AudioFormat format = new AudioFormat(sampleRate, 16, 2, true, false);
+
+        byte[] result = new LoudnessNormalizerInputStream(new ByteArrayInputStream(buffer.array()), format).readAllBytes();
+        assertEquals(buffer.capacity(), result.length);
+
+        double[] normalized = new double[result.length / 2];
+        SampleFormat.S16.decode(ByteBuffer.wrap(result).order(ByteOrder.LITTLE_ENDIAN), normalized, 0, normalized.length);
+        // after the gain settles
+        LoudnessMeter meter = new LoudnessMeter(sampleRate, 2);
+        meter.process(normalized, 10 * 48000 * 2, normalized.length / 2 - 10 * 48000);
+Debug.println("last 10 seconds: " + meter.getIntegratedLoudness() + " LUFS");
+        assertEquals(LoudnessNormalizer.DEFAULT_TARGET, meter.getIntegratedLoudness(), 0.1);
+        assertTrue(LoudnessMeter.toDb(meter.getTruePeak()) <= LoudnessNormalizer.DEFAULT_CEILING);
+    }
+}
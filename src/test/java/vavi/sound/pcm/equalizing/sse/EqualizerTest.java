@@ -7,11 +7,13 @@
 package vavi.sound.pcm.equalizing.sse;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -22,8 +24,12 @@ import javax.sound.sampled.SourceDataLine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import vavi.sound.pcm.equalizing.sse.Equalizer.Parameter;
+import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 import vavix.util.Checksum;
@@ -192,6 +198,204 @@ class EqualizerTest {
         assertTrue(0.9 < ratio && ratio < 1.1, "4 kHz should be unchanged, ratio: " + ratio);
     }
 
+    /** stereo pcm of bps bits, a sine with noise, inverted on the right channel */
+    static byte[] noisySine(int nsamples, int amp, int bps) {
+        int bytes = bps / 8;
+        byte[] buf = new byte[nsamples * 2 * bytes];
+        Random random = new Random(1);
+        for (int i = 0; i < nsamples; i++) {
+            int v = (int) Math.round(amp * Math.sin(2 * Math.PI * 440 * i / FS) + random.nextGaussian() * amp / 10);
+            for (int k = 0; k < bytes; k++) {
+                buf[i * 2 * bytes + k] = (byte) (v >> (8 * k));
+                buf[(i * 2 + 1) * bytes + k] = (byte) (-v >> (8 * k));
+            }
+        }
+        return buf;
+    }
+
+    /** signed sample of the channel at index */
+    static int sampleAt(byte[] buf, int index, int ch, int bps) {
+        int bytes = bps / 8;
+        int v = 0;
+        for (int k = 0; k < bytes; k++) {
+            v |= (buf[(index * 2 + ch) * bytes + k] & 0xff) << (8 * k);
+        }
+        return (v << (32 - bps)) >> (32 - bps);
+    }
+
+    /** different tables for left and right */
+    static Equalizer equalizer(int blockFrames) {
+        double[] lgains = new double[Equalizer.getBandsCount() + 1];
+        for (int i = 0; i < lgains.length; i++) {
+            lgains[i] = 0.3 + 0.05 * i;
+        }
+        double[] rgains = lgains.clone();
+        rgains[3] = 1.5;
+
+        Parameter boost = new Parameter();
+        boost.lower = 100;
+        boost.upper = 1000;
+        boost.gain = 6; // dB
+
+        Equalizer equ = new Equalizer(WB, blockFrames);
+        equ.equ_makeTable(lgains, rgains, new ArrayList<>(List.of(boost)), FS);
+        return equ;
+    }
+
+    /** processes buf in chunks of frames */
+    static void process(Equalizer equ, byte[] buf, int nsamples, int bps, int chunk) {
+        int frameSize = bps / 8 * 2;
+        byte[] work = new byte[chunk * frameSize];
+        for (int i = 0; i < nsamples; i += chunk) {
+            int n = Math.min(chunk, nsamples - i);
+            System.arraycopy(buf, i * frameSize, work, 0, n * frameSize);
+            assertEquals(n, equ.equ_modifySamples(work, n, 2, bps));
+            System.arraycopy(work, 0, buf, i * frameSize, n * frameSize);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {16, 24})
+    void testPartitioned(int bps) {
+        int nsamples = 32768;
+        int amp = bps == 16 ? 8000 : 2000000;
+        Equalizer window = equalizer(0);
+        byte[] expected = noisySine(nsamples, amp, bps);
+        process(window, expected, nsamples, bps, 576);
+
+        for (int blockFrames : new int[] {64, 256, 1024}) {
+            Equalizer partitioned = equalizer(blockFrames);
+            assertEquals(blockFrames + WINLEN / 2, partitioned.getLatency());
+            byte[] actual = noisySine(nsamples, amp, bps);
+            process(partitioned, actual, nsamples, bps, 333);
+
+            // same fir, only the latency differs
+            int shift = window.getLatency() - partitioned.getLatency();
+            for (int ch = 0; ch < 2; ch++) {
+                for (int i = window.getLatency(); i < nsamples; i++) {
+                    assertEquals(sampleAt(expected, i, ch, bps), sampleAt(actual, i - shift, ch, bps), 1,
+                                 "block " + blockFrames + ", ch " + ch + ", sample " + i);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 256})
+    void testCrossfade(int blockFrames) throws Exception {
+        int nsamples = 131072;
+        byte[] source = sine(nsamples, 440, 8000);
+        byte[] buf = source.clone();
+        Equalizer equ = new Equalizer(WB, blockFrames);
+        double[] gains = new double[Equalizer.getBandsCount() + 1];
+        Arrays.fill(gains, 1.0);
+        equ.equ_makeTable(gains, gains, new ArrayList<>(), FS);
+
+        // the gains are changed from another thread at a quarter, while the samples are processed
+        int chunk = 512;
+        byte[] work = new byte[chunk * 4];
+        Thread thread = null;
+        int concurrent = 0;
+        for (int i = 0; i < nsamples; i += chunk) {
+            if (i == nsamples / 4) {
+                double[] cut = new double[gains.length];
+                Arrays.fill(cut, 0.25);
+                thread = new Thread(() -> equ.equ_makeTable(cut, cut, new ArrayList<>(), FS));
+                thread.start();
+            } else if (i == nsamples / 2) {
+                // the crossfade must be in the output
+                thread.join();
+            }
+            if (thread != null && thread.isAlive()) {
+                concurrent++;
+            }
+            System.arraycopy(buf, i * 4, work, 0, chunk * 4);
+            equ.equ_modifySamples(work, chunk, 2, 16);
+            System.arraycopy(work, 0, buf, i * 4, chunk * 4);
+        }
+Debug.println("chunks processed while publishing: " + concurrent);
+
+        // the output goes from the old one to the new one over a window or a block
+        int latency = equ.getLatency();
+        int first = -1, last = -1;
+        for (int i = latency; i < nsamples; i++) {
+            double x = sampleAt(source, i - latency);
+            double y = sampleAt(buf, i);
+            assertTrue(Math.min(x, x * 0.25) - 2 <= y && y <= Math.max(x, x * 0.25) + 2, "sample " + i);
+            if (Math.abs(y - x) > 2 && Math.abs(y - x * 0.25) > 2) {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+Debug.println("crossfade: " + first + " ~ " + last);
+        assertTrue(first > nsamples / 4);
+        assertTrue(last - first < (blockFrames == 0 ? WINLEN : blockFrames));
+    }
+
+    /** the audio thread allocates nothing, also while crossfading to tables published by another thread */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 256})
+    void testAllocation(int blockFrames) throws Exception {
+        int nsamples = 65536;
+        byte[] source = noisySine(nsamples, 8000, 16);
+        Equalizer equ = equalizer(blockFrames);
+        int chunk = 512;
+        byte[] work = new byte[chunk * 4];
+        // warm up
+        for (int i = 0; i < nsamples; i += chunk) {
+            System.arraycopy(source, i * 4, work, 0, chunk * 4);
+            equ.equ_modifySamples(work, chunk, 2, 16);
+        }
+
+        double[] cut = new double[Equalizer.getBandsCount() + 1];
+        Arrays.fill(cut, 0.25);
+        Thread thread = new Thread(() -> equ.equ_makeTable(cut, cut, new ArrayList<>(), FS));
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        long before = allocatedBytes();
+        for (int i = 0; i < nsamples; i += chunk) {
+            if (i == chunk * 4) {
+                thread.start();
+            } else if (i == nsamples / 2) {
+                thread.join();
+            }
+            System.arraycopy(source, i * 4, work, 0, chunk * 4);
+            equ.equ_modifySamples(work, chunk, 2, 16);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+Debug.println("block " + blockFrames + ": allocated " + allocated + " bytes");
+        // thread start and join themselves allocate a little
+        assertTrue(allocated < 256, "allocated " + allocated);
+    }
+
+    /** bytes allocated by the current thread so far, the call itself allocates some */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        int nsamples = FS * 10;
+        int chunk = 512;
+        for (int bps : new int[] {16, 24}) {
+            byte[] source = noisySine(nsamples, 8000, bps);
+            for (int blockFrames : new int[] {0, 64, 128, 256, 512, 1024}) {
+                Equalizer equ = equalizer(blockFrames);
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < 5; r++) {
+                    byte[] buf = source.clone();
+                    long t = System.nanoTime();
+                    process(equ, buf, nsamples, bps, chunk);
+                    best = Math.min(best, System.nanoTime() - t);
+                }
+Debug.printf("%d bit, block %4d: %4d ms for %d sec, latency %.1f ms", bps, blockFrames, best / 1_000_000, nsamples / FS, equ.getLatency() * 1000d / FS);
+            }
+        }
+    }
+
     @Test
     @Disabled("spi not implemented yet")
     void test1() throws Exception {
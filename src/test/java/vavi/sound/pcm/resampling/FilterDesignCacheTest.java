@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package vavi.sound.pcm.resampling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import vavi.sound.pcm.resampling.sox.PerfectResampler;
+import vavi.util.Debug;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * FilterDesignCacheTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (nsano)
+ * @version 0.00 2026-10-18 nsano initial version <br>
+ */
+class FilterDesignCacheTest {
+
+    @Test
+    void testLru() throws Exception {
+        FilterDesignCache<Integer, double[]> cache = new FilterDesignCache<>("test", 2);
+        AtomicInteger designs = new AtomicInteger();
+        double[] one = cache.get(1, k -> { designs.incrementAndGet(); return new double[k]; });
+        cache.get(2, k -> { designs.incrementAndGet(); return new double[k]; });
+        assertSame(one, cache.get(1, k -> { throw new AssertionError(); }));
+        cache.get(3, k -> { designs.incrementAndGet(); return new double[k]; }); // 2 is the eldest
+        assertSame(one, cache.get(1, k -> { throw new AssertionError(); }));
+        cache.get(2, k -> { designs.incrementAndGet(); return new double[k]; });
+
+        FilterDesignCache.Metrics metrics = cache.getMetrics();
+Debug.println(metrics);
+        assertEquals(4, designs.get());
+        assertEquals(2, metrics.hits());
+        assertEquals(4, metrics.misses());
+        assertEquals(2, metrics.evictions());
+        assertEquals(2, metrics.size());
+        assertEquals(2 / 6d, metrics.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testFailureIsNotCached() throws Exception {
+        FilterDesignCache<Integer, double[]> cache = new FilterDesignCache<>("test", 2);
+        assertThrows(IllegalArgumentException.class, () -> cache.get(1, k -> { throw new IllegalArgumentException(); }));
+        assertEquals(1, cache.get(1, double[]::new).length);
+        assertEquals(0, cache.getMetrics().hits());
+    }
+
+    @Test
+    void testDesignedOnce() throws Exception {
+        FilterDesignCache<Integer, double[]> cache = new FilterDesignCache<>("test", 2);
+        AtomicInteger designs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return cache.get(1, k -> {
+                    designs.incrementAndGet();
+                    try { Thread.sleep(100); } catch (InterruptedException e) { throw new IllegalStateException(e); }
+                    return new double[k];
+                });
+            }));
+        }
+        start.countDown();
+        double[] design = futures.get(0).get();
+        for (Future<double[]> future : futures) {
+            assertSame(design, future.get());
+        }
+        executor.shutdown();
+        assertEquals(1, designs.get());
+        assertEquals(7, cache.getMetrics().hits());
+    }
+
+    @Test
+    void testPerfectResampler() throws Exception {
+        long hits = PerfectResampler.getCacheMetrics().hits();
+        new PerfectResampler(2, 25, 0, false, -1, 44100, 48000);
+        new PerfectResampler(2, 25, 0, false, -1, 44100, 48000);
+Debug.println(PerfectResampler.getCacheMetrics());
+        assertTrue(PerfectResampler.getCacheMetrics().hits() > hits);
+    }
+}
@@ -189,4 +189,34 @@ Debug.println(Level.FINER, "line.write: " + l);
 
         sourceAis.close();
     }
+
+    @Test
+    @DisplayName("via filter input stream, stereo")
+    void test3() throws Exception {
+        int frames = 44100;
+        byte[] stereo = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            // L: 1 kHz, R: silence
+            ByteUtil.writeLeShort((short) (10000 * Math.sin(2 * Math.PI * 1000 * i / 44100)), stereo, i * 4);
+        }
+
+        InputStream in = new RohmInputStream(new ByteArrayInputStream(stereo), 44100, 48000, 2);
+        byte[] result = in.readAllBytes();
+
+        int outFrames = result.length / 4;
+        double left = 0;
+        int right = 0;
+        for (int i = 0; i < outFrames; i++) {
+            left += Math.pow(ByteUtil.readLeShort(result, i * 4), 2);
+            right = Math.max(right, Math.abs(ByteUtil.readLeShort(result, i * 4 + 2)));
+        }
+        left = Math.sqrt(left / outFrames);
+Debug.println("frames: " + outFrames + ", left rms: " + left + ", right peak: " + right);
+
+        assertEquals(0, result.length % 4);
+        assertEquals(frames * 48000 / 44100, outFrames, 2);
+        // not mixed nor swapped
+        assertEquals(10000 / Math.sqrt(2), left, 10000 * 0.05);
+        assertEquals(0, right);
+    }
 }
@@ -31,6 +31,7 @@ import vavi.util.StringUtil;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static vavi.sound.SoundUtil.volume;
 
@@ -156,4 +157,55 @@ Debug.println("result: " + r);
         AudioInputStream resultAis = AudioSystem.getAudioInputStream(new File(outFile));
         assertEquals((int) resamplingRate, (int) resultAis.getFormat().getSampleRate());
     }
+
+    @Test
+    @DisplayName("planar double, filters shared by channels")
+    void test2() throws Exception {
+        AudioInputStream sourceAis = AudioSystem.getAudioInputStream(new File(inFile));
+        byte[] stereo = sourceAis.readAllBytes();
+        float sampleRate = sourceAis.getFormat().getSampleRate();
+        sourceAis.close();
+        int frames = stereo.length / 4;
+        double[][] samples = new double[2][frames];
+        int[][] ints = new int[2][frames];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < 2; c++) {
+                ints[c][i] = ByteUtil.readLeShort(stereo, i * 4 + c * 2);
+                samples[c][i] = ints[c][i];
+            }
+        }
+
+        final float resamplingRate = 48000;
+        int length = (int) (frames * resamplingRate / sampleRate);
+        MultiChannelPerfectResampler resampler = new MultiChannelPerfectResampler(2, 2, 25, 0, false, -1, sampleRate, resamplingRate);
+        double[][] results = new double[2][length];
+        int[] il = { frames };
+        int[] ol = { length };
+        resampler.flow(samples, 0, results, 0, il, ol);
+        int total = ol[0];
+        ol[0] = length - total;
+        resampler.drain(results, total, ol);
+        total += ol[0];
+Debug.println("samples: " + total);
+
+        for (int c = 0; c < 2; c++) {
+            PerfectResampler mono = new PerfectResampler(2, 25, 0, false, -1, sampleRate, resamplingRate);
+            int[] expected = new int[length];
+            il[0] = frames;
+            ol[0] = length;
+            mono.flow(ints[c], expected, il, ol);
+            int n = ol[0];
+            int[] rest = new int[length - n];
+            ol[0] = rest.length;
+            mono.drain(rest, ol);
+            System.arraycopy(rest, 0, expected, n, ol[0]);
+            assertEquals(n + ol[0], total);
+
+            int[] actual = new int[length];
+            for (int i = 0; i < total; i++) {
+                actual[i] = (int) Math.round(results[c][i]);
+            }
+            assertArrayEquals(expected, actual, "channel " + c);
+        }
+    }
 }
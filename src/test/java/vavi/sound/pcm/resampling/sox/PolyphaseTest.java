@@ -334,4 +334,28 @@ Debug.println("OUT: " + outFormat);
 
         sourceAis.close();
     }
+
+    @Test
+    @DisplayName("stereo is resampled channel by channel")
+    public void test5() throws Exception {
+        AudioInputStream sourceAis = AudioSystem.getAudioInputStream(new File(inFile));
+        AudioFormat format = sourceAis.getFormat();
+        byte[] stereo = sourceAis.readAllBytes();
+        sourceAis.close();
+        // L
+        byte[] left = new byte[stereo.length / 4 * 2];
+        for (int i = 0; i < left.length / 2; i++) {
+            left[i * 2] = stereo[i * 4];
+            left[i * 2 + 1] = stereo[i * 4 + 1];
+        }
+
+        byte[] expected = new PolyphaseInputStream(new ByteArrayInputStream(left), format.getSampleRate(), 8000).readAllBytes();
+        byte[] actual = new PolyphaseInputStream(new ByteArrayInputStream(stereo), format.getSampleRate(), 8000, 2).readAllBytes();
+Debug.println("mono: " + expected.length / 2 + ", stereo: " + actual.length / 4);
+
+        assertEquals(expected.length * 2, actual.length);
+        for (int i = 0; i < expected.length / 2; i++) {
+            assertEquals(ByteUtil.readLeShort(expected, i * 2), ByteUtil.readLeShort(actual, i * 4), "frame " + i);
+        }
+    }
 }
@@ -32,8 +32,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static vavi.sound.SoundUtil.volume;
 
 
@@ -268,4 +273,125 @@ Debug.println(Level.FINER, "line.write: " + l);
 
         sourceAis.close();
     }
+
+    @Test
+    @DisplayName("variable ratio")
+    public void test4() throws Exception {
+        int n = 44100 * 4;
+        int[] samples = new int[n];
+        for (int i = 0; i < n; i++) {
+            samples[i] = (int) (10000 * Math.sin(2 * Math.PI * 1000 * i / 44100));
+        }
+
+        int[] counts = new int[2];
+        int[] jumps = new int[2];
+        for (int t = 0; t < 2; t++) {
+            Resampler resampler = new Resampler(44100, 48000, true);
+            int[] out = new int[resampler.getMaxOutput(4096)];
+            int prev = 0;
+            for (int i = 0; i < n; i += 4096) {
+                if (t == 1 && i == 4096 * 8) {
+                    resampler.setRatio(1.01);
+                }
+                int o = resampler.resample(samples, i, Math.min(4096, n - i), out, 0);
+                for (int j = 0; j < o; j++) {
+                    if (counts[t] + j > 0) {
+                        jumps[t] = Math.max(jumps[t], Math.abs(out[j] - prev));
+                    }
+                    prev = out[j];
+                }
+                counts[t] += o;
+            }
+Debug.println("outputs: " + counts[t] + ", max jump: " + jumps[t] + ", ratio: " + resampler.getRatio());
+        }
+
+        // 1% more after the change
+        int expected = (int) ((n - 4096 * 8) * 48000L / 44100 * 0.01);
+        assertEquals(expected, counts[1] - counts[0], expected * 0.05);
+        // no discontinuity
+        assertEquals(jumps[0], jumps[1], jumps[0] * 0.05);
+
+        assertThrows(IllegalStateException.class, () -> new Resampler(44100, 48000).setRatio(1.01));
+        assertThrows(IllegalArgumentException.class, () -> new Resampler(44100, 48000, true).setRatio(1.1));
+    }
+
+    @Test
+    @DisplayName("via filter input stream, stereo")
+    public void test5() throws Exception {
+        int frames = 44100;
+        byte[] stereo = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            // L: 1 kHz, R: silence
+            ByteUtil.writeLeShort((short) (10000 * Math.sin(2 * Math.PI * 1000 * i / 44100)), stereo, i * 4);
+        }
+
+        InputStream in = new ResamplerInputStream(new ByteArrayInputStream(stereo), 44100, 48000, 2);
+        byte[] result = in.readAllBytes();
+
+        int outFrames = result.length / 4;
+        double left = 0;
+        int right = 0;
+        for (int i = 0; i < outFrames; i++) {
+            left += Math.pow(ByteUtil.readLeShort(result, i * 4), 2);
+            right = Math.max(right, Math.abs(ByteUtil.readLeShort(result, i * 4 + 2)));
+        }
+        left = Math.sqrt(left / outFrames);
+Debug.println("frames: " + outFrames + ", left rms: " + left + ", right peak: " + right);
+
+        assertEquals(0, result.length % 4);
+        assertEquals(frames * 48000 / 44100, outFrames, 2);
+        // not mixed nor swapped
+        assertEquals(10000 / Math.sqrt(2), left, 10000 * 0.05);
+        assertEquals(0, right);
+    }
+
+    /**
+     * @param from the ratio set at first
+     * @param to the ratio set at the 8th block
+     * @return output samples, max jump between successive output samples
+     */
+    static int[] variableRatio(int[] samples, float outRate, double from, double to) {
+        Resampler resampler = new Resampler(44100, outRate, true);
+        if (from != 1) {
+            resampler.setRatio(from);
+        }
+        int[] out = new int[resampler.getMaxOutput(4096)];
+        int count = 0;
+        int jump = 0;
+        int prev = 0;
+        for (int i = 0; i < samples.length; i += 4096) {
+            if (i == 4096 * 8) {
+                resampler.setRatio(to);
+            }
+            int o = resampler.resample(samples, i, Math.min(4096, samples.length - i), out, 0);
+            for (int j = 0; j < o; j++) {
+                if (count + j > 0) {
+                    jump = Math.max(jump, Math.abs(out[j] - prev));
+                }
+                prev = out[j];
+            }
+            count += o;
+        }
+Debug.println("outputs: " + count + ", max jump: " + jump + ", ratio: " + resampler.getRatio());
+        return new int[] {count, jump};
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1.05, 0.95", "1, 0.95", "0.95, 1.05"})
+    @DisplayName("variable ratio, lowered and raised")
+    public void test6(double from, double to) throws Exception {
+        int n = 44100 * 4;
+        int[] samples = new int[n];
+        for (int i = 0; i < n; i++) {
+            samples[i] = (int) (10000 * Math.sin(2 * Math.PI * 1000 * i / 44100));
+        }
+
+        int[] actual = assertDoesNotThrow(() -> variableRatio(samples, 48000, from, to));
+
+        // a fixed ratio at the lower of the two has the largest jumps of a sine
+        int[] fixed = variableRatio(samples, (float) (48000 * Math.min(from, to)), 1, 1);
+        assertTrue(actual[1] <= fixed[1] * 1.05, "max jump: " + actual[1] + ", fixed: " + fixed[1]);
+        int expected = (int) (4096 * 8 * 48000L / 44100 * from + (n - 4096 * 8) * 48000L / 44100 * to);
+        assertEquals(expected, actual[0], expected * 0.01);
+    }
 }
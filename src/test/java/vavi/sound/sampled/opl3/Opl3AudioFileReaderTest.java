@@ -12,7 +12,9 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
@@ -34,6 +36,8 @@ import vavi.util.Debug;
 import vavi.util.properties.annotation.Property;
 import vavi.util.properties.annotation.PropsEntity;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static vavi.sound.SoundUtil.volume;
 import static vavix.util.DelayedWorker.later;
 
@@ -252,6 +256,79 @@ Debug.println("------------------------------------------ " + opl3 + " ---------
         play(path);
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/opl3/2001.MKJ",
+            "/opl3/samurai.dro",
+    })
+    @DisplayName("frame length, offline, skip")
+    void test5(String filename) throws Exception {
+        Path path = Paths.get(Opl3AudioFileReaderTest.class.getResource(filename).toURI());
+        AudioFileFormat audioFileFormat = AudioSystem.getAudioFileFormat(path.toFile());
+Debug.println(audioFileFormat.getFrameLength() + ", " + audioFileFormat.getProperty("duration"));
+
+        AudioInputStream originalAudioInputStream = AudioSystem.getAudioInputStream(path.toFile());
+        AudioFormat originalAudioFormat = originalAudioInputStream.getFormat();
+        AudioFormat targetAudioFormat = new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                originalAudioFormat.getSampleRate(),
+                16,
+                originalAudioFormat.getChannels(),
+                4,
+                originalAudioFormat.getSampleRate(),
+                false,
+                Map.of("offline", true));
+        AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(targetAudioFormat, originalAudioInputStream);
+        assertEquals(audioFileFormat.getFrameLength(), audioInputStream.getFrameLength());
+
+        long total = 0;
+        byte[] buf = new byte[8192];
+        int r;
+        while ((r = audioInputStream.read(buf)) > 0) {
+            total += r;
+        }
+        assertEquals(audioFileFormat.getFrameLength() * 4L, total);
+
+        originalAudioInputStream = AudioSystem.getAudioInputStream(path.toFile());
+        audioInputStream = AudioSystem.getAudioInputStream(targetAudioFormat, originalAudioInputStream);
+        long half = audioInputStream.getFrameLength() / 2 * 4;
+        assertEquals(half, audioInputStream.skip(half));
+        long rest = 0;
+        while ((r = audioInputStream.read(buf)) > 0) {
+            rest += r;
+        }
+        assertEquals(total, half + rest);
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {44100, 48000})
+    @DisplayName("rendered at the rate directly")
+    void test6(float sampleRate) throws Exception {
+        Path path = Paths.get(Opl3AudioFileReaderTest.class.getResource("/opl3/2001.MKJ").toURI());
+        AudioFileFormat audioFileFormat = AudioSystem.getAudioFileFormat(path.toFile());
+
+        AudioInputStream originalAudioInputStream = AudioSystem.getAudioInputStream(path.toFile());
+        AudioFormat targetAudioFormat = new AudioFormat(sampleRate, 16, 2, true, false);
+        AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(targetAudioFormat, originalAudioInputStream);
+        assertEquals(sampleRate, audioInputStream.getFormat().getSampleRate());
+        long frameLength = (long) (audioFileFormat.getFrameLength() * (double) sampleRate / originalAudioInputStream.getFormat().getSampleRate());
+        assertEquals(frameLength, audioInputStream.getFrameLength());
+
+        long total = 0;
+        long sum = 0;
+        byte[] buf = new byte[8192];
+        int r;
+        while ((r = audioInputStream.read(buf)) > 0) {
+            total += r;
+            for (int i = 0; i < r; i += 2) {
+                sum += Math.abs((short) ((buf[i] & 0xff) | (buf[i + 1] << 8)));
+            }
+        }
+Debug.println(sampleRate + ": " + total / 4 + " frames, average level: " + sum / (total / 2));
+        assertEquals(frameLength * 4, total);
+        assertTrue(sum > 0);
+    }
+
     /** */
     private void play(Path path) throws Exception {
         InputStream is = new BufferedInputStream(Files.newInputStream(path));
@@ -6,7 +6,10 @@
 
 package vavi.sound.wma;
 
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,9 +18,17 @@ import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vavi.sound.dsp.BitReader;
+import vavi.sound.dsp.Fft;
+import vavi.sound.dsp.Imdct;
+import vavi.sound.dsp.Vlc;
+import vavi.util.Debug;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -59,6 +70,33 @@ class WmaDecoderTest {
         }
     }
 
+    /** The radix-4 passes (and the radix-2 one of odd powers) match a naive DFT in both directions. */
+    @Test
+    void fftMatchesDftForAllSizes() {
+        Random r = new Random(4);
+        for (int n = 2; n <= 1024; n <<= 1) {
+            for (boolean inverse : new boolean[] {false, true}) {
+                float[] data = new float[2 * n];
+                for (int i = 0; i < 2 * n; i++) {
+                    data[i] = r.nextFloat() * 2 - 1;
+                }
+                float[] x = data.clone();
+                new Fft(n, inverse).transform(data, 0);
+                for (int k = 0; k < n; k++) {
+                    double sre = 0;
+                    double sim = 0;
+                    for (int j = 0; j < n; j++) {
+                        double ang = (inverse ? 2.0 : -2.0) * Math.PI * ((long) k * j % n) / n;
+                        sre += x[2 * j] * Math.cos(ang) - x[2 * j + 1] * Math.sin(ang);
+                        sim += x[2 * j] * Math.sin(ang) + x[2 * j + 1] * Math.cos(ang);
+                    }
+                    assertEquals(sre, data[2 * k], 1e-5 * n, n + " re[" + k + "]");
+                    assertEquals(sim, data[2 * k + 1], 1e-5 * n, n + " im[" + k + "]");
+                }
+            }
+        }
+    }
+
     /** Inverse of the forward FFT reproduces the input scaled by N. */
     @Test
     void fftRoundTrip() {
@@ -267,8 +305,236 @@ class WmaDecoderTest {
         }
     }
 
+    /**
+     * Decoding into caller buffers at an offset gives the same samples as the
+     * allocating API, and allocates nothing once the decoder is built.
+     */
+    @Test
+    @EnabledIf("wmaExists")
+    void decodesIntoCallerBuffers() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(WMA));
+        AsfInfo info = AsfDemuxer.demux(data);
+        List<byte[]> frames = superframes(info);
+        WmaDecoder expected = new WmaDecoder(info);
+        WmaDecoder actual = new WmaDecoder(info);
+        int ch = actual.channels();
+        int offset = 3;
+        float[][] out = new float[ch][offset + actual.maxSuperframeLength()];
+
+        for (byte[] f : frames) {
+            float[][] planar = expected.decodeSuperframe(f);
+            int n = actual.decodeSuperframe(f, out, offset);
+            assertEquals(planar[0].length, n);
+            for (int c = 0; c < ch; c++) {
+                assertEquals(0f, out[c][offset - 1]);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(planar[c][i], out[c][offset + i]);
+                }
+            }
+        }
+        float[][] planar = expected.flush();
+        assertEquals(planar[0].length, actual.flush(out, offset));
+        for (int c = 0; c < ch; c++) {
+            for (int i = 0; i < planar[c].length; i++) {
+                assertEquals(planar[c][i], out[c][offset + i]);
+            }
+        }
+        assertEquals(0, actual.flush(out, offset));
+
+        WmaDecoder decoder = new WmaDecoder(info);
+        decoder.decodeSuperframe(frames.get(0), out, 0);
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        long before = allocatedBytes();
+        for (int i = 1; i < frames.size(); i++) {
+            decoder.decodeSuperframe(frames.get(i), out, 0);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+Debug.println("allocated: " + allocated + " bytes for " + frames.size() + " superframes");
+        assertTrue(allocated < 256, "allocated " + allocated);
+    }
+
+    /** The allocating API vs. decoding into caller buffers. */
+    @Test
+    @EnabledIf("wmaExists")
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(WMA));
+        AsfInfo info = AsfDemuxer.demux(data);
+        List<byte[]> frames = superframes(info);
+        float[][] out = new float[info.channels][new WmaDecoder(info).maxSuperframeLength()];
+        for (int r = 0; r < 5; r++) {
+            WmaDecoder decoder = new WmaDecoder(info);
+            long a = allocatedBytes();
+            long t = System.nanoTime();
+            for (byte[] f : frames) {
+                decoder.decodeSuperframe(f);
+            }
+            long allocating = System.nanoTime() - t;
+            a = allocatedBytes() - a;
+
+            decoder = new WmaDecoder(info);
+            long b = allocatedBytes();
+            t = System.nanoTime();
+            for (byte[] f : frames) {
+                decoder.decodeSuperframe(f, out, 0);
+            }
+            long buffered = System.nanoTime() - t;
+            b = allocatedBytes() - b;
+Debug.printf("allocating: %d ms, %d KiB, buffered: %d ms, %d KiB for %d superframes", allocating / 1_000_000, a / 1024, buffered / 1_000_000, b / 1024, frames.size());
+        }
+    }
+
+    /** The incremental demuxer yields the superframes of the whole-file one, from a stream and a channel. */
+    @Test
+    @EnabledIf("wmaExists")
+    void streamingDemuxerMatchesWholeFile() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(WMA));
+        AsfInfo info = AsfDemuxer.demux(data);
+        List<byte[]> frames = superframes(info);
+
+        try (AsfDemuxer demuxer = new AsfDemuxer(new ByteArrayInputStream(data))) {
+            assertEquals(info.blockAlign, demuxer.info().blockAlign);
+            assertEquals(info.packets.size(), demuxer.packetCount());
+            byte[] superframe = new byte[info.blockAlign];
+            for (byte[] f : frames) {
+                assertTrue(demuxer.nextSuperframe(superframe));
+                assertArrayEquals(f, superframe);
+            }
+            assertFalse(demuxer.nextSuperframe(superframe));
+        }
+
+        try (AsfDemuxer demuxer = new AsfDemuxer(Files.newByteChannel(Paths.get(WMA)))) {
+            assertFalse(demuxer.hasIndex());
+            for (byte[] p : info.packets) {
+                assertTrue(demuxer.nextPacket());
+                assertArrayEquals(p, demuxer.packet());
+            }
+            assertFalse(demuxer.nextPacket());
+        }
+    }
+
+    /**
+     * Seeking by the simple index object lands on the packet the send time
+     * search finds, and decoding goes on from there after a reset.
+     */
+    @Test
+    @EnabledIf("wmaExists")
+    void seeksBySimpleIndex() throws Exception {
+        byte[] data = Files.readAllBytes(Paths.get(WMA));
+        AsfInfo info = AsfDemuxer.demux(data);
+        long preroll = preroll(data);
+
+        List<Long> sendTimes = new ArrayList<>();
+        try (AsfDemuxer demuxer = new AsfDemuxer(new ByteArrayInputStream(data))) {
+            while (demuxer.nextPacket()) {
+                sendTimes.add(demuxer.packetSendTime());
+            }
+        }
+        // a 1 s simple index, entry i points at the last packet sent by i s less the preroll
+        int entries = (int) ((sendTimes.get(sendTimes.size() - 1) + preroll) / 1000) + 1;
+        byte[] index = new byte[24 + 32 + entries * 6];
+        int p = putGuid(index, 0, new int[] {0x90, 0x08, 0x00, 0x33, 0xb1, 0xe5, 0xcf, 0x11, 0x89, 0xf4, 0x00, 0xa0, 0xc9, 0x03, 0x49, 0xcb});
+        p = putU64(index, p, index.length);
+        p = putU64(index, p + 16, 10_000_000L); // interval, 100 ns
+        p = putU32(index, p, 1);                // max packet count
+        p = putU32(index, p, entries);
+        for (int i = 0; i < entries; i++) {
+            p = putU32(index, p, lastSentBy(sendTimes, i * 1000L - preroll));
+            p = putU16(index, p, 1);
+        }
+        Path indexed = Files.createTempFile("indexed", ".wma");
+        indexed.toFile().deleteOnExit();
+        byte[] withIndex = Arrays.copyOf(data, data.length + index.length);
+        System.arraycopy(index, 0, withIndex, data.length, index.length);
+        Files.write(indexed, withIndex);
+
+        try (AsfDemuxer byIndex = new AsfDemuxer(Files.newByteChannel(indexed));
+             AsfDemuxer bySearch = new AsfDemuxer(Files.newByteChannel(Paths.get(WMA)))) {
+            assertTrue(byIndex.hasIndex());
+            assertFalse(bySearch.hasIndex());
+            for (int i = 0; i < entries; i++) {
+                long millis = i * 1000L - preroll;
+                if (millis < 0) {
+                    continue;
+                }
+                int expected = lastSentBy(sendTimes, millis);
+                assertEquals((long) sendTimes.get(expected), byIndex.seek(millis));
+                assertEquals((long) sendTimes.get(expected), bySearch.seek(millis));
+                assertTrue(byIndex.nextPacket());
+                assertArrayEquals(info.packets.get(expected), byIndex.packet());
+            }
+
+            WmaDecoder decoder = new WmaDecoder(info);
+            float[][] out = new float[decoder.channels()][decoder.maxSuperframeLength()];
+            byte[] superframe = new byte[info.blockAlign];
+            byIndex.nextSuperframe(superframe);
+            decoder.decodeSuperframe(superframe, out, 0);
+
+            // the index is coarser than the packets, it lands at or before
+            long millis = sendTimes.get(sendTimes.size() / 2);
+            long time = byIndex.seek(millis);
+            assertTrue(time <= millis && time > millis - 1000, "seeked to " + time);
+            decoder.reset();
+            int samples = 0;
+            while (byIndex.nextSuperframe(superframe)) {
+                samples += decoder.decodeSuperframe(superframe, out, 0);
+            }
+            samples += decoder.flush(out, 0);
+Debug.println("seeked to " + time + " ms, decoded " + samples + " samples");
+            assertTrue(samples > 0);
+        }
+    }
+
     // ---- helpers ----
 
+    /** the number of the last packet sent at or before {@code millis} */
+    private static int lastSentBy(List<Long> sendTimes, long millis) {
+        int n = 0;
+        while (n + 1 < sendTimes.size() && sendTimes.get(n + 1) <= millis) {
+            n++;
+        }
+        return n;
+    }
+
+    /** the file properties object preroll in ms */
+    private static long preroll(byte[] asf) {
+        int[] gFileProps = {0xa1, 0xdc, 0xab, 0x8c, 0x47, 0xa9, 0xcf, 0x11, 0x8e, 0xe4, 0x00, 0xc0, 0x0c, 0x20, 0x53, 0x65};
+        for (int p = 30; p + 24 + 64 <= asf.length; p++) {
+            int i = 0;
+            while (i < 16 && (asf[p + i] & 0xff) == gFileProps[i]) {
+                i++;
+            }
+            if (i == 16) {
+                long v = 0;
+                for (int b = 7; b >= 0; b--) {
+                    v = (v << 8) | (asf[p + 24 + 56 + b] & 0xff);
+                }
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("no file properties");
+    }
+
+    /** splits the ASF payloads into {@code blockAlign}-sized superframes */
+    private static List<byte[]> superframes(AsfInfo info) {
+        List<byte[]> frames = new ArrayList<>();
+        int ba = info.blockAlign;
+        for (byte[] pkt : info.packets) {
+            for (byte[] payload : AsfDemuxer.parsePacket(pkt)) {
+                for (int off = 0; off + ba <= payload.length; off += ba) {
+                    frames.add(Arrays.copyOfRange(payload, off, off + ba));
+                }
+            }
+        }
+        return frames;
+    }
+
+    /** bytes allocated by the current thread so far, the call itself allocates some */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
     private static int[] col(int[][] table, int c) {
         int[] out = new int[table.length];
         for (int i = 0; i < table.length; i++) {
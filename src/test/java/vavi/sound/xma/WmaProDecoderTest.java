@@ -6,9 +6,21 @@
 
 package vavi.sound.xma;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import vavi.sound.dsp.BitReader;
+import vavi.sound.dsp.Fft;
+import vavi.sound.dsp.Imdct;
+import vavi.sound.dsp.Vlc;
+import vavi.util.Debug;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -105,7 +117,7 @@ class WmaProDecoderTest {
         // lengths {1,2,3,3} -> codes 0, 10, 110, 111 (MSB-first)
         int[] lens = {1, 2, 3, 3};
         int[] syms = {10, 20, 30, 40};
-        Vlc vlc = new Vlc(lens, syms, 0);
+        Vlc vlc = Vlc.fromLengths(lens, syms, 0);
 
         // bit stream: 0 | 10 | 110 | 111  packed MSB-first = 0 10 110 111 = 0101 1011 1
         byte[] bits = {(byte) 0b0101_1011, (byte) 0b1000_0000};
@@ -124,7 +136,7 @@ class WmaProDecoderTest {
         assertEquals(0b101, br.readBits(3));
         assertEquals(0b10101, br.readBits(5));
         assertEquals(0x3C, br.readBits(8));
-        assertEquals(0, br.remainingBits());
+        assertEquals(0, br.bitsLeft());
     }
 
     /** IMDCT output is finite and linear (imdct(a*x) == a*imdct(x)). */
@@ -144,8 +156,8 @@ class WmaProDecoderTest {
         for (int i = 0; i < n; i++) {
             scaled[i] = in[i] * 3f;
         }
-        imdct.inverse(in, 0, out1, 0);
-        imdct.inverse(scaled, 0, out2, 0);
+        imdct.inverseHalf(in, 0, out1, 0);
+        imdct.inverseHalf(scaled, 0, out2, 0);
 
         for (int i = 0; i < n; i++) {
             assertTrue(Float.isFinite(out1[i]), "finite");
@@ -173,4 +185,96 @@ class WmaProDecoderTest {
             }
         }
     }
+
+    static final String XMA = "src/test/resources/test.xma";
+
+    static boolean xmaExists() {
+        return Files.exists(Paths.get(XMA));
+    }
+
+    /**
+     * Decoding at an offset gives the same samples as at 0, and allocates
+     * nothing once the decoder is built.
+     */
+    @Test
+    @EnabledIf("xmaExists")
+    void decodesIntoCallerBuffers() throws Exception {
+        XmaContainer container = XmaContainer.open(Files.readAllBytes(Paths.get(XMA)));
+        XmaStreamInfo info = container.streamInfo();
+        List<XmaFrame[]> sets = frameSets(container);
+        WmaProDecoder expected = new WmaProDecoder(info, 0);
+        WmaProDecoder actual = new WmaProDecoder(info, 0);
+        int n = actual.samplesPerFrame();
+        float[][] planar = new float[actual.channels()][n];
+        float[][] out = new float[actual.channels()][n * 3];
+
+        for (int f = 0; f < sets.size(); f++) {
+            assertEquals(expected.decodeFrame(sets.get(f)[0], planar), actual.decodeFrame(sets.get(f)[0], out, n));
+            for (int c = 0; c < actual.channels(); c++) {
+                for (int i = 0; i < n; i++) {
+                    assertEquals(planar[c][i], out[c][n + i]);
+                    assertEquals(0f, out[c][i]);
+                    assertEquals(0f, out[c][2 * n + i]);
+                }
+            }
+        }
+
+        WmaProDecoder decoder = new WmaProDecoder(info, 0);
+        decoder.decodeFrame(sets.get(0)[0], planar, 0);
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        long before = allocatedBytes();
+        for (int f = 1; f < sets.size(); f++) {
+            decoder.decodeFrame(sets.get(f)[0], planar, 0);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+Debug.println("allocated: " + allocated + " bytes for " + sets.size() + " frames");
+        assertTrue(allocated < 256, "allocated " + allocated);
+    }
+
+    /** all the streams of the fixture */
+    @Test
+    @EnabledIf("xmaExists")
+    @EnabledIfSystemProperty(named = "vavi.test", matches = "ide")
+    void testBenchmark() throws Exception {
+        XmaContainer container = XmaContainer.open(Files.readAllBytes(Paths.get(XMA)));
+        XmaStreamInfo info = container.streamInfo();
+        List<XmaFrame[]> sets = frameSets(container);
+        for (int r = 0; r < 5; r++) {
+            WmaProDecoder[] decoders = new WmaProDecoder[info.numStreams];
+            float[][][] outs = new float[info.numStreams][][];
+            for (int s = 0; s < info.numStreams; s++) {
+                decoders[s] = new WmaProDecoder(info, s);
+                outs[s] = new float[decoders[s].channels()][decoders[s].samplesPerFrame()];
+            }
+            long a = allocatedBytes();
+            long t = System.nanoTime();
+            for (XmaFrame[] set : sets) {
+                for (int s = 0; s < info.numStreams; s++) {
+                    decoders[s].decodeFrame(set[s], outs[s], 0);
+                }
+            }
+            t = System.nanoTime() - t;
+            a = allocatedBytes() - a;
+Debug.printf("%d ms, %d bytes (with the measurement) for %d frames, %.1f sec", t / 1_000_000, a, sets.size(), sets.size() * 512.0 / info.sampleRate);
+        }
+    }
+
+    // ---- helpers ----
+
+    /** frame sets of the fixture, {@code [frame][stream]} */
+    static List<XmaFrame[]> frameSets(XmaContainer container) {
+        XmaFrameReader reader = new XmaFrameReader(container);
+        List<XmaFrame[]> sets = new ArrayList<>();
+        XmaFrame[] set = new XmaFrame[container.streamInfo().numStreams];
+        while (reader.readFrameSet(set)) {
+            sets.add(set.clone());
+        }
+        return sets;
+    }
+
+    /** bytes allocated by the current thread so far, the call itself allocates some */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
 }